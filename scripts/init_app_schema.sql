@@ -124,6 +124,7 @@ CREATE INDEX idx_fixes_applied ON optimization_fixes(was_applied, applied_at);
 -- ============================================================================
 CREATE TABLE index_recommendations (
     id BIGSERIAL PRIMARY KEY,
+    database_context VARCHAR(100) NOT NULL DEFAULT 'default',  -- Target the index is for
     
     -- Index definition
     table_schema VARCHAR(100),
@@ -147,7 +148,7 @@ CREATE TABLE index_recommendations (
     estimated_improvement_percent DECIMAL(5, 2),
     queries_benefited INTEGER DEFAULT 0,       -- Count of queries that would benefit
     
-    CONSTRAINT unique_index_definition UNIQUE (table_name, index_name)
+    CONSTRAINT unique_index_definition UNIQUE (database_context, table_name, index_name)
 );
 
 CREATE INDEX idx_index_rec_table ON index_recommendations(table_name);
@@ -275,6 +276,18 @@ CREATE INDEX idx_audit_entity ON audit_log(entity_type, entity_id);
 CREATE INDEX idx_audit_time ON audit_log(performed_at DESC);
 CREATE INDEX idx_audit_user ON audit_log(performed_by, performed_at DESC);
 
+-- ============================================================================
+-- 9. PLAN_BASELINES TABLE
+-- Known-good plan signature per target and query fingerprint (plan regression detection)
+-- ============================================================================
+CREATE TABLE plan_baselines (
+    database_context VARCHAR(100) NOT NULL DEFAULT 'default',  -- Target the plan was captured on
+    query_hash VARCHAR(64) NOT NULL,           -- Same fingerprint as query_submissions.query_hash
+    signature JSONB NOT NULL,                  -- Operators, objects, depths and row estimates
+    captured_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (database_context, query_hash)
+);
+
 -- ============================================================================
 -- VIEWS FOR COMMON QUERIES
 -- ============================================================================
@@ -315,6 +328,7 @@ ORDER BY occurrences DESC, avg_cost_percentage DESC;
 -- Index recommendations by priority
 CREATE VIEW vw_index_priority AS
 SELECT 
+    database_context,
     table_name,
     index_name,
     key_columns,
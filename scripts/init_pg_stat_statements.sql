@@ -0,0 +1,3 @@
+-- Statement statistics for the pg_stat_statements harvester (querylens.harvest.enabled)
+-- Needs shared_preload_libraries=pg_stat_statements (see docker-compose.yml)
+CREATE EXTENSION IF NOT EXISTS pg_stat_statements;
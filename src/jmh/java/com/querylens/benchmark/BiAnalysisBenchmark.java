@@ -0,0 +1,79 @@
+package com.querylens.benchmark;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.*;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.config.BiAnalysisConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end BI analysis: tokenizing, all six detectors through
+ * {@link BiQueryAnalysisService}, and rendering the one-pager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BiAnalysisBenchmark {
+
+    @Param({"10", "500", "5000"})
+    private int lines;
+
+    private String sql;
+    private List<ExecutionPlanNode> plan;
+    private BiAnalysisResult result;
+
+    private ExecutorService executor;
+    private BiQueryAnalysisService service;
+    private final ResultsFormatter formatter = new ResultsFormatter();
+
+    @Setup
+    public void setUp() {
+        sql = SqlCorpus.query(lines);
+        plan = SqlCorpus.plan(lines).getNodes();
+
+        // The shipped fan-out: one platform thread per core
+        executor = new BiAnalysisConfig().biDetectorExecutor();
+        service = new BiQueryAnalysisService();
+        ReflectionTestUtils.setField(service, "nonSargableDetector", new NonSargableDetector());
+        ReflectionTestUtils.setField(service, "correlatedSubqueryDetector", new CorrelatedSubqueryDetector());
+        ReflectionTestUtils.setField(service, "orConditionDetector", new OrConditionDetector());
+        ReflectionTestUtils.setField(service, "lateFilterDetector", new LateFilterDetector());
+        ReflectionTestUtils.setField(service, "missingIndexAnalyzer", new MissingIndexAnalyzer());
+        ReflectionTestUtils.setField(service, "heavyAggregationOptimizer", new HeavyAggregationOptimizer());
+        ReflectionTestUtils.setField(service, "detectorExecutor", executor);
+        // Never report partial results; the benchmark measures the full analysis
+        ReflectionTestUtils.setField(service, "detectorTimeoutMs", TimeUnit.MINUTES.toMillis(10));
+
+        result = service.analyzeQuery(sql, plan);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public TokenizedSql tokenize() {
+        return SqlTokenizer.tokenize(sql);
+    }
+
+    @Benchmark
+    public BiAnalysisResult analyzeQuery() {
+        return service.analyzeQuery(sql, plan);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.format(result, sql);
+    }
+}
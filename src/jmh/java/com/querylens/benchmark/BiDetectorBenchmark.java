@@ -0,0 +1,55 @@
+package com.querylens.benchmark;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each BI detector on its own, against a pre-tokenized query, so a slow detector
+ * shows up by name rather than hidden inside the concurrent analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BiDetectorBenchmark {
+
+    @Param({"NON_SARGABLE", "CORRELATED_SUBQUERY", "OR_CONDITION",
+            "LATE_FILTER", "MISSING_INDEX", "HEAVY_AGGREGATION"})
+    private String detectorName;
+
+    @Param({"10", "500", "5000"})
+    private int lines;
+
+    private BiDetector detector;
+    private TokenizedSql tokens;
+    private List<ExecutionPlanNode> plan;
+
+    @Setup
+    public void setUp() {
+        detector = switch (detectorName) {
+            case "NON_SARGABLE" -> new NonSargableDetector();
+            case "CORRELATED_SUBQUERY" -> new CorrelatedSubqueryDetector();
+            case "OR_CONDITION" -> new OrConditionDetector();
+            case "LATE_FILTER" -> new LateFilterDetector();
+            case "MISSING_INDEX" -> new MissingIndexAnalyzer();
+            case "HEAVY_AGGREGATION" -> new HeavyAggregationOptimizer();
+            default -> throw new IllegalArgumentException("Unknown detector " + detectorName);
+        };
+        tokens = SqlTokenizer.tokenize(SqlCorpus.query(lines));
+        plan = SqlCorpus.plan(lines).getNodes();
+    }
+
+    @Benchmark
+    public List<Bottleneck> detect() {
+        return detector.detect(tokens, plan);
+    }
+}
@@ -0,0 +1,71 @@
+package com.querylens.benchmark;
+
+import com.querylens.analyzer.plan.PostgresPlanParser;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.model.QueryMetrics;
+import com.querylens.optimizer.QueryOptimizerService;
+import com.querylens.service.QueryAnalyzerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /analyze path after the database round trip: plan parsing, metrics extraction
+ * from text and JSON plans, and the legacy optimizer suggestions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class PlanAnalysisBenchmark {
+
+    @Param({"10", "500", "5000"})
+    private int lines;
+
+    private String sql;
+    private String planJson;
+    private QueryPlan jsonPlan;
+    private QueryPlan textPlan;
+    private List<String> planLines;
+
+    private final PostgresPlanParser parser = new PostgresPlanParser();
+    private final QueryAnalyzerService analyzerService = new QueryAnalyzerService();
+    private final QueryOptimizerService optimizerService = new QueryOptimizerService();
+
+    @Setup
+    public void setUp() {
+        sql = SqlCorpus.query(lines);
+        planJson = SqlCorpus.planJson(lines);
+        jsonPlan = parser.parse(planJson);
+
+        // Same plan as EXPLAIN ANALYZE text output, which has no tree
+        planLines = jsonPlan.toTextLines();
+        textPlan = new QueryPlan();
+        textPlan.setTextLines(planLines);
+        textPlan.setRawOutput(String.join("\n", planLines));
+        textPlan.setAnalyzed(true);
+    }
+
+    @Benchmark
+    public QueryPlan parseJsonPlan() {
+        return parser.parse(planJson);
+    }
+
+    @Benchmark
+    public QueryMetrics analyzeTextPlan() {
+        return analyzerService.analyzeQuery(sql, textPlan);
+    }
+
+    @Benchmark
+    public QueryMetrics analyzeJsonPlan() {
+        return analyzerService.analyzeQuery(sql, jsonPlan);
+    }
+
+    @Benchmark
+    public List<String> suggestOptimizations() {
+        return optimizerService.suggestOptimizations(sql, planLines);
+    }
+}
@@ -0,0 +1,93 @@
+package com.querylens.benchmark;
+
+import com.querylens.analyzer.plan.PostgresPlanParser;
+import com.querylens.analyzer.plan.QueryPlan;
+
+import java.util.Locale;
+
+/**
+ * Deterministic BI-shaped SQL and matching plans for the benchmarks.
+ *
+ * Queries are built from 10-line blocks (donor rollups UNION ALLed together), each with
+ * the patterns the detectors look for: YEAR() and COALESCE() predicates, an OR across
+ * joined tables, a correlated scalar subquery and a GROUP BY. The plan is generated as
+ * EXPLAIN (FORMAT JSON) and parsed with {@link PostgresPlanParser}, so the tree, the text
+ * rendering and the raw JSON all describe the same query.
+ */
+public final class SqlCorpus {
+
+    private static final int LINES_PER_BLOCK = 10;
+
+    private SqlCorpus() {
+    }
+
+    /** A query of exactly {@code lines} lines (rounded up to a whole block) */
+    public static String query(int lines) {
+        int blocks = blocks(lines);
+        StringBuilder sql = new StringBuilder(lines * 64);
+        for (int i = 0; i < blocks; i++) {
+            sql.append("SELECT gd.donor_id, SUM(gd.amount) AS total_").append(i).append('\n')
+                .append("     , (SELECT MAX(p.payment_date) FROM SFDC.dbo.PLEDGE_PAYMENT p\n")
+                .append("        WHERE p.donor_id = gd.donor_id) AS last_payment_").append(i).append('\n')
+                .append("FROM SFDC.dbo.GIVING_DETAIL gd\n")
+                .append("JOIN SFDC.dbo.DONOR_DIM d ON d.donor_id = gd.donor_id\n")
+                .append("WHERE YEAR(gd.posted_date) = ").append(2000 + i % 25).append('\n')
+                .append("  AND (gd.campaign_code = 'C").append(i).append("' OR d.region = 'R").append(i % 7).append("')\n")
+                .append("  AND COALESCE(gd.fund_code, 'NONE') <> 'TEST'\n")
+                .append("GROUP BY gd.donor_id\n")
+                .append(i < blocks - 1 ? "UNION ALL\n" : "HAVING SUM(gd.amount) > 1000\n");
+        }
+        return sql.toString();
+    }
+
+    /** EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) output for {@link #query(int)} */
+    public static String planJson(int lines) {
+        int blocks = blocks(lines);
+        StringBuilder json = new StringBuilder(blocks * 1024);
+        json.append("[{\"Plan\": {\"Node Type\": \"Append\", \"Total Cost\": ").append(blocks * 52000.0)
+            .append(", \"Plan Rows\": ").append(blocks * 2000)
+            .append(", \"Actual Total Time\": ").append(blocks * 950.0)
+            .append(", \"Actual Rows\": ").append(blocks * 1800)
+            .append(", \"Actual Loops\": 1, \"Plans\": [");
+        for (int i = 0; i < blocks; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(node("HashAggregate", null, 52000, 2000, 950, 1800, 1, 0, 0, true))
+                .append(node("Hash Join", null, 48000, 40000, 900, 38000, 1, 0, 0, true))
+                .append(node("Seq Scan", "GIVING_DETAIL", 40000, 10_000_000, 700, 9_500_000, 1, 120_000, 380_000, false))
+                .append(',')
+                .append(node("Hash", null, 6000, 200_000, 150, 200_000, 1, 0, 0, true))
+                .append(node("Index Scan", "DONOR_DIM", 5800, 200_000, 140, 200_000, 1, 8_000, 2_000, false))
+                .append("]}]},")
+                .append(node("Index Only Scan", "PLEDGE_PAYMENT", 8.5, 1, 0.004, 1, 38000, 76_000, 0, false))
+                .append("]}");
+        }
+        json.append("]}, \"Planning Time\": 2.5, \"Execution Time\": ").append(blocks * 955.0).append("}]");
+        return json.toString();
+    }
+
+    /** {@link #planJson(int)} parsed into a plan tree */
+    public static QueryPlan plan(int lines) {
+        return new PostgresPlanParser().parse(planJson(lines));
+    }
+
+    private static int blocks(int lines) {
+        return Math.max(1, (lines + LINES_PER_BLOCK - 1) / LINES_PER_BLOCK);
+    }
+
+    /** One node object; when {@code open}, the "Plans" array is left open for children */
+    private static String node(String type, String relation, double cost, long rows, double timeMs,
+                               long actualRows, long loops, long hit, long read, boolean open) {
+        StringBuilder sb = new StringBuilder("{\"Node Type\": \"").append(type).append('"');
+        if (relation != null) {
+            sb.append(", \"Relation Name\": \"").append(relation).append("\", \"Schema\": \"dbo\"");
+        }
+        sb.append(String.format(Locale.ROOT,
+            ", \"Total Cost\": %.2f, \"Plan Rows\": %d, \"Actual Total Time\": %.3f, \"Actual Rows\": %d,"
+                + " \"Actual Loops\": %d, \"Shared Hit Blocks\": %d, \"Shared Read Blocks\": %d",
+            cost, rows, timeMs, actualRows / Math.max(1, loops), loops, hit, read));
+        sb.append(open ? ", \"Plans\": [" : "}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package com.querylens.advisor;
+
+import com.querylens.analyzer.plan.PostgresPlanParser;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.ExplainSandbox;
+import com.querylens.service.MultipleStatementsException;
+import com.querylens.target.TargetContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Re-plans a query as if candidate indexes existed, without building them.
+ *
+ * With the HypoPG extension installed the indexes are hypothetical: they only exist
+ * in the planner of the current session and cost nothing to create. Without it, and
+ * only when querylens.whatif.real-index-fallback=true, each index is really built
+ * inside an {@link ExplainSandbox} transaction that is rolled back (PostgreSQL DDL is
+ * transactional), one transaction per candidate. That holds a SHARE lock on the table
+ * for the build, so it is meant for a local or staging copy of the database.
+ *
+ * Only plain EXPLAIN is used; the query is never executed. Everything runs against the
+ * request's target database ({@link TargetContext}).
+ */
+@Component
+public class HypotheticalIndexEvaluator {
+
+    public enum Method {
+        HYPOPG,        // Hypothetical indexes (HypoPG extension)
+        REAL_INDEX,    // Index built and rolled back
+        UNAVAILABLE    // Neither HypoPG nor the fallback
+    }
+
+    /**
+     * @param cost      planner total cost with the index, null when it could not be evaluated
+     * @param sizeBytes estimated (HypoPG) or actual size of the index
+     * @param used      whether the new plan references the index at all
+     */
+    public record CandidateCost(IndexCandidate candidate, Double cost, long sizeBytes, boolean used, String error) {}
+
+    /**
+     * @param baselineCost planner total cost without any candidate, null when unavailable
+     */
+    public record Evaluation(Method method, Double baselineCost, List<CandidateCost> candidates) {}
+
+    private static final String EXPLAIN = "EXPLAIN (FORMAT JSON) ";
+    private static final String WHATIF_INDEX = "querylens_whatif_idx";
+
+    private final PostgresPlanParser planParser = new PostgresPlanParser();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ExplainSandbox sandbox;
+
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
+    // Really build (and roll back) candidate indexes when HypoPG is not installed
+    @Value("${querylens.whatif.real-index-fallback:false}")
+    private boolean realIndexFallback = false;
+
+    // By target: each database has its own extensions
+    private final Map<String, Boolean> hypopgInstalled = new ConcurrentHashMap<>();
+
+    public Method method() {
+        // Not computeIfAbsent: the query would run inside the map's bin lock, pinning a virtual thread
+        Boolean installed = hypopgInstalled.get(TargetContext.name());
+        if (installed == null) {
+            installed = jdbc().queryForObject("SELECT count(*) > 0 FROM pg_extension WHERE extname = 'hypopg'", Boolean.class);
+            hypopgInstalled.put(TargetContext.name(), Boolean.TRUE.equals(installed));
+        }
+        if (Boolean.TRUE.equals(installed)) {
+            return Method.HYPOPG;
+        }
+        return realIndexFallback ? Method.REAL_INDEX : Method.UNAVAILABLE;
+    }
+
+    public Evaluation evaluate(String sql, List<IndexCandidate> candidates) {
+        // Checked up front as well; each EXPLAIN also runs in a read-only transaction
+        MultipleStatementsException.requireSingle(sql);
+        Method method = method();
+        if (method == Method.UNAVAILABLE) {
+            return new Evaluation(method, null, candidates.stream()
+                .map(c -> new CandidateCost(c, null, 0, false,
+                    "HypoPG is not installed (CREATE EXTENSION hypopg) and querylens.whatif.real-index-fallback is off"))
+                .toList());
+        }
+
+        if (method == Method.HYPOPG) {
+            return jdbc().execute((ConnectionCallback<Evaluation>) con ->
+                evaluateHypothetical(new JdbcTemplate(new SingleConnectionDataSource(con, true)), sql, candidates));
+        }
+
+        double baselineCost = sandbox.planOnly(() -> explain(jdbc(), sql)).getRoot().getEstimatedCost();
+        List<CandidateCost> costs = new ArrayList<>(candidates.size());
+        for (IndexCandidate candidate : candidates) {
+            try {
+                costs.add(realIndex(sql, candidate));
+            } catch (DataAccessException e) {
+                // Unknown column, lock timeout: report and keep going
+                costs.add(failed(candidate, e));
+            }
+        }
+        return new Evaluation(method, baselineCost, costs);
+    }
+
+    /**
+     * Hypothetical indexes belong to the session, so everything runs on one connection
+     * in autocommit mode (a failing candidate does not abort the others) and the session
+     * is reset before the connection goes back to the pool. Each EXPLAIN gets its own
+     * read-only transaction, rolled back, since autocommit would commit anything past a
+     * ';' the multi-statement check missed; hypothetical indexes outlive the rollback.
+     */
+    Evaluation evaluateHypothetical(JdbcTemplate session, String sql, List<IndexCandidate> candidates) {
+        session.execute("SELECT hypopg_reset()");
+        try {
+            double baselineCost = explainReadOnly(session, sql).getRoot().getEstimatedCost();
+            List<CandidateCost> costs = new ArrayList<>(candidates.size());
+            for (IndexCandidate candidate : candidates) {
+                try {
+                    Map<String, Object> index = session.queryForMap(
+                        "SELECT indexrelid, indexname FROM hypopg_create_index(?)", candidate.ddl());
+                    long oid = ((Number) index.get("indexrelid")).longValue();
+                    Long size = session.queryForObject(
+                        "SELECT hypopg_relation_size(CAST(? AS oid))", Long.class, oid);
+                    QueryPlan plan = explainReadOnly(session, sql);
+                    costs.add(new CandidateCost(candidate, plan.getRoot().getEstimatedCost(), size != null ? size : 0,
+                        usesIndex(plan, (String) index.get("indexname")), null));
+                } catch (DataAccessException e) {
+                    // Unknown column, unsupported INCLUDE: report and keep going
+                    costs.add(failed(candidate, e));
+                } finally {
+                    session.execute("SELECT hypopg_reset()");
+                }
+            }
+            return new Evaluation(Method.HYPOPG, baselineCost, costs);
+        } finally {
+            session.execute("SELECT hypopg_reset()");
+        }
+    }
+
+    private CandidateCost realIndex(String sql, IndexCandidate candidate) {
+        JdbcTemplate jdbc = jdbc();
+        return sandbox.run(false, () -> {
+            jdbc.execute(candidate.ddl().replaceFirst("^CREATE INDEX ON ", "CREATE INDEX " + WHATIF_INDEX + " ON "));
+            Long size = jdbc.queryForObject(
+                "SELECT pg_relation_size(CAST(? AS regclass))", Long.class, qualified(candidate.table(), WHATIF_INDEX));
+            QueryPlan plan = explain(jdbc, sql);
+            return new CandidateCost(candidate, plan.getRoot().getEstimatedCost(), size != null ? size : 0,
+                usesIndex(plan, WHATIF_INDEX), null);
+        });
+    }
+
+    private JdbcTemplate jdbc() {
+        return TargetContext.jdbcTemplate(jdbcTemplate);
+    }
+
+    private QueryPlan explain(JdbcTemplate template, String sql) {
+        List<String> output = metrics.timeExplain("whatif",
+            () -> template.queryForList(EXPLAIN + sql, String.class));
+        return planParser.parse(String.join("\n", output));
+    }
+
+    private QueryPlan explainReadOnly(JdbcTemplate session, String sql) {
+        session.execute("BEGIN READ ONLY");
+        try {
+            return explain(session, sql);
+        } finally {
+            session.execute("ROLLBACK");
+        }
+    }
+
+    private static CandidateCost failed(IndexCandidate candidate, DataAccessException e) {
+        return new CandidateCost(candidate, null, 0, false, e.getMostSpecificCause().getMessage());
+    }
+
+    /** The parsed tree keeps the table, not the index, so look in the EXPLAIN document */
+    private static boolean usesIndex(QueryPlan plan, String indexName) {
+        return plan.getRawOutput().contains("\"Index Name\": \"" + indexName + "\"");
+    }
+
+    /** Indexes live in their table's schema */
+    private static String qualified(String table, String index) {
+        int dot = table.lastIndexOf('.');
+        return dot < 0 ? index : table.substring(0, dot + 1) + index;
+    }
+}
@@ -0,0 +1,249 @@
+package com.querylens.advisor;
+
+import com.querylens.dto.IndexAdvice;
+import com.querylens.dto.IndexAdvice.Candidate;
+import com.querylens.target.TargetContext;
+import com.querylens.workload.SpaceSaving.Entry;
+import com.querylens.workload.WorkloadAggregator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Turns the per-query index recommendations recorded in the workload into one small
+ * DDL set.
+ *
+ * 1. Merge: recommendations whose key columns are a prefix of another's fold into it,
+ *    INCLUDE columns unioned, so (a), (a, b) and (a, b) INCLUDE (c) become one index.
+ * 2. Drop what an existing index already covers.
+ * 3. Discount each index's read benefit by the write amplification on its table: the
+ *    share of the table's row traffic that is inserts, non-HOT updates and deletes,
+ *    times querylens.advisor.write-weight. Indexes with nothing left are rejected.
+ * 4. Select under querylens.advisor.storage-budget-mb and max-indexes: greedily by net
+ *    benefit per byte, or the single most beneficial index if that alone is worth more
+ *    (the usual fix that keeps greedy knapsack within half of optimal).
+ *
+ * Everything is per target: the recommendations recorded for the bound target
+ * ({@link TargetContext}) are checked against that target's catalogs.
+ */
+@Service
+public class IndexAdvisor {
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final String UPSERT_RECOMMENDATION = """
+        INSERT INTO index_recommendations (table_schema, table_name, index_name, key_columns, include_columns,
+            index_ddl, times_recommended, estimated_improvement_percent, queries_benefited, database_context)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (database_context, table_name, index_name) DO UPDATE SET
+            include_columns = EXCLUDED.include_columns,
+            index_ddl = EXCLUDED.index_ddl,
+            times_recommended = EXCLUDED.times_recommended,
+            estimated_improvement_percent = EXCLUDED.estimated_improvement_percent,
+            queries_benefited = EXCLUDED.queries_benefited,
+            last_recommended_at = CURRENT_TIMESTAMP
+        """;
+
+    @Autowired
+    private WorkloadAggregator workload;
+
+    @Autowired
+    private IndexAdvisorCatalog catalog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Total size of the indexes the advisor may propose
+    @Value("${querylens.advisor.storage-budget-mb:10240}")
+    private long storageBudgetMb = 10240;
+
+    @Value("${querylens.advisor.max-indexes:10}")
+    private int maxIndexes = 10;
+
+    // 1.0: a table whose row traffic is half writes loses half of each index's benefit
+    @Value("${querylens.advisor.write-weight:1.0}")
+    private double writeWeight = 1.0;
+
+    /** An index being built up from merged recommendations */
+    static final class Group {
+        final String table;
+        final List<String> keys;
+        final Set<String> includes = new LinkedHashSet<>();
+        final List<String> mergedFrom = new ArrayList<>();
+        double benefit;
+        long hits;
+
+        Group(IndexCandidate first) {
+            this.table = first.table();
+            this.keys = first.keyColumns();
+        }
+
+        IndexCandidate index() {
+            List<String> include = new ArrayList<>(includes);
+            include.removeAll(keys);
+            return new IndexCandidate(table, keys, include);
+        }
+    }
+
+    /** Advice for everything recorded for the bound target in the current workload window */
+    public IndexAdvice advise() {
+        List<Entry<IndexCandidate>> recommendations = recommendations();
+        return advise(recommendations, catalog.tableStats(), catalog.existingIndexes());
+    }
+
+    /**
+     * Same as {@link #advise()}, and the selected indexes are upserted into
+     * index_recommendations (times_recommended = merged recommendation count).
+     */
+    public IndexAdvice adviseAndRecord() {
+        IndexAdvice advice = advise();
+        List<Object[]> rows = new ArrayList<>();
+        for (Candidate c : advice.getSelected()) {
+            IndexCandidate index = IndexCandidate.parse(c.getDdl()).orElseThrow();
+            String schema = index.table().contains(".") ? index.table().substring(0, index.table().lastIndexOf('.')) : null;
+            double meanShare = c.getTimesRecommended() > 0 ? c.getBenefit() / c.getTimesRecommended() * 100 : 0;
+            rows.add(new Object[] {
+                schema, index.tableName(), index.defaultName(),
+                String.join(", ", index.keyColumns()),
+                index.includeColumns().isEmpty() ? null : String.join(", ", index.includeColumns()),
+                c.getDdl(), (int) Math.min(c.getTimesRecommended(), Integer.MAX_VALUE),
+                Math.min(meanShare, 999.99), c.getMergedFrom().size(), TargetContext.name()
+            });
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_RECOMMENDATION, rows);
+        }
+        return advice;
+    }
+
+    private List<Entry<IndexCandidate>> recommendations() {
+        var sketch = workload.snapshot(TargetContext.name()).getIndexRecommendations();
+        return sketch.top(sketch.size());
+    }
+
+    IndexAdvice advise(List<Entry<IndexCandidate>> recommendations, Map<String, TableStats> tables,
+                       List<IndexCandidate> existing) {
+        IndexAdvice advice = new IndexAdvice();
+        advice.setRecommendationsConsidered(recommendations.size());
+        advice.setBudgetBytes(storageBudgetMb * MB);
+
+        List<Candidate> viable = new ArrayList<>();
+        for (Group group : merge(recommendations)) {
+            IndexCandidate index = group.index();
+            Candidate c = new Candidate();
+            c.setDdl(index.ddl(index.defaultName()));
+            c.setTable(index.table());
+            c.setTimesRecommended(group.hits);
+            c.setBenefit(group.benefit);
+            c.setMergedFrom(group.mergedFrom);
+
+            TableStats stats = lookup(tables, index);
+            c.setWriteShare(stats != null ? stats.writeShare() : 0);
+            c.setNetBenefit(group.benefit * Math.max(0, 1 - writeWeight * c.getWriteShare()));
+            c.setEstimatedSizeBytes(stats != null ? stats.estimateIndexBytes(index) : 0);
+
+            Optional<IndexCandidate> coveredBy = existing.stream().filter(e -> e.covers(index)).findFirst();
+            if (coveredBy.isPresent()) {
+                c.setReason("Covered by existing index " + coveredBy.get().ddl());
+                advice.getRejected().add(c);
+            } else if (c.getNetBenefit() <= 0) {
+                c.setReason(String.format("Write-heavy table: %.0f%% of row traffic is index maintenance",
+                    c.getWriteShare() * 100));
+                advice.getRejected().add(c);
+            } else {
+                viable.add(c);
+            }
+        }
+
+        List<Candidate> selected = select(viable, advice.getBudgetBytes());
+        for (Candidate c : viable) {
+            if (!selected.contains(c)) {
+                c.setReason(selected.size() >= maxIndexes
+                    ? "Outside the top " + maxIndexes + " indexes"
+                    : "Does not fit the storage budget");
+                advice.getRejected().add(c);
+            }
+        }
+        advice.setSelected(selected);
+        advice.setSelectedBytes(selected.stream().mapToLong(Candidate::getEstimatedSizeBytes).sum());
+        selected.forEach(c -> advice.getDdl().add(c.getDdl() + ";"));
+        return advice;
+    }
+
+    /**
+     * Longest key lists first, so each recommendation lands in the widest index that
+     * starts with its keys; among equal lengths the most beneficial group wins.
+     */
+    static List<Group> merge(List<Entry<IndexCandidate>> recommendations) {
+        List<Entry<IndexCandidate>> ordered = new ArrayList<>(recommendations);
+        ordered.sort(Comparator
+            .comparingInt((Entry<IndexCandidate> e) -> e.key().keyColumns().size()).reversed()
+            .thenComparing(Comparator.comparingDouble((Entry<IndexCandidate> e) -> e.weight()).reversed()));
+
+        List<Group> groups = new ArrayList<>();
+        for (Entry<IndexCandidate> e : ordered) {
+            IndexCandidate rec = e.key();
+            Group target = null;
+            for (Group g : groups) {
+                if (g.table.equals(rec.table())
+                        && g.keys.subList(0, rec.keyColumns().size()).equals(rec.keyColumns())) {
+                    target = g;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Group(rec);
+                groups.add(target);
+            }
+            target.includes.addAll(rec.includeColumns());
+            target.mergedFrom.add(rec.ddl());
+            target.benefit += e.weight();
+            target.hits += e.hits();
+        }
+        return groups;
+    }
+
+    /** Greedy by net benefit per byte, unless the best single index beats the whole greedy set */
+    private List<Candidate> select(List<Candidate> viable, long budgetBytes) {
+        List<Candidate> byDensity = new ArrayList<>(viable);
+        byDensity.sort(Comparator.comparingDouble((Candidate c) -> c.getNetBenefit() / Math.max(1, c.getEstimatedSizeBytes()))
+            .reversed());
+
+        List<Candidate> greedy = new ArrayList<>();
+        long used = 0;
+        double greedyBenefit = 0;
+        for (Candidate c : byDensity) {
+            if (greedy.size() >= maxIndexes) {
+                break;
+            }
+            if (used + c.getEstimatedSizeBytes() <= budgetBytes) {
+                greedy.add(c);
+                used += c.getEstimatedSizeBytes();
+                greedyBenefit += c.getNetBenefit();
+            }
+        }
+
+        Optional<Candidate> bestSingle = viable.stream()
+            .filter(c -> c.getEstimatedSizeBytes() <= budgetBytes)
+            .max(Comparator.comparingDouble(Candidate::getNetBenefit));
+        if (bestSingle.isPresent() && bestSingle.get().getNetBenefit() > greedyBenefit) {
+            return new ArrayList<>(List.of(bestSingle.get()));
+        }
+        greedy.sort(Comparator.comparingDouble(Candidate::getNetBenefit).reversed());
+        return greedy;
+    }
+
+    private static TableStats lookup(Map<String, TableStats> tables, IndexCandidate index) {
+        TableStats stats = tables.get(index.table());
+        return stats != null ? stats : tables.get(index.tableName());
+    }
+}
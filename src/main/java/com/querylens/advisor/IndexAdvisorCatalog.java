@@ -0,0 +1,76 @@
+package com.querylens.advisor;
+
+import com.querylens.target.TargetContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads table sizes, write rates, column widths and existing indexes from the
+ * PostgreSQL catalogs of the bound target for the {@link IndexAdvisor}.
+ */
+@Component
+public class IndexAdvisorCatalog {
+
+    // Counters are cumulative since the last statistics reset, which is the window the rates cover
+    private static final String TABLES_SQL = """
+        SELECT s.schemaname, s.relname, GREATEST(c.reltuples, 0),
+            COALESCE(s.seq_tup_read, 0) + COALESCE(s.idx_tup_fetch, 0),
+            COALESCE(s.n_tup_ins, 0) + COALESCE(s.n_tup_upd, 0) - COALESCE(s.n_tup_hot_upd, 0) + COALESCE(s.n_tup_del, 0)
+        FROM pg_stat_user_tables s
+        JOIN pg_class c ON c.oid = s.relid
+        """;
+
+    private static final String WIDTHS_SQL = """
+        SELECT schemaname, tablename, attname, avg_width
+        FROM pg_stats
+        WHERE schemaname NOT IN ('pg_catalog', 'information_schema')
+        """;
+
+    private static final String INDEXES_SQL = """
+        SELECT indexdef FROM pg_indexes
+        WHERE schemaname NOT IN ('pg_catalog', 'information_schema')
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** Keyed by both schema.table and the bare table name (lower case) */
+    public Map<String, TableStats> tableStats() {
+        Map<String, Map<String, Integer>> widths = new HashMap<>();
+        jdbc().query(WIDTHS_SQL, rs -> {
+            widths.computeIfAbsent(rs.getString(1) + "." + rs.getString(2), k -> new HashMap<>())
+                .put(rs.getString(3).toLowerCase(), rs.getInt(4));
+        });
+
+        Map<String, TableStats> tables = new HashMap<>();
+        jdbc().query(TABLES_SQL, rs -> {
+            String schema = rs.getString(1);
+            String table = rs.getString(2);
+            TableStats stats = new TableStats(schema.toLowerCase(), table.toLowerCase(), rs.getDouble(3),
+                rs.getLong(4), rs.getLong(5), widths.getOrDefault(schema + "." + table, Map.of()));
+            tables.put(stats.qualifiedName(), stats);
+            tables.putIfAbsent(stats.table(), stats);
+        });
+        return tables;
+    }
+
+    /** Existing indexes on plain columns; expression and partial indexes are left out */
+    public List<IndexCandidate> existingIndexes() {
+        List<IndexCandidate> indexes = new ArrayList<>();
+        for (String ddl : jdbc().queryForList(INDEXES_SQL, String.class)) {
+            IndexCandidate.parse(ddl).ifPresent(indexes::add);
+        }
+        return indexes;
+    }
+
+    /** The database of the bound target ({@link TargetContext}) */
+    private JdbcTemplate jdbc() {
+        return TargetContext.jdbcTemplate(jdbcTemplate);
+    }
+}
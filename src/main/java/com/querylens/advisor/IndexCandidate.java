@@ -0,0 +1,150 @@
+package com.querylens.advisor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index recommendation reduced to table, key columns and INCLUDE columns.
+ *
+ * Parsed from the CREATE INDEX text detectors put in {@link com.querylens.analyzer.Bottleneck#getFixQueries()}
+ * (SQL Server or PostgreSQL syntax) and rendered back as PostgreSQL DDL by {@link #ddl()}.
+ * Every name is checked to be a plain identifier, so the rendered DDL can be sent to the
+ * database as is.
+ */
+public record IndexCandidate(String table, List<String> keyColumns, List<String> includeColumns) {
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+        "(?is)^\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:NONCLUSTERED\\s+|CLUSTERED\\s+)?INDEX\\s+"
+            + "(?:CONCURRENTLY\\s+)?(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:[\\w\\[\\]\".$]+\\s+)?"
+            + "ON\\s+([\\w\\[\\]\".$]+)\\s*(?:USING\\s+\\w+\\s*)?\\(([^)]*)\\)"
+            + "\\s*(?:INCLUDE\\s*\\(([^)]*)\\))?\\s*;?\\s*$");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*");
+    private static final Pattern LINE_COMMENT = Pattern.compile("--[^\\n]*");
+
+    // Detectors that cannot resolve the table or columns emit these placeholders
+    private static final Set<String> PLACEHOLDERS = Set.of("table_name", "other_columns");
+
+    public IndexCandidate {
+        keyColumns = List.copyOf(keyColumns);
+        includeColumns = List.copyOf(includeColumns);
+    }
+
+    /**
+     * @return empty when {@code ddl} is not a single CREATE INDEX on plain columns
+     *         (expressions, placeholders, quoted names with special characters)
+     */
+    public static Optional<IndexCandidate> parse(String ddl) {
+        if (ddl == null) {
+            return Optional.empty();
+        }
+        Matcher m = CREATE_INDEX.matcher(LINE_COMMENT.matcher(ddl).replaceAll(""));
+        if (!m.matches()) {
+            return Optional.empty();
+        }
+        String table = table(m.group(1));
+        List<String> keys = columns(m.group(2));
+        List<String> includes = m.group(3) != null ? columns(m.group(3)) : List.of();
+        if (table == null || keys == null || keys.isEmpty() || includes == null) {
+            return Optional.empty();
+        }
+        List<String> extra = new ArrayList<>(includes);
+        extra.removeAll(keys);
+        return Optional.of(new IndexCandidate(table, keys, extra));
+    }
+
+    /** PostgreSQL DDL; the index name is left to the database */
+    public String ddl() {
+        return ddl(null);
+    }
+
+    /** PostgreSQL DDL creating an index called {@code indexName} (unnamed when null) */
+    public String ddl(String indexName) {
+        StringBuilder sql = new StringBuilder("CREATE INDEX ")
+            .append(indexName != null ? indexName + " " : "").append("ON ").append(table)
+            .append(" (").append(String.join(", ", keyColumns)).append(')');
+        if (!includeColumns.isEmpty()) {
+            sql.append(" INCLUDE (").append(String.join(", ", includeColumns)).append(')');
+        }
+        return sql.toString();
+    }
+
+    /** ix_{table}_{key columns}, cut to PostgreSQL's 63-character identifier limit */
+    public String defaultName() {
+        String name = "ix_" + tableName() + "_" + String.join("_", keyColumns);
+        return name.length() <= 63 ? name : name.substring(0, 63);
+    }
+
+    /** The table without its schema */
+    public String tableName() {
+        return table.substring(table.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * True when this index can serve every lookup {@code other} can: same table, the
+     * other's key columns are a prefix of ours and its remaining columns are stored
+     * (as keys or INCLUDE columns). A schema-less table matches any schema.
+     */
+    public boolean covers(IndexCandidate other) {
+        boolean sameTable = table.equals(other.table)
+            || ((!table.contains(".") || !other.table.contains(".")) && tableName().equals(other.tableName()));
+        if (!sameTable || other.keyColumns.size() > keyColumns.size()
+                || !keyColumns.subList(0, other.keyColumns.size()).equals(other.keyColumns)) {
+            return false;
+        }
+        List<String> stored = new ArrayList<>(keyColumns);
+        stored.addAll(includeColumns);
+        return stored.containsAll(other.includeColumns);
+    }
+
+    /** "SFDC.dbo.GIVING_DETAIL" -> "dbo.giving_detail" (the database part has no PostgreSQL meaning) */
+    private static String table(String raw) {
+        String[] parts = unquote(raw).split("\\.");
+        if (parts.length > 3) {
+            return null;
+        }
+        int from = parts.length == 3 ? 1 : 0;
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < parts.length; i++) {
+            String name = identifier(parts[i]);
+            if (name == null) {
+                return null;
+            }
+            names.add(name);
+        }
+        return String.join(".", names);
+    }
+
+    private static List<String> columns(String list) {
+        List<String> columns = new ArrayList<>();
+        for (String raw : list.split(",")) {
+            // Sort direction does not change what a what-if plan can use
+            String column = raw.trim().replaceAll("(?i)\\s+(ASC|DESC)$", "");
+            String name = identifier(unquote(column));
+            if (name == null) {
+                return null;
+            }
+            if (!columns.contains(name)) {
+                columns.add(name);
+            }
+        }
+        return columns;
+    }
+
+    private static String identifier(String raw) {
+        String name = raw.trim();
+        if (!IDENTIFIER.matcher(name).matches() || PLACEHOLDERS.contains(name.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        // Unquoted PostgreSQL identifiers fold to lower case
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static String unquote(String raw) {
+        return raw.replace("[", "").replace("]", "").replace("\"", "");
+    }
+}
@@ -0,0 +1,113 @@
+package com.querylens.advisor;
+
+import com.querylens.advisor.HypotheticalIndexEvaluator.CandidateCost;
+import com.querylens.advisor.HypotheticalIndexEvaluator.Evaluation;
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.bi.BiQueryAnalysisService;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.dto.WhatIfReport;
+import com.querylens.dto.WhatIfReport.Recommendation;
+import com.querylens.service.QueryAnalyzerService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checks index recommendations against the planner before anyone builds them.
+ *
+ * Candidates are the CREATE INDEX statements supplied with the request or, by default,
+ * the fix queries of the detectors' findings for the query's current plan. Each one
+ * is costed by {@link HypotheticalIndexEvaluator}; recommendations are ranked by
+ * planner cost saved per MB of index, and indexes the new plan does not even use are
+ * ranked last.
+ */
+@Service
+public class IndexWhatIfService {
+
+    private static final double MB = 1024.0 * 1024.0;
+    // A btree never takes less than a page or so
+    private static final long MIN_INDEX_BYTES = 8192;
+
+    @Autowired
+    private QueryAnalyzerService analyzerService;
+
+    @Autowired
+    private BiQueryAnalysisService biAnalysisService;
+
+    @Autowired
+    private HypotheticalIndexEvaluator evaluator;
+
+    /**
+     * @param indexDdl CREATE INDEX statements to evaluate; null or empty to use the
+     *                 detectors' recommendations for {@code sql}
+     */
+    public WhatIfReport evaluate(String sql, List<String> indexDdl) {
+        List<String> ddl = indexDdl != null && !indexDdl.isEmpty() ? indexDdl : recommendedIndexes(sql);
+
+        WhatIfReport report = new WhatIfReport();
+        Map<String, IndexCandidate> candidates = new LinkedHashMap<>();
+        for (String statement : ddl) {
+            Optional<IndexCandidate> candidate = IndexCandidate.parse(statement);
+            if (candidate.isPresent()) {
+                candidates.putIfAbsent(candidate.get().ddl(), candidate.get());
+            } else {
+                report.getSkipped().add(statement);
+            }
+        }
+
+        Evaluation evaluation = evaluator.evaluate(sql, new ArrayList<>(candidates.values()));
+        report.setMethod(evaluation.method().name());
+        report.setBaselineCost(evaluation.baselineCost());
+
+        List<Recommendation> ranked = evaluation.candidates().stream()
+            .map(c -> recommendation(c, evaluation.baselineCost()))
+            .sorted(Comparator
+                .comparing((Recommendation r) -> !r.isUsedByPlanner())
+                .thenComparing(r -> r.getCostSavedPerMb() != null ? -r.getCostSavedPerMb() : Double.MAX_VALUE))
+            .toList();
+        for (int i = 0; i < ranked.size(); i++) {
+            ranked.get(i).setRank(i + 1);
+        }
+        report.setRecommendations(ranked);
+        return report;
+    }
+
+    /** CREATE INDEX fix queries of the findings on the query's current (estimated) plan */
+    private List<String> recommendedIndexes(String sql) {
+        QueryPlan plan = analyzerService.estimatePlan(sql);
+        List<String> ddl = new ArrayList<>();
+        for (Bottleneck b : biAnalysisService.analyzeQuery(SqlTokenizer.tokenize(sql), plan.getNodes()).getBottlenecks()) {
+            for (String fix : b.getFixQueries()) {
+                if (fix.toUpperCase().contains("INDEX") && !ddl.contains(fix)) {
+                    ddl.add(fix);
+                }
+            }
+        }
+        return ddl;
+    }
+
+    private static Recommendation recommendation(CandidateCost cost, Double baselineCost) {
+        Recommendation r = new Recommendation();
+        r.setDdl(cost.candidate().ddl());
+        r.setTable(cost.candidate().table());
+        r.setCostBefore(baselineCost);
+        r.setCostAfter(cost.cost());
+        r.setSizeBytes(cost.sizeBytes());
+        r.setUsedByPlanner(cost.used());
+        r.setError(cost.error());
+        if (baselineCost != null && cost.cost() != null) {
+            double saved = baselineCost - cost.cost();
+            r.setCostSaved(saved);
+            r.setSavedPercent(baselineCost > 0 ? saved / baselineCost * 100 : 0.0);
+            r.setCostSavedPerMb(saved / (Math.max(cost.sizeBytes(), MIN_INDEX_BYTES) / MB));
+        }
+        return r;
+    }
+}
@@ -0,0 +1,44 @@
+package com.querylens.advisor;
+
+import java.util.Map;
+
+/**
+ * What the index advisor needs to know about one table.
+ *
+ * @param rows         pg_class.reltuples
+ * @param tupleReads   rows read by sequential and index scans (seq_tup_read + idx_tup_fetch)
+ * @param indexWrites  rows written that touch indexes: inserts, non-HOT updates and deletes
+ * @param columnWidths pg_stats.avg_width by column
+ */
+public record TableStats(String schema, String table, double rows, long tupleReads, long indexWrites,
+                         Map<String, Integer> columnWidths) {
+
+    // Index tuple header plus line pointer, rounded up for alignment
+    private static final int TUPLE_OVERHEAD_BYTES = 16;
+    // Columns without statistics (never analyzed) are assumed to be this wide
+    private static final int DEFAULT_WIDTH_BYTES = 8;
+    // Default btree fillfactor
+    private static final double FILL_FACTOR = 0.9;
+
+    public String qualifiedName() {
+        return schema + "." + table;
+    }
+
+    /** Share of the table's row traffic that is index maintenance, 0 to 1 */
+    public double writeShare() {
+        long traffic = tupleReads + indexWrites;
+        return traffic > 0 ? (double) indexWrites / traffic : 0;
+    }
+
+    /** Leaf-level size of {@code index} from row count and column widths */
+    public long estimateIndexBytes(IndexCandidate index) {
+        int width = TUPLE_OVERHEAD_BYTES;
+        for (String column : index.keyColumns()) {
+            width += columnWidths.getOrDefault(column, DEFAULT_WIDTH_BYTES);
+        }
+        for (String column : index.includeColumns()) {
+            width += columnWidths.getOrDefault(column, DEFAULT_WIDTH_BYTES);
+        }
+        return (long) (Math.max(rows, 0) * width / FILL_FACTOR);
+    }
+}
@@ -25,7 +25,8 @@ public class Bottleneck {
         MISSING_INDEX,
         HEAVY_AGGREGATION,
         EXPENSIVE_JOIN,
-        CARTESIAN_PRODUCT
+        CARTESIAN_PRODUCT,
+        PLAN_REGRESSION     // Plan got worse than the fingerprint's known-good baseline
     }
     
     private Severity severity;
@@ -126,6 +127,7 @@ public class Bottleneck {
             case HEAVY_AGGREGATION -> "Heavy Aggregation";
             case EXPENSIVE_JOIN -> "Expensive JOIN Operation";
             case CARTESIAN_PRODUCT -> "Cartesian Product";
+            case PLAN_REGRESSION -> "Plan Regression";
         };
     }
 }
@@ -1,11 +1,14 @@
 package com.querylens.analyzer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Represents a node in the SQL Server execution plan tree.
+ * Represents a node in the SQL Server / PostgreSQL execution plan tree.
  * Each node corresponds to an operator (Scan, Seek, Join, Aggregate, etc.)
  */
 @Data
@@ -20,6 +23,14 @@ public class ExecutionPlanNode {
     private double cpuTimeMs;
     private long logicalReads;
     private long physicalReads;
+
+    // PostgreSQL EXPLAIN (ANALYZE, BUFFERS) details
+    private long loops;                   // Times the node was executed
+    private double startupTimeMs;         // Time to first row, per loop
+    private long sharedHitBlocks;
+    private long sharedReadBlocks;
+    private long localHitBlocks;
+    private long localReadBlocks;
     
     // Query text association
     private Integer startLine;            // Line number in original query
@@ -28,6 +39,9 @@ public class ExecutionPlanNode {
     
     // Tree structure
     private List<ExecutionPlanNode> children = new ArrayList<>();
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private ExecutionPlanNode parent;
     
     // Cost attribution
@@ -85,6 +99,7 @@ public class ExecutionPlanNode {
     public boolean isScanOperation() {
         return operatorType != null && (
             operatorType.contains("Table Scan") ||
+            operatorType.contains("Seq Scan") ||
             operatorType.contains("Clustered Index Scan") ||
             operatorType.contains("Index Scan")
         );
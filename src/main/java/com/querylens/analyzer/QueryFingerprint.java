@@ -0,0 +1,108 @@
+package com.querylens.analyzer;
+
+import com.querylens.analyzer.TokenizedSql.TokenType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Normalized identity of a SQL query, used as the query_hash of query_submissions
+ * and as the analysis cache key.
+ *
+ * Normalization (on the token stream, so comments and literal contents never leak in):
+ * - Comments are dropped and whitespace collapses to a single space between tokens
+ * - Keywords and bare identifiers are upper-cased; quoted identifiers keep their case
+ * - String and numeric literals become '?'
+ *
+ * So {@code WHERE YEAR(posted_date) = 2023} and {@code where year(posted_date)=2024}
+ * share a {@link #hash()}; {@link #literalHash()} tells them apart.
+ */
+public final class QueryFingerprint {
+
+    private final String normalizedSql;
+    private final String hash;
+    private final String literalHash;
+
+    private QueryFingerprint(String normalizedSql, String hash, String literalHash) {
+        this.normalizedSql = normalizedSql;
+        this.hash = hash;
+        this.literalHash = literalHash;
+    }
+
+    public static QueryFingerprint of(String sql) {
+        return of(SqlTokenizer.tokenize(sql));
+    }
+
+    public static QueryFingerprint of(TokenizedSql tokens) {
+        StringBuilder normalized = new StringBuilder(tokens.sql().length());
+        StringBuilder literals = new StringBuilder();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (type == TokenType.COMMENT) {
+                continue;
+            }
+            if (!normalized.isEmpty()) {
+                normalized.append(' ');
+            }
+            switch (type) {
+                case STRING, NUMBER -> {
+                    normalized.append('?');
+                    literals.append(tokens.text(i)).append('\0');
+                }
+                case WORD -> normalized.append(tokens.text(i).toUpperCase());
+                default -> normalized.append(tokens.text(i));
+            }
+        }
+
+        String text = normalized.toString();
+        return new QueryFingerprint(text, sha256(text), sha256(literals.toString()));
+    }
+
+    /**
+     * Hash of the plan's shape: operators, objects and tree structure, but not costs,
+     * timings or row counts, which vary from run to run.
+     */
+    public static String planHash(List<ExecutionPlanNode> nodes) {
+        StringBuilder shape = new StringBuilder();
+        for (ExecutionPlanNode node : nodes) {
+            shape.append(node.getOperatorType())
+                .append('|').append(node.getObjectName())
+                .append('|').append(node.getChildren().size())
+                .append(';');
+        }
+        return sha256(shape.toString());
+    }
+
+    /** The normalized SQL text the hash is computed from */
+    public String normalizedSql() {
+        return normalizedSql;
+    }
+
+    /** SHA-256 (hex) of the normalized query */
+    public String hash() {
+        return hash;
+    }
+
+    /** SHA-256 (hex) of the literal values, in query order */
+    public String literalHash() {
+        return literalHash;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return hash;
+    }
+}
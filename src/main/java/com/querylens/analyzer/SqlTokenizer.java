@@ -0,0 +1,352 @@
+package com.querylens.analyzer;
+
+import com.querylens.analyzer.TokenizedSql.TokenType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-pass lexer for T-SQL and PostgreSQL query text.
+ *
+ * Understands:
+ * - Line (--) and nested block comments
+ * - String literals ('...', N'...', E'...' with backslash escapes) and PostgreSQL dollar quoting
+ * - Bracketed / quoted identifiers ([GIVING_DETAIL], "users", `t`)
+ * - Parameters and variables (@donor_id, @@ROWCOUNT, :name, $1, ?)
+ *
+ * The whole query is scanned exactly once; detectors then work on the resulting
+ * {@link TokenizedSql} instead of re-splitting and regex-scanning the text.
+ */
+public final class SqlTokenizer {
+
+    private static final String[] MULTI_CHAR_OPERATORS = {
+        "->>", "<=", ">=", "<>", "!=", "::", "||", "->", "=>", "!<", "!>"
+    };
+
+    private final String sql;
+    private final int length;
+    private final char[] code;
+
+    private int count;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] columns;
+
+    private int[] lineStarts;
+    private int lineCount;
+
+    private final Map<String, BitSet> wordLines = new HashMap<>();
+
+    private SqlTokenizer(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+        this.code = sql.toCharArray();
+
+        int capacity = Math.max(16, length / 4);
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.lines = new int[capacity];
+        this.columns = new int[capacity];
+
+        this.lineStarts = new int[Math.max(16, length / 40)];
+        this.lineStarts[0] = 0;
+        this.lineCount = 1;
+    }
+
+    /**
+     * Tokenize a SQL string. Never fails: unterminated literals and comments
+     * simply run to the end of the input.
+     */
+    public static TokenizedSql tokenize(String sql) {
+        return new SqlTokenizer(sql == null ? "" : sql).run();
+    }
+
+    private TokenizedSql run() {
+        int pos = 0;
+        while (pos < length) {
+            char c = sql.charAt(pos);
+
+            if (c == '\n') {
+                newLine(pos + 1);
+                pos++;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '-' && peek(pos + 1) == '-') {
+                pos = lineComment(pos);
+            } else if (c == '/' && peek(pos + 1) == '*') {
+                pos = blockComment(pos);
+            } else if (c == '\'') {
+                pos = quoted(pos, pos, '\'', TokenType.STRING, false);
+            } else if (isStringPrefix(c) && peek(pos + 1) == '\'' && !isIdentifierPart(peekBack(pos))) {
+                pos = quoted(pos, pos + 1, '\'', TokenType.STRING, c == 'E' || c == 'e');
+            } else if (c == '"') {
+                pos = quoted(pos, pos, '"', TokenType.QUOTED_IDENTIFIER, false);
+            } else if (c == '`') {
+                pos = quoted(pos, pos, '`', TokenType.QUOTED_IDENTIFIER, false);
+            } else if (c == '[' && !isSubscript(pos)) {
+                pos = quoted(pos, pos, ']', TokenType.QUOTED_IDENTIFIER, false);
+            } else if (c == '$' && isDigit(peek(pos + 1))) {
+                pos = variable(pos, pos + 1);
+            } else if (c == '$') {
+                pos = dollarQuoted(pos);
+            } else if (c == '@') {
+                pos = variable(pos, peek(pos + 1) == '@' ? pos + 2 : pos + 1);
+            } else if (c == ':' && isIdentifierStart(peek(pos + 1)) && peekBack(pos) != ':') {
+                pos = variable(pos, pos + 1);
+            } else if (c == '?') {
+                add(TokenType.VARIABLE, pos, pos + 1);
+                pos++;
+            } else if (isDigit(c) || (c == '.' && isDigit(peek(pos + 1)))) {
+                pos = number(pos);
+            } else if (isIdentifierStart(c)) {
+                pos = word(pos);
+            } else if ("(),.;[]{}".indexOf(c) >= 0) {
+                add(TokenType.PUNCTUATION, pos, pos + 1);
+                pos++;
+            } else {
+                pos = operator(pos);
+            }
+        }
+
+        return new TokenizedSql(sql, code, count,
+            types, starts, ends, lines, columns,
+            Arrays.copyOf(lineStarts, lineCount), wordLines);
+    }
+
+    // ------------------------------------------------------------------
+    // Token scanners
+    // ------------------------------------------------------------------
+
+    private int lineComment(int start) {
+        int pos = start;
+        while (pos < length && sql.charAt(pos) != '\n') {
+            code[pos++] = ' ';
+        }
+        add(TokenType.COMMENT, start, pos);
+        return pos;
+    }
+
+    private int blockComment(int start) {
+        int tokenLine = lineCount;
+        int tokenColumn = start - lineStarts[lineCount - 1] + 1;
+        int depth = 0;
+        int pos = start;
+        while (pos < length) {
+            char c = sql.charAt(pos);
+            if (c == '/' && peek(pos + 1) == '*') {
+                depth++;
+                blank(pos, 2);
+                pos += 2;
+            } else if (c == '*' && peek(pos + 1) == '/') {
+                depth--;
+                blank(pos, 2);
+                pos += 2;
+                if (depth == 0) {
+                    break;
+                }
+            } else {
+                if (c == '\n') {
+                    newLine(pos + 1);
+                } else {
+                    code[pos] = ' ';
+                }
+                pos++;
+            }
+        }
+        add(TokenType.COMMENT, start, pos, tokenLine, tokenColumn);
+        return pos;
+    }
+
+    /**
+     * Quoted token where the closing quote is escaped by doubling it
+     * ('it''s', "a""b", [a]]b]). String contents are blanked in the code text.
+     *
+     * @param backslashEscapes PostgreSQL E'...': a backslash escapes the next character,
+     *                         so E'it\'s' is one literal, as the server reads it
+     */
+    private int quoted(int start, int openQuote, char closeQuote, TokenType type, boolean backslashEscapes) {
+        int tokenLine = lineCount;
+        int tokenColumn = start - lineStarts[lineCount - 1] + 1;
+        int pos = openQuote + 1;
+        boolean blankContents = type == TokenType.STRING;
+        while (pos < length) {
+            char c = sql.charAt(pos);
+            if (backslashEscapes && c == '\\' && pos + 1 < length && sql.charAt(pos + 1) != '\n') {
+                blank(pos, 2);
+                pos += 2;
+                continue;
+            }
+            if (c == closeQuote) {
+                if (peek(pos + 1) == closeQuote) {
+                    if (blankContents) {
+                        blank(pos, 2);
+                    }
+                    pos += 2;
+                    continue;
+                }
+                pos++;
+                break;
+            }
+            if (c == '\n') {
+                newLine(pos + 1);
+            } else if (blankContents) {
+                code[pos] = ' ';
+            }
+            pos++;
+        }
+        add(type, start, pos, tokenLine, tokenColumn);
+        return pos;
+    }
+
+    /** PostgreSQL $tag$ ... $tag$ literal; a lone '$' is treated as an operator */
+    private int dollarQuoted(int start) {
+        int tagEnd = start + 1;
+        while (tagEnd < length && isIdentifierPart(sql.charAt(tagEnd)) && sql.charAt(tagEnd) != '$') {
+            tagEnd++;
+        }
+        if (tagEnd >= length || sql.charAt(tagEnd) != '$') {
+            return operator(start);
+        }
+        String tag = sql.substring(start, tagEnd + 1);
+        int tokenLine = lineCount;
+        int tokenColumn = start - lineStarts[lineCount - 1] + 1;
+        int close = sql.indexOf(tag, tagEnd + 1);
+        int bodyEnd = close < 0 ? length : close;
+        for (int pos = tagEnd + 1; pos < bodyEnd; pos++) {
+            if (sql.charAt(pos) == '\n') {
+                newLine(pos + 1);
+            } else {
+                code[pos] = ' ';
+            }
+        }
+        int end = close < 0 ? length : close + tag.length();
+        add(TokenType.STRING, start, end, tokenLine, tokenColumn);
+        return end;
+    }
+
+    private int variable(int start, int nameStart) {
+        int pos = nameStart;
+        while (pos < length && isIdentifierPart(sql.charAt(pos))) {
+            pos++;
+        }
+        add(TokenType.VARIABLE, start, pos);
+        return pos;
+    }
+
+    private int number(int start) {
+        int pos = start;
+        while (pos < length && (isDigit(sql.charAt(pos)) || sql.charAt(pos) == '.')) {
+            pos++;
+        }
+        if (pos < length && (sql.charAt(pos) == 'e' || sql.charAt(pos) == 'E')) {
+            int exp = pos + 1;
+            if (exp < length && (sql.charAt(exp) == '+' || sql.charAt(exp) == '-')) {
+                exp++;
+            }
+            if (exp < length && isDigit(sql.charAt(exp))) {
+                pos = exp;
+                while (pos < length && isDigit(sql.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+        add(TokenType.NUMBER, start, pos);
+        return pos;
+    }
+
+    private int word(int start) {
+        int pos = start + 1;
+        while (pos < length && isIdentifierPart(sql.charAt(pos))) {
+            pos++;
+        }
+        add(TokenType.WORD, start, pos);
+        wordLines.computeIfAbsent(sql.substring(start, pos).toUpperCase(), k -> new BitSet())
+            .set(lineCount);
+        return pos;
+    }
+
+    private int operator(int start) {
+        for (String op : MULTI_CHAR_OPERATORS) {
+            if (sql.startsWith(op, start)) {
+                add(TokenType.OPERATOR, start, start + op.length());
+                return start + op.length();
+            }
+        }
+        add(TokenType.OPERATOR, start, start + 1);
+        return start + 1;
+    }
+
+    // ------------------------------------------------------------------
+    // Bookkeeping
+    // ------------------------------------------------------------------
+
+    private void add(TokenType type, int start, int end) {
+        add(type, start, end, lineCount, start - lineStarts[lineCount - 1] + 1);
+    }
+
+    private void add(TokenType type, int start, int end, int line, int column) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        ends[count] = end;
+        lines[count] = line;
+        columns[count] = column;
+        count++;
+    }
+
+    private void newLine(int offset) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = offset;
+    }
+
+    private void blank(int pos, int n) {
+        for (int i = pos; i < pos + n && i < length; i++) {
+            code[i] = ' ';
+        }
+    }
+
+    private char peek(int pos) {
+        return pos < length ? sql.charAt(pos) : '\0';
+    }
+
+    private char peekBack(int pos) {
+        return pos > 0 ? sql.charAt(pos - 1) : '\0';
+    }
+
+    /** '[' right after a name or ')' is a PostgreSQL array subscript, not a T-SQL identifier */
+    private boolean isSubscript(int pos) {
+        char prev = peekBack(pos);
+        return isIdentifierPart(prev) || prev == ')';
+    }
+
+    private static boolean isStringPrefix(char c) {
+        return c == 'N' || c == 'n' || c == 'E' || c == 'e'
+            || c == 'B' || c == 'b' || c == 'X' || c == 'x';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '#';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+    }
+}
@@ -0,0 +1,322 @@
+package com.querylens.analyzer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, immutable token stream for a single SQL text.
+ *
+ * Produced once per analysis by {@link SqlTokenizer} and shared by every detector,
+ * so the query is lexed in one linear pass instead of being re-split and
+ * regex-scanned by each detector.
+ *
+ * Tokens are stored in parallel primitive arrays (type, offsets, line, column)
+ * rather than as objects. Lines and columns are 1-based, matching the line numbers
+ * reported on {@link Bottleneck}.
+ */
+public final class TokenizedSql {
+
+    public enum TokenType {
+        WORD,               // keyword or bare identifier
+        QUOTED_IDENTIFIER,  // [name], "name" or `name`
+        STRING,             // 'literal', N'literal', E'literal', $$literal$$
+        NUMBER,
+        VARIABLE,           // @param, @@var, :name, $1, ?
+        OPERATOR,
+        PUNCTUATION,        // ( ) , . ; [ ]
+        COMMENT             // -- line or /* block */
+    }
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // Words that can never be a table alias
+    private static final Set<String> RESERVED = Set.of(
+        "SELECT", "FROM", "WHERE", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER",
+        "CROSS", "APPLY", "ON", "USING", "AND", "OR", "NOT", "GROUP", "ORDER", "BY",
+        "HAVING", "UNION", "INTERSECT", "EXCEPT", "WITH", "AS", "SET", "LIMIT",
+        "OFFSET", "FETCH", "CASE", "WHEN", "THEN", "ELSE", "END", "INTO", "VALUES",
+        "WINDOW", "OPTION", "RETURNING"
+    );
+
+    private final String sql;
+    private final char[] code;          // sql with comments and string contents blanked
+    private final int count;
+    private final byte[] types;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] lines;
+    private final int[] columns;
+    private final int[] lineStarts;     // offset of each line, index 0 = line 1
+    private final int[] lineTokens;     // first token index of each line, plus sentinel
+    private final Map<String, BitSet> wordLines;
+
+    private String[] rawLines;
+    private String[] codeLines;
+
+    TokenizedSql(String sql, char[] code, int count, byte[] types, int[] starts, int[] ends,
+                 int[] lines, int[] columns, int[] lineStarts, Map<String, BitSet> wordLines) {
+        this.sql = sql;
+        this.code = code;
+        this.count = count;
+        this.types = types;
+        this.starts = starts;
+        this.ends = ends;
+        this.lines = lines;
+        this.columns = columns;
+        this.lineStarts = lineStarts;
+        this.wordLines = wordLines;
+        this.lineTokens = indexTokensByLine();
+    }
+
+    // ------------------------------------------------------------------
+    // Source text
+    // ------------------------------------------------------------------
+
+    /** The original SQL text */
+    public String sql() {
+        return sql;
+    }
+
+    /**
+     * The SQL text with comments and string literal contents replaced by spaces.
+     * Offsets and line breaks are identical to {@link #sql()}, so regex matches on
+     * this text can be mapped straight back to the original.
+     */
+    public String codeText() {
+        return new String(code);
+    }
+
+    public int lineCount() {
+        return lineStarts.length;
+    }
+
+    /** Raw text of a 1-based line (same content as {@code sql.split("\n")[line - 1]}) */
+    public String line(int line) {
+        if (rawLines == null) {
+            rawLines = new String[lineCount()];
+        }
+        String text = rawLines[line - 1];
+        if (text == null) {
+            text = sql.substring(lineStarts[line - 1], lineEnd(line));
+            rawLines[line - 1] = text;
+        }
+        return text;
+    }
+
+    /** Text of a 1-based line with comments and string contents blanked */
+    public String codeLine(int line) {
+        if (codeLines == null) {
+            codeLines = new String[lineCount()];
+        }
+        String text = codeLines[line - 1];
+        if (text == null) {
+            int start = lineStarts[line - 1];
+            text = new String(code, start, lineEnd(line) - start);
+            codeLines[line - 1] = text;
+        }
+        return text;
+    }
+
+    /** 1-based line containing the given character offset */
+    public int lineOf(int offset) {
+        int idx = Arrays.binarySearch(lineStarts, offset);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    private int lineEnd(int line) {
+        return line < lineStarts.length ? lineStarts[line] - 1 : sql.length();
+    }
+
+    // ------------------------------------------------------------------
+    // Word index
+    // ------------------------------------------------------------------
+
+    /** True if the (upper-case) word appears anywhere outside comments and literals */
+    public boolean containsWord(String upperWord) {
+        return wordLines.containsKey(upperWord);
+    }
+
+    /** True if the (upper-case) word appears on the given line */
+    public boolean lineHasWord(int line, String upperWord) {
+        BitSet set = wordLines.get(upperWord);
+        return set != null && set.get(line);
+    }
+
+    /** Lines on which any of the (upper-case) words appear, as a fresh set */
+    public BitSet linesWithAnyWord(String... upperWords) {
+        BitSet result = new BitSet();
+        for (String word : upperWords) {
+            BitSet set = wordLines.get(word);
+            if (set != null) {
+                result.or(set);
+            }
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------
+    // Token access
+    // ------------------------------------------------------------------
+
+    public int size() {
+        return count;
+    }
+
+    public TokenType type(int token) {
+        return TYPES[types[token]];
+    }
+
+    public int start(int token) {
+        return starts[token];
+    }
+
+    public int end(int token) {
+        return ends[token];
+    }
+
+    /** 1-based line on which the token starts */
+    public int lineNumber(int token) {
+        return lines[token];
+    }
+
+    /** 1-based column at which the token starts */
+    public int column(int token) {
+        return columns[token];
+    }
+
+    public String text(int token) {
+        return sql.substring(starts[token], ends[token]);
+    }
+
+    /** Token text with identifier quoting ([...], "...", `...`) removed */
+    public String identifier(int token) {
+        if (types[token] == TokenType.QUOTED_IDENTIFIER.ordinal() && ends[token] - starts[token] >= 2) {
+            return sql.substring(starts[token] + 1, ends[token] - 1);
+        }
+        return text(token);
+    }
+
+    public boolean isCode(int token) {
+        return types[token] != TokenType.COMMENT.ordinal();
+    }
+
+    /** Case-insensitive keyword comparison without allocating */
+    public boolean isWord(int token, String word) {
+        return token >= 0 && token < count
+            && types[token] == TokenType.WORD.ordinal()
+            && ends[token] - starts[token] == word.length()
+            && sql.regionMatches(true, starts[token], word, 0, word.length());
+    }
+
+    /** Bare or quoted identifier equal (ignoring case and quoting) to the given name */
+    public boolean isIdentifier(int token, String name) {
+        if (token < 0 || token >= count) {
+            return false;
+        }
+        if (types[token] == TokenType.WORD.ordinal()) {
+            return isWord(token, name);
+        }
+        return types[token] == TokenType.QUOTED_IDENTIFIER.ordinal()
+            && ends[token] - starts[token] - 2 == name.length()
+            && sql.regionMatches(true, starts[token] + 1, name, 0, name.length());
+    }
+
+    public boolean isName(int token) {
+        return token >= 0 && token < count
+            && (types[token] == TokenType.WORD.ordinal()
+                || types[token] == TokenType.QUOTED_IDENTIFIER.ordinal());
+    }
+
+    public boolean isPunctuation(int token, char ch) {
+        return token >= 0 && token < count
+            && types[token] == TokenType.PUNCTUATION.ordinal()
+            && sql.charAt(starts[token]) == ch;
+    }
+
+    /** Operator token whose text starts with the given character */
+    public boolean isOperatorStartingWith(int token, char ch) {
+        return token >= 0 && token < count
+            && types[token] == TokenType.OPERATOR.ordinal()
+            && sql.charAt(starts[token]) == ch;
+    }
+
+    /** True for words that cannot be used as a table alias (ON, WHERE, JOIN, ...) */
+    public boolean isReserved(int token) {
+        return types[token] == TokenType.WORD.ordinal()
+            && RESERVED.contains(text(token).toUpperCase());
+    }
+
+    /** Next non-comment token after the given one, or {@link #size()} if none */
+    public int nextCode(int token) {
+        int i = token + 1;
+        while (i < count && !isCode(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * False when a ';' is followed by more code, i.e. the text is a script. Trailing
+     * semicolons and comments after the last statement are allowed.
+     */
+    public boolean isSingleStatement() {
+        for (int i = 0; i < count; i++) {
+            if (isPunctuation(i, ';')) {
+                int next = nextCode(i);
+                if (next < count && !isPunctuation(next, ';')) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** First token starting on the given 1-based line */
+    public int firstTokenOnLine(int line) {
+        return lineTokens[line - 1];
+    }
+
+    /** Index after the last token starting on the given 1-based line */
+    public int endTokenOnLine(int line) {
+        return lineTokens[line];
+    }
+
+    /** First non-comment token on the line, or -1 if the line has no code */
+    public int firstCodeTokenOnLine(int line) {
+        for (int i = firstTokenOnLine(line); i < endTokenOnLine(line); i++) {
+            if (isCode(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Opening minus closing parentheses on a line, ignoring literals and comments */
+    public int parenBalance(int line) {
+        int balance = 0;
+        for (int i = firstTokenOnLine(line); i < endTokenOnLine(line); i++) {
+            if (isPunctuation(i, '(')) {
+                balance++;
+            } else if (isPunctuation(i, ')')) {
+                balance--;
+            }
+        }
+        return balance;
+    }
+
+    private int[] indexTokensByLine() {
+        int lineCount = lineStarts.length;
+        int[] index = new int[lineCount + 1];
+        int token = 0;
+        for (int line = 1; line <= lineCount; line++) {
+            while (token < count && lines[token] < line) {
+                token++;
+            }
+            index[line - 1] = token;
+        }
+        index[lineCount] = count;
+        return index;
+    }
+}
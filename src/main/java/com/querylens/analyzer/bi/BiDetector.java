@@ -0,0 +1,37 @@
+package com.querylens.analyzer.bi;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.TokenizedSql;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A BI bottleneck detector run by {@link BiQueryAnalysisService}.
+ *
+ * Implementations must be stateless: the service runs them concurrently on the
+ * same token stream and plan. They call {@link #stopIfInterrupted()} once per line
+ * (or plan node) they scan, so a detector that missed its deadline, or whose request
+ * was cancelled, stops instead of running to completion.
+ */
+public interface BiDetector {
+
+    /** A unique key for this detector (e.g. "NON_SARGABLE") */
+    String name();
+
+    /**
+     * Find bottlenecks in the query.
+     *
+     * @param tokens        the tokenized SQL, shared with the other detectors
+     * @param executionPlan flattened execution plan nodes (read-only)
+     */
+    List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan);
+
+    /** Throws once the service has cancelled this detector's task (which interrupts it) */
+    static void stopIfInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("BI detector cancelled");
+        }
+    }
+}
@@ -2,10 +2,26 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.job.JobProgress;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.CancellationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 /**
@@ -20,6 +36,10 @@ import java.util.stream.Collectors;
 @Service
 public class BiQueryAnalysisService {
     
+    private static final Logger log = LoggerFactory.getLogger(BiQueryAnalysisService.class);
+    
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    
     @Autowired
     private NonSargableDetector nonSargableDetector;
     
@@ -38,20 +58,91 @@ public class BiQueryAnalysisService {
     @Autowired
     private HeavyAggregationOptimizer heavyAggregationOptimizer;
     
+    @Autowired
+    @Qualifier("biDetectorExecutor")
+    private ExecutorService detectorExecutor;
+    
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+    
+    // Budget for each detector, measured from when it starts running
+    @Value("${querylens.bi.detector-timeout-ms:2000}")
+    private long detectorTimeoutMs = 2000;
+    
     /**
-     * Analyze a SQL query and identify all bottlenecks
+     * Analyze a SQL query and identify all bottlenecks.
+     *
+     * Detectors run concurrently, each with its own deadline. The deadline is counted from
+     * when the detector starts running, not from when it was queued, so time spent waiting
+     * for a pool thread behind other requests does not count against it. A detector that
+     * misses its deadline is listed in {@link BiAnalysisResult#getTimedOutDetectors()} and the
+     * result is marked partial; the other detectors' findings are still returned.
+     * Cancelling the request ({@link CancellationToken}) does the same to the detectors
+     * still running. Either way the detector's thread is interrupted, and the detector
+     * stops at the next line it scans ({@link BiDetector#stopIfInterrupted()}), freeing
+     * the pool thread for the next request.
      */
     public BiAnalysisResult analyzeQuery(String sql, List<ExecutionPlanNode> executionPlan) {
+        // Lex the query once; every detector works off the same token stream
+        return analyzeQuery(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    /**
+     * Analyze an already tokenized query
+     */
+    public BiAnalysisResult analyzeQuery(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         
         List<Bottleneck> allBottlenecks = new ArrayList<>();
+        List<String> timedOut = new ArrayList<>();
+        
+        List<ExecutionPlanNode> plan = Collections.unmodifiableList(executionPlan);
         
         // Run all detectors
-        allBottlenecks.addAll(nonSargableDetector.detect(sql, executionPlan));
-        allBottlenecks.addAll(correlatedSubqueryDetector.detect(sql, executionPlan));
-        allBottlenecks.addAll(orConditionDetector.detect(sql, executionPlan));
-        allBottlenecks.addAll(lateFilterDetector.detect(sql, executionPlan));
-        allBottlenecks.addAll(missingIndexAnalyzer.detect(sql, executionPlan));
-        allBottlenecks.addAll(heavyAggregationOptimizer.detect(sql, executionPlan));
+        List<BiDetector> detectors = detectors();
+        List<Future<List<Bottleneck>>> futures = new ArrayList<>(detectors.size());
+        AtomicLongArray startedAt = new AtomicLongArray(detectors.size());
+        // A job sees each detector's findings as soon as it finishes, in whatever order
+        JobProgress progress = JobProgress.current();
+        for (int i = 0; i < detectors.size(); i++) {
+            BiDetector detector = detectors.get(i);
+            int index = i;
+            startedAt.set(i, NOT_STARTED);
+            futures.add(detectorExecutor.submit(() -> {
+                startedAt.set(index, System.nanoTime());
+                List<Bottleneck> found = metrics.timeDetector("bi", detector.name(), () -> detector.detect(tokens, plan));
+                progress.detectorFinished(detector.name(), found);
+                return found;
+            }));
+        }
+        
+        try (CancellationToken.Registration cancel =
+                 CancellationToken.onCurrentCancel(() -> futures.forEach(f -> f.cancel(true)))) {
+            for (int i = 0; i < detectors.size(); i++) {
+                Future<List<Bottleneck>> future = futures.get(i);
+                try {
+                    // Results are collected in detector order so the output is deterministic
+                    allBottlenecks.addAll(await(future, startedAt, i));
+                } catch (TimeoutException | CancellationException e) {
+                    future.cancel(true);
+                    // Cancelled with the request rather than timed out: nobody wants the result
+                    CancellationToken.checkCurrent();
+                    timedOut.add(detectors.get(i).name());
+                    metrics.countDetectorTimeout(detectors.get(i).name());
+                    log.warn("BI detector {} exceeded {} ms; returning partial analysis",
+                        detectors.get(i).name(), detectorTimeoutMs);
+                } catch (InterruptedException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("BI analysis interrupted", e);
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    if (e.getCause() instanceof RuntimeException runtime) {
+                        throw runtime;
+                    }
+                    throw new IllegalStateException("BI detector " + detectors.get(i).name() + " failed", e.getCause());
+                }
+            }
+        }
         
         // Sort by severity and cost
         List<Bottleneck> sortedBottlenecks = allBottlenecks.stream()
@@ -88,10 +179,46 @@ public class BiQueryAnalysisService {
             .mapToDouble(Bottleneck::getCostPercentage)
             .sum();
         result.setPotentialImprovementPercent(Math.min(potentialSavings, 95.0)); // Cap at 95%
+        result.setTimedOutDetectors(timedOut);
+        result.setPartial(!timedOut.isEmpty());
         
         return result;
     }
     
+    /**
+     * The detector's findings, waiting at most its budget from when it started running
+     *
+     * @throws TimeoutException when it ran for longer than the budget
+     */
+    private List<Bottleneck> await(Future<List<Bottleneck>> future, AtomicLongArray startedAt, int index)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long budget = TimeUnit.MILLISECONDS.toNanos(detectorTimeoutMs);
+        while (true) {
+            long started = startedAt.get(index);
+            long wait = started == NOT_STARTED ? budget : started + budget - System.nanoTime();
+            try {
+                return future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (started != NOT_STARTED) {
+                    throw e;
+                }
+                // Still queued when the wait began; its budget starts once it runs
+            }
+        }
+    }
+    
+    /** Detectors in reporting order */
+    private List<BiDetector> detectors() {
+        return List.of(
+            nonSargableDetector,
+            correlatedSubqueryDetector,
+            orConditionDetector,
+            lateFilterDetector,
+            missingIndexAnalyzer,
+            heavyAggregationOptimizer
+        );
+    }
+    
     /**
      * Result object containing all analysis
      */
@@ -104,6 +231,8 @@ public class BiQueryAnalysisService {
         private double totalCostMs;
         private double totalImpactSeconds;
         private double potentialImprovementPercent;
+        private boolean partial;
+        private List<String> timedOutDetectors = new ArrayList<>();
         
         // Getters and setters
         public List<Bottleneck> getBottlenecks() { return bottlenecks; }
@@ -131,6 +260,47 @@ public class BiQueryAnalysisService {
         public void setPotentialImprovementPercent(double potentialImprovementPercent) { 
             this.potentialImprovementPercent = potentialImprovementPercent; 
         }
+        
+        /** True when at least one detector timed out and its findings are missing */
+        public boolean isPartial() { return partial; }
+        public void setPartial(boolean partial) { this.partial = partial; }
+        
+        public List<String> getTimedOutDetectors() { return timedOutDetectors; }
+        public void setTimedOutDetectors(List<String> timedOutDetectors) { this.timedOutDetectors = timedOutDetectors; }
+        
+        /**
+         * Copy with extra findings merged in (re-sorted, counts updated). Results may be
+         * shared through the analysis cache, so this one is left unchanged.
+         */
+        public BiAnalysisResult withAdditional(List<Bottleneck> additional) {
+            if (additional.isEmpty()) {
+                return this;
+            }
+            List<Bottleneck> merged = new ArrayList<>(bottlenecks);
+            merged.addAll(additional);
+            merged.sort(Comparator
+                .comparing(Bottleneck::getSeverity)
+                .thenComparing(Bottleneck::getCostPercentage, Comparator.reverseOrder()));
+            
+            BiAnalysisResult copy = new BiAnalysisResult();
+            copy.setBottlenecks(merged);
+            copy.setTotalBottlenecks(merged.size());
+            copy.setCriticalCount(criticalCount + count(additional, Bottleneck.Severity.CRITICAL));
+            copy.setWarningCount(warningCount + count(additional, Bottleneck.Severity.WARNING));
+            copy.setInfoCount(infoCount + count(additional, Bottleneck.Severity.INFO));
+            copy.setTotalCostMs(totalCostMs);
+            copy.setTotalImpactSeconds(totalImpactSeconds + additional.stream()
+                .mapToDouble(b -> b.getTimeImpactSeconds() != null ? b.getTimeImpactSeconds() : 0.0)
+                .sum());
+            copy.setPotentialImprovementPercent(potentialImprovementPercent);
+            copy.setPartial(partial);
+            copy.setTimedOutDetectors(timedOutDetectors);
+            return copy;
+        }
+        
+        private static int count(List<Bottleneck> list, Bottleneck.Severity severity) {
+            return (int) list.stream().filter(b -> b.getSeverity() == severity).count();
+        }
     }
 }
 
@@ -2,9 +2,12 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,7 +22,7 @@ import java.util.regex.Pattern;
  * These are expensive because they run N times where N = outer query rows.
  */
 @Component
-public class CorrelatedSubqueryDetector {
+public class CorrelatedSubqueryDetector implements BiDetector {
     
     // Pattern: Subquery in SELECT list with correlation
     private static final Pattern CORRELATED_SUBQUERY = Pattern.compile(
@@ -39,29 +42,39 @@ public class CorrelatedSubqueryDetector {
         Pattern.CASE_INSENSITIVE
     );
     
+    @Override
+    public String name() {
+        return "CORRELATED_SUBQUERY";
+    }
+
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
-        String[] lines = sql.split("\n");
+        BitSet selectLines = tokens.linesWithAnyWord("SELECT");
+        int lineCount = tokens.lineCount();
         
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            int lineNumber = i + 1;
+        for (int lineNumber = selectLines.nextSetBit(0); lineNumber >= 0;
+             lineNumber = selectLines.nextSetBit(lineNumber + 1)) {
+            BiDetector.stopIfInterrupted();
             
             // Look for SELECT clause subqueries (most common pattern)
-            if (line.trim().contains("(SELECT") && !line.trim().startsWith("FROM") && !line.trim().startsWith("WHERE")) {
+            if (opensSubquery(tokens, lineNumber) && !startsWithClause(tokens, lineNumber)) {
                 
                 // Try to match the full subquery across multiple lines
-                StringBuilder subqueryBuilder = new StringBuilder(line);
-                int parenCount = countChar(line, '(') - countChar(line, ')');
-                int endLine = i;
+                StringBuilder subqueryBuilder = new StringBuilder(tokens.line(lineNumber));
+                int parenCount = tokens.parenBalance(lineNumber);
+                int endLine = lineNumber;
                 
                 // Collect full subquery if it spans multiple lines
-                while (parenCount > 0 && endLine < lines.length - 1) {
+                while (parenCount > 0 && endLine < lineCount) {
                     endLine++;
-                    String nextLine = lines[endLine];
-                    subqueryBuilder.append("\n").append(nextLine);
-                    parenCount += countChar(nextLine, '(') - countChar(nextLine, ')');
+                    subqueryBuilder.append("\n").append(tokens.line(endLine));
+                    parenCount += tokens.parenBalance(endLine);
                 }
                 
                 String fullSubquery = subqueryBuilder.toString();
@@ -73,7 +86,7 @@ public class CorrelatedSubqueryDetector {
                         fullSubquery.trim(),
                         aggMatcher.group(1), // Aggregate function name
                         lineNumber,
-                        endLine + 1,
+                        endLine,
                         executionPlan
                     ));
                 }
@@ -83,6 +96,26 @@ public class CorrelatedSubqueryDetector {
         return bottlenecks;
     }
     
+    /**
+     * True if the line contains "(" immediately followed by SELECT
+     */
+    private boolean opensSubquery(TokenizedSql tokens, int lineNumber) {
+        for (int i = tokens.firstTokenOnLine(lineNumber); i < tokens.endTokenOnLine(lineNumber); i++) {
+            if (tokens.isPunctuation(i, '(') && tokens.isWord(tokens.nextCode(i), "SELECT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Subqueries in FROM / WHERE are derived tables or filters, not per-row lookups
+     */
+    private boolean startsWithClause(TokenizedSql tokens, int lineNumber) {
+        int first = tokens.firstCodeTokenOnLine(lineNumber);
+        return tokens.isWord(first, "FROM") || tokens.isWord(first, "WHERE");
+    }
+    
     private Bottleneck createCorrelatedSubqueryBottleneck(
             String subquery,
             String aggregateFunction,
@@ -175,10 +208,6 @@ public class CorrelatedSubqueryDetector {
         return 10000;
     }
     
-    private int countChar(String str, char ch) {
-        return (int) str.chars().filter(c -> c == ch).count();
-    }
-    
     private String formatNumber(long num) {
         if (num >= 1_000_000) {
             return String.format("%.1fM", num / 1_000_000.0);
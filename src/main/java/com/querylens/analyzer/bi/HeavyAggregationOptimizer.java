@@ -2,9 +2,12 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,7 +22,7 @@ import java.util.regex.Pattern;
  * - GROUP BY with many columns
  */
 @Component
-public class HeavyAggregationOptimizer {
+public class HeavyAggregationOptimizer implements BiDetector {
     
     // Pattern: STRING_AGG with DISTINCT
     private static final Pattern STRING_AGG_DISTINCT = Pattern.compile(
@@ -51,60 +54,75 @@ public class HeavyAggregationOptimizer {
         Pattern.CASE_INSENSITIVE
     );
     
+    @Override
+    public String name() {
+        return "HEAVY_AGGREGATION";
+    }
+
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
-        String[] lines = sql.split("\n");
+        BitSet candidateLines = tokens.linesWithAnyWord("STRING_AGG", "COUNT", "CASE");
         
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            int lineNumber = i + 1;
+        for (int lineNumber = candidateLines.nextSetBit(0); lineNumber >= 0;
+             lineNumber = candidateLines.nextSetBit(lineNumber + 1)) {
+            BiDetector.stopIfInterrupted();
+            String code = tokens.codeLine(lineNumber);
+            String fragment = tokens.line(lineNumber).trim();
             
-            // Check for STRING_AGG with DISTINCT
-            Matcher stringAggDistinct = STRING_AGG_DISTINCT.matcher(line);
-            if (stringAggDistinct.find()) {
-                bottlenecks.add(createStringAggBottleneck(
-                    stringAggDistinct.group(1),
-                    true,  // has DISTINCT
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
-            } else {
-                // Check for STRING_AGG without DISTINCT
-                Matcher stringAgg = STRING_AGG_PATTERN.matcher(line);
-                if (stringAgg.find()) {
+            if (tokens.lineHasWord(lineNumber, "STRING_AGG")) {
+                // Check for STRING_AGG with DISTINCT
+                Matcher stringAggDistinct = STRING_AGG_DISTINCT.matcher(code);
+                if (stringAggDistinct.find()) {
                     bottlenecks.add(createStringAggBottleneck(
-                        stringAgg.group(1),
-                        false,  // no DISTINCT
+                        stringAggDistinct.group(1),
+                        true,  // has DISTINCT
                         lineNumber,
-                        line.trim(),
+                        fragment,
                         executionPlan
                     ));
+                } else {
+                    // Check for STRING_AGG without DISTINCT
+                    Matcher stringAgg = STRING_AGG_PATTERN.matcher(code);
+                    if (stringAgg.find()) {
+                        bottlenecks.add(createStringAggBottleneck(
+                            stringAgg.group(1),
+                            false,  // no DISTINCT
+                            lineNumber,
+                            fragment,
+                            executionPlan
+                        ));
+                    }
                 }
             }
             
             // Check for COUNT(DISTINCT)
-            Matcher countDistinct = COUNT_DISTINCT.matcher(line);
-            if (countDistinct.find()) {
-                bottlenecks.add(createCountDistinctBottleneck(
-                    countDistinct.group(1),
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "COUNT") && tokens.lineHasWord(lineNumber, "DISTINCT")) {
+                Matcher countDistinct = COUNT_DISTINCT.matcher(code);
+                if (countDistinct.find()) {
+                    bottlenecks.add(createCountDistinctBottleneck(
+                        countDistinct.group(1),
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for multiple CASE in aggregates
-            Matcher caseAggregate = CASE_IN_AGGREGATE.matcher(line);
-            if (caseAggregate.find()) {
+            if (tokens.lineHasWord(lineNumber, "CASE") && CASE_IN_AGGREGATE.matcher(code).find()) {
                 // Count how many CASE expressions
-                long caseCount = line.toUpperCase().split("CASE WHEN").length - 1;
+                int caseCount = countCaseWhen(tokens, lineNumber);
                 if (caseCount >= 3) {
                     bottlenecks.add(createMultipleCaseBottleneck(
-                        (int) caseCount,
+                        caseCount,
                         lineNumber,
-                        line.trim(),
+                        fragment,
                         executionPlan
                     ));
                 }
@@ -112,24 +130,38 @@ public class HeavyAggregationOptimizer {
         }
         
         // Check GROUP BY complexity
-        Matcher groupBy = GROUP_BY.matcher(sql);
-        if (groupBy.find()) {
-            String groupByClause = groupBy.group(1);
-            int columnCount = groupByClause.split(",").length;
-            if (columnCount >= 5) {
-                int lineNum = findLineNumber(sql, groupBy.start());
-                bottlenecks.add(createComplexGroupByBottleneck(
-                    columnCount,
-                    lineNum,
-                    groupByClause,
-                    executionPlan
-                ));
+        if (tokens.containsWord("GROUP")) {
+            Matcher groupBy = GROUP_BY.matcher(tokens.codeText());
+            if (groupBy.find()) {
+                String groupByClause = tokens.sql().substring(groupBy.start(1), groupBy.end(1));
+                int columnCount = groupBy.group(1).split(",").length;
+                if (columnCount >= 5) {
+                    bottlenecks.add(createComplexGroupByBottleneck(
+                        columnCount,
+                        tokens.lineOf(groupBy.start()),
+                        groupByClause,
+                        executionPlan
+                    ));
+                }
             }
         }
         
         return bottlenecks;
     }
     
+    /**
+     * Count "CASE WHEN" keyword pairs on a line
+     */
+    private int countCaseWhen(TokenizedSql tokens, int lineNumber) {
+        int count = 0;
+        for (int i = tokens.firstTokenOnLine(lineNumber); i < tokens.endTokenOnLine(lineNumber); i++) {
+            if (tokens.isWord(i, "CASE") && tokens.isWord(tokens.nextCode(i), "WHEN")) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
     /**
      * STRING_AGG bottleneck
      */
@@ -278,9 +310,4 @@ public class HeavyAggregationOptimizer {
         
         return bottleneck;
     }
-    
-    private int findLineNumber(String sql, int charPosition) {
-        return (int) sql.substring(0, charPosition).chars().filter(c -> c == '\n').count() + 1;
-    }
 }
-
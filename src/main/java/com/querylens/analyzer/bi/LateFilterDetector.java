@@ -2,12 +2,12 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Detects filters applied after expensive JOINs.
@@ -16,15 +16,13 @@ import java.util.regex.Pattern;
  * - Joining 18M row fact table to dimension
  * - Then filtering on dimension attributes (business_unit, department)
  * - Should filter BEFORE joining to reduce row count early
+ *
+ * A joined alias is only in scope for its own SELECT: it goes out of scope at the
+ * parenthesis closing its subquery and at the next UNION/INTERSECT/EXCEPT branch, so
+ * a UNION ALL of many branches reusing the same alias reports each filter once.
  */
 @Component
-public class LateFilterDetector {
-    
-    // Pattern: JOIN followed by WHERE with filter on joined table
-    private static final Pattern LATE_FILTER_PATTERN = Pattern.compile(
-        "JOIN\\s+([\\w.]+)\\s+(\\w+)\\s+ON.*?WHERE.*?\\2\\.(\\w+)\\s*=",
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-    );
+public class LateFilterDetector implements BiDetector {
     
     // Common dimension filters that should be early
     private static final List<String> FILTER_CANDIDATES = List.of(
@@ -32,60 +30,125 @@ public class LateFilterDetector {
         "type", "region", "division"
     );
     
+    /** A joined alias, with the parenthesis depth of the SELECT that joined it */
+    private record Joined(String alias, int line, int depth) {}
+
+    @Override
+    public String name() {
+        return "LATE_FILTER";
+    }
+
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
+        if (!tokens.containsWord("JOIN")) {
+            return bottlenecks;
+        }
+        
         // Check for filters on dimension tables after JOINs
-        String[] lines = sql.split("\n");
-        boolean inJoinSection = false;
-        List<String> joinedTables = new ArrayList<>();
-        List<Integer> joinLines = new ArrayList<>();
+        List<Joined> joined = new ArrayList<>();
+        int depth = 0;
         
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i].trim();
-            int lineNumber = i + 1;
+        for (int lineNumber = 1; lineNumber <= tokens.lineCount(); lineNumber++) {
+            BiDetector.stopIfInterrupted();
+            int first = tokens.firstCodeTokenOnLine(lineNumber);
+            if (first < 0) {
+                continue;  // blank or comment-only line
+            }
+            
+            // A new branch of a set operation starts a new SELECT at this depth
+            if (tokens.lineHasWord(lineNumber, "UNION") || tokens.lineHasWord(lineNumber, "INTERSECT")
+                    || tokens.lineHasWord(lineNumber, "EXCEPT")) {
+                int branchDepth = depth;
+                joined.removeIf(j -> j.depth() >= branchDepth);
+            }
             
             // Track JOIN statements
-            if (line.toUpperCase().contains("JOIN ") && !line.toUpperCase().startsWith("--")) {
-                inJoinSection = true;
-                Pattern joinPattern = Pattern.compile("JOIN\\s+([\\w.]+)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
-                Matcher m = joinPattern.matcher(line);
-                if (m.find()) {
-                    joinedTables.add(m.group(2)); // table alias
-                    joinLines.add(lineNumber);
+            if (tokens.lineHasWord(lineNumber, "JOIN")) {
+                String alias = findJoinAlias(tokens, lineNumber);
+                if (alias != null) {
+                    joined.add(new Joined(alias, lineNumber, depth));
                 }
             }
             
             // Check WHERE clause for filters on joined tables
-            if (line.toUpperCase().startsWith("WHERE") || (inJoinSection && line.contains("AND "))) {
-                for (int j = 0; j < joinedTables.size(); j++) {
-                    String alias = joinedTables.get(j);
-                    
+            if (tokens.isWord(first, "WHERE") || (!joined.isEmpty() && tokens.lineHasWord(lineNumber, "AND"))) {
+                for (Joined j : joined) {
                     // Check if this WHERE filters on a dimension column
                     for (String filterCol : FILTER_CANDIDATES) {
-                        Pattern filterPattern = Pattern.compile(
-                            "\\b" + alias + "\\." + filterCol + "\\s*=",
-                            Pattern.CASE_INSENSITIVE
-                        );
-                        
-                        if (filterPattern.matcher(line).find()) {
+                        if (hasEqualityFilter(tokens, lineNumber, j.alias(), filterCol)) {
                             bottlenecks.add(createLateFilterBottleneck(
-                                alias,
+                                j.alias(),
                                 filterCol,
                                 lineNumber,
-                                joinLines.get(j),
-                                line.trim(),
+                                j.line(),
+                                tokens.line(lineNumber).trim(),
                                 executionPlan
                             ));
                         }
                     }
                 }
             }
+            
+            // Aliases of a subquery closed on this line go out of scope
+            depth = Math.max(0, depth + tokens.parenBalance(lineNumber));
+            int lineEndDepth = depth;
+            joined.removeIf(j -> j.depth() > lineEndDepth);
         }
         
         return bottlenecks;
     }
     
+    /**
+     * Alias of the first "JOIN schema.table alias" on the line
+     */
+    private String findJoinAlias(TokenizedSql tokens, int lineNumber) {
+        for (int i = tokens.firstTokenOnLine(lineNumber); i < tokens.endTokenOnLine(lineNumber); i++) {
+            if (!tokens.isWord(i, "JOIN")) {
+                continue;
+            }
+            // Skip the (possibly qualified) table name
+            int t = tokens.nextCode(i);
+            if (!tokens.isName(t)) {
+                return null;
+            }
+            while (tokens.isPunctuation(tokens.nextCode(t), '.') && tokens.isName(tokens.nextCode(tokens.nextCode(t)))) {
+                t = tokens.nextCode(tokens.nextCode(t));
+            }
+            int alias = tokens.nextCode(t);
+            if (tokens.isWord(alias, "AS")) {
+                alias = tokens.nextCode(alias);
+            }
+            if (tokens.isName(alias) && !tokens.isReserved(alias) && tokens.lineNumber(alias) == lineNumber) {
+                return tokens.identifier(alias);
+            }
+            return null;
+        }
+        return null;
+    }
+    
+    /**
+     * True if the line contains "alias.column =" outside literals and comments
+     */
+    private boolean hasEqualityFilter(TokenizedSql tokens, int lineNumber, String alias, String column) {
+        int end = tokens.endTokenOnLine(lineNumber);
+        for (int i = tokens.firstTokenOnLine(lineNumber); i < end; i++) {
+            if (tokens.isIdentifier(i, alias)
+                    && tokens.isPunctuation(i + 1, '.')
+                    && tokens.isIdentifier(i + 2, column)
+                    && tokens.isOperatorStartingWith(i + 3, '=')
+                    && (i == 0 || !tokens.isPunctuation(i - 1, '.'))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private Bottleneck createLateFilterBottleneck(
             String tableAlias,
             String filterColumn,
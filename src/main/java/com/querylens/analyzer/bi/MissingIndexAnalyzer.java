@@ -2,11 +2,11 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Analyzes execution plans to identify missing indexes.
@@ -22,25 +22,24 @@ import java.util.regex.Pattern;
  * - SELECT columns (for INCLUDE)
  */
 @Component
-public class MissingIndexAnalyzer {
-    
-    // Extract WHERE clause predicates
-    private static final Pattern WHERE_PREDICATE = Pattern.compile(
-        "WHERE\\s+([\\w.]+)\\s*([=<>]+|IN|LIKE|BETWEEN)",
-        Pattern.CASE_INSENSITIVE
-    );
-    
-    // Extract JOIN conditions
-    private static final Pattern JOIN_CONDITION = Pattern.compile(
-        "ON\\s+([\\w.]+)\\s*=\\s*([\\w.]+)",
-        Pattern.CASE_INSENSITIVE
-    );
+public class MissingIndexAnalyzer implements BiDetector {
     
+    @Override
+    public String name() {
+        return "MISSING_INDEX";
+    }
+
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
         // Find all scan operations in the plan
         for (ExecutionPlanNode node : executionPlan) {
+            BiDetector.stopIfInterrupted();
             if (node.isScanOperation() && node.getCostPercentage() >= 5.0) {
                 
                 // Extract table name from node
@@ -50,15 +49,16 @@ public class MissingIndexAnalyzer {
                 }
                 
                 // Find predicates and join keys for this table
-                Set<String> keyColumns = extractKeyColumns(sql, tableName);
-                Set<String> includeColumns = extractIncludeColumns(sql, tableName);
+                String alias = findTableAlias(tokens, tableName);
+                Set<String> keyColumns = extractKeyColumns(tokens, alias);
+                Set<String> includeColumns = extractIncludeColumns(tokens, alias);
                 
                 bottlenecks.add(createMissingIndexBottleneck(
                     node,
                     tableName,
                     keyColumns,
                     includeColumns,
-                    sql
+                    tokens.sql()
                 ));
             }
         }
@@ -149,40 +149,41 @@ public class MissingIndexAnalyzer {
         return bottleneck;
     }
     
+    /**
+     * Find the alias used for a table, e.g. "SFDC.dbo.GIVING_DETAIL gd" -> "gd"
+     */
+    private String findTableAlias(TokenizedSql tokens, String tableName) {
+        String shortName = tableName.replaceAll(".*\\.", "");
+        for (int i = 0; i < tokens.size(); i++) {
+            BiDetector.stopIfInterrupted();
+            if (!tokens.isIdentifier(i, shortName)) {
+                continue;
+            }
+            int alias = tokens.nextCode(i);
+            if (tokens.isWord(alias, "AS")) {
+                alias = tokens.nextCode(alias);
+            }
+            if (tokens.isName(alias) && !tokens.isReserved(alias)) {
+                return tokens.identifier(alias);
+            }
+        }
+        return "";
+    }
+    
     /**
      * Extract key columns from WHERE and JOIN clauses
      */
-    private Set<String> extractKeyColumns(String sql, String tableName) {
+    private Set<String> extractKeyColumns(TokenizedSql tokens, String alias) {
         Set<String> columns = new LinkedHashSet<>();
         
-        // Extract table alias
-        Pattern aliasPattern = Pattern.compile(
-            tableName.replaceAll(".*\\.", "") + "\\s+(\\w+)",
-            Pattern.CASE_INSENSITIVE
-        );
-        Matcher aliasMatcher = aliasPattern.matcher(sql);
-        String alias = aliasMatcher.find() ? aliasMatcher.group(1) : "";
-        
         if (alias.isEmpty()) return columns;
         
-        // Find WHERE predicates
-        Pattern wherePattern = Pattern.compile(
-            "\\b" + alias + "\\.(\\w+)\\s*(?:=|>|<|>=|<=|IN|BETWEEN)",
-            Pattern.CASE_INSENSITIVE
-        );
-        Matcher whereMatcher = wherePattern.matcher(sql);
-        while (whereMatcher.find()) {
-            columns.add(whereMatcher.group(1));
-        }
-        
-        // Find JOIN keys
-        Pattern joinPattern = Pattern.compile(
-            "ON\\s+" + alias + "\\.(\\w+)\\s*=",
-            Pattern.CASE_INSENSITIVE
-        );
-        Matcher joinMatcher = joinPattern.matcher(sql);
-        while (joinMatcher.find()) {
-            columns.add(joinMatcher.group(1));
+        // alias.column followed by a comparison (=, <, >, IN, BETWEEN) covers
+        // both WHERE predicates and "ON alias.column = ..." join keys
+        for (int i = 0; i + 3 < tokens.size(); i++) {
+            if (isQualifiedColumn(tokens, i, alias) && isComparison(tokens, tokens.nextCode(i + 2))) {
+                columns.add(tokens.identifier(i + 2));
+            }
         }
         
         return columns;
@@ -191,33 +192,35 @@ public class MissingIndexAnalyzer {
     /**
      * Extract columns to include in covering index
      */
-    private Set<String> extractIncludeColumns(String sql, String tableName) {
+    private Set<String> extractIncludeColumns(TokenizedSql tokens, String alias) {
         Set<String> columns = new LinkedHashSet<>();
         
-        // Extract alias
-        Pattern aliasPattern = Pattern.compile(
-            tableName.replaceAll(".*\\.", "") + "\\s+(\\w+)",
-            Pattern.CASE_INSENSITIVE
-        );
-        Matcher aliasMatcher = aliasPattern.matcher(sql);
-        String alias = aliasMatcher.find() ? aliasMatcher.group(1) : "";
-        
         if (alias.isEmpty()) return columns;
         
-        // Find SELECT columns
-        Pattern selectPattern = Pattern.compile(
-            "\\b" + alias + "\\.(\\w+)",
-            Pattern.CASE_INSENSITIVE
-        );
-        Matcher selectMatcher = selectPattern.matcher(sql);
-        while (selectMatcher.find()) {
-            String col = selectMatcher.group(1);
-            // Skip if it's already a key column
-            columns.add(col);
+        // Every alias.column reference (SELECT list, GROUP BY, etc.)
+        for (int i = 0; i + 2 < tokens.size() && columns.size() < 6; i++) {
+            if (isQualifiedColumn(tokens, i, alias)) {
+                columns.add(tokens.identifier(i + 2));
+            }
         }
         
         // Limit to 5-6 most common columns to keep index reasonable
-        return columns.stream().limit(6).collect(LinkedHashSet::new, Set::add, Set::addAll);
+        return columns;
+    }
+    
+    private boolean isQualifiedColumn(TokenizedSql tokens, int i, String alias) {
+        return tokens.isIdentifier(i, alias)
+            && tokens.isPunctuation(i + 1, '.')
+            && tokens.isName(i + 2)
+            && (i == 0 || !tokens.isPunctuation(i - 1, '.'));
+    }
+    
+    private boolean isComparison(TokenizedSql tokens, int i) {
+        return tokens.isOperatorStartingWith(i, '=')
+            || tokens.isOperatorStartingWith(i, '<')
+            || tokens.isOperatorStartingWith(i, '>')
+            || tokens.isWord(i, "IN")
+            || tokens.isWord(i, "BETWEEN");
     }
     
     private String generateIndexName(String tableName, Set<String> keyColumns) {
@@ -2,9 +2,12 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -23,7 +26,7 @@ import java.util.regex.Pattern;
  * - String functions: SUBSTRING, LEFT, RIGHT, UPPER, LOWER
  */
 @Component
-public class NonSargableDetector {
+public class NonSargableDetector implements BiDetector {
     
     // Pattern 1: Date functions on columns
     private static final Pattern YEAR_PATTERN = Pattern.compile(
@@ -58,85 +61,116 @@ public class NonSargableDetector {
         Pattern.CASE_INSENSITIVE
     );
     
+    // Function names that can start any of the patterns above
+    private static final String[] FUNCTION_WORDS = {
+        "YEAR", "MONTH", "DATEPART", "ISNULL", "COALESCE",
+        "SUBSTRING", "LEFT", "RIGHT", "UPPER", "LOWER", "LTRIM", "RTRIM"
+    };
+    
+    @Override
+    public String name() {
+        return "NON_SARGABLE";
+    }
+
     /**
      * Detect all non-SARGABLE predicates in a query
      */
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    /**
+     * Detect all non-SARGABLE predicates using the shared token stream.
+     * Patterns only run on lines where the lexer saw the matching function name.
+     */
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
-        // Split query into lines for precise location tracking
-        String[] lines = sql.split("\n");
+        BitSet candidateLines = tokens.linesWithAnyWord(FUNCTION_WORDS);
         
-        // Check each line for non-SARGABLE patterns
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            int lineNumber = i + 1;
+        // Check each candidate line for non-SARGABLE patterns
+        for (int lineNumber = candidateLines.nextSetBit(0); lineNumber >= 0;
+             lineNumber = candidateLines.nextSetBit(lineNumber + 1)) {
+            BiDetector.stopIfInterrupted();
+            String code = tokens.codeLine(lineNumber);
+            String fragment = tokens.line(lineNumber).trim();
             
             // Check for YEAR() function
-            Matcher yearMatcher = YEAR_PATTERN.matcher(line);
-            if (yearMatcher.find()) {
-                bottlenecks.add(createYearFunctionBottleneck(
-                    yearMatcher.group(1),   // column name
-                    yearMatcher.group(2),   // year value
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "YEAR")) {
+                Matcher yearMatcher = YEAR_PATTERN.matcher(code);
+                if (yearMatcher.find()) {
+                    bottlenecks.add(createYearFunctionBottleneck(
+                        yearMatcher.group(1),   // column name
+                        yearMatcher.group(2),   // year value
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for MONTH() function
-            Matcher monthMatcher = MONTH_PATTERN.matcher(line);
-            if (monthMatcher.find()) {
-                bottlenecks.add(createMonthFunctionBottleneck(
-                    monthMatcher.group(1),
-                    monthMatcher.group(2),
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "MONTH")) {
+                Matcher monthMatcher = MONTH_PATTERN.matcher(code);
+                if (monthMatcher.find()) {
+                    bottlenecks.add(createMonthFunctionBottleneck(
+                        monthMatcher.group(1),
+                        monthMatcher.group(2),
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for DATEPART
-            Matcher datepartMatcher = DATEPART_PATTERN.matcher(line);
-            if (datepartMatcher.find()) {
-                bottlenecks.add(createDatePartBottleneck(
-                    datepartMatcher.group(1),
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "DATEPART")) {
+                Matcher datepartMatcher = DATEPART_PATTERN.matcher(code);
+                if (datepartMatcher.find()) {
+                    bottlenecks.add(createDatePartBottleneck(
+                        datepartMatcher.group(1),
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for COALESCE (common in their queries!)
-            Matcher coalesceMatcher = COALESCE_PATTERN.matcher(line);
-            if (coalesceMatcher.find()) {
-                bottlenecks.add(createCoalesceBottleneck(
-                    coalesceMatcher.group(1),
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "COALESCE")) {
+                Matcher coalesceMatcher = COALESCE_PATTERN.matcher(code);
+                if (coalesceMatcher.find()) {
+                    bottlenecks.add(createCoalesceBottleneck(
+                        coalesceMatcher.group(1),
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for ISNULL
-            Matcher isnullMatcher = ISNULL_PATTERN.matcher(line);
-            if (isnullMatcher.find()) {
-                bottlenecks.add(createIsnullBottleneck(
-                    isnullMatcher.group(1),
-                    lineNumber,
-                    line.trim(),
-                    executionPlan
-                ));
+            if (tokens.lineHasWord(lineNumber, "ISNULL")) {
+                Matcher isnullMatcher = ISNULL_PATTERN.matcher(code);
+                if (isnullMatcher.find()) {
+                    bottlenecks.add(createIsnullBottleneck(
+                        isnullMatcher.group(1),
+                        lineNumber,
+                        fragment,
+                        executionPlan
+                    ));
+                }
             }
             
             // Check for string functions
-            Matcher stringMatcher = STRING_FUNCTION_PATTERN.matcher(line);
+            Matcher stringMatcher = STRING_FUNCTION_PATTERN.matcher(code);
             if (stringMatcher.find()) {
                 bottlenecks.add(createStringFunctionBottleneck(
                     stringMatcher.group(1),  // function name
                     stringMatcher.group(2),  // column name
                     lineNumber,
-                    line.trim(),
+                    fragment,
                     executionPlan
                 ));
             }
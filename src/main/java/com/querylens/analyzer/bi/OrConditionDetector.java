@@ -2,9 +2,12 @@ package com.querylens.analyzer.bi;
 
 import com.querylens.analyzer.Bottleneck;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,7 +22,7 @@ import java.util.regex.Pattern;
  * These often force table scans even when indexes exist.
  */
 @Component
-public class OrConditionDetector {
+public class OrConditionDetector implements BiDetector {
     
     // Pattern 1: Simple OR between two columns
     // Matches: (account = X OR contact = Y)
@@ -41,49 +44,64 @@ public class OrConditionDetector {
         Pattern.CASE_INSENSITIVE | Pattern.DOTALL
     );
     
+    @Override
+    public String name() {
+        return "OR_CONDITION";
+    }
+
     public List<Bottleneck> detect(String sql, List<ExecutionPlanNode> executionPlan) {
+        return detect(SqlTokenizer.tokenize(sql), executionPlan);
+    }
+    
+    @Override
+    public List<Bottleneck> detect(TokenizedSql tokens, List<ExecutionPlanNode> executionPlan) {
         List<Bottleneck> bottlenecks = new ArrayList<>();
         
-        String[] lines = sql.split("\n");
+        // Only lines with an OR keyword can match the OR patterns
+        BitSet orLines = tokens.linesWithAnyWord("OR");
         
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            int lineNumber = i + 1;
+        for (int lineNumber = orLines.nextSetBit(0); lineNumber >= 0;
+             lineNumber = orLines.nextSetBit(lineNumber + 1)) {
+            BiDetector.stopIfInterrupted();
+            String code = tokens.codeLine(lineNumber);
+            String fragment = tokens.line(lineNumber).trim();
             
             // Check for simple OR pattern
-            Matcher simpleMatcher = SIMPLE_OR_PATTERN.matcher(line);
+            Matcher simpleMatcher = SIMPLE_OR_PATTERN.matcher(code);
             if (simpleMatcher.find()) {
                 bottlenecks.add(createSimpleOrBottleneck(
                     simpleMatcher.group(1),  // First column
                     simpleMatcher.group(2),  // Second column
                     lineNumber,
-                    line.trim(),
+                    fragment,
                     executionPlan
                 ));
             }
             
             // Check for complex OR
-            Matcher complexMatcher = COMPLEX_OR_PATTERN.matcher(line);
+            Matcher complexMatcher = COMPLEX_OR_PATTERN.matcher(code);
             if (complexMatcher.find()) {
                 bottlenecks.add(createComplexOrBottleneck(
                     lineNumber,
-                    line.trim(),
+                    fragment,
                     executionPlan
                 ));
             }
         }
         
         // Also check for COALESCE in WHERE (very common USC pattern!)
-        Matcher coalesceMatcher = COALESCE_EQUALS.matcher(sql);
-        if (coalesceMatcher.find()) {
-            int lineNum = findLineNumber(sql, coalesceMatcher.start());
-            bottlenecks.add(createCoalesceOrBottleneck(
-                coalesceMatcher.group(1),  // First column (account)
-                coalesceMatcher.group(2),  // Second column (contact)
-                lineNum,
-                sql.substring(coalesceMatcher.start(), Math.min(coalesceMatcher.end() + 50, sql.length())),
-                executionPlan
-            ));
+        if (tokens.containsWord("COALESCE") && tokens.containsWord("WHERE")) {
+            String sql = tokens.sql();
+            Matcher coalesceMatcher = COALESCE_EQUALS.matcher(tokens.codeText());
+            if (coalesceMatcher.find()) {
+                bottlenecks.add(createCoalesceOrBottleneck(
+                    coalesceMatcher.group(1),  // First column (account)
+                    coalesceMatcher.group(2),  // Second column (contact)
+                    tokens.lineOf(coalesceMatcher.start()),
+                    sql.substring(coalesceMatcher.start(), Math.min(coalesceMatcher.end() + 50, sql.length())),
+                    executionPlan
+                ));
+            }
         }
         
         return bottlenecks;
@@ -253,10 +271,6 @@ public class OrConditionDetector {
         return null;
     }
     
-    private int findLineNumber(String sql, int charPosition) {
-        return (int) sql.substring(0, charPosition).chars().filter(c -> c == '\n').count() + 1;
-    }
-    
     private String formatNumber(long num) {
         if (num >= 1_000_000) return String.format("%.1fM", num / 1_000_000.0);
         if (num >= 1_000) return String.format("%.1fK", num / 1_000.0);
@@ -55,7 +55,7 @@ public class ResultsFormatter {
     }
     
     private String formatHeader(BiAnalysisResult analysis) {
-        return String.format("""
+        String header = String.format("""
             ╔════════════════════════════════════════════════════════════════════════════╗
             ║  QueryLens BI Analysis                                                     ║
             ╚════════════════════════════════════════════════════════════════════════════╝
@@ -71,6 +71,10 @@ public class ResultsFormatter {
             analysis.getTotalImpactSeconds(),
             analysis.getPotentialImprovementPercent()
         );
+        if (analysis.isPartial()) {
+            header += "⚠️  Partial results: timed out: " + String.join(", ", analysis.getTimedOutDetectors()) + "\n";
+        }
+        return header;
     }
     
     private String formatSummary(BiAnalysisResult analysis) {
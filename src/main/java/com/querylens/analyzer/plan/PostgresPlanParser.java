@@ -0,0 +1,121 @@
+package com.querylens.analyzer.plan;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.querylens.analyzer.ExecutionPlanNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Streams PostgreSQL {@code EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON)} output into an
+ * {@link ExecutionPlanNode} tree.
+ *
+ * The JSON is read token by token rather than bound to a DOM, so large plans are
+ * parsed without building an intermediate object graph. Unknown properties are skipped.
+ *
+ * Mapping notes:
+ * - PostgreSQL reports actual rows and times per loop; nodes store totals across loops
+ * - Buffer counters are inclusive of child nodes, as reported by PostgreSQL
+ * - logicalReads = all hit + read blocks, physicalReads = read blocks
+ * - actualCost is the node's exclusive time (or exclusive estimated cost without ANALYZE),
+ *   which is what cost percentages are computed from
+ */
+public class PostgresPlanParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public QueryPlan parse(String json) {
+        QueryPlan plan = new QueryPlan();
+        plan.setRawOutput(json);
+
+        try (JsonParser parser = JSON.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                // EXPLAIN returns a one-element array; statements after the first are ignored
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Not an EXPLAIN (FORMAT JSON) document");
+            }
+            readStatement(parser, plan);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse EXPLAIN JSON", e);
+        }
+
+        if (plan.getRoot() == null) {
+            throw new IllegalArgumentException("EXPLAIN JSON contains no \"Plan\"");
+        }
+        plan.indexNodes();
+        return plan;
+    }
+
+    private void readStatement(JsonParser parser, QueryPlan plan) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "Plan" -> plan.setRoot(readNode(parser));
+                case "Planning Time" -> plan.setPlanningTimeMs(parser.getValueAsDouble());
+                case "Execution Time" -> {
+                    plan.setExecutionTimeMs(parser.getValueAsDouble());
+                    plan.setAnalyzed(true);
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private ExecutionPlanNode readNode(JsonParser parser) throws IOException {
+        ExecutionPlanNode node = new ExecutionPlanNode();
+        double actualTotalTime = 0;
+        long actualRows = 0;
+        long loops = 0;
+        String relation = null;
+        String schema = null;
+        String index = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "Node Type" -> node.setOperatorType(parser.getText());
+                case "Relation Name", "CTE Name", "Function Name" -> relation = parser.getText();
+                case "Schema" -> schema = parser.getText();
+                case "Index Name" -> index = parser.getText();
+                case "Total Cost" -> node.setEstimatedCost(parser.getValueAsDouble());
+                case "Plan Rows" -> node.setEstimatedRows(parser.getValueAsLong());
+                case "Actual Startup Time" -> node.setStartupTimeMs(parser.getValueAsDouble());
+                case "Actual Total Time" -> actualTotalTime = parser.getValueAsDouble();
+                case "Actual Rows" -> actualRows = parser.getValueAsLong();
+                case "Actual Loops" -> loops = parser.getValueAsLong();
+                case "Shared Hit Blocks" -> node.setSharedHitBlocks(parser.getValueAsLong());
+                case "Shared Read Blocks" -> node.setSharedReadBlocks(parser.getValueAsLong());
+                case "Local Hit Blocks" -> node.setLocalHitBlocks(parser.getValueAsLong());
+                case "Local Read Blocks" -> node.setLocalReadBlocks(parser.getValueAsLong());
+                case "Plans" -> {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        node.addChild(readNode(parser));
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (relation != null) {
+            node.setObjectName(schema != null ? schema + "." + relation : relation);
+        } else if (index != null) {
+            node.setObjectName(index);
+        }
+
+        // "Never executed" nodes report zero loops
+        node.setLoops(loops);
+        node.setActualRows(actualRows * loops);
+        node.setElapsedTimeMs(actualTotalTime * loops);
+        node.setLogicalReads(node.getSharedHitBlocks() + node.getSharedReadBlocks()
+            + node.getLocalHitBlocks() + node.getLocalReadBlocks());
+        node.setPhysicalReads(node.getSharedReadBlocks() + node.getLocalReadBlocks());
+        return node;
+    }
+}
@@ -0,0 +1,103 @@
+package com.querylens.analyzer.plan;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A captured execution plan: the operator tree plus statement-level timings.
+ *
+ * Captured once per request and shared by metrics, suggestions and rewrites.
+ * Built by {@link PostgresPlanParser} from {@code EXPLAIN (FORMAT JSON)} output and by
+ * {@link ShowplanXmlParser} from SQL Server showplan XML.
+ */
+@Data
+public class QueryPlan {
+
+    private ExecutionPlanNode root;
+    private List<ExecutionPlanNode> nodes = new ArrayList<>();  // Pre-order, root first
+
+    private double planningTimeMs;
+    private double executionTimeMs;
+    private boolean analyzed;             // true when actual timings/rows are present
+
+    private String rawOutput;             // The EXPLAIN output as returned by the database
+    private List<String> textLines;       // EXPLAIN text output, when captured as text (no tree)
+
+    /**
+     * Flatten the tree into {@link #getNodes()} and attribute cost to each node.
+     *
+     * Plan times and costs are inclusive of children; subtracting them gives each node
+     * only its own share (elapsed time when analyzed, estimated cost otherwise), which is
+     * then categorized against the plan total.
+     */
+    void indexNodes() {
+        nodes.clear();
+        collect(root);
+
+        double total = 0;
+        for (ExecutionPlanNode node : nodes) {
+            double own = analyzed ? node.getElapsedTimeMs() : node.getEstimatedCost();
+            for (ExecutionPlanNode child : node.getChildren()) {
+                own -= analyzed ? child.getElapsedTimeMs() : child.getEstimatedCost();
+            }
+            node.setActualCost(Math.max(0, own));
+            total += node.getActualCost();
+        }
+        for (ExecutionPlanNode node : nodes) {
+            node.calculateCostPercentage(total);
+        }
+    }
+
+    private void collect(ExecutionPlanNode node) {
+        nodes.add(node);
+        for (ExecutionPlanNode child : node.getChildren()) {
+            collect(child);
+        }
+    }
+
+    /**
+     * Render the tree in the same one-line-per-node shape as {@code EXPLAIN ANALYZE}
+     * text output, so pattern detectors written against text plans keep working.
+     * Plans captured as text return the original lines.
+     */
+    public List<String> toTextLines() {
+        if (textLines != null) {
+            return textLines;
+        }
+        List<String> lines = new ArrayList<>();
+        if (root != null) {
+            render(root, 0, lines);
+        }
+        if (analyzed) {
+            lines.add(String.format(Locale.ROOT, "Planning Time: %.3f ms", planningTimeMs));
+            lines.add(String.format(Locale.ROOT, "Execution Time: %.3f ms", executionTimeMs));
+        }
+        return lines;
+    }
+
+    private void render(ExecutionPlanNode node, int depth, List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        if (depth > 0) {
+            sb.append(" ".repeat(depth * 6 - 4)).append("->  ");
+        }
+        sb.append(node.getOperatorType());
+        if (node.getObjectName() != null) {
+            sb.append(" on ").append(node.getObjectName());
+        }
+        sb.append(String.format(Locale.ROOT, "  (cost=%.2f rows=%d)", node.getEstimatedCost(), node.getEstimatedRows()));
+        if (analyzed) {
+            long loops = Math.max(1, node.getLoops());
+            sb.append(String.format(Locale.ROOT, " (actual time=%.3f..%.3f rows=%d loops=%d)",
+                node.getStartupTimeMs(), node.getElapsedTimeMs() / loops,
+                node.getActualRows() / loops, node.getLoops()));
+        }
+        lines.add(sb.toString());
+        for (ExecutionPlanNode child : node.getChildren()) {
+            render(child, depth + 1, lines);
+        }
+    }
+}
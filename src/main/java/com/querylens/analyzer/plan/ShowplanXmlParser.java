@@ -0,0 +1,211 @@
+package com.querylens.analyzer.plan;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streams SQL Server showplan XML (.sqlplan, SET STATISTICS XML, Query Store) into an
+ * {@link ExecutionPlanNode} tree.
+ *
+ * Uses a StAX cursor so only the open RelOp path is held in memory, never a DOM.
+ * That keeps multi-hundred-MB actual plans within a small heap.
+ *
+ * Mapping notes:
+ * - Each StmtSimple becomes a node (operator = statement type) with its top RelOp as child;
+ *   a batch with several statements gets a synthetic "Batch" root
+ * - RunTimeCountersPerThread are summed across threads (rows, executions, reads, CPU);
+ *   elapsed time is the slowest thread
+ * - physicalReads = physical + read-ahead reads
+ * - actualCost is the node's exclusive elapsed time (or exclusive estimated subtree cost
+ *   for estimated-only plans), which is what cost percentages are computed from
+ */
+public class ShowplanXmlParser {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    public QueryPlan parse(String xml) {
+        return parse(new StringReader(xml));
+    }
+
+    public QueryPlan parse(Reader xml) {
+        try {
+            return read(FACTORY.createXMLStreamReader(xml));
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid showplan XML: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parse an uploaded document. The parser reads the encoding from the BOM / XML
+     * declaration, since saved .sqlplan files are often UTF-16.
+     */
+    public QueryPlan parse(InputStream xml) {
+        try {
+            return read(FACTORY.createXMLStreamReader(xml));
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid showplan XML: " + e.getMessage(), e);
+        }
+    }
+
+    private QueryPlan read(XMLStreamReader reader) throws XMLStreamException {
+        QueryPlan plan = new QueryPlan();
+        ExecutionPlanNode batch = new ExecutionPlanNode();
+        batch.setOperatorType("Batch");
+
+        Deque<ExecutionPlanNode> open = new ArrayDeque<>();  // statement + RelOp path
+        ExecutionPlanNode statement = null;
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "StmtSimple" -> {
+                            statement = readStatement(reader);
+                            batch.addChild(statement);
+                            open.push(statement);
+                        }
+                        case "RelOp" -> {
+                            ExecutionPlanNode node = readRelOp(reader);
+                            ExecutionPlanNode parent = open.isEmpty() ? batch : open.peek();
+                            parent.addChild(node);
+                            open.push(node);
+                        }
+                        case "RunTimeCountersPerThread" -> {
+                            if (!open.isEmpty()) {
+                                addRuntimeCounters(reader, open.peek());
+                                plan.setAnalyzed(true);
+                            }
+                        }
+                        case "Object" -> {
+                            if (!open.isEmpty() && open.peek() != statement
+                                    && open.peek().getObjectName() == null) {
+                                open.peek().setObjectName(objectName(reader));
+                            }
+                        }
+                        case "QueryTimeStats" -> {
+                            if (statement != null) {
+                                double elapsed = doubleAttr(reader, "ElapsedTime");
+                                statement.setElapsedTimeMs(elapsed);
+                                statement.setCpuTimeMs(doubleAttr(reader, "CpuTime"));
+                                plan.setExecutionTimeMs(plan.getExecutionTimeMs() + elapsed);
+                            }
+                        }
+                        case "QueryPlan" -> {
+                            if (statement != null) {
+                                plan.setPlanningTimeMs(plan.getPlanningTimeMs()
+                                    + doubleAttr(reader, "CompileTime"));
+                            }
+                        }
+                        default -> { }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("RelOp") || name.equals("StmtSimple")) {
+                        open.pop();
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (batch.getChildren().isEmpty()) {
+            throw new IllegalArgumentException("Showplan XML contains no statements");
+        }
+        ExecutionPlanNode root = batch.getChildren().size() == 1 ? batch.getChildren().get(0) : batch;
+        root.setParent(null);
+        plan.setRoot(root);
+        plan.indexNodes();
+        return plan;
+    }
+
+    private ExecutionPlanNode readStatement(XMLStreamReader reader) {
+        ExecutionPlanNode node = new ExecutionPlanNode();
+        String type = reader.getAttributeValue(null, "StatementType");
+        node.setOperatorType(type != null ? type : "Statement");
+        node.setEstimatedCost(doubleAttr(reader, "StatementSubTreeCost"));
+        node.setEstimatedRows(Math.round(doubleAttr(reader, "StatementEstRows")));
+        node.setQueryFragment(reader.getAttributeValue(null, "StatementText"));
+        return node;
+    }
+
+    private ExecutionPlanNode readRelOp(XMLStreamReader reader) {
+        ExecutionPlanNode node = new ExecutionPlanNode();
+        String physical = reader.getAttributeValue(null, "PhysicalOp");
+        String logical = reader.getAttributeValue(null, "LogicalOp");
+        node.setOperatorType(logical == null || logical.equals(physical)
+            ? physical
+            : physical + " (" + logical + ")");
+        node.setEstimatedCost(doubleAttr(reader, "EstimatedTotalSubtreeCost"));
+        node.setEstimatedRows(Math.round(doubleAttr(reader, "EstimateRows")));
+        return node;
+    }
+
+    private void addRuntimeCounters(XMLStreamReader reader, ExecutionPlanNode node) {
+        node.setActualRows(node.getActualRows() + longAttr(reader, "ActualRows"));
+        node.setLoops(node.getLoops() + longAttr(reader, "ActualExecutions"));
+        node.setLogicalReads(node.getLogicalReads() + longAttr(reader, "ActualLogicalReads"));
+        node.setPhysicalReads(node.getPhysicalReads()
+            + longAttr(reader, "ActualPhysicalReads") + longAttr(reader, "ActualReadAheads"));
+        node.setCpuTimeMs(node.getCpuTimeMs() + doubleAttr(reader, "ActualCPUms"));
+        node.setElapsedTimeMs(Math.max(node.getElapsedTimeMs(), doubleAttr(reader, "ActualElapsedms")));
+    }
+
+    /** Database.Schema.Table with the [brackets] stripped, as written in queries */
+    private String objectName(XMLStreamReader reader) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : new String[] {"Database", "Schema", "Table"}) {
+            String value = reader.getAttributeValue(null, part);
+            if (value != null) {
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                sb.append(unquote(value));
+            }
+        }
+        if (sb.length() == 0) {
+            String index = reader.getAttributeValue(null, "Index");
+            return index != null ? unquote(index) : null;
+        }
+        return sb.toString();
+    }
+
+    private static String unquote(String name) {
+        return name.startsWith("[") && name.endsWith("]") ? name.substring(1, name.length() - 1) : name;
+    }
+
+    private static double doubleAttr(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long longAttr(XMLStreamReader reader, String name) {
+        return Math.round(doubleAttr(reader, name));
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Plans come from clients; never resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+}
@@ -0,0 +1,13 @@
+package com.querylens.analyzer.regression;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** plan_baselines could not be read, so whether a baseline exists is unknown */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BaselineUnavailableException extends RuntimeException {
+
+    public BaselineUnavailableException(String target, String queryHash, Throwable cause) {
+        super("Could not load plan baseline " + target + "/" + queryHash, cause);
+    }
+}
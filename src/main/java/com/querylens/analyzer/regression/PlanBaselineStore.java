@@ -0,0 +1,123 @@
+package com.querylens.analyzer.regression;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Known-good plan signature per target and query fingerprint, plus the latest regressed
+ * plan (the candidate) so it can be accepted as the new baseline. The same query can
+ * plan differently on each target, so baselines never cross targets.
+ *
+ * Baselines are cached in memory and persisted to plan_baselines so they survive
+ * restarts. A failed read is not cached: the next lookup tries the table again, so an
+ * outage never passes for "no baseline". A failed write keeps the baseline in memory
+ * only; with querylens.regression.persist=false the table is not used at all.
+ * Candidates are never persisted.
+ */
+@Component
+public class PlanBaselineStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanBaselineStore.class);
+
+    private static final String SELECT =
+        "SELECT signature FROM plan_baselines WHERE database_context = ? AND query_hash = ?";
+
+    private static final String UPSERT = """
+        INSERT INTO plan_baselines (database_context, query_hash, signature, captured_at)
+        VALUES (?, ?, CAST(? AS jsonb), CURRENT_TIMESTAMP)
+        ON CONFLICT (database_context, query_hash)
+        DO UPDATE SET signature = EXCLUDED.signature, captured_at = EXCLUDED.captured_at
+        """;
+
+    /** @param target {@link com.querylens.target.TargetContext#name()} */
+    record Key(String target, String queryHash) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final boolean persist;
+    // Optional.empty() caches "no baseline in the table" so unknown queries cost one lookup
+    private final Cache<Key, Optional<PlanSignature>> baselines;
+    private final Cache<Key, PlanSignature> candidates;
+
+    public PlanBaselineStore(
+            @Value("${querylens.regression.persist:true}") boolean persist,
+            @Value("${querylens.regression.max-baselines:10000}") long maxBaselines) {
+        this.persist = persist;
+        this.baselines = Caffeine.newBuilder().maximumSize(maxBaselines).build();
+        this.candidates = Caffeine.newBuilder().maximumSize(maxBaselines).build();
+    }
+
+    /**
+     * The known-good plan of a fingerprint on a target, or null when none was seen yet
+     *
+     * @throws BaselineUnavailableException when plan_baselines could not be read
+     */
+    public PlanSignature baseline(String target, String queryHash) {
+        return baselines.get(new Key(target, queryHash), this::load).orElse(null);
+    }
+
+    public void saveBaseline(String target, String queryHash, PlanSignature signature) {
+        Key key = new Key(target, queryHash);
+        baselines.put(key, Optional.of(signature));
+        candidates.invalidate(key);
+        if (!persist) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(UPSERT, target, queryHash, mapper.writeValueAsString(signature));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.debug("Could not persist plan baseline {}/{}: {}", target, queryHash, e.getMessage());
+        }
+    }
+
+    /** The latest plan that regressed against the baseline, or null */
+    public PlanSignature candidate(String target, String queryHash) {
+        return candidates.getIfPresent(new Key(target, queryHash));
+    }
+
+    public void saveCandidate(String target, String queryHash, PlanSignature signature) {
+        candidates.put(new Key(target, queryHash), signature);
+    }
+
+    /**
+     * Make the latest regressed plan the baseline.
+     *
+     * @return false when there is no candidate for the fingerprint
+     */
+    public boolean acceptCandidate(String target, String queryHash) {
+        PlanSignature candidate = candidate(target, queryHash);
+        if (candidate == null) {
+            return false;
+        }
+        saveBaseline(target, queryHash, candidate);
+        return true;
+    }
+
+    private Optional<PlanSignature> load(Key key) {
+        if (!persist) {
+            return Optional.empty();
+        }
+        try {
+            List<String> rows = jdbcTemplate.queryForList(SELECT, String.class, key.target(), key.queryHash());
+            return rows.isEmpty()
+                ? Optional.empty()
+                : Optional.of(mapper.readValue(rows.get(0), PlanSignature.class));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Thrown rather than cached, so the lookup is retried
+            throw new BaselineUnavailableException(key.target(), key.queryHash(), e);
+        }
+    }
+}
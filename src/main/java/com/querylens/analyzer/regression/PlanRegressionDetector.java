@@ -0,0 +1,287 @@
+package com.querylens.analyzer.regression;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.regression.PlanSignature.Node;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Diffs a plan against the known-good baseline of the same query fingerprint and
+ * reports what got worse as {@link IssueType#PLAN_REGRESSION} bottlenecks:
+ * - an object's access path was downgraded (Index Seek to Index Scan, index to full scan)
+ * - a Nested Loop now runs over a large outer input
+ * - row estimates are off by more than {@code misestimateRatio} (actual vs estimated when
+ *   the plan was executed, baseline vs current otherwise), the usual trigger for a flip
+ * - the join order changed
+ *
+ * Plans with the baseline's shape are never reported.
+ *
+ * Problem descriptions name only operators and objects: they become query_patterns
+ * signatures, so the same regression must always read the same. Row counts and join
+ * orders go in whyItsASlow.
+ */
+public class PlanRegressionDetector {
+
+    private static final int FULL_SCAN = 1;
+    private static final int MAX_MISESTIMATES = 3;
+
+    private final long nestedLoopOuterRows;
+    private final double misestimateRatio;
+
+    /**
+     * @param nestedLoopOuterRows outer inputs at least this large make a Nested Loop suspect
+     * @param misestimateRatio    estimate errors beyond this factor are reported
+     */
+    public PlanRegressionDetector(long nestedLoopOuterRows, double misestimateRatio) {
+        this.nestedLoopOuterRows = nestedLoopOuterRows;
+        this.misestimateRatio = misestimateRatio;
+    }
+
+    /**
+     * @param nodes the plan {@code current} was built from, in the same order
+     */
+    public List<Bottleneck> detect(PlanSignature baseline, PlanSignature current, List<ExecutionPlanNode> nodes) {
+        List<Bottleneck> regressions = new ArrayList<>();
+        if (baseline == null || baseline.sameShape(current)) {
+            return regressions;
+        }
+        detectAccessPathDowngrades(baseline, current, nodes, regressions);
+        detectNestedLoops(baseline, current, nodes, regressions);
+        detectMisestimates(baseline, current, nodes, regressions);
+        detectJoinOrderChange(baseline, current, nodes, regressions);
+        regressions.forEach(b -> b.addFix("If the new plan is expected (new index, data growth), accept it as the baseline"));
+        return regressions;
+    }
+
+    /**
+     * 3 = seek (Index Seek, Index Only Scan), 2 = index range/bitmap scan,
+     * 1 = full scan (Seq Scan, Table Scan, Clustered Index Scan), 0 = not an access path
+     */
+    static int accessRank(String operator) {
+        if (operator == null) {
+            return 0;
+        }
+        if (operator.contains("Seek") || operator.equals("Index Only Scan")) {
+            return 3;
+        }
+        if (operator.contains("Clustered Index Scan") || operator.contains("Seq Scan") || operator.contains("Table Scan")) {
+            return FULL_SCAN;
+        }
+        if (operator.contains("Index Scan") || operator.startsWith("Bitmap")) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private void detectAccessPathDowngrades(PlanSignature baseline, PlanSignature current,
+                                            List<ExecutionPlanNode> nodes, List<Bottleneck> out) {
+        Map<String, Integer> baselineWorst = worstAccessByObject(baseline.nodes());
+        Map<String, Integer> currentWorst = worstAccessByObject(current.nodes());
+
+        for (Map.Entry<String, Integer> e : currentWorst.entrySet()) {
+            Integer before = baselineWorst.get(e.getKey());
+            int after = accessRank(current.nodes().get(e.getValue()).operator());
+            if (before == null || after >= accessRank(baseline.nodes().get(before).operator())) {
+                continue;
+            }
+            Node was = baseline.nodes().get(before);
+            ExecutionPlanNode node = nodes.get(e.getValue());
+            Bottleneck b = regression(node, after == FULL_SCAN ? Severity.CRITICAL : Severity.WARNING);
+            b.setProblemDescription(String.format("Access to %s changed from %s to %s since the baseline plan",
+                e.getKey(), was.operator(), node.getOperatorType()));
+            b.setWhyItsASlow(after == FULL_SCAN
+                ? "Every row of the table is now read instead of only the matching ones."
+                : "The index is now scanned in full (or through a bitmap) instead of being seeked to the matching rows.");
+            b.addFix("Refresh statistics on " + e.getKey() + " (ANALYZE / UPDATE STATISTICS) and re-check the plan");
+            b.addFix("Check that the index used by the baseline plan still exists and is valid");
+            out.add(b);
+        }
+    }
+
+    /** Object -> index of its worst access operator */
+    private static Map<String, Integer> worstAccessByObject(List<Node> nodes) {
+        Map<String, Integer> worst = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            int rank = accessRank(n.operator());
+            if (rank == 0 || n.object() == null) {
+                continue;
+            }
+            Integer prev = worst.get(n.object());
+            if (prev == null || rank < accessRank(nodes.get(prev).operator())) {
+                worst.put(n.object(), i);
+            }
+        }
+        return worst;
+    }
+
+    private void detectNestedLoops(PlanSignature baseline, PlanSignature current,
+                                   List<ExecutionPlanNode> nodes, List<Bottleneck> out) {
+        List<String> baselineLargeLoops = new ArrayList<>();
+        for (int i = 0; i < baseline.nodes().size(); i++) {
+            if (isNestedLoop(baseline.nodes().get(i)) && outerRows(baseline.nodes(), i, null) >= nestedLoopOuterRows) {
+                baselineLargeLoops.add(subtreeObjects(baseline.nodes(), i));
+            }
+        }
+        for (int i = 0; i < current.nodes().size(); i++) {
+            if (!isNestedLoop(current.nodes().get(i))) {
+                continue;
+            }
+            long outer = outerRows(current.nodes(), i, nodes);
+            String objects = subtreeObjects(current.nodes(), i);
+            if (outer < nestedLoopOuterRows || baselineLargeLoops.contains(objects)) {
+                continue;
+            }
+            Bottleneck b = regression(nodes.get(i), Severity.CRITICAL);
+            b.setExecutionCount(outer);
+            b.setProblemDescription(String.format("New %s over a large outer input since the baseline plan",
+                nodes.get(i).getOperatorType()));
+            b.setWhyItsASlow(String.format("The inner side runs once per outer row, %,d times here (%s); "
+                + "the baseline plan did not loop over an input this large.", outer, objects));
+            b.addFix("Refresh statistics on the outer input's tables; an underestimate usually makes the planner pick Nested Loops");
+            b.addFix("Check for a missing join index or predicate that let the baseline plan use a hash or merge join");
+            out.add(b);
+        }
+    }
+
+    private void detectMisestimates(PlanSignature baseline, PlanSignature current,
+                                    List<ExecutionPlanNode> nodes, List<Bottleneck> out) {
+        List<Bottleneck> found = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            ExecutionPlanNode node = nodes.get(i);
+            if (node.getLoops() <= 0) {
+                continue;   // Not executed (or estimate-only plan)
+            }
+            long estimated = current.nodes().get(i).estimatedRows() * node.getLoops();
+            double ratio = ratio(estimated, node.getActualRows());
+            if (ratio > misestimateRatio) {
+                Bottleneck b = regression(node, Severity.WARNING);
+                b.setProblemDescription(String.format("Row estimate for %s is off by more than %.0fx",
+                    node.getDescription(), misestimateRatio));
+                b.setWhyItsASlow(String.format("Estimated %,d rows but produced %,d (%.0fx off). The planner chose this plan "
+                    + "for a row count it got wrong; bad estimates are the usual cause of plan flips.",
+                    estimated, node.getActualRows(), ratio));
+                b.addFix("Refresh statistics" + (node.getObjectName() != null ? " on " + node.getObjectName() : "")
+                    + "; for correlated columns consider extended statistics (CREATE STATISTICS)");
+                found.add(b);
+            }
+        }
+
+        // Without actuals, compare the estimates with the baseline's for the same objects
+        if (found.isEmpty()) {
+            Map<String, Node> baselineByObject = firstByObject(baseline.nodes());
+            Map<String, Node> currentByObject = firstByObject(current.nodes());
+            for (Map.Entry<String, Node> e : currentByObject.entrySet()) {
+                Node was = baselineByObject.get(e.getKey());
+                if (was == null) {
+                    continue;
+                }
+                double ratio = ratio(was.estimatedRows(), e.getValue().estimatedRows());
+                if (ratio > misestimateRatio) {
+                    ExecutionPlanNode node = nodes.get(current.nodes().indexOf(e.getValue()));
+                    Bottleneck b = regression(node, Severity.INFO);
+                    b.setProblemDescription(String.format("Row estimate for %s moved more than %.0fx since the baseline plan",
+                        e.getKey(), misestimateRatio));
+                    b.setWhyItsASlow(String.format("The estimate moved from %,d to %,d rows. A statistics refresh changed "
+                        + "the planner's view of this table, which can flip the plan.",
+                        was.estimatedRows(), e.getValue().estimatedRows()));
+                    b.addFix("Compare the table's statistics with the data (ANALYZE, or raise the statistics target)");
+                    found.add(b);
+                }
+            }
+        }
+
+        found.stream()
+            .sorted(Comparator.comparingDouble(Bottleneck::getCostPercentage).reversed())
+            .limit(MAX_MISESTIMATES)
+            .forEach(out::add);
+    }
+
+    private void detectJoinOrderChange(PlanSignature baseline, PlanSignature current,
+                                       List<ExecutionPlanNode> nodes, List<Bottleneck> out) {
+        List<String> before = accessOrder(baseline.nodes());
+        List<String> after = accessOrder(current.nodes());
+        if (before.equals(after) || !new TreeSet<>(before).equals(new TreeSet<>(after))) {
+            return;
+        }
+        ExecutionPlanNode root = nodes.isEmpty() ? new ExecutionPlanNode() : nodes.get(0);
+        Bottleneck b = regression(root, Severity.INFO);
+        b.setProblemDescription("Join order changed since the baseline plan");
+        b.setWhyItsASlow("Tables are now read in the order " + String.join(", ", after) + " instead of "
+            + String.join(", ", before) + ", changing intermediate result sizes.");
+        b.addFix("Compare the intermediate row counts of both plans; refresh statistics on the tables that moved");
+        out.add(b);
+    }
+
+    private static boolean isNestedLoop(Node n) {
+        return n.operator() != null && n.operator().startsWith("Nested Loop");
+    }
+
+    /**
+     * Rows from the first child of the join at {@code index}: actual rows when the plan
+     * was executed, estimated otherwise.
+     */
+    private static long outerRows(List<Node> signature, int index, List<ExecutionPlanNode> nodes) {
+        int outer = index + 1;
+        if (outer >= signature.size() || signature.get(outer).depth() != signature.get(index).depth() + 1) {
+            return 0;
+        }
+        if (nodes != null && nodes.get(outer).getLoops() > 0) {
+            return nodes.get(outer).getActualRows();
+        }
+        return signature.get(outer).estimatedRows();
+    }
+
+    /** Sorted objects under the node at {@code index}, identifying a join independent of its order */
+    private static String subtreeObjects(List<Node> signature, int index) {
+        TreeSet<String> objects = new TreeSet<>();
+        int depth = signature.get(index).depth();
+        for (int i = index + 1; i < signature.size() && signature.get(i).depth() > depth; i++) {
+            if (signature.get(i).object() != null) {
+                objects.add(signature.get(i).object());
+            }
+        }
+        return String.join(", ", objects);
+    }
+
+    private static List<String> accessOrder(List<Node> nodes) {
+        List<String> order = new ArrayList<>();
+        for (Node n : nodes) {
+            if (accessRank(n.operator()) > 0 && n.object() != null && !order.contains(n.object())) {
+                order.add(n.object());
+            }
+        }
+        return order;
+    }
+
+    private static Map<String, Node> firstByObject(List<Node> nodes) {
+        Map<String, Node> first = new HashMap<>();
+        for (Node n : nodes) {
+            if (n.object() != null && accessRank(n.operator()) > 0) {
+                first.putIfAbsent(n.object(), n);
+            }
+        }
+        return first;
+    }
+
+    private static double ratio(long a, long b) {
+        long low = Math.max(1, Math.min(a, b));
+        return (double) Math.max(a, b) / low;
+    }
+
+    private static Bottleneck regression(ExecutionPlanNode node, Severity severity) {
+        Bottleneck b = Bottleneck.fromNode(node);
+        b.setIssueType(IssueType.PLAN_REGRESSION);
+        b.setSeverity(severity);
+        b.setExpectedImprovement("Back to the baseline plan's performance");
+        return b;
+    }
+}
@@ -0,0 +1,91 @@
+package com.querylens.analyzer.regression;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.target.TargetContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Checks each analyzed plan against the known-good plan of its query fingerprint on the
+ * same target ({@link TargetContext#name()}).
+ *
+ * The first plan seen for a fingerprint becomes its baseline. A later plan with a
+ * different shape replaces the baseline when nothing worse than INFO is found;
+ * otherwise it is kept as the candidate until {@link #accept(String)} is called, so
+ * one bad plan cannot hide the next regression. When the baseline cannot be read the
+ * plan is not checked, and it is not saved either, so it cannot overwrite the persisted
+ * known-good plan.
+ */
+@Service
+public class PlanRegressionService {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanRegressionService.class);
+
+    @Autowired
+    private PlanBaselineStore store;
+
+    private final PlanRegressionDetector detector;
+
+    public PlanRegressionService(
+            @Value("${querylens.regression.nested-loop-outer-rows:10000}") long nestedLoopOuterRows,
+            @Value("${querylens.regression.misestimate-ratio:10}") double misestimateRatio) {
+        this.detector = new PlanRegressionDetector(nestedLoopOuterRows, misestimateRatio);
+    }
+
+    /**
+     * @param queryHash {@link com.querylens.analyzer.QueryFingerprint#hash()}
+     * @param nodes     the plan, pre-order
+     * @return PLAN_REGRESSION findings, empty when the plan is no worse than the baseline
+     */
+    public List<Bottleneck> check(String queryHash, List<ExecutionPlanNode> nodes) {
+        if (nodes.isEmpty()) {
+            return List.of();
+        }
+        String target = TargetContext.name();
+        PlanSignature current = PlanSignature.of(nodes);
+        PlanSignature baseline;
+        try {
+            baseline = store.baseline(target, queryHash);
+        } catch (BaselineUnavailableException e) {
+            log.debug("Skipping plan regression check: {}", e.getMessage());
+            return List.of();
+        }
+        if (baseline == null) {
+            store.saveBaseline(target, queryHash, current);
+            return List.of();
+        }
+        if (baseline.sameShape(current)) {
+            return List.of();
+        }
+
+        List<Bottleneck> regressions = detector.detect(baseline, current, nodes);
+        if (regressions.stream().allMatch(b -> b.getSeverity() == Severity.INFO)) {
+            store.saveBaseline(target, queryHash, current);
+        } else {
+            store.saveCandidate(target, queryHash, current);
+        }
+        return regressions;
+    }
+
+    /**
+     * Accept the latest regressed plan as the new baseline (e.g. after adding an index
+     * that legitimately changed it).
+     *
+     * @param target {@link com.querylens.target.TargetRegistry#normalize normalized} target name
+     * @return false when no regressed plan is pending for the fingerprint on that target
+     */
+    public boolean accept(String target, String queryHash) {
+        return store.acceptCandidate(target, queryHash);
+    }
+
+    public PlanSignature baseline(String target, String queryHash) {
+        return store.baseline(target, queryHash);
+    }
+}
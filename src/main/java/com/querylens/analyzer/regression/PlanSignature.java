@@ -0,0 +1,60 @@
+package com.querylens.analyzer.regression;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural summary of a plan, small enough to keep one per query fingerprint: the
+ * operator tree in pre-order with each operator's depth, object (table or index) and
+ * estimated rows.
+ *
+ * {@link #shapeHash()} covers operators, objects and tree shape (so scan types and join
+ * order), not row counts, which move with every statistics refresh.
+ *
+ * @param nodes     pre-order, roots first
+ * @param shapeHash SHA-256 over depth, operator and object of every node
+ */
+public record PlanSignature(List<Node> nodes, String shapeHash) {
+
+    /**
+     * @param estimatedRows planner estimate per execution of the operator
+     */
+    public record Node(int depth, String operator, String object, long estimatedRows) {}
+
+    /** Build from a pre-ordered node list ({@link com.querylens.analyzer.plan.QueryPlan#getNodes()}) */
+    public static PlanSignature of(List<ExecutionPlanNode> planNodes) {
+        Map<ExecutionPlanNode, Integer> depths = new IdentityHashMap<>();
+        List<Node> nodes = new ArrayList<>(planNodes.size());
+        StringBuilder shape = new StringBuilder();
+        for (ExecutionPlanNode n : planNodes) {
+            Integer parentDepth = n.getParent() != null ? depths.get(n.getParent()) : null;
+            int depth = parentDepth != null ? parentDepth + 1 : 0;
+            depths.put(n, depth);
+            nodes.add(new Node(depth, n.getOperatorType(), n.getObjectName(), n.getEstimatedRows()));
+            shape.append(depth).append('|').append(n.getOperatorType())
+                .append('|').append(n.getObjectName()).append(';');
+        }
+        return new PlanSignature(List.copyOf(nodes), sha256(shape.toString()));
+    }
+
+    public boolean sameShape(PlanSignature other) {
+        return other != null && shapeHash.equals(other.shapeHash);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.querylens.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.dto.AnalysisResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded in-process cache of analysis results.
+ *
+ * Entries are keyed by {@link Key}: the query fingerprint plus the hash of the plan
+ * shape, so a query whose plan changes (new index, new statistics) is re-analyzed.
+ * Caffeine's W-TinyLFU policy keeps the frequently resubmitted report queries resident
+ * and entries expire after a fixed TTL.
+ *
+ * /analyze responses do not depend on the literals, so a report query resubmitted with
+ * new dates is a hit. BI results do: their findings quote and rewrite the literals (a
+ * YEAR() filter becomes a date range for that year), so they are also keyed by the
+ * literals and only repeats of the exact query hit.
+ *
+ * Hit, miss and eviction counts are published as cache_* meters
+ * (cache="bi-results" and cache="analyze-responses").
+ */
+@Component
+public class AnalysisCache implements MeterBinder {
+
+    /**
+     * @param fingerprint {@link com.querylens.analyzer.QueryFingerprint#hash()}
+     * @param planHash    {@link com.querylens.analyzer.QueryFingerprint#planHash}
+     * @param variant     anything else the cached value depends on
+     */
+    public record Key(String fingerprint, String planHash, String variant) {}
+
+    private final boolean enabled;
+    private final Cache<Key, BiAnalysisResult> biResults;
+    private final Cache<Key, AnalysisResponse> analyzeResponses;
+
+    public AnalysisCache(
+            @Value("${querylens.cache.enabled:true}") boolean enabled,
+            @Value("${querylens.cache.max-size:1000}") long maxSize,
+            @Value("${querylens.cache.ttl:30m}") Duration ttl) {
+        this.enabled = enabled;
+        this.biResults = build(maxSize, ttl);
+        this.analyzeResponses = build(maxSize, ttl);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public BiAnalysisResult getBiResult(Key key) {
+        return enabled ? biResults.getIfPresent(key) : null;
+    }
+
+    /** Partial results (a detector timed out) are not cached */
+    public void putBiResult(Key key, BiAnalysisResult result) {
+        if (enabled && !result.isPartial()) {
+            biResults.put(key, result);
+        }
+    }
+
+    public AnalysisResponse getAnalysis(Key key) {
+        return enabled ? analyzeResponses.getIfPresent(key) : null;
+    }
+
+    public void putAnalysis(Key key, AnalysisResponse response) {
+        if (enabled) {
+            analyzeResponses.put(key, response);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, biResults, "bi-results");
+        CaffeineCacheMetrics.monitor(registry, analyzeResponses, "analyze-responses");
+    }
+
+    public void invalidateAll() {
+        biResults.invalidateAll();
+        analyzeResponses.invalidateAll();
+    }
+
+    private static <V> Cache<Key, V> build(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.querylens.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for /analyze, BI and batch analysis.
+ */
+@Configuration
+public class BiAnalysisConfig {
+
+    /**
+     * Detectors are CPU-bound (regex and token scans over the whole query), so they get
+     * one platform thread per core. Virtual threads are not time-sliced: on them, a few
+     * long-running detectors would occupy every carrier thread and stall request handling.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService biDetectorExecutor() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            Thread.ofPlatform().name("bi-detector-", 0).daemon().factory());
+    }
+
+    /**
+     * Batch statements spend most of their time waiting on EXPLAIN; concurrency is
+     * bounded by querylens.batch.concurrency, not by the executor.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService batchAnalysisExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * /analyze requests run here, off the servlet thread, so the request can be
+     * cancelled when its client goes away (see QueryAnalyzerController).
+     *
+     * One virtual thread per request by default. querylens.analyze.platform-threads > 0
+     * runs them on a pool of that many platform threads instead, each blocked for the
+     * whole EXPLAIN ANALYZE: the thread-per-request baseline of AnalyzeLoadTest.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService analyzeExecutor(@Value("${querylens.analyze.platform-threads:0}") int platformThreads) {
+        if (platformThreads > 0) {
+            return Executors.newFixedThreadPool(platformThreads,
+                Thread.ofPlatform().name("analyze-", 0).daemon().factory());
+        }
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
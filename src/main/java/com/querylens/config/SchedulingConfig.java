@@ -0,0 +1,13 @@
+package com.querylens.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled background jobs (the pg_stat_statements harvester, idle target pools,
+ * SSE heartbeats for analysis jobs).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,13 @@
+package com.querylens.config;
+
+import com.querylens.target.TargetProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds querylens.targets.* (the databases analyses can be routed to).
+ */
+@Configuration
+@EnableConfigurationProperties(TargetProperties.class)
+public class TargetConfig {
+}
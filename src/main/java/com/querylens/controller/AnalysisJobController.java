@@ -0,0 +1,42 @@
+package com.querylens.controller;
+
+import com.querylens.dto.JobReport;
+import com.querylens.job.AnalysisJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Analysis jobs submitted through POST /analyze/jobs and POST /api/bi/analyze/jobs.
+ *
+ * Endpoints:
+ * - GET /api/jobs/{id} - Status, stages, detector findings so far and, once finished, the result
+ * - GET /api/jobs/{id}/events - The same as a server-sent event stream
+ * - DELETE /api/jobs/{id} - Cancel the job
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class AnalysisJobController {
+
+    @Autowired
+    private AnalysisJobService jobs;
+
+    @GetMapping("/{id}")
+    public JobReport job(@PathVariable String id) {
+        return jobs.find(id).report();
+    }
+
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable String id) {
+        return jobs.subscribe(id);
+    }
+
+    /** 202: cancellation is asynchronous; the job ends as CANCELLED unless it finished first */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<JobReport> cancel(@PathVariable String id) {
+        return ResponseEntity.accepted().body(jobs.cancel(id).report());
+    }
+}
@@ -0,0 +1,44 @@
+package com.querylens.controller;
+
+import com.querylens.service.BatchAnalysisService;
+import com.querylens.target.AdmissionController;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * REST API for whole-workload analysis.
+ *
+ * Endpoints:
+ * - POST /api/batch/analyze - NDJSON in (one {@link com.querylens.dto.BatchStatement} per line),
+ *   NDJSON out (one {@link com.querylens.dto.BatchResult} per statement, in completion order)
+ *
+ * The request and response are streamed: the handler reads statements as the client sends
+ * them and flushes each result as it is ready, so a 40,000-statement replay is one request
+ * without either side holding the batch in memory.
+ */
+@RestController
+@RequestMapping("/api/batch")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class BatchAnalysisController {
+
+    @Autowired
+    private BatchAnalysisService batchService;
+
+    @Autowired
+    private AdmissionController admission = AdmissionController.unlimited();
+
+    @PostMapping(value = "/analyze", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void analyze(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        batchService.analyze(request.getReader(), response.getOutputStream(), admission.caller(request));
+    }
+}
@@ -4,11 +4,38 @@ import com.querylens.analyzer.bi.BiQueryAnalysisService;
 import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
 import com.querylens.analyzer.bi.ResultsFormatter;
 import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.cache.AnalysisCache;
+import com.querylens.analyzer.plan.ShowplanXmlParser;
+import com.querylens.analyzer.regression.PlanRegressionService;
 import com.querylens.dto.BiAnalysisRequest;
 import com.querylens.dto.BiAnalysisResponse;
+import com.querylens.dto.JobReport;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.history.SubmissionRecord;
+import com.querylens.job.AnalysisJob;
+import com.querylens.job.AnalysisJobService;
+import com.querylens.job.JobProgress;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.target.AdmissionController;
+import com.querylens.target.TargetContext;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.WorkloadAggregator;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,7 +44,13 @@ import java.util.List;
  * 
  * Endpoints:
  * - POST /api/bi/analyze - Analyze a query and get bottleneck report
+ *   (JSON, or multipart with the showplan uploaded as a file)
  * - POST /api/bi/analyze/formatted - Get formatted text report
+ * - POST /api/bi/analyze/jobs - Analyze as a job (see AnalysisJobController)
+ *
+ * The analysis itself only reads the SQL and the supplied plan, but it is still bound to
+ * the request's databaseContext: plan baselines, the workload (and so index advice) and
+ * the history record are all kept per target.
  */
 @RestController
 @RequestMapping("/api/bi")
@@ -30,24 +63,70 @@ public class BiAnalysisController {
     @Autowired
     private ResultsFormatter formatter;
     
+    @Autowired
+    private AnalysisCache analysisCache;
+    
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+    
+    @Autowired
+    private PlanRegressionService regressionService;
+    
+    @Autowired
+    private WorkloadAggregator workload;
+    
+    @Autowired
+    private AnalysisHistoryWriter historyWriter;
+    
+    @Autowired
+    private AnalysisJobService jobs;
+    
+    @Autowired
+    private TargetRegistry targets;
+    
+    @Autowired
+    private AdmissionController admission = AdmissionController.unlimited();
+    
+    private final ShowplanXmlParser showplanParser = new ShowplanXmlParser();
+    
     /**
      * Analyze a query and return structured bottleneck data
      */
     @PostMapping("/analyze")
-    public BiAnalysisResponse analyze(@RequestBody BiAnalysisRequest request) {
-        
-        // For now, create mock execution plan
-        // TODO: Parse actual execution plan from request or run EXPLAIN
-        List<ExecutionPlanNode> executionPlan = createMockExecutionPlan(request.getSql());
+    public BiAnalysisResponse analyze(@RequestBody BiAnalysisRequest request, HttpServletRequest http) {
+        return targets.run(request.getDatabaseContext(), admission.caller(http),
+            () -> analyzeOnTarget(request));
+    }
+    
+    private BiAnalysisResponse analyzeOnTarget(BiAnalysisRequest request) {
+        List<ExecutionPlanNode> executionPlan = JobProgress.current().stage("parse", () -> resolveExecutionPlan(request));
+        return respond(request.getSql(), executionPlan, hasPlan(request));
+    }
+    
+    /**
+     * Same analysis with the actual plan uploaded as a file part ("plan"), for showplans
+     * too large to embed in JSON. The upload is parsed straight from the request stream
+     * and never held in memory as a string.
+     */
+    @PostMapping(value = "/analyze", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public BiAnalysisResponse analyzeUpload(@RequestParam("sql") String sql,
+                                            @RequestPart("plan") MultipartFile plan,
+                                            @RequestParam(required = false) String databaseContext,
+                                            HttpServletRequest http) {
+        return targets.run(databaseContext, admission.caller(http),
+            () -> respond(sql, parseUploadedPlan(plan), true));
+    }
+    
+    private BiAnalysisResponse respond(String sql, List<ExecutionPlanNode> executionPlan, boolean realPlan) {
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+        QueryFingerprint fingerprint = QueryFingerprint.of(tokens);
         
         // Run analysis
-        BiAnalysisResult analysisResult = analysisService.analyzeQuery(
-            request.getSql(), 
-            executionPlan
-        );
+        BiAnalysisResult analysisResult = analyzeCached(tokens, fingerprint, executionPlan, realPlan);
         
         // Build response
         BiAnalysisResponse response = new BiAnalysisResponse();
+        response.setQueryHash(fingerprint.hash());
         response.setBottlenecks(analysisResult.getBottlenecks());
         response.setTotalBottlenecks(analysisResult.getTotalBottlenecks());
         response.setCriticalCount(analysisResult.getCriticalCount());
@@ -55,25 +134,108 @@ public class BiAnalysisController {
         response.setInfoCount(analysisResult.getInfoCount());
         response.setPotentialImprovementPercent(analysisResult.getPotentialImprovementPercent());
         response.setEstimatedBaselineSeconds(analysisResult.getTotalCostMs() / 1000.0);
+        response.setPartial(analysisResult.isPartial());
+        response.setTimedOutDetectors(analysisResult.getTimedOutDetectors());
         
         return response;
     }
     
+    /**
+     * Same analysis as a job: answered at once with 202, and bottlenecks are streamed from
+     * /api/jobs/{id}/events as each detector finishes
+     */
+    @PostMapping("/analyze/jobs")
+    public ResponseEntity<JobReport> submit(@RequestBody BiAnalysisRequest request, HttpServletRequest http) {
+        String caller = admission.caller(http);
+        AnalysisJob job = jobs.submit("bi",
+            () -> targets.run(request.getDatabaseContext(), caller, () -> analyzeOnTarget(request)));
+        return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job.report());
+    }
+    
     /**
      * Get formatted text report (for CLI/console display)
      */
     @PostMapping("/analyze/formatted")
-    public String analyzeFormatted(@RequestBody BiAnalysisRequest request) {
+    public String analyzeFormatted(@RequestBody BiAnalysisRequest request, HttpServletRequest http) {
+        BiAnalysisResult analysisResult = targets.run(request.getDatabaseContext(), admission.caller(http), () -> {
+            List<ExecutionPlanNode> executionPlan = resolveExecutionPlan(request);
+            TokenizedSql tokens = SqlTokenizer.tokenize(request.getSql());
+            return analyzeCached(tokens, QueryFingerprint.of(tokens), executionPlan, hasPlan(request));
+        });
+        
+        return metrics.timeFormat(() -> formatter.format(analysisResult, request.getSql()));
+    }
+    
+    /**
+     * Findings quote the query's literals (fragments, rewritten predicates), so cached
+     * results are only reused when the literals match as well as the query shape and plan.
+     * A report resubmitted with new date literals is therefore re-analyzed; re-rendering
+     * cached findings for other literals would need every detector to separate what it
+     * found from how it quotes it. Plan regressions are checked on every call, cache hit
+     * or not; mock plans are skipped.
+     */
+    private BiAnalysisResult analyzeCached(TokenizedSql tokens, QueryFingerprint fingerprint,
+                                           List<ExecutionPlanNode> executionPlan, boolean realPlan) {
+        long start = System.nanoTime();
+        AnalysisCache.Key key = new AnalysisCache.Key(
+            fingerprint.hash(), QueryFingerprint.planHash(executionPlan), fingerprint.literalHash());
         
-        List<ExecutionPlanNode> executionPlan = createMockExecutionPlan(request.getSql());
-        BiAnalysisResult analysisResult = analysisService.analyzeQuery(request.getSql(), executionPlan);
+        BiAnalysisResult result = analysisCache.getBiResult(key);
+        JobProgress progress = JobProgress.current();
+        if (result == null) {
+            result = progress.stage("detectors", () -> analysisService.analyzeQuery(tokens, executionPlan));
+            analysisCache.putBiResult(key, result);
+        }
+        if (realPlan) {
+            result = result.withAdditional(progress.stage("regression_check",
+                () -> regressionService.check(fingerprint.hash(), executionPlan)));
+        }
+        // Cache hits count too: a report query resubmitted all day is a heavy hitter
+        workload.record(fingerprint, result);
         
-        return formatter.format(analysisResult, request.getSql());
+        SubmissionRecord record = SubmissionRecord.of(fingerprint, tokens.sql()).withBiResult(result);
+        record.setSubmittedBy("api");
+        record.setDatabaseContext(TargetContext.name());
+        record.setAnalysisDurationMs((int) ((System.nanoTime() - start) / 1_000_000));
+        historyWriter.submit(record);
+        return result;
+    }
+    
+    private static boolean hasPlan(BiAnalysisRequest request) {
+        return request.getExecutionPlanXml() != null && !request.getExecutionPlanXml().isBlank();
+    }
+    
+    /**
+     * Use the supplied showplan XML when present, otherwise fall back to a mock plan
+     */
+    private List<ExecutionPlanNode> resolveExecutionPlan(BiAnalysisRequest request) {
+        String planXml = request.getExecutionPlanXml();
+        if (!hasPlan(request)) {
+            return createMockExecutionPlan(request.getSql());
+        }
+        try {
+            return metrics.timePlanParse("showplan_xml", planXml, () -> showplanParser.parse(planXml)).getNodes();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+    
+    private List<ExecutionPlanNode> parseUploadedPlan(MultipartFile plan) {
+        if (plan.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Uploaded plan is empty");
+        }
+        try (InputStream xml = plan.getInputStream()) {
+            return metrics.timePlanParse("showplan_xml", plan.getSize(), () -> showplanParser.parse(xml)).getNodes();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read uploaded plan", e);
+        }
     }
     
     /**
      * Create mock execution plan based on query patterns
-     * TODO: Replace with actual execution plan parser
+     * (used when the request carries no execution plan)
      */
     private List<ExecutionPlanNode> createMockExecutionPlan(String sql) {
         List<ExecutionPlanNode> nodes = new ArrayList<>();
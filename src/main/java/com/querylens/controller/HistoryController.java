@@ -0,0 +1,33 @@
+package com.querylens.controller;
+
+import com.querylens.dto.HistoryEntry;
+import com.querylens.history.AnalysisHistoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST API for past analyses.
+ *
+ * Endpoints:
+ * - GET /api/history/{queryHash}?limit=50 - analyses of one query fingerprint, newest first
+ *   ({@code queryHash} is returned by /api/bi/analyze and /api/batch/analyze)
+ */
+@RestController
+@RequestMapping("/api/history")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class HistoryController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private AnalysisHistoryRepository historyRepository;
+
+    @GetMapping("/{queryHash}")
+    public ResponseEntity<List<HistoryEntry>> history(@PathVariable String queryHash,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(historyRepository.findByQueryHash(queryHash, Math.max(1, Math.min(limit, MAX_LIMIT))));
+    }
+}
@@ -0,0 +1,62 @@
+package com.querylens.controller;
+
+import com.querylens.advisor.IndexAdvisor;
+import com.querylens.advisor.IndexWhatIfService;
+import com.querylens.dto.IndexAdvice;
+import com.querylens.dto.WhatIfReport;
+import com.querylens.dto.WhatIfRequest;
+import com.querylens.target.AdmissionController;
+import com.querylens.target.TargetRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * REST API for index recommendations.
+ *
+ * Endpoints:
+ * - POST /api/indexes/whatif - planner cost of a query with each candidate index, best value first
+ * - GET /api/indexes/advice - consolidated index set for the whole workload (see {@link IndexAdvisor})
+ * - POST /api/indexes/advice - same, and record the selected indexes in index_recommendations
+ *
+ * Advice is per target: ?databaseContext= picks which workload and catalogs
+ * (spring.datasource when omitted).
+ */
+@RestController
+@RequestMapping("/api/indexes")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class IndexAdvisorController {
+
+    @Autowired
+    private IndexWhatIfService whatIfService;
+
+    @Autowired
+    private IndexAdvisor advisor;
+
+    @Autowired
+    private TargetRegistry targets;
+
+    @Autowired
+    private AdmissionController admission = AdmissionController.unlimited();
+
+    @PostMapping("/whatif")
+    public WhatIfReport whatIf(@RequestBody WhatIfRequest request, HttpServletRequest http) {
+        if (request.getSql() == null || request.getSql().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sql is required");
+        }
+        return targets.run(request.getDatabaseContext(), admission.caller(http),
+            () -> whatIfService.evaluate(request.getSql(), request.getIndexes()));
+    }
+
+    @GetMapping("/advice")
+    public IndexAdvice advice(@RequestParam(required = false) String databaseContext, HttpServletRequest http) {
+        return targets.run(databaseContext, admission.caller(http), advisor::advise);
+    }
+
+    @PostMapping("/advice")
+    public IndexAdvice recordAdvice(@RequestParam(required = false) String databaseContext, HttpServletRequest http) {
+        return targets.run(databaseContext, admission.caller(http), advisor::adviseAndRecord);
+    }
+}
@@ -0,0 +1,44 @@
+package com.querylens.controller;
+
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.analyzer.regression.PlanSignature;
+import com.querylens.target.TargetRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST API for plan baselines used by plan regression detection.
+ *
+ * Endpoints:
+ * - GET /api/plans/{queryHash}/baseline - the known-good plan signature of a query fingerprint
+ * - POST /api/plans/{queryHash}/accept - make the latest regressed plan the new baseline
+ *
+ * Baselines are kept per target; both take the databaseContext the query was analyzed
+ * with (spring.datasource when omitted).
+ */
+@RestController
+@RequestMapping("/api/plans")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class PlanController {
+
+    @Autowired
+    private PlanRegressionService regressionService;
+
+    @GetMapping("/{queryHash}/baseline")
+    public ResponseEntity<PlanSignature> baseline(@PathVariable String queryHash,
+                                                  @RequestParam(required = false) String databaseContext) {
+        PlanSignature baseline = regressionService.baseline(TargetRegistry.normalize(databaseContext), queryHash);
+        return baseline != null ? ResponseEntity.ok(baseline) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/{queryHash}/accept")
+    public ResponseEntity<PlanSignature> accept(@PathVariable String queryHash,
+                                                @RequestParam(required = false) String databaseContext) {
+        String target = TargetRegistry.normalize(databaseContext);
+        if (!regressionService.accept(target, queryHash)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(regressionService.baseline(target, queryHash));
+    }
+}
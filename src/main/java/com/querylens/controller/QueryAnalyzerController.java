@@ -2,14 +2,44 @@ package com.querylens.controller;
 
 import com.querylens.optimizer.QueryOptimizerService;
 import com.querylens.optimizer.QueryRewriteService;
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.cache.AnalysisCache;
+import com.querylens.dto.AnalysisMode;
+import com.querylens.dto.JobReport;
 import com.querylens.dto.QueryRequest;
+import com.querylens.dto.RewriteReport;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.history.SubmissionRecord;
+import com.querylens.job.AnalysisJob;
+import com.querylens.job.AnalysisJobService;
+import com.querylens.job.JobProgress;
+import com.querylens.metrics.AnalysisMetrics;
 import com.querylens.model.QueryMetrics;
+import com.querylens.service.CancellationToken;
 import com.querylens.service.QueryAnalyzerService;
+import com.querylens.service.RequestScope;
+import com.querylens.target.AdmissionController;
+import com.querylens.target.TargetContext;
+import com.querylens.target.TargetRegistry;
 
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import com.querylens.dto.AnalysisResponse;
 
 // @RestController
@@ -45,19 +75,188 @@ public class QueryAnalyzerController {
     @Autowired
     private QueryRewriteService rewriteService;         // <-- new
 
+    @Autowired
+    private AnalysisCache analysisCache;
+
+    @Autowired
+    private AnalysisMetrics metrics;
+
+    @Autowired
+    private AnalysisHistoryWriter historyWriter;
+
+    @Autowired
+    private PlanRegressionService regressionService;
+
+    @Autowired
+    private TargetRegistry targets;
+
+    @Autowired
+    private AdmissionController admission = AdmissionController.unlimited();
+
+    @Autowired
+    private AnalysisJobService jobs;
+
+    @Autowired
+    @Qualifier("analyzeExecutor")
+    private Executor analyzeExecutor;
+
+    // AUTO mode only executes queries the planner estimates at or below this cost
+    @Value("${querylens.analyze.auto-analyze-max-cost:10000}")
+    private double autoAnalyzeMaxCost = 10000;
+
+    // After this the request is answered with 503 and its work is cancelled
+    @Value("${querylens.analyze.request-timeout-ms:120000}")
+    private long requestTimeoutMs = 120000;
+
+    /**
+     * Everything runs against the database named by databaseContext (spring.datasource by
+     * default), on the analyze executor. If the client disconnects or the request times
+     * out, the request's {@link CancellationToken} stops the statement running in the
+     * database and the detectors still pending.
+     */
     @PostMapping
-    public AnalysisResponse analyze(@RequestBody QueryRequest request) {
+    public DeferredResult<AnalysisResponse> analyze(@RequestBody QueryRequest request, HttpServletRequest http) {
+        String caller = admission.caller(http);
+        CancellationToken token = new CancellationToken();
+        DeferredResult<AnalysisResponse> result = new DeferredResult<>(requestTimeoutMs);
+        result.onTimeout(token::cancel);
+        result.onError(error -> token.cancel());
+
+        CompletableFuture
+            .supplyAsync(() -> token.run(() -> targets.run(request.getDatabaseContext(), caller,
+                () -> analyzeOnTarget(request))), analyzeExecutor)
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    result.setResult(response);
+                } else {
+                    result.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+                }
+            });
+        return result;
+    }
+
+    /**
+     * The same analysis as a job, for queries that run longer than a client or proxy will
+     * hold a request open. Answered at once with 202 and the job; follow it at the
+     * Location (/api/jobs/{id}) or its /events stream.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<JobReport> submit(@RequestBody QueryRequest request, HttpServletRequest http) {
+        String caller = admission.caller(http);
+        AnalysisJob job = jobs.submit("analyze",
+            () -> targets.run(request.getDatabaseContext(), caller, () -> analyzeOnTarget(request)));
+        return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job.report());
+    }
+
+    private AnalysisResponse analyzeOnTarget(QueryRequest request) {
         String sql = request.getSql();
-        List<String> planLines = analyzerService.getRawPlanLines(sql);
-        QueryMetrics metrics = analyzerService.analyzeQuery(sql);
-        List<String> suggestions = optimizerService.suggestOptimizations(sql, planLines);
+        AnalysisMode mode = request.getMode() != null ? request.getMode() : AnalysisMode.ANALYZE;
+        int databaseExecutions = 0;
+
+        // Planner-only EXPLAIN: milliseconds, never runs the query
+        JobProgress progress = JobProgress.current();
+        QueryPlan estimated = null;
+        if (mode != AnalysisMode.ANALYZE || request.isGenericPlan() || analysisCache.isEnabled()) {
+            estimated = progress.stage("plan_estimate", () -> analyzerService.estimatePlan(sql, request.isGenericPlan()));
+            databaseExecutions++;
+        }
+        boolean execute = !request.isGenericPlan() && switch (mode) {
+            case ANALYZE -> true;
+            case ESTIMATE -> false;
+            case AUTO -> estimated.getRoot().getEstimatedCost() <= autoAnalyzeMaxCost;
+        };
+
+        if (!execute) {
+            QueryPlan plan = estimated;
+            QueryMetrics metrics = progress.stage("metrics", () -> analyzerService.analyzeQuery(sql, plan));
+            return respond(sql, AnalysisMode.ESTIMATE, estimated, metrics, databaseExecutions);
+        }
 
-        Optional<String> optimized = rewriteService.rewrite(sql, planLines);
+        // Resubmissions of the same query shape (e.g. only the date literals changed) with
+        // an unchanged plan reuse the EXPLAIN ANALYZE results. The rewrite is recomputed
+        // because it carries this query's literals.
+        AnalysisCache.Key cacheKey = null;
+        if (analysisCache.isEnabled()) {
+            // The same plan shape on another database is not the same measurement
+            cacheKey = new AnalysisCache.Key(
+                QueryFingerprint.of(sql).hash(),
+                QueryFingerprint.planHash(estimated.getNodes()),
+                TargetContext.name() + "/" + request.getPlanFormat());
+            AnalysisResponse cached = analysisCache.getAnalysis(cacheKey);
+            if (cached != null) {
+                QueryPlan plan = estimated;
+                RewriteReport rewrite = progress.stage("rewrite_verification",
+                    () -> rewriteService.verifiedRewrite(sql, plan, true));
+                AnalysisResponse response = new AnalysisResponse(
+                    cached.getMetrics(), cached.getSuggestions(), rewrite.getOptimizedSql());
+                response.setRewrite(rewrite);
+                response.setAnalysisMode(cached.getAnalysisMode());
+                return recordExecutions(sql, response, databaseExecutions + rewrite.getDatabaseExecutions());
+            }
+        }
+
+        // One EXPLAIN ANALYZE; metrics, suggestions and the rewrite all read this plan
+        QueryPlan plan = progress.stage("plan_capture", () -> analyzerService.capturePlan(sql, request.getPlanFormat()));
+        databaseExecutions++;
+        QueryMetrics metrics = progress.stage("metrics", () -> analyzerService.analyzeQuery(sql, plan));
+
+        AnalysisResponse response = respond(sql, AnalysisMode.ANALYZE, plan, metrics, databaseExecutions);
+        if (cacheKey != null) {
+            analysisCache.putAnalysis(cacheKey, response);
+        }
+        return response;
+    }
+
+    /**
+     * Suggestions (CPU), the verified rewrite (executes on the target) and the regression
+     * check (QueryLens' own tables) only read the plan, so they run side by side.
+     */
+    private AnalysisResponse respond(String sql, AnalysisMode mode, QueryPlan plan,
+                                     QueryMetrics metrics, int databaseExecutions) {
+        JobProgress progress = JobProgress.current();
+        try (RequestScope scope = new RequestScope()) {
+            Future<List<String>> suggestions = scope.fork(
+                () -> progress.stage("detectors", () -> optimizerService.suggestOptimizations(sql, plan)));
+            // Only returned once it plans no costlier and gives the same rows; comparing rows
+            // runs the query, which ESTIMATE mode promises not to do
+            Future<RewriteReport> rewrite = scope.fork(() -> progress.stage("rewrite_verification",
+                () -> rewriteService.verifiedRewrite(sql, plan, mode == AnalysisMode.ANALYZE)));
+            Future<List<Bottleneck>> regressions = scope.fork(() -> progress.stage("regression_check",
+                () -> regressionService.check(QueryFingerprint.of(sql).hash(), plan.getNodes())));
+            scope.join();
+
+            AnalysisResponse response = new AnalysisResponse(
+                metrics,
+                suggestions.resultNow(),
+                rewrite.resultNow().getOptimizedSql()
+            );
+            response.setRewrite(rewrite.resultNow());
+            response.setAnalysisMode(mode);
+            response.setPlanRegressions(regressions.resultNow());
+            return recordExecutions(sql, response, databaseExecutions + rewrite.resultNow().getDatabaseExecutions());
+        }
+    }
+
+    private AnalysisResponse recordExecutions(String sql, AnalysisResponse response, int databaseExecutions) {
+        response.setDatabaseExecutions(databaseExecutions);
+        metrics.recordDatabaseExecutions(databaseExecutions);
+        recordHistory(sql, response);
+        return response;
+    }
 
-        return new AnalysisResponse(
-            metrics,
-            suggestions,
-            optimized.orElse(null)
-        );
+    /** Queued for the history tables; the request does not wait for the write */
+    private void recordHistory(String sql, AnalysisResponse response) {
+        QueryMetrics m = response.getMetrics();
+        SubmissionRecord record = SubmissionRecord.of(QueryFingerprint.of(sql), sql);
+        record.setSubmittedBy("api");
+        record.setDatabaseContext(TargetContext.name());
+        if (m != null) {
+            record.setQueryType(m.getStatementType());
+            record.setRowCountEstimate(m.getRowsProcessed());
+            if (response.getAnalysisMode() == AnalysisMode.ANALYZE) {
+                record.setActualRuntimeMs(m.getExecutionTime());
+            }
+        }
+        historyWriter.submit(record);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package com.querylens.controller;
+
+import com.querylens.dto.WorkloadReport;
+import com.querylens.workload.WorkloadAggregator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST API for the workload-level view across every analyzed query.
+ *
+ * Endpoints:
+ * - GET /api/workload/report?top=20 - ranked "fix these first" patterns, tables most
+ *   often hit by MISSING_INDEX, and the queries with the largest total impact
+ * - DELETE /api/workload/report - start a new aggregation window
+ */
+@RestController
+@RequestMapping("/api/workload")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class WorkloadController {
+
+    private static final int MAX_TOP = 1000;
+
+    @Autowired
+    private WorkloadAggregator aggregator;
+
+    @GetMapping("/report")
+    public ResponseEntity<WorkloadReport> report(@RequestParam(defaultValue = "20") int top) {
+        return ResponseEntity.ok(aggregator.report(Math.max(1, Math.min(top, MAX_TOP))));
+    }
+
+    @DeleteMapping("/report")
+    public ResponseEntity<Void> reset() {
+        aggregator.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
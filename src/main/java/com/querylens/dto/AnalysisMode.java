@@ -0,0 +1,14 @@
+// src/main/java/com/querylens/dto/AnalysisMode.java
+package com.querylens.dto;
+
+/**
+ * Whether /analyze executes the query to measure it.
+ */
+public enum AnalysisMode {
+    /** Plain EXPLAIN: planner estimates only, the query is never run */
+    ESTIMATE,
+    /** EXPLAIN ANALYZE: runs the query for actual timings and row counts */
+    ANALYZE,
+    /** ESTIMATE first, then ANALYZE if the estimated cost is under the configured threshold */
+    AUTO
+}
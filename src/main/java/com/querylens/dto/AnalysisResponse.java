@@ -1,7 +1,9 @@
 // src/main/java/com/querylens/dto/AnalysisResponse.java
 package com.querylens.dto;
 
+import com.querylens.analyzer.Bottleneck;
 import com.querylens.model.QueryMetrics;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -12,6 +14,10 @@ public class AnalysisResponse {
     private QueryMetrics metrics;
     private List<String> suggestions;
     private String optimizedSql;
+    private AnalysisMode analysisMode;      // ESTIMATE or ANALYZE, whichever actually ran
+    private int databaseExecutions;         // EXPLAIN statements issued for this request
+    private List<Bottleneck> planRegressions = new ArrayList<>();   // Plan got worse than the query's baseline
+    private RewriteReport rewrite;          // How optimizedSql was verified and what it saves
     
     public AnalysisResponse() {}
 
@@ -44,4 +50,36 @@ public class AnalysisResponse {
     public void setOptimizedSql(String optimizedSql) {
         this.optimizedSql = optimizedSql;
     }
+
+    public AnalysisMode getAnalysisMode() {
+        return analysisMode;
+    }
+
+    public void setAnalysisMode(AnalysisMode analysisMode) {
+        this.analysisMode = analysisMode;
+    }
+
+    public int getDatabaseExecutions() {
+        return databaseExecutions;
+    }
+
+    public void setDatabaseExecutions(int databaseExecutions) {
+        this.databaseExecutions = databaseExecutions;
+    }
+
+    public List<Bottleneck> getPlanRegressions() {
+        return planRegressions;
+    }
+
+    public void setPlanRegressions(List<Bottleneck> planRegressions) {
+        this.planRegressions = planRegressions;
+    }
+
+    public RewriteReport getRewrite() {
+        return rewrite;
+    }
+
+    public void setRewrite(RewriteReport rewrite) {
+        this.rewrite = rewrite;
+    }
 }
@@ -0,0 +1,34 @@
+package com.querylens.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.model.QueryMetrics;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One line of the NDJSON response from /api/batch/analyze.
+ *
+ * Lines are written as statements finish, so they can arrive out of input order;
+ * {@link #index} (0-based, blank lines skipped) and {@link #id} identify the statement.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    private int index;
+    private String id;
+    private String queryHash;              // Query fingerprint; key for /api/history
+    private AnalysisMode analysisMode;     // ESTIMATE or ANALYZE, whichever actually ran
+    private QueryMetrics metrics;
+
+    // BI analysis over the captured plan
+    private List<Bottleneck> bottlenecks;
+    private Integer criticalCount;
+    private Integer warningCount;
+    private Integer infoCount;
+    private Boolean partial;
+
+    private String error;                  // Set instead of the results when the statement failed
+    private double elapsedMs;
+}
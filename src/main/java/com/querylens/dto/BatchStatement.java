@@ -0,0 +1,15 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+/**
+ * One line of an NDJSON batch submitted to /api/batch/analyze
+ */
+@Data
+public class BatchStatement {
+    private String id;                     // Optional: caller's key, echoed back in the result
+    private String sql;
+    private AnalysisMode mode;             // Optional: defaults to ESTIMATE (never executes)
+    private boolean genericPlan;           // Plan $1-style parameters; implies ESTIMATE
+    private String databaseContext;        // Optional: target database, defaults to spring.datasource
+}
@@ -8,7 +8,7 @@ import lombok.Data;
 @Data
 public class BiAnalysisRequest {
     private String sql;                    // The SQL query to analyze
-    private String executionPlanXml;       // Optional: SQL Server execution plan XML
+    private String executionPlanXml;       // Optional: SQL Server execution plan XML (large plans: multipart upload)
     private Double actualRuntimeSeconds;   // Optional: Actual observed runtime
     private String databaseContext;        // Optional: Which database/schema
 }
@@ -11,6 +11,7 @@ import java.util.List;
  */
 @Data
 public class BiAnalysisResponse {
+    private String queryHash;               // Query fingerprint; key for /api/history
     private List<Bottleneck> bottlenecks = new ArrayList<>();
     private int totalBottlenecks;
     private int criticalCount;
@@ -19,5 +20,7 @@ public class BiAnalysisResponse {
     private double estimatedBaselineSeconds;
     private double potentialImprovementPercent;
     private String formattedReport;         // Optional: Pre-formatted text report
+    private boolean partial;                // True if some detectors timed out
+    private List<String> timedOutDetectors = new ArrayList<>();
 }
 
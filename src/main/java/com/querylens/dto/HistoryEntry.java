@@ -0,0 +1,41 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response DTO for /api/history: one past analysis of a query fingerprint
+ */
+@Data
+public class HistoryEntry {
+    private long id;
+    private String queryHash;
+    private String queryType;
+    private String databaseContext;
+    private LocalDateTime submittedAt;
+    private String submittedBy;
+    private Double estimatedBaselineMs;
+    private Double actualRuntimeMs;
+    private Long rowCountEstimate;
+    private Integer analysisDurationMs;
+    private int totalBottlenecks;
+    private int criticalCount;
+    private int warningCount;
+    private int infoCount;
+    private Double potentialImprovementPercent;
+    private List<Finding> bottlenecks = new ArrayList<>();
+
+    @Data
+    public static class Finding {
+        private String severity;
+        private String issueType;
+        private String queryFragment;
+        private Double costPercentage;
+        private Double timeImpactSeconds;
+        private String operatorName;
+        private String problemDescription;
+    }
+}
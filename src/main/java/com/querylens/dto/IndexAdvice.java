@@ -0,0 +1,33 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response DTO for /api/indexes/advice: the smallest set of indexes that serves the
+ * workload's index recommendations within the storage budget.
+ */
+@Data
+public class IndexAdvice {
+    private long recommendationsConsidered;   // Distinct CREATE INDEX fixes seen in the workload
+    private long budgetBytes;
+    private long selectedBytes;
+    private List<String> ddl = new ArrayList<>();          // What to run, one statement per selected index
+    private List<Candidate> selected = new ArrayList<>();
+    private List<Candidate> rejected = new ArrayList<>();
+
+    @Data
+    public static class Candidate {
+        private String ddl;
+        private String table;
+        private long timesRecommended;
+        private double benefit;               // Summed share of query cost the covered findings account for
+        private double writeShare;            // Index-maintaining writes / all row traffic on the table
+        private double netBenefit;            // benefit discounted by write amplification
+        private long estimatedSizeBytes;
+        private List<String> mergedFrom = new ArrayList<>();   // Recommendations this index serves
+        private String reason;                // Why it was rejected
+    }
+}
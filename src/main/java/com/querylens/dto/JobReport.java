@@ -0,0 +1,38 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response DTO for /api/jobs/{id}: where an analysis job is, what its detectors have
+ * found so far and, once it has finished, its result.
+ */
+@Data
+public class JobReport {
+    private String id;
+    private String kind;                  // "analyze" or "bi"
+    private String status;                // QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private List<Stage> stages = new ArrayList<>();         // In the order they started
+    private List<Detector> detectors = new ArrayList<>();   // In the order they finished
+    private Object result;                // AnalysisResponse or BiAnalysisResponse once SUCCEEDED
+    private String error;                 // Why it FAILED
+
+    @Data
+    public static class Stage {
+        private String name;              // plan_estimate, plan_capture, metrics, parse, detectors, ...
+        private Instant startedAt;
+        private Long durationMs;          // Null while running
+    }
+
+    @Data
+    public static class Detector {
+        private String name;
+        private List<?> findings;         // Bottlenecks (BI) or suggestion texts (/analyze)
+    }
+}
@@ -0,0 +1,12 @@
+// src/main/java/com/querylens/dto/PlanFormat.java
+package com.querylens.dto;
+
+/**
+ * How /analyze captures the execution plan.
+ */
+public enum PlanFormat {
+    /** EXPLAIN ANALYZE text output, scraped line by line */
+    TEXT,
+    /** EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON), parsed into a plan tree */
+    JSON
+}
@@ -11,6 +11,21 @@ public class QueryRequest {
     @NotBlank
     private String sql;
 
+    /** Optional; defaults to {@link PlanFormat#TEXT} */
+    private PlanFormat planFormat;
+
+    /** Optional; defaults to {@link AnalysisMode#ANALYZE} */
+    private AnalysisMode mode;
+
+    /**
+     * Plan with EXPLAIN (GENERIC_PLAN) so queries with $1-style parameters can be analyzed.
+     * Generic plans cannot be executed, so this implies {@link AnalysisMode#ESTIMATE}.
+     */
+    private boolean genericPlan;
+
+    /** Optional; a target under querylens.targets.databases, defaults to spring.datasource */
+    private String databaseContext;
+
     public QueryRequest() {}
 
     public QueryRequest(String sql) {
@@ -24,4 +39,36 @@ public class QueryRequest {
     public void setSql(String sql) {
         this.sql = sql;
     }
+
+    public PlanFormat getPlanFormat() {
+        return planFormat;
+    }
+
+    public void setPlanFormat(PlanFormat planFormat) {
+        this.planFormat = planFormat;
+    }
+
+    public AnalysisMode getMode() {
+        return mode;
+    }
+
+    public void setMode(AnalysisMode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isGenericPlan() {
+        return genericPlan;
+    }
+
+    public void setGenericPlan(boolean genericPlan) {
+        this.genericPlan = genericPlan;
+    }
+
+    public String getDatabaseContext() {
+        return databaseContext;
+    }
+
+    public void setDatabaseContext(String databaseContext) {
+        this.databaseContext = databaseContext;
+    }
 }
@@ -0,0 +1,32 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the rewrite in {@link AnalysisResponse#getOptimizedSql()} was chosen: every
+ * candidate rewrite with its planner cost and, when it lost, why.
+ */
+@Data
+public class RewriteReport {
+    private String optimizedSql;               // Cheapest rewrite that planned and returned the same rows; null if none
+    private String rewriter;
+    private Double originalCost;               // Planner total cost of the submitted SQL
+    private Double optimizedCost;
+    private Double costDelta;                  // optimizedCost - originalCost (negative is cheaper)
+    private Double costDeltaPercent;
+    private Long rowsCompared;                 // Rows both statements returned in the checksum comparison
+    private int databaseExecutions;            // EXPLAINs and checksum queries run to verify
+    private List<Candidate> candidates = new ArrayList<>();
+
+    @Data
+    public static class Candidate {
+        private String rewriter;
+        private String sql;
+        private Double cost;
+        private Boolean resultsMatch;          // null: results were not compared
+        private String rejectedReason;         // null for the chosen rewrite
+    }
+}
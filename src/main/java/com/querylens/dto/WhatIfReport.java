@@ -0,0 +1,33 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response DTO for /api/indexes/whatif: planner cost of the query with and without
+ * each candidate index, best value per byte of index first.
+ */
+@Data
+public class WhatIfReport {
+    private String method;                     // HYPOPG, REAL_INDEX or UNAVAILABLE
+    private Double baselineCost;               // Planner total cost with no candidate index
+    private List<Recommendation> recommendations = new ArrayList<>();
+    private List<String> skipped = new ArrayList<>();   // Recommendations that are not plain CREATE INDEX statements
+
+    @Data
+    public static class Recommendation {
+        private int rank;
+        private String ddl;                    // PostgreSQL DDL that was evaluated
+        private String table;
+        private Double costBefore;
+        private Double costAfter;
+        private Double costSaved;
+        private Double savedPercent;
+        private long sizeBytes;
+        private Double costSavedPerMb;         // Ranking key
+        private boolean usedByPlanner;         // False: the planner ignores this index for the query
+        private String error;
+    }
+}
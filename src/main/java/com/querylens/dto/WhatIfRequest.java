@@ -0,0 +1,16 @@
+package com.querylens.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request DTO for /api/indexes/whatif
+ */
+@Data
+public class WhatIfRequest {
+    private String sql;                              // The query to re-plan
+    private List<String> indexes = new ArrayList<>(); // Optional: CREATE INDEX statements; default is the detectors' recommendations
+    private String databaseContext;                  // Optional: target database, defaults to spring.datasource
+}
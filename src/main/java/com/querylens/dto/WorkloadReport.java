@@ -0,0 +1,43 @@
+package com.querylens.dto;
+
+import com.querylens.analyzer.Bottleneck.IssueType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response DTO for /api/workload/report: what to fix first across every query
+ * analyzed since the aggregator was last reset.
+ *
+ * Weights under the per-type totals come from heavy-hitter sketches and are upper
+ * bounds; {@link RankedItem#errorBound} says by how much each may over-count.
+ */
+@Data
+public class WorkloadReport {
+    private long queriesAnalyzed;
+    private long bottlenecksFound;
+    private Map<IssueType, Long> issueTypeCounts = new EnumMap<>(IssueType.class);
+    private Map<IssueType, Double> issueTypeImpactSeconds = new EnumMap<>(IssueType.class);
+
+    private List<RankedItem> fixFirst = new ArrayList<>();           // Patterns by total impact, then occurrences
+    private List<RankedItem> missingIndexTables = new ArrayList<>(); // Tables by MISSING_INDEX findings
+    private List<RankedItem> topFingerprints = new ArrayList<>();    // Queries by total impact
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RankedItem {
+        private int rank;
+        private IssueType issueType;     // Null for tables and fingerprints
+        private String key;              // Pattern signature, table name or fingerprint hash
+        private String sample;           // Example fragment or normalized query
+        private long occurrences;
+        private double impactSeconds;
+        private double errorBound;
+    }
+}
@@ -0,0 +1,244 @@
+package com.querylens.harvest;
+
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.TokenizedSql.TokenType;
+import com.querylens.analyzer.bi.BiQueryAnalysisService;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.history.SubmissionRecord;
+import com.querylens.model.QueryMetrics;
+import com.querylens.optimizer.QueryOptimizerService;
+import com.querylens.service.QueryAnalyzerService;
+import com.querylens.target.TargetProperties;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.WorkloadAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the worst queries on its own: every {@code querylens.harvest.interval} it diffs
+ * pg_stat_statements (and pg_stat_user_tables) against the previous snapshot, ranks the
+ * statements by execution time spent since then, and analyzes the top
+ * {@code querylens.harvest.top-n} in the background.
+ *
+ * The first run only takes the baseline snapshot. Harvested statements are planned with
+ * plain EXPLAIN (GENERIC_PLAN when they contain $n placeholders), never executed, and
+ * each analysis is queued for the history tables with submitted_by = 'pg_stat_statements'.
+ *
+ * Harvests the target named by querylens.harvest.target (spring.datasource by default);
+ * statistics, plans and baselines all come from that target.
+ *
+ * Disabled unless querylens.harvest.enabled=true.
+ */
+@Service
+@ConditionalOnProperty(name = "querylens.harvest.enabled", havingValue = "true")
+public class PgStatStatementsHarvester {
+
+    private static final Logger log = LoggerFactory.getLogger(PgStatStatementsHarvester.class);
+
+    static final String SUBMITTED_BY = "pg_stat_statements";
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\d+");
+    private static final Set<String> EXPLAINABLE = Set.of("SELECT", "WITH", "INSERT", "UPDATE", "DELETE", "VALUES", "TABLE");
+
+    /**
+     * One statement analyzed in a run.
+     *
+     * @param calls           calls since the previous snapshot
+     * @param totalExecTimeMs execution time since the previous snapshot
+     */
+    public record HarvestedStatement(long queryId, String queryHash, long calls, double totalExecTimeMs,
+                                     int bottlenecks, int criticalCount, List<String> suggestions, String error) {}
+
+    /**
+     * Outcome of one harvest.
+     *
+     * @param statementsActive statements with calls since the previous snapshot
+     * @param seqScanTables    tables by sequential scans since the previous snapshot, most first
+     */
+    public record HarvestRun(Instant startedAt, boolean baseline, int statementsActive,
+                             List<HarvestedStatement> analyzed, List<TableScanStats> seqScanTables) {}
+
+    @Autowired
+    private PgStatStatementsReader reader;
+
+    @Autowired
+    private QueryAnalyzerService analyzerService;
+
+    @Autowired
+    private BiQueryAnalysisService biAnalysisService;
+
+    @Autowired
+    private QueryOptimizerService optimizerService;
+
+    @Autowired
+    private PlanRegressionService regressionService;
+
+    @Autowired
+    private WorkloadAggregator workload;
+
+    @Autowired
+    private AnalysisHistoryWriter historyWriter;
+
+    @Autowired
+    private TargetRegistry targets;
+
+    // A querylens.targets.databases name
+    @Value("${querylens.harvest.target:default}")
+    private String target = TargetProperties.DEFAULT;
+
+    @Value("${querylens.harvest.top-n:20}")
+    private int topN = 20;
+
+    // Statements with less execution time than this between snapshots are not worth a plan
+    @Value("${querylens.harvest.min-total-exec-time-ms:1000}")
+    private double minTotalExecTimeMs = 1000;
+
+    private Map<StatementStats.Key, StatementStats> previousStatements;
+    private Map<String, TableScanStats> previousTables;
+    private volatile HarvestRun lastRun;
+    private final ReentrantLock harvestLock = new ReentrantLock();
+
+    @Scheduled(initialDelayString = "${querylens.harvest.initial-delay:PT1M}",
+               fixedDelayString = "${querylens.harvest.interval:PT5M}")
+    public void scheduledHarvest() {
+        try {
+            harvest();
+        } catch (Exception e) {
+            // Extension missing, permissions, database down: try again next interval
+            log.warn("pg_stat_statements harvest failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Take a snapshot, diff it against the previous one and analyze the top statements.
+     * One harvest at a time; a lock rather than synchronized, so a virtual thread waiting
+     * on the catalogs does not pin its carrier thread.
+     */
+    public HarvestRun harvest() {
+        harvestLock.lock();
+        try {
+            return targets.run(target, SUBMITTED_BY, this::harvestSnapshot);
+        } finally {
+            harvestLock.unlock();
+        }
+    }
+
+    private HarvestRun harvestSnapshot() {
+        Instant startedAt = Instant.now();
+        List<StatementStats> statements = reader.readStatements();
+        List<TableScanStats> tables = reader.readTableScans();
+
+        Map<StatementStats.Key, StatementStats> prevStatements = previousStatements;
+        Map<String, TableScanStats> prevTables = previousTables;
+        previousStatements = new HashMap<>();
+        statements.forEach(s -> previousStatements.put(s.key(), s));
+        previousTables = new HashMap<>();
+        tables.forEach(t -> previousTables.put(t.qualifiedName(), t));
+
+        if (prevStatements == null) {
+            lastRun = new HarvestRun(startedAt, true, 0, List.of(), List.of());
+            log.info("pg_stat_statements baseline taken: {} statements, {} tables", statements.size(), tables.size());
+            return lastRun;
+        }
+
+        List<StatementStats> active = statements.stream()
+            .map(s -> s.minus(prevStatements.get(s.key())))
+            .filter(d -> d.calls() > 0)
+            .sorted(Comparator.comparingDouble(StatementStats::totalExecTimeMs).reversed())
+            .toList();
+
+        List<TableScanStats> seqScanTables = tables.stream()
+            .map(t -> t.minus(prevTables.get(t.qualifiedName())))
+            .filter(d -> d.seqScan() > 0)
+            .sorted(Comparator.comparingLong(TableScanStats::seqScan).reversed())
+            .limit(topN)
+            .toList();
+
+        String database = reader.currentDatabase();
+        List<HarvestedStatement> analyzed = new ArrayList<>();
+        for (StatementStats delta : active) {
+            if (analyzed.size() >= topN || delta.totalExecTimeMs() < minTotalExecTimeMs) {
+                break;
+            }
+            TokenizedSql tokens = SqlTokenizer.tokenize(delta.query());
+            if (!EXPLAINABLE.contains(firstKeyword(tokens))) {
+                continue;
+            }
+            analyzed.add(analyze(delta, tokens, database));
+        }
+
+        lastRun = new HarvestRun(startedAt, false, active.size(), analyzed, seqScanTables);
+        log.info("pg_stat_statements harvest: {} active statements, {} analyzed, top seq-scan tables {}",
+            active.size(), analyzed.size(),
+            seqScanTables.stream().limit(5).map(t -> t.qualifiedName() + "=" + t.seqScan()).toList());
+        return lastRun;
+    }
+
+    /** The most recent harvest, or null before the first one */
+    public HarvestRun getLastRun() {
+        return lastRun;
+    }
+
+    private HarvestedStatement analyze(StatementStats delta, TokenizedSql tokens, String database) {
+        String sql = delta.query();
+        QueryFingerprint fingerprint = QueryFingerprint.of(tokens);
+        long start = System.nanoTime();
+        try {
+            QueryPlan plan = analyzerService.estimatePlan(sql, PLACEHOLDER.matcher(sql).find());
+            QueryMetrics metrics = analyzerService.analyzeQuery(sql, plan);
+            BiAnalysisResult bi = biAnalysisService.analyzeQuery(tokens, plan.getNodes())
+                .withAdditional(regressionService.check(fingerprint.hash(), plan.getNodes()));
+            List<String> suggestions = optimizerService.suggestOptimizations(sql, plan);
+            workload.record(fingerprint, bi);
+
+            SubmissionRecord record = SubmissionRecord.of(fingerprint, sql).withBiResult(bi);
+            record.setSubmittedBy(SUBMITTED_BY);
+            record.setQueryType(metrics.getStatementType());
+            record.setDatabaseContext(database);
+            record.setActualRuntimeMs(delta.meanExecTimeMs());
+            record.setRowCountEstimate(delta.rows() / delta.calls());
+            record.setAnalysisDurationMs((int) ((System.nanoTime() - start) / 1_000_000));
+            historyWriter.submit(record);
+
+            return new HarvestedStatement(delta.queryId(), fingerprint.hash(), delta.calls(),
+                delta.totalExecTimeMs(), bi.getBottlenecks().size(), bi.getCriticalCount(), suggestions, null);
+        } catch (Exception e) {
+            // Some normalized statements cannot be planned (e.g. $n placeholders before PostgreSQL 16)
+            log.debug("Could not analyze harvested statement {}", delta.queryId(), e);
+            return new HarvestedStatement(delta.queryId(), fingerprint.hash(), delta.calls(),
+                delta.totalExecTimeMs(), 0, 0, List.of(), e.getMessage());
+        }
+    }
+
+    private static String firstKeyword(TokenizedSql tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) == TokenType.WORD) {
+                return tokens.text(i).toUpperCase();
+            }
+            if (tokens.type(i) != TokenType.COMMENT && !tokens.text(i).equals("(")) {
+                return "";
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,56 @@
+package com.querylens.harvest;
+
+import com.querylens.target.TargetContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reads the cumulative statistics views the harvester diffs, on the bound target.
+ *
+ * Requires the pg_stat_statements extension (shared_preload_libraries plus
+ * CREATE EXTENSION) and PostgreSQL 13+ for total_exec_time.
+ */
+@Component
+public class PgStatStatementsReader {
+
+    // Only the current database; skip our own harvesting and EXPLAIN traffic
+    private static final String STATEMENTS_SQL = """
+        SELECT userid, dbid, queryid, query, calls, total_exec_time, rows
+        FROM pg_stat_statements
+        WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())
+          AND queryid IS NOT NULL
+          AND query NOT ILIKE '%pg_stat_%'
+          AND query NOT ILIKE 'EXPLAIN%'
+        """;
+
+    private static final String TABLES_SQL = """
+        SELECT schemaname, relname, COALESCE(seq_scan, 0), COALESCE(seq_tup_read, 0), COALESCE(idx_scan, 0)
+        FROM pg_stat_user_tables
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<StatementStats> readStatements() {
+        return jdbc().query(STATEMENTS_SQL, (rs, i) -> new StatementStats(
+            rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getString(4),
+            rs.getLong(5), rs.getDouble(6), rs.getLong(7)));
+    }
+
+    public List<TableScanStats> readTableScans() {
+        return jdbc().query(TABLES_SQL, (rs, i) -> new TableScanStats(
+            rs.getString(1), rs.getString(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)));
+    }
+
+    public String currentDatabase() {
+        return jdbc().queryForObject("SELECT current_database()", String.class);
+    }
+
+    /** The database of the bound target ({@link TargetContext}) */
+    private JdbcTemplate jdbc() {
+        return TargetContext.jdbcTemplate(jdbcTemplate);
+    }
+}
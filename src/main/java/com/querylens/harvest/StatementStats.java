@@ -0,0 +1,35 @@
+package com.querylens.harvest;
+
+/**
+ * One row of pg_stat_statements. Counters are cumulative since the last
+ * pg_stat_statements_reset(); {@link #minus} turns two snapshots into the activity
+ * between them.
+ *
+ * @param query normalized text with $n placeholders for constants
+ */
+public record StatementStats(long userId, long dbId, long queryId, String query,
+                             long calls, double totalExecTimeMs, long rows) {
+
+    /** pg_stat_statements identifies a statement by (userid, dbid, queryid) */
+    public record Key(long userId, long dbId, long queryId) {}
+
+    public Key key() {
+        return new Key(userId, dbId, queryId);
+    }
+
+    /**
+     * Activity since {@code previous}. If the counters went backwards the entry was
+     * evicted or reset in between, so everything counted now is new.
+     */
+    public StatementStats minus(StatementStats previous) {
+        if (previous == null || calls < previous.calls || totalExecTimeMs < previous.totalExecTimeMs) {
+            return this;
+        }
+        return new StatementStats(userId, dbId, queryId, query,
+            calls - previous.calls, totalExecTimeMs - previous.totalExecTimeMs, rows - previous.rows);
+    }
+
+    public double meanExecTimeMs() {
+        return calls == 0 ? 0 : totalExecTimeMs / calls;
+    }
+}
@@ -0,0 +1,21 @@
+package com.querylens.harvest;
+
+/**
+ * One row of pg_stat_user_tables: how often a table was read by sequential scan versus
+ * by index. Cumulative, like {@link StatementStats}.
+ */
+public record TableScanStats(String schema, String table, long seqScan, long seqTupRead, long idxScan) {
+
+    public String qualifiedName() {
+        return schema + "." + table;
+    }
+
+    /** Scans since {@code previous}; a counter that went backwards means a stats reset */
+    public TableScanStats minus(TableScanStats previous) {
+        if (previous == null || seqScan < previous.seqScan || idxScan < previous.idxScan) {
+            return this;
+        }
+        return new TableScanStats(schema, table, seqScan - previous.seqScan,
+            seqTupRead - previous.seqTupRead, idxScan - previous.idxScan);
+    }
+}
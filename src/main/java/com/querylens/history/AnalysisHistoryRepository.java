@@ -0,0 +1,99 @@
+package com.querylens.history;
+
+import com.querylens.dto.HistoryEntry;
+import com.querylens.dto.HistoryEntry.Finding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads analysis history written by {@link AnalysisHistoryWriter}.
+ */
+@Repository
+public class AnalysisHistoryRepository {
+
+    // Served by idx_submissions_query_hash; the sort only sees one fingerprint's rows
+    private static final String SUBMISSIONS_BY_HASH = """
+        SELECT id, query_hash, query_type, database_context, submitted_at, submitted_by,
+            estimated_baseline_ms, actual_runtime_ms, row_count_estimate, analysis_duration_ms,
+            total_bottlenecks_found, critical_count, warning_count, info_count, potential_improvement_percent
+        FROM query_submissions
+        WHERE query_hash = ?
+        ORDER BY submitted_at DESC
+        LIMIT ?
+        """;
+
+    // Served by idx_bottlenecks_query_id
+    private static final String BOTTLENECKS_BY_SUBMISSION = """
+        SELECT query_submission_id, severity, issue_type, query_fragment, cost_percentage,
+            time_impact_seconds, operator_name, problem_description
+        FROM bottlenecks
+        WHERE query_submission_id = ANY (?)
+        ORDER BY query_submission_id, cost_percentage DESC NULLS LAST, id
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** The latest {@code limit} analyses of one query fingerprint, newest first */
+    public List<HistoryEntry> findByQueryHash(String queryHash, int limit) {
+        List<HistoryEntry> entries = jdbcTemplate.query(SUBMISSIONS_BY_HASH, (rs, i) -> submission(rs), queryHash, limit);
+        if (entries.isEmpty()) {
+            return entries;
+        }
+
+        Map<Long, HistoryEntry> byId = new LinkedHashMap<>();
+        entries.forEach(e -> byId.put(e.getId(), e));
+        Long[] ids = byId.keySet().toArray(Long[]::new);
+        jdbcTemplate.query(
+            con -> {
+                var ps = con.prepareStatement(BOTTLENECKS_BY_SUBMISSION);
+                ps.setArray(1, con.createArrayOf("bigint", ids));
+                return ps;
+            },
+            rs -> {
+                byId.get(rs.getLong("query_submission_id")).getBottlenecks().add(finding(rs));
+            });
+        return entries;
+    }
+
+    private static HistoryEntry submission(ResultSet rs) throws SQLException {
+        HistoryEntry e = new HistoryEntry();
+        e.setId(rs.getLong("id"));
+        e.setQueryHash(rs.getString("query_hash"));
+        e.setQueryType(rs.getString("query_type"));
+        e.setDatabaseContext(rs.getString("database_context"));
+        Timestamp submittedAt = rs.getTimestamp("submitted_at");
+        e.setSubmittedAt(submittedAt != null ? submittedAt.toLocalDateTime() : null);
+        e.setSubmittedBy(rs.getString("submitted_by"));
+        e.setEstimatedBaselineMs(rs.getObject("estimated_baseline_ms", Double.class));
+        e.setActualRuntimeMs(rs.getObject("actual_runtime_ms", Double.class));
+        e.setRowCountEstimate(rs.getObject("row_count_estimate", Long.class));
+        e.setAnalysisDurationMs(rs.getObject("analysis_duration_ms", Integer.class));
+        e.setTotalBottlenecks(rs.getInt("total_bottlenecks_found"));
+        e.setCriticalCount(rs.getInt("critical_count"));
+        e.setWarningCount(rs.getInt("warning_count"));
+        e.setInfoCount(rs.getInt("info_count"));
+        e.setPotentialImprovementPercent(rs.getObject("potential_improvement_percent", Double.class));
+        return e;
+    }
+
+    private static Finding finding(ResultSet rs) throws SQLException {
+        Finding f = new Finding();
+        f.setSeverity(rs.getString("severity"));
+        f.setIssueType(rs.getString("issue_type"));
+        f.setQueryFragment(rs.getString("query_fragment"));
+        f.setCostPercentage(rs.getObject("cost_percentage", Double.class));
+        f.setTimeImpactSeconds(rs.getObject("time_impact_seconds", Double.class));
+        f.setOperatorName(rs.getString("operator_name"));
+        f.setProblemDescription(rs.getString("problem_description"));
+        return f;
+    }
+}
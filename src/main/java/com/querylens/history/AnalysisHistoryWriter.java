@@ -0,0 +1,296 @@
+package com.querylens.history;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.metrics.AnalysisMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence of analyses into query_submissions, bottlenecks and
+ * optimization_fixes.
+ *
+ * {@link #submit} only offers to a bounded queue, so request threads never wait on the
+ * database; when the queue is full the record is dropped and counted
+ * (querylens.history.dropped). A single background thread drains up to
+ * {@code querylens.history.batch-size} records at a time and writes them in one
+ * transaction with three JDBC batches. Ids are drawn from the tables' sequences up
+ * front, so the batches need no RETURNING and the driver's reWriteBatchedInserts turns
+ * each into multi-row INSERTs.
+ *
+ * One bad record must not cost the other records of its batch: when the database
+ * rejects a row, the batch is retried record by record and only the failing records are
+ * dropped.
+ */
+@Component
+public class AnalysisHistoryWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisHistoryWriter.class);
+
+    private static final String INSERT_SUBMISSION = """
+        INSERT INTO query_submissions (id, query_hash, original_query, query_type, database_context,
+            submitted_at, submitted_by, estimated_baseline_ms, actual_runtime_ms, row_count_estimate,
+            analysis_completed, analysis_duration_ms, total_bottlenecks_found, critical_count,
+            warning_count, info_count, potential_improvement_percent, last_analyzed_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private static final String INSERT_BOTTLENECK = """
+        INSERT INTO bottlenecks (id, query_submission_id, severity, issue_type, line_number, start_line,
+            end_line, query_fragment, cost_percentage, time_impact_seconds, execution_count, operator_name,
+            problem_description, why_its_slow, detected_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private static final String INSERT_FIX = """
+        INSERT INTO optimization_fixes (bottleneck_id, fix_type, fix_description, optimized_sql,
+            fix_query, expected_improvement)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """;
+
+    // Column limits from init_app_schema.sql
+    private static final double MAX_PERCENT = 999.99;       // DECIMAL(5, 2)
+    private static final int MAX_OPERATOR_NAME = 255;
+    // trg_update_patterns copies problem_description into query_patterns.pattern_signature VARCHAR(255)
+    private static final int MAX_PROBLEM_DESCRIPTION = 255;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final BlockingQueue<SubmissionRecord> queue;
+
+    private volatile boolean running;
+    private Thread worker;
+    private Instant lastSubmittedAt = Instant.EPOCH;
+
+    public AnalysisHistoryWriter(
+            @Value("${querylens.history.enabled:true}") boolean enabled,
+            @Value("${querylens.history.queue-capacity:10000}") int queueCapacity,
+            @Value("${querylens.history.batch-size:500}") int batchSize,
+            @Value("${querylens.history.flush-interval:1s}") Duration flushInterval) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        metrics.gaugeHistoryQueue(queue);
+        running = true;
+        worker = Thread.ofPlatform().name("history-writer").daemon().start(this::drainLoop);
+    }
+
+    /** Flush what is queued, waiting at most one flush interval plus the write itself */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(flushInterval.toMillis() + 10_000);
+        }
+    }
+
+    /**
+     * Queue {@code record} for writing. Never blocks.
+     *
+     * @return false if history is disabled or the queue is full
+     */
+    public boolean submit(SubmissionRecord record) {
+        if (!enabled) {
+            return false;
+        }
+        if (!queue.offer(record)) {
+            metrics.countHistoryDropped("queue_full", 1);
+            return false;
+        }
+        return true;
+    }
+
+    private void drainLoop() {
+        List<SubmissionRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SubmissionRecord first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Database down or a bad row: drop this batch, keep the writer alive
+                log.warn("Dropped {} history records: {}", batch.size(), e.getMessage());
+                metrics.countHistoryDropped("write_failed", batch.size());
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write a drained batch. A constraint or length violation in one row rolls back the
+     * whole transaction, so the batch is then retried one record per transaction.
+     */
+    void flush(List<SubmissionRecord> batch) {
+        try {
+            write(batch);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                throw e;
+            }
+            int dropped = 0;
+            for (SubmissionRecord record : batch) {
+                try {
+                    write(List.of(record));
+                } catch (RuntimeException rowError) {
+                    dropped++;
+                    log.debug("Dropped history record for {}: {}", record.getQueryHash(), rowError.getMessage());
+                }
+            }
+            if (dropped > 0) {
+                log.warn("Dropped {} of {} history records: {}", dropped, batch.size(), e.getMessage());
+                metrics.countHistoryDropped("write_failed", dropped);
+            }
+        }
+    }
+
+    /** Write one batch in a single transaction */
+    void write(List<SubmissionRecord> batch) {
+        metrics.timeHistoryFlush(batch.size(), () ->
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> insert(batch)));
+    }
+
+    private void insert(List<SubmissionRecord> batch) {
+        // issue_type is NOT NULL
+        List<List<Bottleneck>> persisted = batch.stream()
+            .map(r -> r.getBottlenecks().stream().filter(b -> b.getIssueType() != null).toList())
+            .toList();
+        List<Long> submissionIds = nextIds("query_submissions_id_seq", batch.size());
+        int bottleneckCount = persisted.stream().mapToInt(List::size).sum();
+        List<Long> bottleneckIds = nextIds("bottlenecks_id_seq", bottleneckCount);
+
+        List<Object[]> submissions = new ArrayList<>(batch.size());
+        List<Object[]> bottlenecks = new ArrayList<>(bottleneckCount);
+        List<Object[]> fixes = new ArrayList<>();
+        int nextBottleneck = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            SubmissionRecord r = batch.get(i);
+            long submissionId = submissionIds.get(i);
+            Timestamp submittedAt = Timestamp.from(uniqueSubmittedAt(r.getSubmittedAt()));
+            submissions.add(new Object[] {
+                submissionId, r.getQueryHash(), r.getOriginalQuery(), r.getQueryType(), r.getDatabaseContext(),
+                submittedAt, r.getSubmittedBy(), r.getEstimatedBaselineMs(), r.getActualRuntimeMs(),
+                r.getRowCountEstimate(), r.getAnalysisDurationMs(), persisted.get(i).size(),
+                r.getCriticalCount(), r.getWarningCount(), r.getInfoCount(),
+                percent(r.getPotentialImprovementPercent()), submittedAt
+            });
+            for (Bottleneck b : persisted.get(i)) {
+                long bottleneckId = bottleneckIds.get(nextBottleneck++);
+                bottlenecks.add(bottleneckRow(bottleneckId, submissionId, b, submittedAt));
+                addFixRows(fixes, bottleneckId, b);
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SUBMISSION, submissions);
+        if (!bottlenecks.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_BOTTLENECK, bottlenecks);
+        }
+        if (!fixes.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FIX, fixes);
+        }
+    }
+
+    private List<Long> nextIds(String sequence, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(
+            "SELECT nextval('" + sequence + "') FROM generate_series(1, ?)", Long.class, count);
+    }
+
+    /**
+     * query_submissions is unique on (query_hash, submitted_at); timestamps handed out by
+     * this writer are strictly increasing at microsecond precision so a burst of the same
+     * query cannot collide.
+     */
+    private Instant uniqueSubmittedAt(Instant submittedAt) {
+        Instant at = submittedAt.truncatedTo(ChronoUnit.MICROS);
+        if (!at.isAfter(lastSubmittedAt)) {
+            at = lastSubmittedAt.plus(1, ChronoUnit.MICROS);
+        }
+        lastSubmittedAt = at;
+        return at;
+    }
+
+    private static Object[] bottleneckRow(long id, long submissionId, Bottleneck b, Timestamp detectedAt) {
+        String severity = b.getSeverity() != null ? b.getSeverity().name() : Bottleneck.Severity.INFO.name();
+        String description = b.getProblemDescription() != null ? b.getProblemDescription() : b.getIssueType().name();
+        return new Object[] {
+            id, submissionId, severity, b.getIssueType().name(), b.getLineNumber(), b.getStartLine(),
+            b.getEndLine(), b.getQueryFragment(), percent(b.getCostPercentage()), b.getTimeImpactSeconds(),
+            b.getExecutionCount(), truncate(b.getOperatorName(), MAX_OPERATOR_NAME),
+            truncate(description, MAX_PROBLEM_DESCRIPTION), b.getWhyItsASlow(), detectedAt
+        };
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+
+    /** One optimization_fixes row per fix description, paired with its fix query by position */
+    private static void addFixRows(List<Object[]> rows, long bottleneckId, Bottleneck b) {
+        int count = Math.max(b.getFixes().size(), b.getFixQueries().size());
+        for (int i = 0; i < count; i++) {
+            String fixQuery = i < b.getFixQueries().size() ? b.getFixQueries().get(i) : null;
+            String description = i < b.getFixes().size() ? b.getFixes().get(i) : "Run the fix query";
+            rows.add(new Object[] {
+                bottleneckId, fixType(fixQuery, b), description, b.getOptimizedFragment(),
+                fixQuery, b.getExpectedImprovement()
+            });
+        }
+    }
+
+    private static String fixType(String fixQuery, Bottleneck b) {
+        if (fixQuery != null && fixQuery.trim().toUpperCase(Locale.ROOT).matches("(?s)^CREATE\\s+(UNIQUE\\s+)?(NONCLUSTERED\\s+|CLUSTERED\\s+)?INDEX\\b.*")) {
+            return "INDEX";
+        }
+        return b.getOptimizedFragment() != null ? "REWRITE" : "RESTRUCTURE";
+    }
+
+    private static Double percent(Double value) {
+        return value == null ? null : Math.max(-MAX_PERCENT, Math.min(value, MAX_PERCENT));
+    }
+}
@@ -0,0 +1,55 @@
+package com.querylens.history;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One analysis waiting in the {@link AnalysisHistoryWriter} queue: a query_submissions
+ * row plus its bottlenecks (and their fixes).
+ */
+@Data
+public class SubmissionRecord {
+    private String queryHash;               // QueryFingerprint.hash()
+    private String originalQuery;
+    private String queryType;
+    private String databaseContext;
+    private String submittedBy;
+    private Instant submittedAt = Instant.now();
+
+    private Double estimatedBaselineMs;
+    private Double actualRuntimeMs;
+    private Long rowCountEstimate;
+    private Integer analysisDurationMs;
+
+    private List<Bottleneck> bottlenecks = new ArrayList<>();
+    private int criticalCount;
+    private int warningCount;
+    private int infoCount;
+    private Double potentialImprovementPercent;
+
+    public static SubmissionRecord of(QueryFingerprint fingerprint, String sql) {
+        SubmissionRecord record = new SubmissionRecord();
+        record.setQueryHash(fingerprint.hash());
+        record.setOriginalQuery(sql);
+        return record;
+    }
+
+    /** Take the bottlenecks and counts of a BI analysis */
+    public SubmissionRecord withBiResult(BiAnalysisResult result) {
+        bottlenecks = result.getBottlenecks();
+        criticalCount = result.getCriticalCount();
+        warningCount = result.getWarningCount();
+        infoCount = result.getInfoCount();
+        potentialImprovementPercent = result.getPotentialImprovementPercent();
+        if (estimatedBaselineMs == null) {
+            estimatedBaselineMs = result.getTotalCostMs();
+        }
+        return this;
+    }
+}
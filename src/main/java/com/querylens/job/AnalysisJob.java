@@ -0,0 +1,322 @@
+package com.querylens.job;
+
+import com.querylens.dto.JobReport;
+import com.querylens.service.CancellationToken;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One submitted analysis: its stages, the detectors that have finished, its result,
+ * and the SSE clients following it.
+ *
+ * Every change is also kept as an event. A client that subscribes late is sent the
+ * events so far before the live ones, so it sees every stage and detector whenever it
+ * connects; the last event ("done") carries the final {@link JobReport}.
+ *
+ * Events are only queued under the job's lock. Each client has its own outbox and a
+ * virtual thread that writes it to the connection, so a slow client holds up neither the
+ * analysis nor the other clients.
+ */
+public class AnalysisJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    // SSE event names
+    static final String STAGE_EVENT = "stage";
+    static final String DETECTOR_EVENT = "detector";
+    static final String DONE_EVENT = "done";
+
+    private record Event(long id, String name, Object data) {}
+
+    // Outbox markers, told apart from events by identity
+    private static final Event HEARTBEAT = new Event(0, "heartbeat", null);
+    private static final Event END = new Event(0, "end", null);
+
+    /** One SSE client: its outbox and the thread sending from it */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> outbox = new LinkedBlockingQueue<>();
+        private Thread sender;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void start() {
+            sender = Thread.ofVirtual().name("job-" + id + "-sse").start(this::sendLoop);
+        }
+
+        private void sendLoop() {
+            try {
+                while (true) {
+                    Event event = outbox.take();
+                    if (event == END) {
+                        emitter.complete();
+                        return;
+                    }
+                    if (!send(emitter, event)) {
+                        unsubscribe(emitter);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Unsubscribed: the client went away
+            }
+        }
+
+        private void stop() {
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+    }
+
+    /** A stage of this job; returned by {@link #stageStarted} to close it with */
+    static final class StageHandle {
+        private final String name;
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private Long durationMs;
+
+        private StageHandle(String name) {
+            this.name = name;
+        }
+
+        private JobReport.Stage report() {
+            JobReport.Stage stage = new JobReport.Stage();
+            stage.setName(name);
+            stage.setStartedAt(startedAt);
+            stage.setDurationMs(durationMs);
+            return stage;
+        }
+    }
+
+    private final String id;
+    private final String kind;
+    private final Instant submittedAt = Instant.now();
+    private final CancellationToken token = new CancellationToken();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private final List<StageHandle> stages = new ArrayList<>();
+    private final List<JobReport.Detector> detectors = new ArrayList<>();
+    private Object result;
+    private String error;
+    private final List<Event> events = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    AnalysisJob(String id, String kind) {
+        this.id = id;
+        this.kind = kind;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    CancellationToken token() {
+        return token;
+    }
+
+    /** Stops the job; one that already finished is left as it is */
+    public void cancel() {
+        token.cancel();
+    }
+
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finishedAt != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Null while running */
+    Instant finishedAt() {
+        lock.lock();
+        try {
+            return finishedAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public JobReport report() {
+        lock.lock();
+        try {
+            JobReport report = new JobReport();
+            report.setId(id);
+            report.setKind(kind);
+            report.setStatus(status.name());
+            report.setSubmittedAt(submittedAt);
+            report.setStartedAt(startedAt);
+            report.setFinishedAt(finishedAt);
+            stages.forEach(s -> report.getStages().add(s.report()));
+            report.getDetectors().addAll(detectors);
+            report.setResult(result);
+            report.setError(error);
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sends {@code emitter} the events so far, then follows the job until it finishes */
+    public void subscribe(SseEmitter emitter) {
+        emitter.onCompletion(() -> unsubscribe(emitter));
+        emitter.onTimeout(() -> unsubscribe(emitter));
+        emitter.onError(e -> unsubscribe(emitter));
+        Subscriber subscriber = new Subscriber(emitter);
+        lock.lock();
+        try {
+            subscriber.outbox.addAll(events);
+            if (finishedAt != null) {
+                subscriber.outbox.add(END);
+            } else {
+                subscribers.add(subscriber);
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriber.start();
+    }
+
+    /** Keeps idle SSE connections from being closed by proxies while a long stage runs */
+    void heartbeat() {
+        lock.lock();
+        try {
+            subscribers.forEach(s -> s.outbox.add(HEARTBEAT));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    StageHandle stageStarted(String name) {
+        lock.lock();
+        try {
+            StageHandle stage = new StageHandle(name);
+            stages.add(stage);
+            publish(STAGE_EVENT, stage.report());
+            return stage;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stageFinished(StageHandle stage) {
+        lock.lock();
+        try {
+            stage.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stage.startNanos);
+            publish(STAGE_EVENT, stage.report());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void detectorFinished(String name, List<?> findings) {
+        JobReport.Detector detector = new JobReport.Detector();
+        detector.setName(name);
+        detector.setFindings(List.copyOf(findings));
+        lock.lock();
+        try {
+            detectors.add(detector);
+            publish(DETECTOR_EVENT, detector);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void started() {
+        lock.lock();
+        try {
+            status = Status.RUNNING;
+            startedAt = Instant.now();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void succeeded(Object result) {
+        finish(Status.SUCCEEDED, result, null);
+    }
+
+    void failed(String error) {
+        finish(Status.FAILED, null, error);
+    }
+
+    void cancelled() {
+        finish(Status.CANCELLED, null, null);
+    }
+
+    private void finish(Status status, Object result, String error) {
+        lock.lock();
+        try {
+            this.status = status;
+            this.result = result;
+            this.error = error;
+            finishedAt = Instant.now();
+            publish(DONE_EVENT, report());
+            // Each sender completes its emitter once the rest of its outbox is sent
+            subscribers.forEach(s -> s.outbox.add(END));
+            subscribers.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called under the lock; only queues the event */
+    private void publish(String name, Object data) {
+        Event event = new Event(events.size() + 1, name, data);
+        events.add(event);
+        subscribers.forEach(s -> s.outbox.add(event));
+    }
+
+    private void unsubscribe(SseEmitter emitter) {
+        Subscriber gone = null;
+        lock.lock();
+        try {
+            for (Subscriber s : subscribers) {
+                if (s.emitter == emitter) {
+                    gone = s;
+                }
+            }
+            subscribers.remove(gone);
+        } finally {
+            lock.unlock();
+        }
+        if (gone != null) {
+            gone.stop();
+        }
+    }
+
+    /** False when the client is gone */
+    private static boolean send(SseEmitter emitter, Event event) {
+        try {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("running"));
+            } else {
+                emitter.send(SseEmitter.event().id(String.valueOf(event.id())).name(event.name()).data(event.data()));
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.querylens.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs analyses as jobs, so a 30-minute ETL query is not tied to one HTTP request that a
+ * proxy will cut off: submitting returns a job id, and the job's progress and result are
+ * fetched by id or streamed over SSE.
+ *
+ * Running jobs are all kept. At most querylens.jobs.max-active run at once; further
+ * submissions are answered with 429. A slot is reserved before the job is created, so
+ * concurrent submissions cannot overshoot the limit. Finished jobs move to a store bounded by
+ * querylens.jobs.max-finished and querylens.jobs.retention.
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    @Autowired
+    @Qualifier("analyzeExecutor")
+    private Executor executor;
+
+    @Value("${querylens.jobs.max-active:64}")
+    private int maxActive = 64;
+
+    // How long one SSE connection follows a job; clients reconnect and get the events again
+    @Value("${querylens.jobs.sse-timeout:30m}")
+    private Duration sseTimeout = Duration.ofMinutes(30);
+
+    @Value("${querylens.jobs.max-finished:1000}")
+    private int maxFinished = 1000;
+
+    @Value("${querylens.jobs.retention:1h}")
+    private Duration retention = Duration.ofHours(1);
+
+    private final Map<String, AnalysisJob> active = new ConcurrentHashMap<>();
+    // Slots taken by active jobs; reserved before a job is created and freed after it left active
+    private final AtomicInteger slots = new AtomicInteger();
+
+    // In the order the jobs finished, so the oldest is dropped first (a size-bounded cache
+    // could drop the job that just finished instead)
+    private final Map<String, AnalysisJob> finished = new LinkedHashMap<>();
+    private final ReentrantLock finishedLock = new ReentrantLock();
+
+    /**
+     * Run {@code work} as a job. It is cancelled with {@link #cancel}, and reports its
+     * stages through {@link JobProgress}.
+     *
+     * @param kind what the job runs, e.g. "analyze" or "bi"
+     */
+    public AnalysisJob submit(String kind, Supplier<?> work) {
+        if (slots.incrementAndGet() > maxActive) {
+            slots.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                "Already running " + maxActive + " analysis jobs (querylens.jobs.max-active)");
+        }
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), kind);
+        active.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, work));
+        } catch (RuntimeException e) {
+            active.remove(job.getId());
+            slots.decrementAndGet();
+            throw e;
+        }
+        return job;
+    }
+
+    /** @throws UnknownJobException when there is no such job (or it has left the store) */
+    public AnalysisJob find(String id) {
+        AnalysisJob job = active.get(id);
+        if (job == null) {
+            finishedLock.lock();
+            try {
+                prune();
+                job = finished.get(id);
+            } finally {
+                finishedLock.unlock();
+            }
+        }
+        if (job == null) {
+            throw new UnknownJobException(id);
+        }
+        return job;
+    }
+
+    public AnalysisJob cancel(String id) {
+        AnalysisJob job = find(id);
+        job.cancel();
+        return job;
+    }
+
+    /** An SSE stream of the job's events, from its first stage to "done" */
+    public SseEmitter subscribe(String id) {
+        AnalysisJob job = find(id);
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        job.subscribe(emitter);
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${querylens.jobs.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        active.values().forEach(AnalysisJob::heartbeat);
+    }
+
+    private void run(AnalysisJob job, Supplier<?> work) {
+        try {
+            Object result = job.token().run(() -> {
+                job.started();
+                return JobProgress.of(job).run(work);
+            });
+            job.succeeded(result);
+        } catch (CancellationException e) {
+            job.cancelled();
+        } catch (RuntimeException e) {
+            log.warn("Analysis job {} failed: {}", job.getId(), e.getMessage());
+            job.failed(e instanceof ResponseStatusException status && status.getReason() != null
+                ? status.getReason() : e.getMessage());
+        } catch (Error e) {
+            // E.g. StackOverflowError on a deeply nested query: the job still has to finish
+            log.error("Analysis job {} failed", job.getId(), e);
+            job.failed(e.toString());
+        } finally {
+            // Stored before it leaves the active map, so it can always be found
+            finishedLock.lock();
+            try {
+                finished.put(job.getId(), job);
+                prune();
+            } finally {
+                finishedLock.unlock();
+                active.remove(job.getId());
+                slots.decrementAndGet();
+            }
+        }
+    }
+
+    /** Drops finished jobs beyond max-finished or older than the retention, oldest first */
+    private void prune() {
+        Instant cutoff = Instant.now().minus(retention);
+        Iterator<AnalysisJob> oldestFirst = finished.values().iterator();
+        while (oldestFirst.hasNext()) {
+            Instant finishedAt = oldestFirst.next().finishedAt();
+            if (finished.size() <= maxFinished && finishedAt != null && !finishedAt.isBefore(cutoff)) {
+                break;
+            }
+            oldestFirst.remove();
+        }
+    }
+}
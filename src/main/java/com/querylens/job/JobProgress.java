@@ -0,0 +1,74 @@
+package com.querylens.job;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Progress reporting for the analysis job running on the current thread.
+ *
+ * Analysis code wraps its stages in {@link #stage} and reports each detector as it
+ * finishes; without a job (a plain /analyze or /api/bi/analyze call) both only run the
+ * work. Code that hands work to other threads takes {@link #current()} along.
+ */
+public final class JobProgress {
+
+    /** Reports nowhere */
+    public static final JobProgress NONE = new JobProgress(null);
+
+    private static final ThreadLocal<JobProgress> CURRENT = new ThreadLocal<>();
+
+    private final AnalysisJob job;
+
+    private JobProgress(AnalysisJob job) {
+        this.job = job;
+    }
+
+    /** The current thread's job, {@link #NONE} without one */
+    public static JobProgress current() {
+        JobProgress progress = CURRENT.get();
+        return progress != null ? progress : NONE;
+    }
+
+    /** Run {@code work} as the stage {@code name} of the job */
+    public <T> T stage(String name, Supplier<T> work) {
+        if (job == null) {
+            return work.get();
+        }
+        AnalysisJob.StageHandle stage = job.stageStarted(name);
+        try {
+            return work.get();
+        } finally {
+            job.stageFinished(stage);
+        }
+    }
+
+    /** A detector finished with {@code findings} (empty when it found nothing) */
+    public void detectorFinished(String detector, List<?> findings) {
+        if (job != null) {
+            job.detectorFinished(detector, findings);
+        }
+    }
+
+    /** {@code work} reporting to this job, for running on another thread */
+    public <T> Supplier<T> propagate(Supplier<T> work) {
+        return job == null ? work : () -> run(work);
+    }
+
+    static JobProgress of(AnalysisJob job) {
+        return new JobProgress(job);
+    }
+
+    <T> T run(Supplier<T> work) {
+        JobProgress previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.querylens.job;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** No such job, or it finished longer ago than the job store keeps results */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UnknownJobException extends RuntimeException {
+
+    public UnknownJobException(String id) {
+        super("Unknown analysis job '" + id + "' (finished jobs are kept for querylens.jobs.retention)");
+    }
+}
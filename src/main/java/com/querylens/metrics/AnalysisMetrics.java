@@ -0,0 +1,234 @@
+package com.querylens.metrics;
+
+import com.querylens.analyzer.plan.QueryPlan;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters for the analysis pipeline, published on /actuator/prometheus.
+ *
+ * Timers publish percentile histograms so p95/p99 can be aggregated across instances:
+ * - querylens.detector.duration{suite, detector}: one detector run (BI or legacy)
+ * - querylens.detector.timeouts{detector}: BI detectors that missed their deadline
+ * - querylens.rewriter.duration{rewriter, phase}: canRewrite ("match") and rewrite
+ * - querylens.explain.duration{kind, outcome}: EXPLAIN round trip to the database
+ * - querylens.plan.parse.duration{format}, querylens.plan.nodes{format},
+ *   querylens.plan.size{format}: plan parsing time, node count and document size (chars)
+ * - querylens.format.duration: rendering the BI one-pager
+ * - querylens.analyze.database.executions: EXPLAIN statements per /analyze request
+ * - querylens.history.flush.duration, querylens.history.batch.size, querylens.history.queue,
+ *   querylens.history.dropped{reason}: the analysis history write-behind queue
+ * - querylens.admission.queue.duration{target, outcome}: time an execution waited for a slot
+ *   (outcome admitted, queue_full, timed_out or interrupted),
+ *   querylens.admission.execution.duration{target}: time it then held the slot,
+ *   querylens.admission.running{target}, querylens.admission.queued{target}
+ *
+ * Cache hit rates come from {@link com.querylens.cache.AnalysisCache} (cache_gets_total).
+ */
+@Component
+public class AnalysisMetrics {
+
+    private static final AnalysisMetrics NOOP = new AnalysisMetrics(null);
+
+    private final MeterRegistry registry;   // null for noop()
+
+    public AnalysisMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Records nothing; the default for services built outside Spring (tests, benchmarks) */
+    public static AnalysisMetrics noop() {
+        return NOOP;
+    }
+
+    public <T> T timeDetector(String suite, String detector, Supplier<T> work) {
+        if (registry == null) {
+            return work.get();
+        }
+        return timer("querylens.detector.duration", "Time spent in one query detector",
+            "suite", suite, "detector", detector).record(work);
+    }
+
+    public void countDetectorTimeout(String detector) {
+        if (registry == null) {
+            return;
+        }
+        Counter.builder("querylens.detector.timeouts")
+            .description("BI detectors that missed their deadline")
+            .tag("detector", detector)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * @param phase "match" for canRewrite, "rewrite" for the rewrite itself
+     */
+    public <T> T timeRewriter(String rewriter, String phase, Supplier<T> work) {
+        if (registry == null) {
+            return work.get();
+        }
+        return timer("querylens.rewriter.duration", "Time spent in one query rewriter",
+            "rewriter", rewriter, "phase", phase).record(work);
+    }
+
+    /**
+     * Time one EXPLAIN round trip; failures (timeouts, lock waits) are tagged outcome=error.
+     *
+     * @param kind e.g. "analyze", "analyze_json", "estimate"
+     */
+    public <T> T timeExplain(String kind, Supplier<T> work) {
+        if (registry == null) {
+            return work.get();
+        }
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T result = work.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timer("querylens.explain.duration", "EXPLAIN round trip to the database",
+                "kind", kind, "outcome", outcome));
+        }
+    }
+
+    /**
+     * Time a plan parse and record the plan's size.
+     *
+     * @param format   e.g. "postgres_json", "showplan_xml"
+     * @param document the raw plan, for its size
+     */
+    public QueryPlan timePlanParse(String format, String document, Supplier<QueryPlan> parse) {
+        return timePlanParse(format, (long) document.length(), parse);
+    }
+
+    /**
+     * Same, for a plan streamed from an upload and never held as a string
+     *
+     * @param documentSize the upload's size (bytes, which is chars for ASCII-heavy XML)
+     */
+    public QueryPlan timePlanParse(String format, long documentSize, Supplier<QueryPlan> parse) {
+        if (registry == null) {
+            return parse.get();
+        }
+        QueryPlan plan = timer("querylens.plan.parse.duration", "Time to parse a captured plan",
+            "format", format).record(parse);
+        DistributionSummary.builder("querylens.plan.nodes")
+            .description("Operators per parsed plan")
+            .tag("format", format)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(plan.getNodes().size());
+        DistributionSummary.builder("querylens.plan.size")
+            .description("Plan document size")
+            .baseUnit("chars")
+            .tag("format", format)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(documentSize);
+        return plan;
+    }
+
+    public <T> T timeFormat(Supplier<T> work) {
+        if (registry == null) {
+            return work.get();
+        }
+        return timer("querylens.format.duration", "Time to render a BI analysis report").record(work);
+    }
+
+    public void recordDatabaseExecutions(int databaseExecutions) {
+        if (registry == null) {
+            return;
+        }
+        DistributionSummary.builder("querylens.analyze.database.executions")
+            .description("EXPLAIN statements issued per /analyze request")
+            .register(registry)
+            .record(databaseExecutions);
+    }
+
+    /** Time one history batch write of {@code records} submissions */
+    public void timeHistoryFlush(int records, Runnable write) {
+        if (registry == null) {
+            write.run();
+            return;
+        }
+        DistributionSummary.builder("querylens.history.batch.size")
+            .description("Submissions written per history batch")
+            .register(registry)
+            .record(records);
+        timer("querylens.history.flush.duration", "Time to write one history batch").record(write);
+    }
+
+    /**
+     * @param reason "queue_full" (request thread did not wait) or "write_failed"
+     */
+    public void countHistoryDropped(String reason, int records) {
+        if (registry == null) {
+            return;
+        }
+        Counter.builder("querylens.history.dropped")
+            .description("Analyses that were not persisted to the history tables")
+            .tag("reason", reason)
+            .register(registry)
+            .increment(records);
+    }
+
+    public void gaugeHistoryQueue(Collection<?> queue) {
+        if (registry == null) {
+            return;
+        }
+        Gauge.builder("querylens.history.queue", queue, Collection::size)
+            .description("Analyses waiting to be written to the history tables")
+            .register(registry);
+    }
+
+    /**
+     * @param outcome "admitted", or why the execution was turned away
+     */
+    public void recordAdmissionWait(String target, String outcome, long nanos) {
+        if (registry == null) {
+            return;
+        }
+        timer("querylens.admission.queue.duration", "Time an execution waited for a slot on its target",
+            "target", target, "outcome", outcome).record(Duration.ofNanos(nanos));
+    }
+
+    public void recordAdmissionExecution(String target, long nanos) {
+        if (registry == null) {
+            return;
+        }
+        timer("querylens.admission.execution.duration", "Time an admitted execution held its slot",
+            "target", target).record(Duration.ofNanos(nanos));
+    }
+
+    public <T> void gaugeAdmission(String target, T lane, ToDoubleFunction<T> running, ToDoubleFunction<T> queued) {
+        if (registry == null) {
+            return;
+        }
+        Gauge.builder("querylens.admission.running", lane, running)
+            .description("Executions running against the target")
+            .tag("target", target)
+            .register(registry);
+        Gauge.builder("querylens.admission.queued", lane, queued)
+            .description("Executions waiting for a slot on the target")
+            .tag("target", target)
+            .register(registry);
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+            .description(description)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+}
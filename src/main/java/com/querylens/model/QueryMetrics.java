@@ -7,7 +7,7 @@ public class QueryMetrics {
 
     private String rawOutput;
     private double executionTime;
-    private int rowsProcessed;
+    private long rowsProcessed;
     private double costEstimate;
 
     private String statementType;
@@ -21,7 +21,7 @@ public class QueryMetrics {
     public QueryMetrics() {}
 
     // ✅ All-args constructor for convenience (if needed elsewhere)
-    public QueryMetrics(String rawOutput, double executionTime, int rowsProcessed, double costEstimate) {
+    public QueryMetrics(String rawOutput, double executionTime, long rowsProcessed, double costEstimate) {
         this.rawOutput = rawOutput;
         this.executionTime = executionTime;
         this.rowsProcessed = rowsProcessed;
@@ -45,11 +45,11 @@ public class QueryMetrics {
         this.executionTime = executionTime;
     }
 
-    public int getRowsProcessed() {
+    public long getRowsProcessed() {
         return rowsProcessed;
     }
 
-    public void setRowsProcessed(int rowsProcessed) {
+    public void setRowsProcessed(long rowsProcessed) {
         this.rowsProcessed = rowsProcessed;
     }
 
@@ -4,8 +4,14 @@ import com.querylens.optimizer.detector.SelectStarDetector;
 import com.querylens.optimizer.detector.MissingIndexScanDetector;
 import com.querylens.optimizer.detector.NonSargablePredicateDetector;
 import com.querylens.optimizer.detector.ScalarSubqueryDetector;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.job.JobProgress;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.CancellationToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,6 +29,9 @@ public class QueryOptimizerService {
         // → add more detectors here as you implement them
     );
 
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
     /**
      * Returns a list of optimization suggestions based on the SQL text
      * and the EXPLAIN ANALYZE plan.
@@ -31,9 +40,25 @@ public class QueryOptimizerService {
      * @param plan the list of EXPLAIN ANALYZE output lines
      */
     public List<String> suggestOptimizations(String sql, List<String> plan) {
-        return detectors.stream()
-            .filter(det -> det.matches(sql, plan))
-            .map(QueryPatternDetector::description)
-            .toList();
+        List<String> suggestions = new ArrayList<>();
+        JobProgress progress = JobProgress.current();
+        for (QueryPatternDetector det : detectors) {
+            // Stop between detectors once the request is cancelled
+            CancellationToken.checkCurrent();
+            boolean matches = metrics.timeDetector("legacy", det.name(), () -> det.matches(sql, plan));
+            if (matches) {
+                suggestions.add(det.description());
+            }
+            progress.detectorFinished(det.name(), matches ? List.of(det.description()) : List.of());
+        }
+        return suggestions;
+    }
+
+    /**
+     * Same as {@link #suggestOptimizations(String, List)} for a plan already captured
+     * for this request.
+     */
+    public List<String> suggestOptimizations(String sql, QueryPlan plan) {
+        return suggestOptimizations(sql, plan.toTextLines());
     }
 }
@@ -1,21 +1,63 @@
-// src/main/java/com/querylens/optimizer/QueryRewriteService.java
 package com.querylens.optimizer;
 
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.dto.RewriteReport;
+import com.querylens.dto.RewriteReport.Candidate;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.optimizer.RewriteVerifier.Checksum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 /**
- * Applies the first matching QueryRewriter to produce an optimized SQL.
+ * Applies QueryRewriters to produce an optimized SQL: the first match ({@link #rewrite}),
+ * or the cheapest combination of rewrites verified against the database
+ * ({@link #verifiedRewrite}).
  */
 @Service
 public class QueryRewriteService {
 
+    private static final Pattern SELECT = Pattern.compile("(?is)^\\s*(SELECT|WITH)\\b.*");
+
     private final List<QueryRewriter> rewriters;
+    private final AnalysisMetrics metrics;
+    private final RewriteVerifier verifier;
+
+    // Wall-clock limit for running the original and rewritten queries to compare results
+    @Value("${querylens.rewrite.verify-budget-ms:5000}")
+    private long verifyBudgetMs = 5000;
+
+    // Most rewrites stacked on top of each other
+    @Value("${querylens.rewrite.search.max-depth:4}")
+    private int searchMaxDepth = 4;
+
+    // Most rewritten statements planned (EXPLAIN) per search
+    @Value("${querylens.rewrite.search.max-plans:24}")
+    private int searchMaxPlans = 24;
+
+    @Value("${querylens.rewrite.search.budget-ms:2000}")
+    private long searchBudgetMs = 2000;
 
     public QueryRewriteService(List<QueryRewriter> rewriters) {
+        this(rewriters, AnalysisMetrics.noop(), null);
+    }
+
+    public QueryRewriteService(List<QueryRewriter> rewriters, AnalysisMetrics metrics) {
+        this(rewriters, metrics, null);
+    }
+
+    @Autowired
+    public QueryRewriteService(List<QueryRewriter> rewriters, AnalysisMetrics metrics, RewriteVerifier verifier) {
         this.rewriters = rewriters;
+        this.metrics = metrics;
+        this.verifier = verifier;
     }
 
     /**
@@ -23,8 +65,129 @@ public class QueryRewriteService {
      */
     public Optional<String> rewrite(String sql, List<String> plan) {
         return rewriters.stream()
-            .filter(r -> r.canRewrite(sql, plan))
+            .filter(r -> metrics.timeRewriter(r.name(), "match", () -> r.canRewrite(sql, plan)))
             .findFirst()
-            .map(r -> r.rewrite(sql, plan));
+            .map(r -> metrics.timeRewriter(r.name(), "rewrite", () -> r.rewrite(sql, plan)));
+    }
+
+    /**
+     * Same as {@link #rewrite(String, List)} for a plan already captured for this request.
+     */
+    public Optional<String> rewrite(String sql, QueryPlan plan) {
+        return rewrite(sql, plan.toTextLines());
+    }
+
+    /**
+     * Searches stacked rewrites ({@link RewriteSearch}) and returns the cheapest one that
+     * is proven safe:
+     * 1. It must plan (EXPLAIN), so it parses and references real objects.
+     * 2. Its planner cost must not exceed the original's.
+     * 3. It must return the same rows, compared by checksum within
+     *    querylens.rewrite.verify-budget-ms. This executes both statements (read only,
+     *    rolled back), so it only happens with {@code executeAllowed}; otherwise no
+     *    rewrite is returned.
+     * No rewriter matching costs no database round trip.
+     */
+    public RewriteReport verifiedRewrite(String sql, QueryPlan plan, boolean executeAllowed) {
+        RewriteReport report = new RewriteReport();
+        if (verifier == null) {
+            rewrite(sql, plan).ifPresent(rewritten -> {
+                Candidate c = new Candidate();
+                c.setSql(rewritten);
+                c.setRejectedReason("No database to verify against");
+                report.getCandidates().add(c);
+            });
+            return report;
+        }
+
+        RewriteSearch search = new RewriteSearch(rewriters, metrics, verifier,
+            searchMaxDepth, searchMaxPlans, searchBudgetMs);
+        report.getCandidates().addAll(search.run(sql, plan));
+        report.setDatabaseExecutions(search.plansRun());
+        List<Candidate> planned = report.getCandidates().stream().filter(c -> c.getCost() != null).toList();
+        if (planned.isEmpty()) {
+            return report;
+        }
+
+        double originalCost;
+        if (plan.getRoot() != null) {
+            originalCost = plan.getRoot().getEstimatedCost();
+        } else {
+            originalCost = verifier.plan(sql).getRoot().getEstimatedCost();
+            report.setDatabaseExecutions(report.getDatabaseExecutions() + 1);
+        }
+        report.setOriginalCost(originalCost);
+
+        List<Candidate> cheaper = new ArrayList<>();
+        for (Candidate c : planned) {
+            if (c.getCost() > originalCost) {
+                c.setRejectedReason(String.format("Costs more than the original: %.2f vs %.2f", c.getCost(), originalCost));
+            } else {
+                cheaper.add(c);
+            }
+        }
+        cheaper.sort(Comparator.comparingDouble(Candidate::getCost));
+
+        Candidate chosen = compareResults(sql, cheaper, executeAllowed, report);
+        if (chosen != null) {
+            report.setOptimizedSql(chosen.getSql());
+            report.setRewriter(chosen.getRewriter());
+            report.setOptimizedCost(chosen.getCost());
+            report.setCostDelta(chosen.getCost() - originalCost);
+            report.setCostDeltaPercent(originalCost > 0 ? report.getCostDelta() / originalCost * 100 : 0.0);
+        }
+        return report;
+    }
+
+    /** Cheapest first; the first candidate returning the original's rows wins */
+    private Candidate compareResults(String sql, List<Candidate> cheapestFirst, boolean executeAllowed,
+                                     RewriteReport report) {
+        if (cheapestFirst.isEmpty()) {
+            return null;
+        }
+        String notCompared = !executeAllowed
+            ? "Results not compared: this request does not execute the query"
+            : !SELECT.matcher(sql).matches() ? "Results not compared: only SELECT statements are checked" : null;
+        if (notCompared != null) {
+            cheapestFirst.forEach(c -> c.setRejectedReason(notCompared));
+            return null;
+        }
+
+        long deadline = System.currentTimeMillis() + verifyBudgetMs;
+        Checksum original;
+        try {
+            report.setDatabaseExecutions(report.getDatabaseExecutions() + 1);
+            original = verifier.checksum(sql, verifyBudgetMs);
+        } catch (DataAccessException e) {
+            String reason = "Original query could not be checksummed: " + e.getMostSpecificCause().getMessage();
+            cheapestFirst.forEach(c -> c.setRejectedReason(reason));
+            return null;
+        }
+
+        Candidate chosen = null;
+        for (Candidate c : cheapestFirst) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (chosen != null) {
+                c.setRejectedReason("A cheaper rewrite was verified");
+            } else if (remaining <= 0) {
+                c.setRejectedReason("Results not compared: verification budget of " + verifyBudgetMs + " ms used up");
+            } else {
+                try {
+                    report.setDatabaseExecutions(report.getDatabaseExecutions() + 1);
+                    Checksum rewritten = verifier.checksum(c.getSql(), remaining);
+                    c.setResultsMatch(rewritten.matches(original));
+                    if (c.getResultsMatch()) {
+                        chosen = c;
+                        report.setRowsCompared(original.rows());
+                    } else {
+                        c.setRejectedReason(String.format("Returns different rows: %d rows vs %d in the original",
+                            rewritten.rows(), original.rows()));
+                    }
+                } catch (DataAccessException e) {
+                    c.setRejectedReason("Results not compared: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        return chosen;
     }
 }
@@ -0,0 +1,125 @@
+package com.querylens.optimizer;
+
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.dto.RewriteReport.Candidate;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.CancellationToken;
+import org.springframework.dao.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Bounded best-first search over stacked rewrites.
+ *
+ * Starting from the submitted SQL, the cheapest state found so far (by planner cost) is
+ * expanded by every rewriter that matches it, so rewrites compose: SELECT * expansion,
+ * then a subquery decorrelation on the result, and so on. A state reached twice is only
+ * planned once (keyed by fingerprint plus literal values). The search stops at
+ * {@code maxDepth} rewrites in a row, {@code maxPlans} EXPLAINs or the deadline.
+ *
+ * One instance per search; not thread-safe.
+ */
+final class RewriteSearch {
+
+    /** A SQL text reached by applying {@code steps}, with its plan */
+    private record State(String sql, List<String> steps, QueryPlan plan, double cost) {}
+
+    private final List<QueryRewriter> rewriters;
+    private final AnalysisMetrics metrics;
+    private final RewriteVerifier verifier;
+    private final int maxDepth;
+    private final int maxPlans;
+    private final long deadline;
+
+    private final Set<String> seen = new HashSet<>();
+    private final List<Candidate> candidates = new ArrayList<>();
+    private int plansRun;
+
+    RewriteSearch(List<QueryRewriter> rewriters, AnalysisMetrics metrics, RewriteVerifier verifier,
+                  int maxDepth, int maxPlans, long budgetMs) {
+        this.rewriters = rewriters;
+        this.metrics = metrics;
+        this.verifier = verifier;
+        this.maxDepth = maxDepth;
+        this.maxPlans = maxPlans;
+        this.deadline = System.currentTimeMillis() + budgetMs;
+    }
+
+    /**
+     * Every distinct SQL text reached, in discovery order. Planned ones have a cost;
+     * the others carry the reason they were not planned.
+     */
+    List<Candidate> run(String sql, QueryPlan plan) {
+        seen.add(key(sql));
+        PriorityQueue<State> open = new PriorityQueue<>(Comparator.comparingDouble(State::cost));
+        // The original is expanded first whatever its cost, and is not planned again here
+        open.add(new State(sql, List.of(), plan, Double.NEGATIVE_INFINITY));
+
+        while (!open.isEmpty()) {
+            CancellationToken.checkCurrent();
+            State state = open.poll();
+            if (state.steps().size() >= maxDepth) {
+                continue;
+            }
+            List<String> lines = state.plan().toTextLines();
+            for (QueryRewriter r : rewriters) {
+                if (!metrics.timeRewriter(r.name(), "match", () -> r.canRewrite(state.sql(), lines))) {
+                    continue;
+                }
+                String next = metrics.timeRewriter(r.name(), "rewrite", () -> r.rewrite(state.sql(), lines));
+                List<String> steps = new ArrayList<>(state.steps());
+                steps.add(r.name());
+                if (next == null || next.isBlank() || next.strip().equals(state.sql().strip())) {
+                    if (state.steps().isEmpty()) {
+                        candidates.add(candidate(steps, next, "Rewriter did not change the query"));
+                    }
+                    continue;
+                }
+                if (!seen.add(key(next))) {
+                    continue;
+                }
+                if (plansRun >= maxPlans || System.currentTimeMillis() >= deadline) {
+                    candidates.add(candidate(steps, next, "Not planned: rewrite search budget used up"));
+                    continue;
+                }
+
+                Candidate c = candidate(steps, next, null);
+                candidates.add(c);
+                plansRun++;
+                try {
+                    QueryPlan nextPlan = verifier.plan(next);
+                    c.setCost(nextPlan.getRoot().getEstimatedCost());
+                    open.add(new State(next, steps, nextPlan, c.getCost()));
+                } catch (DataAccessException e) {
+                    c.setRejectedReason("Does not plan: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /** EXPLAINs run by {@link #run} */
+    int plansRun() {
+        return plansRun;
+    }
+
+    private static Candidate candidate(List<String> steps, String sql, String rejectedReason) {
+        Candidate c = new Candidate();
+        c.setRewriter(String.join(" + ", steps));
+        c.setSql(sql);
+        c.setRejectedReason(rejectedReason);
+        return c;
+    }
+
+    /** Rewrites do not normally touch literals, but two texts differing only in literals are different queries */
+    private static String key(String sql) {
+        QueryFingerprint fingerprint = QueryFingerprint.of(sql);
+        return fingerprint.hash() + ':' + fingerprint.literalHash();
+    }
+}
@@ -0,0 +1,69 @@
+package com.querylens.optimizer;
+
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.ExplainSandbox;
+import com.querylens.service.MultipleStatementsException;
+import com.querylens.service.QueryAnalyzerService;
+import com.querylens.target.TargetContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Database checks behind {@link QueryRewriteService#verifiedRewrite}: the plan of a
+ * statement, and an order-independent checksum of everything it returns.
+ */
+@Component
+public class RewriteVerifier {
+
+    /**
+     * Row count plus the sum of a 64-bit hash of each row's text, so two queries
+     * returning the same rows in any order get the same checksum.
+     */
+    public record Checksum(long rows, BigDecimal hash) {
+        public boolean matches(Checksum other) {
+            return rows == other.rows && hash.compareTo(other.hash) == 0;
+        }
+    }
+
+    private static final String CHECKSUM = """
+        SELECT count(*), COALESCE(sum(('x' || substr(md5(t::text), 1, 16))::bit(64)::bigint), 0)
+        FROM (%s) t
+        """;
+
+    @Autowired
+    private QueryAnalyzerService analyzerService;
+
+    @Autowired
+    private ExplainSandbox sandbox;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
+    /** Planner-only EXPLAIN; throws if the statement does not parse or plan */
+    public QueryPlan plan(String sql) {
+        return analyzerService.estimatePlan(sql);
+    }
+
+    /**
+     * Runs {@code sql} in a read-only, rolled-back transaction that is cancelled
+     * after {@code timeoutMs}.
+     */
+    public Checksum checksum(String sql, long timeoutMs) {
+        MultipleStatementsException.requireSingle(sql);
+        String query = CHECKSUM.formatted(sql.strip().replaceAll(";+$", ""));
+        return metrics.timeExplain("rewrite_checksum", () -> sandbox.run(true, () -> {
+            // Overrides the sandbox's own statement_timeout for this transaction
+            JdbcTemplate jdbc = TargetContext.jdbcTemplate(jdbcTemplate);
+            jdbc.execute("SET LOCAL statement_timeout = " + Math.max(1, timeoutMs));
+            return jdbc.queryForObject(query,
+                (rs, i) -> new Checksum(rs.getLong(1), rs.getBigDecimal(2)));
+        }));
+    }
+}
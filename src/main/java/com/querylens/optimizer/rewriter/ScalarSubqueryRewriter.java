@@ -1,120 +1,67 @@
-// // src/main/java/com/querylens/optimizer/rewriter/ScalarSubqueryRewriter.java
-// package com.querylens.optimizer.rewriter;
-
-// import com.querylens.optimizer.QueryRewriter;
-// import org.springframework.stereotype.Component;
-
-// import java.util.List;
-// import java.util.regex.Matcher;
-// import java.util.regex.Pattern;
-
-// /**
-//  * Finds single‐column scalar subqueries in the SELECT list and
-//  * moves them into a WITH‐CTE to potentially improve planning.
-//  *
-//  * e.g. transforms:
-//  *   SELECT u.*, (SELECT COUNT(*) FROM orders o WHERE o.user_id=u.id) AS order_count
-//  *   FROM users u;
-//  *
-//  * into:
-//  *   WITH order_count_cte AS (
-//  *     SELECT user_id, COUNT(*) AS cnt
-//  *     FROM orders
-//  *     GROUP BY user_id
-//  *   )
-//  *   SELECT u.*, cte.cnt AS order_count
-//  *   FROM users u
-//  *   LEFT JOIN order_count_cte cte ON cte.user_id = u.id;
-//  */
-// @Component
-// public class ScalarSubqueryRewriter implements QueryRewriter {
-
-//     // Matches a basic scalar subquery WITH alias
-//     private static final Pattern SCALAR_SUBQUERY = Pattern.compile(
-//       "\\(\\s*SELECT\\s+([^,]+?)\\s+FROM\\s+(\\w+)\\s+WHERE\\s+(.+?)\\)\\s+AS\\s+(\\w+)",
-//       Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-//     );
-
-//     @Override
-//     public String name() {
-//         return "SCALAR_SUBQUERY_TO_CTE";
-//     }
-
-//     @Override
-//     public boolean canRewrite(String sql, List<String> plan) {
-//         return SCALAR_SUBQUERY.matcher(sql).find();
-//     }
-
-//     @Override
-//     public String rewrite(String sql, List<String> plan) {
-//         Matcher m = SCALAR_SUBQUERY.matcher(sql);
-//         if (!m.find()) {
-//             return sql;
-//         }
-
-//         // Capture bits
-//         String selectExpr = m.group(1).trim();   // e.g. "COUNT(*)"
-//         String fromTbl    = m.group(2).trim();   // e.g. "orders"
-//         String whereCond  = m.group(3).trim();   // e.g. "o.user_id = u.id"
-//         String alias      = m.group(4).trim();   // e.g. "order_count"
-
-//         // Build a CTE name
-//         String cteName = alias + "_cte";
-
-//         // Construct the CTE
-//         String cte = String.format(
-//           "WITH %s AS (\n" +
-//           "  SELECT %s AS val, %s AS key_col\n" +
-//           "  FROM %s\n" +
-//           "  WHERE %s\n" +
-//           "  GROUP BY %s\n" +
-//           ")\n",
-//           cteName, selectExpr, whereCond.split("=")[0].trim(), fromTbl, whereCond, whereCond.split("=")[0].trim()
-//         );
-
-//         // Replace the scalar subquery with a join to CTE.val
-//         String rewrittenMain = m.replaceFirst(
-//           String.format("cte.val AS %s", alias)
-//         );
-
-//         // Inject the JOIN clause
-//         // assume original has "FROM users u"
-//         rewrittenMain = rewrittenMain.replaceFirst(
-//           "(FROM\\s+\\w+\\s+\\w+)",
-//           "$1\nLEFT JOIN " + cteName + " cte ON cte.key_col = u.id"
-//         );
-
-//         return cte + rewrittenMain;
-//     }
-
-//     @Override
-//     public String description() {
-//         return "Moved scalar subquery into a CTE with join to improve plan reuse.";
-//     }
-// }
 // src/main/java/com/querylens/optimizer/rewriter/ScalarSubqueryRewriter.java
 package com.querylens.optimizer.rewriter;
 
 import com.querylens.optimizer.QueryRewriter;
+import com.querylens.optimizer.rewriter.SqlAst.Scope;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.AllTableColumns;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.GroupByElement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.WithItem;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 
+/**
+ * Decorrelates aggregate scalar subqueries in the SELECT list into a grouped CTE
+ * joined back with LEFT JOIN, so the aggregate is computed once per key instead of
+ * once per outer row.
+ *
+ * e.g. transforms:
+ *   SELECT u.*, (SELECT COUNT(*) FROM orders o WHERE o.user_id = u.id) AS order_count
+ *   FROM users u
+ *
+ * into:
+ *   WITH order_count_cte AS (
+ *     SELECT o.user_id AS key_col, COUNT(*) AS val FROM orders o GROUP BY o.user_id
+ *   )
+ *   SELECT u.*, COALESCE(cte.val, 0) AS order_count
+ *   FROM users u LEFT JOIN order_count_cte cte ON cte.key_col = u.id
+ *
+ * Only rewritten when that is exactly equivalent: an aliased single COUNT/SUM/AVG/MIN/MAX
+ * over one table, correlated by a single equality, with every column qualified and every
+ * other predicate on the subquery's own columns, in a select list without a bare *
+ * (which would pick up the CTE's columns). COUNT gets COALESCE(..., 0) because the subquery
+ * counts 0 where the LEFT JOIN finds no group. Works in every SELECT block of the
+ * statement, nested ones included.
+ */
 @Component
 public class ScalarSubqueryRewriter implements QueryRewriter {
 
-    /**
-     * Now matches:
-     *  ( SELECT <expr> FROM <schema?>.<table> [alias]? WHERE <cond> ) AS <alias>
-     */
-    private static final Pattern SCALAR_SUBQUERY = Pattern.compile(
-        "\\(\\s*SELECT\\s+([^,]+?)\\s+" +             // group(1): the select expression
-        "FROM\\s+([\\w\\.]+)(?:\\s+\\w+)?\\s+" +       // group(2): table (with optional schema), skip alias
-        "WHERE\\s+(.+?)\\s*\\)\\s+AS\\s+(\\w+)",        // group(3): condition, group(4): alias
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-    );
+    private static final Set<String> AGGREGATES = Set.of("count", "sum", "avg", "min", "max");
+
+    /** A scalar subquery that can be decorrelated, and how */
+    private record Target(int item, PlainSelect subquery, Column innerKey, Column outerKey,
+                          List<Expression> filters, Function aggregate) {}
 
     @Override
     public String name() {
@@ -123,62 +70,189 @@ public class ScalarSubqueryRewriter implements QueryRewriter {
 
     @Override
     public boolean canRewrite(String sql, List<String> plan) {
-        return SCALAR_SUBQUERY.matcher(sql).find();
+        return SqlAst.parseSelect(sql)
+            .map(statement -> SqlAst.scopes(statement).stream().anyMatch(s -> !targets(s.select()).isEmpty()))
+            .orElse(false);
     }
 
     @Override
     public String rewrite(String sql, List<String> plan) {
-        Matcher m = SCALAR_SUBQUERY.matcher(sql);
-        if (!m.find()) {
+        Select statement = SqlAst.parseSelect(sql).orElse(null);
+        if (statement == null) {
             return sql;
         }
+        Set<String> names = usedNames(statement);
+        List<WithItem<?>> ctes = new ArrayList<>();
+        for (Scope scope : SqlAst.scopes(statement)) {
+            PlainSelect outer = scope.select();
+            for (Target target : targets(outer)) {
+                SelectItem<?> item = outer.getSelectItems().get(target.item());
+                String alias = SqlAst.unquote(item.getAlias().getName());
+                String cteName = unique(alias + "_cte", names);
+                String joinAlias = unique("cte", names);
 
-        // 1) Capture the pieces
-        String selectExpr = m.group(1).trim();   // e.g. "COUNT(*)"
-        String fullTable  = m.group(2).trim();   // e.g. "orders" or "schema.orders"
-        String condition  = m.group(3).trim();   // e.g. "o.user_id = u.id"
-        String alias      = m.group(4).trim();   // e.g. "order_count"
-
-        // 2) Deduce key column from the left side of the condition
-        String keyCol = condition.split("=")[0].trim(); // "o.user_id"
-        // but we want the column after the dot if alias used:
-        if (keyCol.contains(".")) {
-            keyCol = keyCol.substring(keyCol.indexOf('.') + 1);
-        }
+                ctes.add(new WithItem<>(new ParenthesedSelect().withSelect(groupedCte(target)), new Alias(cteName, false)));
+
+                Expression value = new Column(new Table(joinAlias), "val");
+                if (target.aggregate().getName().equalsIgnoreCase("count")) {
+                    Function coalesce = new Function();
+                    coalesce.setName("COALESCE");
+                    coalesce.setParameters(new ExpressionList<>(value, new LongValue(0)));
+                    value = coalesce;
+                }
+                outer.getSelectItems().set(target.item(), new SelectItem<>(value, item.getAlias()));
 
-        // 3) Build CTE name and definition
-        String cteName = alias + "_cte";
-        String cte = String.format(
-          "WITH %s AS (\n" +
-          "  SELECT %s AS val, %s AS key_col\n" +
-          "  FROM %s\n" +
-          "  WHERE %s\n" +
-          "  GROUP BY %s\n" +
-          ")\n",
-          cteName,         // name
-          selectExpr,      // e.g. COUNT(*)
-          keyCol,          // e.g. user_id
-          fullTable,       // e.g. orders
-          condition,       // e.g. o.user_id = u.id
-          keyCol           // GROUP BY user_id
-        );
-
-        // 4) Replace the subquery in the SELECT list with cte.val
-        String rewritten = m.replaceFirst("cte.val AS " + alias);
-
-        // 5) Inject the JOIN right after the main FROM clause
-        //    Assumes the main FROM is like "FROM users u"
-        rewritten = rewritten.replaceFirst(
-          "(FROM\\s+\\w+\\s+\\w+)", 
-          "$1\nLEFT JOIN " + cteName + " cte ON cte.key_col = u.id"
-        );
-
-        // 6) Prepend the CTE
-        return cte + rewritten;
+                Join join = new Join();
+                join.setLeft(true);
+                join.setRightItem(new Table(cteName).withAlias(new Alias(joinAlias, false)));
+                join.addOnExpression(new EqualsTo(new Column(new Table(joinAlias), "key_col"), target.outerKey()));
+                outer.addJoins(join);
+            }
+        }
+        if (ctes.isEmpty()) {
+            return sql;
+        }
+        List<WithItem<?>> with = new ArrayList<>(ctes);
+        if (statement.getWithItemsList() != null) {
+            with.addAll(statement.getWithItemsList());
+        }
+        statement.setWithItemsList(with);
+        return statement.toString();
     }
 
     @Override
     public String description() {
-        return "Moved scalar subquery into a CTE with join to improve plan reuse.";
+        return "Moved correlated aggregate subqueries into grouped CTEs joined once.";
+    }
+
+    /** SELECT key AS key_col, AGG(...) AS val FROM t WHERE filters GROUP BY key */
+    private static PlainSelect groupedCte(Target target) {
+        PlainSelect sub = target.subquery();
+        PlainSelect cte = new PlainSelect();
+        cte.addSelectItems(new SelectItem<>(target.innerKey(), new Alias("key_col")));
+        cte.addSelectItems(new SelectItem<>(target.aggregate(), new Alias("val")));
+        cte.setFromItem(sub.getFromItem());
+        Expression where = null;
+        for (Expression filter : target.filters()) {
+            where = where == null ? filter : new AndExpression(where, filter);
+        }
+        cte.setWhere(where);
+        cte.setGroupByElement(new GroupByElement().withGroupByExpressions(new ExpressionList<>(target.innerKey())));
+        return cte;
+    }
+
+    private static List<Target> targets(PlainSelect outer) {
+        // In a grouped query the joined value would also have to be grouped, and a bare *
+        // would also return the joined CTE's key_col and val
+        if (outer.getGroupBy() != null || hasBareStar(outer)) {
+            return List.of();
+        }
+        Set<String> outerRefs = new HashSet<>();
+        for (FromItem from : SqlAst.fromItems(outer)) {
+            String reference = SqlAst.reference(from);
+            if (reference != null) {
+                outerRefs.add(reference);
+            }
+        }
+        List<Target> targets = new ArrayList<>();
+        List<SelectItem<?>> items = outer.getSelectItems();
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem<?> item = items.get(i);
+            if (item.getAlias() != null && item.getExpression() instanceof ParenthesedSelect scalar
+                    && scalar.getSelect() instanceof PlainSelect sub) {
+                target(i, sub, outerRefs).ifPresent(targets::add);
+            }
+        }
+        return targets;
+    }
+
+    /** An unqualified * in the select list; t.* only covers its own table */
+    private static boolean hasBareStar(PlainSelect outer) {
+        return outer.getSelectItems().stream()
+            .anyMatch(i -> i.getExpression() instanceof AllColumns && !(i.getExpression() instanceof AllTableColumns));
+    }
+
+    private static Optional<Target> target(int item, PlainSelect sub, Set<String> outerRefs) {
+        if (!(sub.getFromItem() instanceof Table table) || sub.getJoins() != null || sub.getWhere() == null
+                || sub.getGroupBy() != null || sub.getHaving() != null || sub.getDistinct() != null
+                || sub.getLimit() != null || sub.getOffset() != null || sub.getFetch() != null || sub.getTop() != null
+                || sub.getWithItemsList() != null || sub.getSelectItems().size() != 1
+                || !(sub.getSelectItems().get(0).getExpression() instanceof Function aggregate)
+                || !AGGREGATES.contains(aggregate.getName().toLowerCase(Locale.ROOT))) {
+            return Optional.empty();
+        }
+        String inner = SqlAst.reference(table);
+        if (outerRefs.contains(inner) || !ownColumns(aggregate, inner)) {
+            return Optional.empty();
+        }
+
+        Column innerKey = null;
+        Column outerKey = null;
+        List<Expression> filters = new ArrayList<>();
+        for (Expression conjunct : conjuncts(sub.getWhere())) {
+            if (conjunct instanceof EqualsTo eq && eq.getLeftExpression() instanceof Column left
+                    && eq.getRightExpression() instanceof Column right) {
+                Column own = ownedBy(left, inner) ? left : ownedBy(right, inner) ? right : null;
+                Column other = own == left ? right : left;
+                if (own != null && other.getTable() != null && outerRefs.contains(SqlAst.unquote(other.getTable().getName()))) {
+                    if (innerKey != null) {
+                        return Optional.empty();    // Correlated on more than one column
+                    }
+                    innerKey = own;
+                    outerKey = other;
+                    continue;
+                }
+            }
+            if (!ownColumns(conjunct, inner)) {
+                return Optional.empty();
+            }
+            filters.add(conjunct);
+        }
+        return innerKey == null ? Optional.empty()
+            : Optional.of(new Target(item, sub, innerKey, outerKey, filters, aggregate));
+    }
+
+    private static List<Expression> conjuncts(Expression where) {
+        List<Expression> conjuncts = new ArrayList<>();
+        if (where instanceof AndExpression and) {
+            conjuncts.addAll(conjuncts(and.getLeftExpression()));
+            conjuncts.addAll(conjuncts(and.getRightExpression()));
+        } else {
+            conjuncts.add(where);
+        }
+        return conjuncts;
+    }
+
+    private static boolean ownedBy(Column column, String inner) {
+        return column.getTable() != null && column.getTable().getName() != null
+            && inner.equals(SqlAst.unquote(column.getTable().getName()));
+    }
+
+    /**
+     * Every column in {@code expression} is qualified with the subquery's table. An
+     * unqualified column could resolve to the outer query and hide a correlation.
+     */
+    private static boolean ownColumns(Expression expression, String inner) {
+        return SqlAst.columns(expression)
+            .map(columns -> columns.stream().allMatch(c -> ownedBy(c, inner)))
+            .orElse(false);
+    }
+
+    /** Every identifier in the statement, so generated CTE names and aliases cannot collide */
+    private static Set<String> usedNames(Select statement) {
+        Set<String> names = new HashSet<>(SqlAst.cteNames(statement));
+        for (String word : statement.toString().toLowerCase(Locale.ROOT).split("[^a-z0-9_$]+")) {
+            names.add(word);
+        }
+        return names;
+    }
+
+    private static String unique(String base, Set<String> names) {
+        String name = base;
+        for (int n = 2; names.contains(name); n++) {
+            name = base + n;
+        }
+        names.add(name);
+        return name;
     }
 }
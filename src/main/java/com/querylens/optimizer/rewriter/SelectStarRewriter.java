@@ -1,90 +1,45 @@
-// // src/main/java/com/querylens/optimizer/rewriter/SelectStarRewriter.java
-// package com.querylens.optimizer.rewriter;
-
-// import com.querylens.optimizer.QueryRewriter;
-// import org.springframework.jdbc.core.JdbcTemplate;
-// import org.springframework.stereotype.Component;
-
-// import java.util.List;
-// import java.util.regex.Matcher;
-// import java.util.regex.Pattern;
-// import java.util.stream.Collectors;
-
-// /**
-//  * Rewrites "SELECT * FROM table" into "SELECT col1, col2, ... FROM table".
-//  */
-// @Component
-// public class SelectStarRewriter implements QueryRewriter {
-
-//     private static final Pattern SELECT_STAR = Pattern.compile(
-//         "^\\s*SELECT\\s+\\*\\s+FROM\\s+([\\w.]+)", 
-//         Pattern.CASE_INSENSITIVE
-//     );
-
-//     private final JdbcTemplate jdbc;
-
-//     public SelectStarRewriter(JdbcTemplate jdbc) {
-//         this.jdbc = jdbc;
-//     }
-
-//     @Override
-//     public String name() {
-//         return "SELECT_STAR";
-//     }
-
-//     @Override
-//     public boolean canRewrite(String sql, List<String> plan) {
-//         return SELECT_STAR.matcher(sql).find();
-//     }
-
-//     @Override
-//     public String rewrite(String sql, List<String> plan) {
-//         Matcher m = SELECT_STAR.matcher(sql);
-//         if (!m.find()) {
-//             return sql;
-//         }
-//         String table = m.group(1);
-//         // Query information_schema for columns
-//         List<String> cols = jdbc.queryForList(
-//             "SELECT column_name FROM information_schema.columns " +
-//             "WHERE table_name = ? ORDER BY ordinal_position",
-//             new Object[]{ table.contains(".") ? table.split("\\.")[1] : table },
-//             String.class
-//         );
-//         String colList = cols.stream().collect(Collectors.joining(", "));
-//         // Replace the first occurrence of "SELECT *" with explicit list
-//         return sql.replaceFirst("\\*\\s+FROM", colList + " FROM");
-//     }
-
-//     @Override
-//     public String description() {
-//         return "Rewrote SELECT * to explicit column list to reduce I/O.";
-//     }
-// }
 // src/main/java/com/querylens/optimizer/rewriter/SelectStarRewriter.java
 package com.querylens.optimizer.rewriter;
 
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
 import com.querylens.optimizer.QueryRewriter;
+import com.querylens.optimizer.rewriter.SqlAst.Scope;
+import com.querylens.target.TargetContext;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.AllTableColumns;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectItem;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
- * Rewrites "SELECT * FROM table" (or "SELECT DISTINCT * FROM table")
- * into "SELECT col1, col2, ... FROM table".
+ * Rewrites "SELECT *" and "alias.*" into explicit column lists, in every SELECT block of
+ * the statement (CTEs, FROM subqueries, UNION branches).
+ *
+ * Where the block is a FROM subquery, only the columns the enclosing query can use are
+ * kept, so "SELECT d.amount FROM (SELECT * FROM giving_detail) d" stops carrying every
+ * other column of giving_detail through the plan. Anything that could need the whole
+ * row (outer *, d.*, a bare reference to d, DISTINCT, GROUP BY, NATURAL joins) keeps
+ * every column.
  */
 @Component
 public class SelectStarRewriter implements QueryRewriter {
 
-    private static final Pattern SELECT_STAR = Pattern.compile(
-        // 1: SELECT keyword + optional DISTINCT/ALL/other modifiers
-        "^\\s*(SELECT\\s+(?:DISTINCT\\s+|ALL\\s+)?)(\\*)\\s+FROM\\s+([\\w\\.]+)",
-        Pattern.CASE_INSENSITIVE
-    );
+    private static final Pattern PLAIN_IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_$]*");
 
     private final JdbcTemplate jdbc;
 
@@ -99,49 +54,166 @@ public class SelectStarRewriter implements QueryRewriter {
 
     @Override
     public boolean canRewrite(String sql, List<String> plan) {
-        return SELECT_STAR.matcher(sql).find();
+        return SqlAst.parseSelect(sql)
+            .map(statement -> !expandable(statement).isEmpty())
+            .orElse(false);
     }
 
     @Override
     public String rewrite(String sql, List<String> plan) {
-        Matcher m = SELECT_STAR.matcher(sql);
-        if (!m.find()) {
-            return sql;  // no match
+        Select statement = SqlAst.parseSelect(sql).orElse(null);
+        if (statement == null) {
+            return sql;
         }
+        String original = statement.toString();
+        Map<String, List<String>> columnsByTable = new HashMap<>();
+        boolean changed = false;
+        for (Scope scope : expandable(statement)) {
+            Set<String> consumed = consumedColumns(original, scope);
+            List<SelectItem<?>> items = expand(scope.select(), consumed, columnsByTable);
+            if (items != null) {
+                scope.select().setSelectItems(items);
+                changed = true;
+            }
+        }
+        return changed ? statement.toString() : sql;
+    }
 
-        // 1) Capture the SELECT prefix (with DISTINCT/ALL if present)
-        String selectPrefix = m.group(1);  // e.g. "SELECT " or "SELECT DISTINCT "
-
-        // 2) Capture the table name (may include schema: "schema.table")
-        String fullTableName = m.group(3);
-        String tableName = fullTableName.contains(".")
-            ? fullTableName.substring(fullTableName.indexOf('.') + 1)
-            : fullTableName;
-
-        // 3) Query information_schema for its columns
-        List<String> cols = jdbc.queryForList(
-            "SELECT column_name FROM information_schema.columns " +
-            "WHERE table_name = ? ORDER BY ordinal_position",
-            new Object[]{ tableName },
-            String.class
-        );
+    @Override
+    public String description() {
+        return "Rewrote SELECT * to explicit column list to reduce I/O.";
+    }
 
-        // 4) Build a comma‐separated list
-        String colList = cols.stream()
-            .collect(Collectors.joining(", "));
+    /** Blocks selecting * from real tables only (a CTE's or subquery's columns are not in the catalog) */
+    private static List<Scope> expandable(Select statement) {
+        Set<String> ctes = SqlAst.cteNames(statement);
+        List<Scope> scopes = new ArrayList<>();
+        for (Scope scope : SqlAst.scopes(statement)) {
+            PlainSelect select = scope.select();
+            List<FromItem> from = SqlAst.fromItems(select);
+            boolean hasStar = select.getSelectItems().stream().anyMatch(i -> i.getExpression() instanceof AllColumns);
+            boolean tablesOnly = !from.isEmpty() && from.stream().allMatch(f -> f instanceof Table t
+                && (t.getSchemaName() != null || !ctes.contains(SqlAst.unquote(t.getName()))));
+            if (hasStar && tablesOnly && !SqlAst.hasMergingJoin(select)) {
+                scopes.add(scope);
+            }
+        }
+        return scopes;
+    }
+
+    /**
+     * Names the enclosing query can read from this FROM subquery; null when it may need
+     * every column. Any identifier anywhere outside the subquery body counts, which can
+     * only keep a column too many.
+     */
+    private static Set<String> consumedColumns(String statement, Scope scope) {
+        PlainSelect select = scope.select();
+        if (scope.consumer() == null || scope.derived().getAlias() == null
+                || select.getDistinct() != null || select.getGroupBy() != null
+                || SqlAst.hasMergingJoin(scope.consumer())
+                || scope.consumer().getSelectItems().stream().anyMatch(i -> i.getExpression() != null
+                    && i.getExpression().getClass() == AllColumns.class)) {
+            return null;
+        }
+        String body = "(" + select + ")";
+        int at = statement.indexOf(body);
+        if (at < 0) {
+            return null;
+        }
+        String rest = statement.substring(0, at) + " " + statement.substring(at + body.length());
+        String alias = SqlAst.unquote(scope.derived().getAlias().getName());
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(rest);
+        Set<String> names = new HashSet<>();
+        int bareAlias = 0;
+        for (int t = 0; t < tokens.size(); t++) {
+            if (!tokens.isName(t)) {
+                continue;
+            }
+            boolean qualifies = tokens.isPunctuation(t + 1, '.');
+            if (tokens.isIdentifier(t, alias)) {
+                if (qualifies && tokens.isOperatorStartingWith(t + 2, '*')) {
+                    return null;    // alias.*
+                }
+                if (!qualifies) {
+                    bareAlias++;
+                }
+            }
+            names.add(tokens.identifier(t).toLowerCase(Locale.ROOT));
+        }
+        // The alias declaration itself is one; any other bare use is a whole-row reference
+        return bareAlias > 1 ? null : names;
+    }
 
-        // 5) Replace only the matched SELECT * phrase with SELECT col1, col2, ... FROM
-        //    We use the literal match region rather than a regex string for safety
-        int start = m.start(2);  // position of the '*'
-        int end   = m.end(2);    // right after the '*'
-        StringBuilder rewritten = new StringBuilder(sql);
-        rewritten.replace(start, end, colList);
+    /** Null when a table's columns cannot be looked up; the block is then left alone */
+    private List<SelectItem<?>> expand(PlainSelect select, Set<String> consumed,
+                                       Map<String, List<String>> columnsByTable) {
+        List<FromItem> from = SqlAst.fromItems(select);
+        boolean qualify = from.size() > 1;
+        List<SelectItem<?>> items = new ArrayList<>();
+        for (SelectItem<?> item : select.getSelectItems()) {
+            if (!(item.getExpression() instanceof AllColumns star)) {
+                items.add(item);
+                continue;
+            }
+            List<Table> tables = new ArrayList<>();
+            if (star instanceof AllTableColumns tableStar) {
+                String reference = SqlAst.unquote(tableStar.getTable().getName());
+                from.stream().filter(f -> reference.equals(SqlAst.reference(f)))
+                    .findFirst().ifPresent(f -> tables.add((Table) f));
+                qualify = true;
+            } else {
+                from.forEach(f -> tables.add((Table) f));
+            }
+            if (tables.isEmpty()) {
+                return null;
+            }
+            for (Table table : tables) {
+                List<String> columns = columnsByTable.computeIfAbsent(table.getFullyQualifiedName(), k -> lookup(table));
+                if (columns.isEmpty()) {
+                    return null;
+                }
+                for (String column : columns) {
+                    if (consumed != null && !consumed.contains(column.toLowerCase(Locale.ROOT))) {
+                        continue;
+                    }
+                    Table qualifier = qualify ? new Table(table.getAlias() != null
+                        ? table.getAlias().getName() : table.getFullyQualifiedName()) : null;
+                    items.add(new SelectItem<>(new Column(qualifier, quote(column))));
+                }
+            }
+        }
+        // Nothing downstream reads a column (e.g. count(*) over the subquery): keep one
+        if (items.isEmpty()) {
+            Table table = (Table) from.get(0);
+            items.add(new SelectItem<>(new Column(quote(columnsByTable.get(table.getFullyQualifiedName()).get(0)))));
+        }
+        return items;
+    }
 
-        return rewritten.toString();
+    private List<String> lookup(Table table) {
+        String name = SqlAst.unquote(table.getName());
+        if (table.getSchemaName() != null) {
+            return TargetContext.jdbcTemplate(jdbc).queryForList(
+                "SELECT column_name FROM information_schema.columns " +
+                "WHERE table_schema = ? AND table_name = ? ORDER BY ordinal_position",
+                String.class,
+                SqlAst.unquote(table.getSchemaName()), name
+            );
+        }
+        // Unqualified: the first schema on the search path that has the table, as the planner resolves it
+        return TargetContext.jdbcTemplate(jdbc).queryForList(
+            "SELECT c.column_name FROM information_schema.columns c " +
+            "WHERE c.table_name = ? AND c.table_schema = (" +
+            "SELECT s FROM unnest(current_schemas(true)) WITH ORDINALITY AS p(s, n) " +
+            "WHERE EXISTS (SELECT 1 FROM information_schema.columns x WHERE x.table_schema = p.s AND x.table_name = ?) " +
+            "ORDER BY n LIMIT 1) ORDER BY c.ordinal_position",
+            String.class,
+            name, name
+        );
     }
 
-    @Override
-    public String description() {
-        return "Rewrote SELECT * to explicit column list to reduce I/O.";
+    private static String quote(String column) {
+        return PLAIN_IDENTIFIER.matcher(column).matches() ? column : "\"" + column.replace("\"", "\"\"") + "\"";
     }
 }
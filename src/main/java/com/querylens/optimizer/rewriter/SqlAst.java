@@ -0,0 +1,161 @@
+package com.querylens.optimizer.rewriter;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.WithItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Parsing and traversal helpers shared by the AST-based rewriters (JSqlParser).
+ */
+final class SqlAst {
+
+    /**
+     * One SELECT block found in a statement.
+     *
+     * @param consumer the block that reads this one as a FROM subquery; null when every
+     *                 column this block returns is needed (top level, CTE body, set operation)
+     * @param derived  the FROM subquery wrapping this block, null with no consumer
+     */
+    record Scope(PlainSelect select, PlainSelect consumer, ParenthesedSelect derived) {}
+
+    private SqlAst() {
+    }
+
+    /** Empty when the text does not parse or is not a query */
+    static Optional<Select> parseSelect(String sql) {
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            return statement instanceof Select select ? Optional.of(select) : Optional.empty();
+        } catch (JSQLParserException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Every SELECT block reachable through WITH items, set operations and FROM/JOIN
+     * subqueries. Subqueries inside expressions (scalar, IN, EXISTS) are not visited.
+     */
+    static List<Scope> scopes(Select statement) {
+        List<Scope> scopes = new ArrayList<>();
+        walk(statement, null, null, scopes);
+        return scopes;
+    }
+
+    private static void walk(Select select, PlainSelect consumer, ParenthesedSelect derived, List<Scope> scopes) {
+        if (select.getWithItemsList() != null) {
+            for (WithItem<?> with : select.getWithItemsList()) {
+                if (with.getSelect() != null) {
+                    walk(with.getSelect().getSelect(), null, null, scopes);
+                }
+            }
+        }
+        if (select instanceof PlainSelect plain) {
+            scopes.add(new Scope(plain, consumer, derived));
+            for (FromItem from : fromItems(plain)) {
+                if (from instanceof ParenthesedSelect sub) {
+                    walk(sub.getSelect(), plain, sub, scopes);
+                }
+            }
+        } else if (select instanceof SetOperationList setOperation) {
+            // Columns line up by position across the branches, so each must keep all of them
+            for (Select branch : setOperation.getSelects()) {
+                walk(branch, null, null, scopes);
+            }
+        } else if (select instanceof ParenthesedSelect parenthesed) {
+            walk(parenthesed.getSelect(), consumer, derived, scopes);
+        }
+    }
+
+    /** The FROM item followed by every joined item */
+    static List<FromItem> fromItems(PlainSelect select) {
+        List<FromItem> items = new ArrayList<>();
+        if (select.getFromItem() != null) {
+            items.add(select.getFromItem());
+        }
+        if (select.getJoins() != null) {
+            select.getJoins().forEach(join -> items.add(join.getRightItem()));
+        }
+        return items;
+    }
+
+    /** NATURAL and USING joins merge same-named columns, which changes what * returns */
+    static boolean hasMergingJoin(PlainSelect select) {
+        if (select.getJoins() == null) {
+            return false;
+        }
+        for (Join join : select.getJoins()) {
+            if (join.isNatural() || (join.getUsingColumns() != null && !join.getUsingColumns().isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The name columns use to refer to a FROM item: its alias, else the table name */
+    static String reference(FromItem item) {
+        if (item.getAlias() != null) {
+            return unquote(item.getAlias().getName());
+        }
+        return item instanceof Table table ? unquote(table.getName()) : null;
+    }
+
+    static Set<String> cteNames(Select statement) {
+        Set<String> names = new LinkedHashSet<>();
+        if (statement.getWithItemsList() != null) {
+            statement.getWithItemsList().forEach(with -> names.add(unquote(with.getAliasName())));
+        }
+        return names;
+    }
+
+    /**
+     * Column references in {@code expression}; empty when it contains a subquery, whose
+     * references could belong to any scope.
+     */
+    static Optional<List<Column>> columns(Expression expression) {
+        List<Column> columns = new ArrayList<>();
+        boolean[] subquery = {false};
+        expression.accept(new ExpressionVisitorAdapter<Void>() {
+            @Override
+            public <S> Void visit(Column column, S context) {
+                columns.add(column);
+                return null;
+            }
+
+            @Override
+            public <S> Void visit(ParenthesedSelect select, S context) {
+                subquery[0] = true;
+                return null;
+            }
+        }, null);
+        return subquery[0] ? Optional.empty() : Optional.of(columns);
+    }
+
+    /** Unquoted identifiers fold to lower case, as in PostgreSQL */
+    static String unquote(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
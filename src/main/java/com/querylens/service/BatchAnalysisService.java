@@ -0,0 +1,269 @@
+package com.querylens.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.SqlTokenizer;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.BiQueryAnalysisService;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.dto.AnalysisMode;
+import com.querylens.dto.BatchResult;
+import com.querylens.dto.BatchStatement;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.history.SubmissionRecord;
+import com.querylens.model.QueryMetrics;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.WorkloadAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Analyzes an NDJSON stream of statements (one {@link BatchStatement} per line) and
+ * writes one {@link BatchResult} line per statement as soon as it finishes.
+ *
+ * At most {@code querylens.batch.concurrency} statements are in flight. The reader
+ * waits for a free slot before taking the next line, so a slow database holds back the
+ * client's upload instead of queueing the batch in memory, and results are flushed
+ * line by line rather than collected. Once the client stops reading, the statements
+ * still in flight are cancelled ({@link CancellationToken}).
+ *
+ * Each statement is planned once (plain EXPLAIN by default, so replayed workloads are
+ * never executed) and that plan feeds both the metrics and the BI detectors. Findings
+ * are also recorded in the {@link WorkloadAggregator}, so a replay ends with a
+ * workload-wide report at /api/workload/report.
+ *
+ * Each statement runs against the target named by its databaseContext. Statements that
+ * execute are admitted like any other request's, so a batch shares the target's slots
+ * fairly with interactive users.
+ */
+@Service
+public class BatchAnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchAnalysisService.class);
+
+    @Autowired
+    private QueryAnalyzerService analyzerService;
+
+    @Autowired
+    private BiQueryAnalysisService biAnalysisService;
+
+    @Autowired
+    private PlanRegressionService regressionService;
+
+    @Autowired
+    private WorkloadAggregator workload;
+
+    @Autowired
+    private AnalysisHistoryWriter historyWriter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TargetRegistry targets;
+
+    @Autowired
+    @Qualifier("batchAnalysisExecutor")
+    private ExecutorService executor;
+
+    @Value("${querylens.batch.concurrency:8}")
+    private int concurrency = 8;
+
+    // Same threshold as /analyze AUTO mode
+    @Value("${querylens.analyze.auto-analyze-max-cost:10000}")
+    private double autoAnalyzeMaxCost = 10000;
+
+    /**
+     * Analyze every line of {@code body}, writing results to {@code out} as they complete.
+     * Returns once all statements have been answered.
+     *
+     * @return the number of statements read
+     * @throws IOException if the client stops reading (the remaining input is not analyzed)
+     */
+    public int analyze(Reader body, OutputStream out) throws IOException {
+        return analyze(body, out, null);
+    }
+
+    /**
+     * Same as {@link #analyze(Reader, OutputStream)}; {@code user} is who the statements'
+     * executions are admitted for (see {@link com.querylens.target.AdmissionController}).
+     */
+    public int analyze(Reader body, OutputStream out, String user) throws IOException {
+        BufferedReader reader = new BufferedReader(body);
+        CancellationToken token = new CancellationToken();
+        ResultWriter writer = new ResultWriter(out, token);
+        Semaphore slots = new Semaphore(concurrency);
+
+        int index = 0;
+        try {
+            String line;
+            while (!writer.failed() && (line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int statementIndex = index++;
+                String statementLine = line;
+
+                slots.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            writer.write(analyzeLine(statementIndex, statementLine, user, token));
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+            // Wait for the statements still in flight
+            slots.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch analysis interrupted after " + index + " statements");
+        }
+
+        writer.rethrowFailure();
+        return index;
+    }
+
+    private BatchResult analyzeLine(int index, String line, String user, CancellationToken token) {
+        BatchResult result = new BatchResult();
+        result.setIndex(index);
+        long start = System.nanoTime();
+        try {
+            BatchStatement statement = objectMapper.readValue(line, BatchStatement.class);
+            result.setId(statement.getId());
+            if (statement.getSql() == null || statement.getSql().isBlank()) {
+                throw new IllegalArgumentException("sql is required");
+            }
+            token.run(() -> targets.run(statement.getDatabaseContext(), user, () -> {
+                analyzeStatement(statement, result);
+                return null;
+            }));
+        } catch (Exception e) {
+            // One bad statement must not end the batch
+            log.debug("Batch statement {} failed", index, e);
+            result.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        result.setElapsedMs((System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+
+    private void analyzeStatement(BatchStatement statement, BatchResult result) {
+        String sql = statement.getSql();
+        AnalysisMode mode = statement.getMode() != null ? statement.getMode() : AnalysisMode.ESTIMATE;
+
+        QueryPlan plan;
+        if (mode == AnalysisMode.ANALYZE && !statement.isGenericPlan()) {
+            plan = analyzerService.capturePlan(sql);
+        } else {
+            plan = analyzerService.estimatePlan(sql, statement.isGenericPlan());
+            if (mode == AnalysisMode.AUTO && !statement.isGenericPlan()
+                    && plan.getRoot().getEstimatedCost() <= autoAnalyzeMaxCost) {
+                plan = analyzerService.capturePlan(sql);
+            }
+        }
+        result.setAnalysisMode(plan.isAnalyzed() ? AnalysisMode.ANALYZE : AnalysisMode.ESTIMATE);
+
+        QueryMetrics metrics = analyzerService.analyzeQuery(sql, plan);
+        metrics.setRawOutput(null);  // The plan document would dominate every line
+        result.setMetrics(metrics);
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+        QueryFingerprint fingerprint = QueryFingerprint.of(tokens);
+        result.setQueryHash(fingerprint.hash());
+        BiAnalysisResult bi = biAnalysisService.analyzeQuery(tokens, plan.getNodes())
+            .withAdditional(regressionService.check(fingerprint.hash(), plan.getNodes()));
+        workload.record(fingerprint, bi);
+        result.setBottlenecks(bi.getBottlenecks());
+        result.setCriticalCount(bi.getCriticalCount());
+        result.setWarningCount(bi.getWarningCount());
+        result.setInfoCount(bi.getInfoCount());
+        result.setPartial(bi.isPartial());
+
+        SubmissionRecord record = SubmissionRecord.of(fingerprint, sql).withBiResult(bi);
+        record.setSubmittedBy("batch");
+        record.setDatabaseContext(TargetRegistry.normalize(statement.getDatabaseContext()));
+        record.setQueryType(metrics.getStatementType());
+        record.setRowCountEstimate(metrics.getRowsProcessed());
+        if (plan.isAnalyzed()) {
+            record.setActualRuntimeMs(metrics.getExecutionTime());
+        }
+        historyWriter.submit(record);
+    }
+
+    /**
+     * Serializes result lines from the worker threads; remembers the first write failure
+     * (client gone) so the reader stops taking new statements. A lock rather than
+     * synchronized: a virtual thread blocked writing to the socket inside a monitor
+     * would pin its carrier thread.
+     */
+    private final class ResultWriter {
+
+        private final OutputStream out;
+        private final CancellationToken token;
+        private final ReentrantLock lock = new ReentrantLock();
+        private IOException failure;
+
+        ResultWriter(OutputStream out, CancellationToken token) {
+            this.out = out;
+            this.token = token;
+        }
+
+        void write(BatchResult result) {
+            lock.lock();
+            try {
+                if (failure != null) {
+                    return;
+                }
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                failure = e;
+                // Nobody will read the other results
+                token.cancel();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean failed() {
+            lock.lock();
+            try {
+                return failure != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void rethrowFailure() throws IOException {
+            lock.lock();
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.querylens.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Stops the work of one request once nobody is waiting for its answer (the client
+ * disconnected or the request timed out).
+ *
+ * The token is bound to the thread doing the work, and each component that starts
+ * something expensive registers how to stop it:
+ * - {@link ExplainSandbox}: a cancel request for the connection running the statement
+ * - {@link com.querylens.target.AdmissionController}: the execution leaves the queue
+ * - BI detectors: tasks that have not finished are cancelled
+ * Loops over detectors and rewrites call {@link #checkCurrent()} between steps.
+ */
+public final class CancellationToken {
+
+    private static final Logger log = LoggerFactory.getLogger(CancellationToken.class);
+
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    /** Handle to an action registered with {@link #onCancel} */
+    public interface Registration extends AutoCloseable {
+
+        Registration NONE = () -> { };
+
+        /** Once this returns, the action is not running and never will */
+        @Override
+        void close();
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Action> actions = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /** Null when the work on this thread cannot be cancelled */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /** Throws if the work on this thread was cancelled */
+    public static void checkCurrent() {
+        CancellationToken token = CURRENT.get();
+        if (token != null) {
+            token.throwIfCancelled();
+        }
+    }
+
+    /** {@link #onCancel} on the current token; {@link Registration#NONE} without one */
+    public static Registration onCurrentCancel(Runnable action) {
+        CancellationToken token = CURRENT.get();
+        return token != null ? token.onCancel(action) : Registration.NONE;
+    }
+
+    /** Run {@code work} with this token bound to the current thread */
+    public <T> T run(Supplier<T> work) {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            throwIfCancelled();
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /** Runs every registered action; later registrations run immediately */
+    public void cancel() {
+        List<Action> toRun;
+        lock.lock();
+        try {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        } finally {
+            lock.unlock();
+        }
+        toRun.forEach(Action::fire);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Analysis cancelled: the client is no longer waiting");
+        }
+    }
+
+    /**
+     * Run {@code action} when the token is cancelled, until the returned registration is
+     * closed. Closing waits for an action that is already running, so an action that
+     * cancels a pooled connection's statement can never hit the connection's next user.
+     */
+    public Registration onCancel(Runnable action) {
+        Action registered = new Action(action);
+        lock.lock();
+        try {
+            if (!cancelled) {
+                actions.add(registered);
+                return registered;
+            }
+        } finally {
+            lock.unlock();
+        }
+        registered.fire();
+        return registered;
+    }
+
+    private final class Action implements Registration {
+
+        private final Runnable action;
+        private final ReentrantLock running = new ReentrantLock();
+        private boolean closed;
+
+        Action(Runnable action) {
+            this.action = action;
+        }
+
+        void fire() {
+            running.lock();
+            try {
+                if (!closed) {
+                    action.run();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Cancellation action failed", e);
+            } finally {
+                running.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            running.lock();
+            try {
+                closed = true;
+            } finally {
+                running.unlock();
+            }
+            lock.lock();
+            try {
+                actions.remove(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.querylens.service;
+
+import com.querylens.target.AdmissionController;
+import com.querylens.target.Target;
+import com.querylens.target.TargetContext;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Runs EXPLAIN ANALYZE in a transaction that is always rolled back.
+ *
+ * EXPLAIN ANALYZE really executes the statement, so without this an analyzed
+ * INSERT/UPDATE/DELETE would commit its changes. Inside the sandbox:
+ * - The transaction is new (REQUIRES_NEW) and rolled back whether the work succeeds or fails
+ * - statement_timeout and lock_timeout are set with SET LOCAL, so they end with the transaction
+ * - SELECTs run READ ONLY, so a mis-detected write fails instead of changing data
+ *
+ * The transaction is opened on the request's target database ({@link TargetContext}),
+ * whose statement timeout, when configured, replaces the one below. Every run first
+ * waits for a slot from the {@link AdmissionController}. When the request's
+ * {@link CancellationToken} is cancelled, the running statement is stopped with the
+ * driver's cancel request, which opens its own socket instead of borrowing a second
+ * pooled connection, so cancelling works even when the target's pool is exhausted.
+ */
+@Component
+public class ExplainSandbox {
+
+    private static final Logger log = LoggerFactory.getLogger(ExplainSandbox.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AdmissionController admission = AdmissionController.unlimited();
+
+    // Upper bound for one analyzed statement
+    @Value("${querylens.sandbox.statement-timeout-ms:30000}")
+    private long statementTimeoutMs = 30000;
+
+    // Give up instead of queueing behind production locks (DML under load)
+    @Value("${querylens.sandbox.lock-timeout-ms:2000}")
+    private long lockTimeoutMs = 2000;
+
+    /**
+     * Run {@code work} (JdbcTemplate calls) inside a rolled-back transaction.
+     */
+    public <T> T run(boolean readOnly, Supplier<T> work) {
+        return admission.run(() -> rolledBack(readOnly, work));
+    }
+
+    /**
+     * Run planner-only work (plain EXPLAIN) in a read-only transaction that is rolled
+     * back. Nothing is executed, so it is not admitted; the transaction only makes sure
+     * that text slipping past {@link MultipleStatementsException#requireSingle} cannot
+     * commit anything.
+     */
+    public <T> T planOnly(Supplier<T> work) {
+        return rolledBack(true, work);
+    }
+
+    private <T> T rolledBack(boolean readOnly, Supplier<T> work) {
+        CancellationToken.checkCurrent();
+        DefaultTransactionDefinition definition =
+            new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        definition.setName("querylens-explain-sandbox");
+        definition.setReadOnly(readOnly);
+
+        Target target = TargetContext.current();
+        PlatformTransactionManager txManager = target != null ? target.transactionManager() : transactionManager;
+        JdbcTemplate jdbc = TargetContext.jdbcTemplate(jdbcTemplate);
+        long timeoutMs = target != null && target.statementTimeoutMs() != null
+            ? target.statementTimeoutMs() : statementTimeoutMs;
+
+        TransactionStatus status = txManager.getTransaction(definition);
+        try {
+            if (readOnly) {
+                // Must come before any query in the transaction
+                jdbc.execute("SET TRANSACTION READ ONLY");
+            }
+            jdbc.execute("SET LOCAL statement_timeout = " + timeoutMs);
+            jdbc.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+            // Closed before the rollback, while the connection is still this transaction's
+            try (CancellationToken.Registration cancel = cancelOnRequest(jdbc)) {
+                return work.get();
+            }
+        } finally {
+            txManager.rollback(status);
+        }
+    }
+
+    private static CancellationToken.Registration cancelOnRequest(JdbcTemplate jdbc) {
+        CancellationToken token = CancellationToken.current();
+        if (token == null) {
+            return CancellationToken.Registration.NONE;
+        }
+        // The transaction's connection; other drivers (H2 in tests) are left to statement_timeout
+        PGConnection connection = jdbc.execute((ConnectionCallback<PGConnection>) con ->
+            con.isWrapperFor(PGConnection.class) ? con.unwrap(PGConnection.class) : null);
+        if (connection == null) {
+            return CancellationToken.Registration.NONE;
+        }
+        return token.onCancel(() -> {
+            try {
+                connection.cancelQuery();
+            } catch (SQLException e) {
+                log.debug("Could not cancel the sandboxed statement: {}", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package com.querylens.service;
+
+import com.querylens.analyzer.SqlTokenizer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The SQL to analyze is a script. EXPLAIN only covers the first statement; JDBC would
+ * run the rest as they are, outside any rolled-back transaction.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MultipleStatementsException extends IllegalArgumentException {
+
+    public MultipleStatementsException() {
+        super("Only one SQL statement can be analyzed at a time; remove everything after the first ';'");
+    }
+
+    /** Every EXPLAIN of submitted SQL goes through this first, in the sandbox or not */
+    public static String requireSingle(String sql) {
+        if (sql != null && !SqlTokenizer.tokenize(sql).isSingleStatement()) {
+            throw new MultipleStatementsException();
+        }
+        return sql;
+    }
+}
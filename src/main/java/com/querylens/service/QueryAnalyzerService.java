@@ -1,7 +1,13 @@
 package com.querylens.service;
 
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.plan.PostgresPlanParser;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.dto.PlanFormat;
+import com.querylens.metrics.AnalysisMetrics;
 import com.querylens.model.QueryMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.querylens.target.TargetContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -30,10 +36,22 @@ public class QueryAnalyzerService {
     private static final Pattern PLAN_TABLE_PATTERN = Pattern.compile("on\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
     private static final Pattern JOIN_TABLE_PATTERN = Pattern.compile("\\bJOIN\\s+([\\w.]+)", Pattern.CASE_INSENSITIVE);
 
+    private static final String EXPLAIN_TEXT = "EXPLAIN ANALYZE ";
+    private static final String EXPLAIN_JSON = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) ";
+    private static final String EXPLAIN_ESTIMATE_JSON = "EXPLAIN (FORMAT JSON) ";
+    private static final String EXPLAIN_GENERIC_JSON = "EXPLAIN (GENERIC_PLAN, FORMAT JSON) ";
+
+    private final PostgresPlanParser planParser = new PostgresPlanParser();
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ExplainSandbox sandbox;
+
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
     private boolean isValidTable(String table) {
         String lower = table.toLowerCase();
         return !(
@@ -44,16 +62,113 @@ public class QueryAnalyzerService {
             lower.startsWith("pg_stat_get")
         );
     }
+    /**
+     * EXPLAIN ANALYZE text output. Runs in the {@link ExplainSandbox}, so DML is rolled back.
+     */
     public List<String> getRawPlanLines(String sql) {
-        return jdbcTemplate.queryForList("EXPLAIN ANALYZE " + sql, String.class);
+        MultipleStatementsException.requireSingle(sql);
+        return metrics.timeExplain("analyze", () -> sandbox.run(isReadOnly(sql),
+            () -> jdbc().queryForList(EXPLAIN_TEXT + sql, String.class)));
+    }
+
+    /**
+     * Run EXPLAIN ANALYZE exactly once in the requested format. The returned plan is
+     * shared by metrics, suggestions and rewrites for the rest of the request.
+     */
+    public QueryPlan capturePlan(String sql, PlanFormat format) {
+        if (format == PlanFormat.JSON) {
+            return capturePlan(sql);
+        }
+        List<String> output = getRawPlanLines(sql);
+        QueryPlan plan = new QueryPlan();
+        plan.setTextLines(output);
+        plan.setRawOutput(String.join("\n", output));
+        plan.setAnalyzed(true);
+        return plan;
+    }
+
+    /**
+     * Run EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) and parse the result into a plan tree
+     * with per-node timings, loops and buffer counters. Runs in the {@link ExplainSandbox}.
+     */
+    public QueryPlan capturePlan(String sql) {
+        MultipleStatementsException.requireSingle(sql);
+        List<String> output = metrics.timeExplain("analyze_json", () -> sandbox.run(isReadOnly(sql),
+            () -> jdbc().queryForList(EXPLAIN_JSON + sql, String.class)));
+        return parse(output);
+    }
+
+    /**
+     * Plan the query without executing it (plain EXPLAIN). Cheap enough to run on every
+     * request to check whether the plan shape changed.
+     */
+    public QueryPlan estimatePlan(String sql) {
+        return estimatePlan(sql, false);
+    }
+
+    /**
+     * Plan the query without executing it. With {@code genericPlan} the planner ignores
+     * parameter values (PostgreSQL 16+), so queries containing $1 placeholders can be planned.
+     */
+    public QueryPlan estimatePlan(String sql, boolean genericPlan) {
+        // Nothing is executed, but a script must still never reach an autocommit connection
+        String explain = (genericPlan ? EXPLAIN_GENERIC_JSON : EXPLAIN_ESTIMATE_JSON)
+            + MultipleStatementsException.requireSingle(sql);
+        List<String> output = metrics.timeExplain(genericPlan ? "generic" : "estimate",
+            () -> sandbox.planOnly(() -> jdbc().queryForList(explain, String.class)));
+        return parse(output);
+    }
+
+    /** The database of the request's databaseContext ({@link TargetContext}) */
+    private JdbcTemplate jdbc() {
+        return TargetContext.jdbcTemplate(jdbcTemplate);
+    }
+
+    private QueryPlan parse(List<String> output) {
+        String json = String.join("\n", output);
+        return metrics.timePlanParse("postgres_json", json, () -> planParser.parse(json));
+    }
+
+    /**
+     * Build metrics from an already captured plan; no further database round trips.
+     * Text plans are scraped line by line, JSON plans are read from the tree.
+     */
+    public QueryMetrics analyzeQuery(String sql, QueryPlan plan) {
+        if (plan.getRoot() == null) {
+            return analyzeText(sql, plan.toTextLines());
+        }
+        ExecutionPlanNode root = plan.getRoot();
+
+        QueryMetrics metrics = new QueryMetrics();
+        metrics.setRawOutput(plan.getRawOutput());
+        metrics.setExecutionTime(plan.getExecutionTimeMs());
+        metrics.setRowsProcessed(plan.isAnalyzed() ? root.getActualRows() : root.getEstimatedRows());
+        metrics.setCostEstimate(root.getEstimatedCost());
+
+        Set<String> planTables = new LinkedHashSet<>();
+        boolean joinInPlan = false;
+        for (ExecutionPlanNode node : plan.getNodes()) {
+            String type = node.getOperatorType();
+            if (type != null && (type.contains("Join") || type.equals("Nested Loop"))) {
+                joinInPlan = true;
+            }
+            // Bitmap Index Scan only names the index; its heap scan names the table
+            if (node.getObjectName() != null && !"Bitmap Index Scan".equals(type)) {
+                planTables.add(node.getObjectName());
+            }
+        }
+
+        describeStatement(metrics, sql, planTables, joinInPlan);
+        return metrics;
     }
     
     public QueryMetrics analyzeQuery(String sql) {
-        String explainQuery = "EXPLAIN ANALYZE " + sql;
-        List<String> output = jdbcTemplate.queryForList(explainQuery, String.class);
+        return analyzeQuery(sql, capturePlan(sql, PlanFormat.TEXT));
+    }
 
+    private QueryMetrics analyzeText(String sql, List<String> output) {
         double executionTime = 0.0;
-        int rowsProcessed = 0;
+        long rowsProcessed = 0;
         double costEstimate = 0.0;
 
         // Pattern to capture actual rows from the "actual time=... rows=X" clause
@@ -87,7 +202,7 @@ public class QueryAnalyzerService {
                 try {
                     String[] parts = line.split("rows=");
                     if (parts.length > 1) {
-                        int est = Integer.parseInt(parts[1].split(" ")[0]);
+                        long est = Long.parseLong(parts[1].split(" ")[0]);
                         if (rowsProcessed == 0) {
                             rowsProcessed = est;
                         }
@@ -99,43 +214,35 @@ public class QueryAnalyzerService {
             Matcher m = actualRowsPattern.matcher(line);
             if (m.find()) {
                 try {
-                    rowsProcessed = Integer.parseInt(m.group(1));
+                    rowsProcessed = Long.parseLong(m.group(1));
                 } catch (Exception ignored) {}
             }
         }
-        String cleanedSql = sql.replaceAll("[\\n\\r]+", " ").trim();
         QueryMetrics metrics = new QueryMetrics();
         metrics.setRawOutput(String.join("\n", output));
         metrics.setExecutionTime(executionTime);
         metrics.setRowsProcessed(rowsProcessed);
         metrics.setCostEstimate(costEstimate);
 
-        // Statement type detection (with CTE support)
-        String upperSql = cleanedSql.toUpperCase();
-        if (upperSql.startsWith("WITH")) {
-            int selectIndex = upperSql.indexOf("SELECT");
-            int insertIndex = upperSql.indexOf("INSERT");
-            int updateIndex = upperSql.indexOf("UPDATE");
-            int deleteIndex = upperSql.indexOf("DELETE");
-
-            int minIndex = Integer.MAX_VALUE;
-            String type = "UNKNOWN";
-            if (selectIndex  > -1 && selectIndex  < minIndex) { minIndex = selectIndex;  type = "SELECT"; }
-            if (insertIndex  > -1 && insertIndex  < minIndex) { minIndex = insertIndex;  type = "INSERT"; }
-            if (updateIndex  > -1 && updateIndex  < minIndex) { minIndex = updateIndex;  type = "UPDATE"; }
-            if (deleteIndex  > -1 && deleteIndex  < minIndex) { minIndex = deleteIndex;  type = "DELETE"; }
-            metrics.setStatementType(type);
-        } else if (SELECT_PATTERN.matcher(cleanedSql).find()) {
-            metrics.setStatementType("SELECT");
-        } else if (INSERT_PATTERN.matcher(cleanedSql).find()) {
-            metrics.setStatementType("INSERT");
-        } else if (UPDATE_PATTERN.matcher(cleanedSql).find()) {
-            metrics.setStatementType("UPDATE");
-        } else if (DELETE_PATTERN.matcher(cleanedSql).find()) {
-            metrics.setStatementType("DELETE");
-        } else {
-            metrics.setStatementType("UNKNOWN");
+        Set<String> planTables = new LinkedHashSet<>();
+        for (String line : output) {
+            Matcher planMatcher = PLAN_TABLE_PATTERN.matcher(line);
+            while (planMatcher.find()) {
+                planTables.add(planMatcher.group(1));
+            }
         }
+        boolean joinInPlan = output.stream().anyMatch(line -> line.toLowerCase().contains("join"));
+
+        describeStatement(metrics, sql, planTables, joinInPlan);
+        return metrics;
+    }
+
+    /**
+     * Statement type, tables and clause flags, from the SQL text plus what the plan saw.
+     */
+    private void describeStatement(QueryMetrics metrics, String sql, Set<String> planTables, boolean joinInPlan) {
+        String cleanedSql = sql.replaceAll("[\\n\\r]+", " ").trim();
+        metrics.setStatementType(statementType(cleanedSql));
 
         // Table extraction from both SQL and query plan
         Set<String> tables = new LinkedHashSet<>();
@@ -150,23 +257,51 @@ public class QueryAnalyzerService {
         while (joinTableMatcher.find()) {
             tables.add(joinTableMatcher.group(1));
 }
-        for (String line : output) {
-            Matcher planMatcher = PLAN_TABLE_PATTERN.matcher(line);
-            while (planMatcher.find()) {
-                tables.add(planMatcher.group(1));
-            }
-        }
+        tables.addAll(planTables);
 
         tables.removeIf(table -> !isValidTable(table));
         metrics.setTablesUsed(new ArrayList<>(tables));
 
         // Clause presence flags
-        boolean joinInPlan = output.stream().anyMatch(line -> line.toLowerCase().contains("join"));
         metrics.setHasWhereClause(WHERE_PATTERN.matcher(cleanedSql).find());
         metrics.setHasJoinClause(JOIN_PATTERN.matcher(cleanedSql).find() || joinInPlan);
         metrics.setHasLimitClause(LIMIT_PATTERN.matcher(cleanedSql).find());
+    }
 
-        return metrics;
+    /** SELECTs run read-only in the sandbox; anything else may write */
+    private static boolean isReadOnly(String sql) {
+        return statementType(sql.replaceAll("[\\n\\r]+", " ").trim()).equals("SELECT");
     }
-}
 
+    /**
+     * SELECT, INSERT, UPDATE, DELETE or UNKNOWN. For CTEs, the first of those keywords wins.
+     */
+    private static String statementType(String cleanedSql) {
+        // Statement type detection (with CTE support)
+        String upperSql = cleanedSql.toUpperCase();
+        if (upperSql.startsWith("WITH")) {
+            int selectIndex = upperSql.indexOf("SELECT");
+            int insertIndex = upperSql.indexOf("INSERT");
+            int updateIndex = upperSql.indexOf("UPDATE");
+            int deleteIndex = upperSql.indexOf("DELETE");
+
+            int minIndex = Integer.MAX_VALUE;
+            String type = "UNKNOWN";
+            if (selectIndex  > -1 && selectIndex  < minIndex) { minIndex = selectIndex;  type = "SELECT"; }
+            if (insertIndex  > -1 && insertIndex  < minIndex) { minIndex = insertIndex;  type = "INSERT"; }
+            if (updateIndex  > -1 && updateIndex  < minIndex) { minIndex = updateIndex;  type = "UPDATE"; }
+            if (deleteIndex  > -1 && deleteIndex  < minIndex) { minIndex = deleteIndex;  type = "DELETE"; }
+            return type;
+        } else if (SELECT_PATTERN.matcher(cleanedSql).find()) {
+            return "SELECT";
+        } else if (INSERT_PATTERN.matcher(cleanedSql).find()) {
+            return "INSERT";
+        } else if (UPDATE_PATTERN.matcher(cleanedSql).find()) {
+            return "UPDATE";
+        } else if (DELETE_PATTERN.matcher(cleanedSql).find()) {
+            return "DELETE";
+        } else {
+            return "UNKNOWN";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.querylens.service;
+
+import com.querylens.job.JobProgress;
+import com.querylens.target.TargetContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent steps of one request at the same time, each on its own virtual
+ * thread, with the rules of StructuredTaskScope.ShutdownOnFailure (a preview API in
+ * Java 21, so not used directly):
+ * - subtasks see the request's target ({@link TargetContext}), report to its job
+ *   ({@link JobProgress}) and are cancelled with it ({@link CancellationToken})
+ * - the first subtask to fail cancels the others, and {@link #join()} rethrows its exception
+ * - {@link #close()} waits for every subtask, so none outlives the request
+ *
+ * Siblings are cancelled through the token (the driver's cancel request), not by interrupting
+ * their threads, which would close the pooled connection they are reading from.
+ */
+public final class RequestScope implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CancellationToken token = new CancellationToken();
+    private final CancellationToken.Registration parent = CancellationToken.onCurrentCancel(token::cancel);
+    private final List<Future<?>> subtasks = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public <T> Future<T> fork(Supplier<T> task) {
+        Supplier<T> bound = JobProgress.current().propagate(TargetContext.propagate(task));
+        Future<T> future = executor.submit(() -> {
+            try {
+                return token.run(bound);
+            } catch (RuntimeException | Error e) {
+                if (failure.compareAndSet(null, e)) {
+                    token.cancel();
+                }
+                throw e;
+            }
+        });
+        subtasks.add(future);
+        return future;
+    }
+
+    /** Waits for every subtask; afterwards {@link Future#resultNow()} is safe on each of them */
+    public void join() {
+        try {
+            for (Future<?> subtask : subtasks) {
+                try {
+                    subtask.get();
+                } catch (ExecutionException e) {
+                    // Reported below: the first failure, not the first subtask that failed
+                }
+            }
+        } catch (InterruptedException e) {
+            token.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for subtasks");
+        }
+        Throwable first = failure.get();
+        if (first instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (first instanceof Error error) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() {
+        parent.close();
+        if (failure.get() != null || !subtasks.stream().allMatch(Future::isDone)) {
+            // Left early (join() not called or threw): nothing will read the results
+            token.cancel();
+        }
+        executor.close();
+    }
+}
@@ -0,0 +1,314 @@
+package com.querylens.target;
+
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.service.CancellationToken;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead in front of every statement QueryLens executes (EXPLAIN ANALYZE, rewrite
+ * checksums, real-index what-ifs: everything that goes through the ExplainSandbox).
+ *
+ * Per target, at most max-concurrency executions run at once and each user at most
+ * querylens.admission.max-per-user of them. Executions beyond that wait in a bounded
+ * queue. When a slot frees, it goes to the waiting user served least recently, so 25
+ * analysts pressing Analyze together take turns instead of queueing behind whoever
+ * clicked first, and one user's batch cannot starve everyone else. A full queue, or a
+ * wait longer than querylens.admission.max-queue-wait, rejects the execution with an
+ * {@link AdmissionRejectedException} (429 with Retry-After).
+ *
+ * Plain EXPLAIN is not admitted here: it does not run the query. An execution whose
+ * request is cancelled ({@link CancellationToken}) leaves the queue.
+ */
+@Component
+public class AdmissionController {
+
+    /**
+     * Identifies the user for the per-user limit. Only honoured from
+     * querylens.admission.trusted-proxies; from anyone else the client address is used.
+     */
+    public static final String USER_HEADER = "X-QueryLens-User";
+
+    private static final AdmissionController UNLIMITED = new AdmissionController(false);
+
+    // Executions already admitted on this thread; nested sandbox runs do not queue again
+    private static final ThreadLocal<Boolean> ADMITTED = new ThreadLocal<>();
+
+    @Value("${querylens.admission.max-per-user:2}")
+    private int maxPerUser = 2;
+
+    // Waiting executions per target; beyond this requests are turned away at once
+    @Value("${querylens.admission.queue-capacity:32}")
+    private int queueCapacity = 32;
+
+    @Value("${querylens.admission.max-queue-wait:30s}")
+    private Duration maxQueueWait = Duration.ofSeconds(30);
+
+    // Addresses of the reverse proxies that set USER_HEADER after authenticating the user
+    @Value("${querylens.admission.trusted-proxies:}")
+    private Set<String> trustedProxies = Set.of();
+
+    @Autowired
+    private AnalysisMetrics metrics = AnalysisMetrics.noop();
+
+    private final boolean enabled;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public AdmissionController() {
+        this(true);
+    }
+
+    private AdmissionController(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Admits everything; the default for components built outside Spring (tests, benchmarks) */
+    public static AdmissionController unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * The authenticated user; else the {@link #USER_HEADER} value when the request comes
+     * from a trusted proxy; else the client address. A client talking to QueryLens
+     * directly cannot pick its own name, so it cannot rotate the header to get around
+     * max-per-user.
+     */
+    public String caller(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return principal.getName();
+        }
+        String user = request.getHeader(USER_HEADER);
+        if (user != null && !user.isBlank() && trustedProxies.contains(request.getRemoteAddr())) {
+            return user.trim();
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Run {@code work} once the target bound to this thread ({@link TargetContext}) has a
+     * slot for its user. Work outside any target (background jobs) is not limited.
+     *
+     * @throws AdmissionRejectedException when the queue is full or the wait times out
+     */
+    public <T> T run(Supplier<T> work) {
+        Target target = TargetContext.current();
+        if (!enabled || target == null || ADMITTED.get() != null) {
+            return work.get();
+        }
+        Lane lane = lanes.computeIfAbsent(target.name(), this::lane);
+        String user = TargetContext.user();
+
+        lane.acquire(user, target.maxConcurrency());
+        ADMITTED.set(Boolean.TRUE);
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            ADMITTED.remove();
+            lane.release(user, elapsed);
+            metrics.recordAdmissionExecution(lane.target, elapsed);
+        }
+    }
+
+    /** Executions running against {@code target} right now */
+    public int running(String target) {
+        Lane lane = lanes.get(target);
+        return lane != null ? lane.running : 0;
+    }
+
+    /** Executions waiting for {@code target} right now */
+    public int queued(String target) {
+        Lane lane = lanes.get(target);
+        return lane != null ? lane.queued : 0;
+    }
+
+    private Lane lane(String target) {
+        Lane lane = new Lane(target);
+        metrics.gaugeAdmission(target, lane, l -> l.running, l -> l.queued);
+        return lane;
+    }
+
+    private static final class Waiter {
+        final String user;
+        final CompletableFuture<Void> admitted = new CompletableFuture<>();
+
+        Waiter(String user) {
+            this.user = user;
+        }
+    }
+
+    /** One target's slots and queue; all state is guarded by {@code lock} */
+    private final class Lane {
+
+        final String target;
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, Deque<Waiter>> waiting = new LinkedHashMap<>();
+        final Map<String, Integer> runningByUser = new HashMap<>();
+        // Admission sequence number of each user's latest execution; users with nothing
+        // running or waiting are dropped, so a returning user starts fresh
+        final Map<String, Long> lastServed = new HashMap<>();
+        long sequence;
+        int capacity;
+        volatile int running;
+        volatile int queued;
+        // Moving average, used to estimate Retry-After
+        double meanExecutionMs = 1000;
+
+        Lane(String target) {
+            this.target = target;
+        }
+
+        void acquire(String user, int capacity) {
+            long start = System.nanoTime();
+            Waiter waiter = new Waiter(user);
+            lock.lock();
+            try {
+                this.capacity = Math.max(1, capacity);
+                if (queued >= queueCapacity) {
+                    throw reject("queue_full", "queue of " + queueCapacity + " executions is full", start);
+                }
+                waiting.computeIfAbsent(user, k -> new ArrayDeque<>()).add(waiter);
+                queued++;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+
+            boolean interrupted = false;
+            try (CancellationToken.Registration cancel =
+                     CancellationToken.onCurrentCancel(() -> waiter.admitted.cancel(false))) {
+                waiter.admitted.get(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Handled below
+            } catch (CancellationException e) {
+                lock.lock();
+                try {
+                    withdraw(waiter);
+                } finally {
+                    lock.unlock();
+                }
+                metrics.recordAdmissionWait(target, "cancelled", System.nanoTime() - start);
+                throw e;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!waiter.admitted.isDone()) {
+                lock.lock();
+                try {
+                    // Admitted between the timeout and the lock: keep the slot
+                    if (!waiter.admitted.isDone()) {
+                        withdraw(waiter);
+                        if (interrupted) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw reject(interrupted ? "interrupted" : "timed_out",
+                            interrupted ? "interrupted while queued"
+                                : "waited " + maxQueueWait.toSeconds() + " s without a free slot", start);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            metrics.recordAdmissionWait(target, "admitted", System.nanoTime() - start);
+        }
+
+        void release(String user, long elapsedNanos) {
+            lock.lock();
+            try {
+                running--;
+                if (runningByUser.merge(user, -1, Integer::sum) <= 0) {
+                    runningByUser.remove(user);
+                    if (!waiting.containsKey(user)) {
+                        lastServed.remove(user);
+                    }
+                }
+                meanExecutionMs = 0.8 * meanExecutionMs + 0.2 * elapsedNanos / 1_000_000.0;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Hand free slots to the least recently served users under their own limit */
+        private void dispatch() {
+            while (running < capacity) {
+                String next = null;
+                long oldest = Long.MAX_VALUE;
+                for (String user : waiting.keySet()) {
+                    long served = lastServed.getOrDefault(user, -1L);
+                    if (served < oldest && runningByUser.getOrDefault(user, 0) < maxPerUser) {
+                        next = user;
+                        oldest = served;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                Deque<Waiter> queue = waiting.get(next);
+                Waiter waiter = queue.poll();
+                if (queue.isEmpty()) {
+                    waiting.remove(next);
+                }
+                queued--;
+                // The waiting thread only runs once this succeeds, and counts change under the lock
+                if (!waiter.admitted.complete(null)) {
+                    // Its request was cancelled while it waited
+                    if (!waiting.containsKey(next) && !runningByUser.containsKey(next)) {
+                        lastServed.remove(next);
+                    }
+                    continue;
+                }
+                running++;
+                runningByUser.merge(next, 1, Integer::sum);
+                lastServed.put(next, sequence++);
+            }
+        }
+
+        private void withdraw(Waiter waiter) {
+            Deque<Waiter> queue = waiting.get(waiter.user);
+            if (queue != null && queue.remove(waiter)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    waiting.remove(waiter.user);
+                    if (!runningByUser.containsKey(waiter.user)) {
+                        lastServed.remove(waiter.user);
+                    }
+                }
+            }
+        }
+
+        /** Retry-After: the time for the queue ahead to drain through the target's slots */
+        private AdmissionRejectedException reject(String outcome, String reason, long start) {
+            metrics.recordAdmissionWait(target, outcome, System.nanoTime() - start);
+            double drainMs = (queued + 1) * meanExecutionMs / capacity;
+            long retryAfter = Math.max(1, (long) Math.ceil(drainMs / 1000));
+            return new AdmissionRejectedException(target, reason, retryAfter);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.querylens.target;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * The {@link AdmissionController} turned an execution away: the target's queue was full
+ * or the execution waited longer than querylens.admission.max-queue-wait. Answered with
+ * 429 and Retry-After; callers that can do without the execution (rewrite checks) treat
+ * it like any other failed statement.
+ */
+public class AdmissionRejectedException extends TransientDataAccessResourceException {
+
+    private final String target;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String target, String reason, long retryAfterSeconds) {
+        super("Target '" + target + "' is busy: " + reason + "; retry after " + retryAfterSeconds + " s");
+        this.target = target;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
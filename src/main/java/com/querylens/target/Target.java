@@ -0,0 +1,109 @@
+package com.querylens.target;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One database analyses can run against: its JdbcTemplate and transaction manager,
+ * statement timeout and execution limit (enforced by the {@link AdmissionController}).
+ * Named targets own a HikariCP pool that the {@link TargetRegistry} opens on first use
+ * and closes when idle.
+ */
+public final class Target {
+
+    private final String name;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final Long statementTimeoutMs;
+    private final int maxConcurrency;
+    private final HikariDataSource pool;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean retired;
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    Target(String name, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+           Long statementTimeoutMs, int maxConcurrency, HikariDataSource pool) {
+        this.name = name;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.statementTimeoutMs = statementTimeoutMs;
+        this.maxConcurrency = maxConcurrency;
+        this.pool = pool;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public PlatformTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    /** Null: use querylens.sandbox.statement-timeout-ms */
+    public Long statementTimeoutMs() {
+        return statementTimeoutMs;
+    }
+
+    /** Statements executing against the target at once */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** Connections currently borrowed from this target's own pool (0 for the default target) */
+    public int activeConnections() {
+        return pool != null && !pool.isClosed() ? pool.getHikariPoolMXBean().getActiveConnections() : 0;
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    boolean closable() {
+        return pool != null;
+    }
+
+    /** False when the target was retired in the meantime; the caller must look it up again */
+    boolean enter() {
+        inFlight.incrementAndGet();
+        if (retired) {
+            exit();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        lastUsedNanos = System.nanoTime();
+        if (inFlight.decrementAndGet() == 0 && retired) {
+            close();
+        }
+    }
+
+    /** No new work is accepted; the pool closes once the work in flight is done */
+    void retire() {
+        retired = true;
+        if (inFlight.get() == 0) {
+            close();
+        }
+    }
+
+    private void close() {
+        if (pool != null && closed.compareAndSet(false, true)) {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.querylens.target;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * The target, and the user the work is for, bound to the current thread by
+ * {@link TargetRegistry#run}. Components that talk to the analyzed database (EXPLAIN,
+ * catalog lookups) use the target's JdbcTemplate; with nothing bound they use
+ * spring.datasource. QueryLens' own tables (history, baselines) always live in
+ * spring.datasource.
+ */
+public final class TargetContext {
+
+    public static final String ANONYMOUS = "anonymous";
+
+    record Binding(Target target, String user) {}
+
+    private static final ThreadLocal<Binding> CURRENT = new ThreadLocal<>();
+
+    private TargetContext() {
+    }
+
+    /** Null when no target is bound */
+    public static Target current() {
+        Binding binding = CURRENT.get();
+        return binding != null ? binding.target() : null;
+    }
+
+    /** The bound target's name, "default" when none is bound */
+    public static String name() {
+        Target target = current();
+        return target != null ? target.name() : TargetProperties.DEFAULT;
+    }
+
+    /** Who the work is for ({@link AdmissionController#caller}), "anonymous" when unknown */
+    public static String user() {
+        Binding binding = CURRENT.get();
+        return binding != null && binding.user() != null ? binding.user() : ANONYMOUS;
+    }
+
+    /** The bound target's JdbcTemplate, else {@code primary} */
+    public static JdbcTemplate jdbcTemplate(JdbcTemplate primary) {
+        Target target = current();
+        return target != null ? target.jdbcTemplate() : primary;
+    }
+
+    /** {@code work} bound to the current target and user, for running on another thread */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        Binding binding = CURRENT.get();
+        if (binding == null) {
+            return work;
+        }
+        return () -> {
+            Binding previous = bind(binding.target(), binding.user());
+            try {
+                return work.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    static Binding bind(Target target, String user) {
+        Binding previous = CURRENT.get();
+        CURRENT.set(new Binding(target, user));
+        return previous;
+    }
+
+    static void restore(Binding previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
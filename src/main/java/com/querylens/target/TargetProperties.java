@@ -0,0 +1,111 @@
+package com.querylens.target;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Databases queries can be analyzed against, selected per request by databaseContext:
+ *
+ * <pre>
+ * querylens.targets.databases.replica.url=jdbc:postgresql://replica:5432/app
+ * querylens.targets.databases.replica.username=querylens_ro
+ * querylens.targets.databases.replica.max-concurrency=2
+ * </pre>
+ *
+ * The "default" target is spring.datasource; only its limits can be set here.
+ */
+@ConfigurationProperties(prefix = "querylens.targets")
+public class TargetProperties {
+
+    public static final String DEFAULT = "default";
+
+    private Map<String, Database> databases = new LinkedHashMap<>();
+
+    /** Pools unused for this long are closed; the next request for the target reopens them */
+    private Duration idleCloseAfter = Duration.ofMinutes(10);
+
+    public static class Database {
+        private String url;
+        private String username;
+        private String password;
+        private int maxPoolSize = 4;
+        private int maxConcurrency = 4;          // Statements executing against the target at once
+        private Long statementTimeoutMs;        // Overrides querylens.sandbox.statement-timeout-ms
+        private long connectionTimeoutMs = 5000;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public Long getStatementTimeoutMs() {
+            return statementTimeoutMs;
+        }
+
+        public void setStatementTimeoutMs(Long statementTimeoutMs) {
+            this.statementTimeoutMs = statementTimeoutMs;
+        }
+
+        public long getConnectionTimeoutMs() {
+            return connectionTimeoutMs;
+        }
+
+        public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+            this.connectionTimeoutMs = connectionTimeoutMs;
+        }
+    }
+
+    public Map<String, Database> getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(Map<String, Database> databases) {
+        this.databases = databases;
+    }
+
+    public Duration getIdleCloseAfter() {
+        return idleCloseAfter;
+    }
+
+    public void setIdleCloseAfter(Duration idleCloseAfter) {
+        this.idleCloseAfter = idleCloseAfter;
+    }
+}
@@ -0,0 +1,145 @@
+package com.querylens.target;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Routes analysis work to the database named by a request's databaseContext.
+ *
+ * Each target configured under querylens.targets.databases gets its own HikariCP pool,
+ * opened on first use and closed after querylens.targets.idle-close-after without
+ * requests, so a rarely used target holds no connections. "default" is spring.datasource.
+ * How many statements may execute against each target is up to the
+ * {@link AdmissionController}.
+ */
+@Component
+public class TargetRegistry {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TargetProperties properties;
+
+    private final Map<String, Target> open = new ConcurrentHashMap<>();
+
+    /** Resolves null, blank and "default" to spring.datasource */
+    public static String normalize(String databaseContext) {
+        return databaseContext == null || databaseContext.isBlank()
+            ? TargetProperties.DEFAULT : databaseContext.trim();
+    }
+
+    /** {@link #run(String, String, Supplier)} for an anonymous user */
+    public <T> T run(String databaseContext, Supplier<T> work) {
+        return run(databaseContext, null, work);
+    }
+
+    /**
+     * Run {@code work} with the target and {@code user} bound to {@link TargetContext}.
+     * The target's pool stays open until the work is done.
+     *
+     * @throws UnknownTargetException when no such target is configured
+     */
+    public <T> T run(String databaseContext, String user, Supplier<T> work) {
+        Target target = enter(normalize(databaseContext));
+        TargetContext.Binding previous = TargetContext.bind(target, user);
+        try {
+            return work.get();
+        } finally {
+            TargetContext.restore(previous);
+            target.exit();
+        }
+    }
+
+    /** Configured target names, "default" first */
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        names.add(TargetProperties.DEFAULT);
+        properties.getDatabases().keySet().stream()
+            .filter(n -> !n.equals(TargetProperties.DEFAULT))
+            .forEach(names::add);
+        return names;
+    }
+
+    /** Targets with an open pool (and the default target once used) */
+    public Map<String, Target> open() {
+        return Map.copyOf(open);
+    }
+
+    /** Close the pools of targets nobody has used for querylens.targets.idle-close-after */
+    @Scheduled(fixedDelayString = "${querylens.targets.idle-check-interval:PT1M}")
+    public void closeIdle() {
+        long idleNanos = properties.getIdleCloseAfter().toNanos();
+        long now = System.nanoTime();
+        for (Target target : open.values()) {
+            if (target.closable() && target.inFlight() == 0 && now - target.lastUsedNanos() >= idleNanos
+                    && open.remove(target.name(), target)) {
+                // Work that raced in before the removal keeps the pool open until it finishes
+                target.retire();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        for (Target target : open.values()) {
+            if (open.remove(target.name(), target)) {
+                target.retire();
+            }
+        }
+    }
+
+    private Target enter(String name) {
+        while (true) {
+            Target target = open.computeIfAbsent(name, this::create);
+            if (target.enter()) {
+                return target;
+            }
+            // Retired by the idle closer between the lookup and enter(); the next lookup reopens it
+            open.remove(name, target);
+        }
+    }
+
+    private Target create(String name) {
+        TargetProperties.Database db = properties.getDatabases().get(name);
+        if (name.equals(TargetProperties.DEFAULT)) {
+            TargetProperties.Database limits = db != null ? db : new TargetProperties.Database();
+            return new Target(name, jdbcTemplate, transactionManager, limits.getStatementTimeoutMs(),
+                limits.getMaxConcurrency(), null);
+        }
+        if (db == null || db.getUrl() == null) {
+            throw new UnknownTargetException(name);
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("querylens-" + name);
+        config.setJdbcUrl(db.getUrl());
+        config.setUsername(db.getUsername());
+        config.setPassword(db.getPassword());
+        config.setMaximumPoolSize(Math.max(1, db.getMaxPoolSize()));
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(db.getConnectionTimeoutMs());
+        // Fail on the first request instead of while another target is being served
+        config.setInitializationFailTimeout(-1);
+        HikariDataSource pool = new HikariDataSource(config);
+
+        return new Target(name, new JdbcTemplate(pool), new DataSourceTransactionManager(pool),
+            db.getStatementTimeoutMs(), Math.max(1, db.getMaxConcurrency()), pool);
+    }
+}
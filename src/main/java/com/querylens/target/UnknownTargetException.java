@@ -0,0 +1,13 @@
+package com.querylens.target;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** databaseContext names no configured target */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownTargetException extends RuntimeException {
+
+    public UnknownTargetException(String name) {
+        super("Unknown databaseContext '" + name + "' (configure querylens.targets.databases." + name + ".url)");
+    }
+}
@@ -0,0 +1,187 @@
+package com.querylens.workload;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Weighted Space-Saving heavy-hitter sketch (Metwally et al.) over at most
+ * {@code capacity} keys.
+ *
+ * When the sketch is full, a new key takes over the smallest counter and inherits its
+ * weight as {@link Entry#error()}, so every estimate over-counts by at most that error
+ * and any key whose true weight exceeds {@code total / capacity} is guaranteed to be
+ * present. Two sketches merge by adding counters and keeping the largest
+ * {@code capacity} (Agarwal et al., "Mergeable Summaries"), which keeps the same bound
+ * over the combined stream.
+ *
+ * Not thread-safe; {@link WorkloadAggregator} guards its sketches.
+ */
+public final class SpaceSaving<K> {
+
+    /**
+     * @param weight estimated total weight (upper bound)
+     * @param error  how much of {@code weight} may belong to evicted keys
+     * @param hits   number of offers since the key last entered the sketch
+     * @param sample first sample offered with the key, for display
+     */
+    public record Entry<K>(K key, double weight, double error, long hits, String sample) {
+
+        /** Weight the key is guaranteed to have */
+        public double guaranteedWeight() {
+            return weight - error;
+        }
+    }
+
+    private static final class Counter<K> {
+        final K key;
+        final long id;
+        double weight;
+        double error;
+        long hits;
+        String sample;
+
+        Counter(K key, long id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    private static final Comparator<Counter<?>> BY_WEIGHT =
+        Comparator.<Counter<?>>comparingDouble(c -> c.weight).thenComparingLong(c -> c.id);
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters = new HashMap<>();
+    private final TreeSet<Counter<K>> byWeight = new TreeSet<>(BY_WEIGHT);
+    private long nextId;
+    private double total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public void offer(K key, double weight) {
+        offer(key, weight, null);
+    }
+
+    public void offer(K key, double weight, String sample) {
+        if (key == null || weight < 0 || Double.isNaN(weight)) {
+            return;
+        }
+        total += weight;
+
+        Counter<K> counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter<>(key, nextId++);
+            if (counters.size() >= capacity) {
+                Counter<K> min = byWeight.pollFirst();
+                counters.remove(min.key);
+                counter.weight = min.weight;
+                counter.error = min.weight;
+            }
+            counter.sample = sample;
+            counters.put(key, counter);
+        } else {
+            byWeight.remove(counter);
+            if (counter.sample == null) {
+                counter.sample = sample;
+            }
+        }
+        counter.weight += weight;
+        counter.hits++;
+        byWeight.add(counter);
+    }
+
+    /**
+     * Fold {@code other} into this sketch. A key missing from a full sketch may still
+     * have had up to that sketch's minimum weight, which is added to its error.
+     */
+    public void merge(SpaceSaving<K> other) {
+        double thisFloor = counters.size() >= capacity ? minWeight() : 0;
+        double otherFloor = other.counters.size() >= other.capacity ? other.minWeight() : 0;
+
+        Map<K, Counter<K>> merged = new HashMap<>();
+        for (Counter<K> c : counters.values()) {
+            Counter<K> m = copy(c);
+            Counter<K> o = other.counters.get(c.key);
+            if (o != null) {
+                m.weight += o.weight;
+                m.error += o.error;
+                m.hits += o.hits;
+            } else {
+                m.weight += otherFloor;
+                m.error += otherFloor;
+            }
+            merged.put(c.key, m);
+        }
+        for (Counter<K> o : other.counters.values()) {
+            if (!merged.containsKey(o.key)) {
+                Counter<K> m = copy(o);
+                m.weight += thisFloor;
+                m.error += thisFloor;
+                merged.put(o.key, m);
+            }
+        }
+
+        counters.clear();
+        byWeight.clear();
+        merged.values().stream()
+            .sorted(BY_WEIGHT.reversed())
+            .limit(capacity)
+            .forEach(c -> {
+                counters.put(c.key, c);
+                byWeight.add(c);
+            });
+        total += other.total;
+    }
+
+    /** Up to {@code n} entries, heaviest first */
+    public List<Entry<K>> top(int n) {
+        List<Entry<K>> top = new ArrayList<>(Math.min(n, counters.size()));
+        for (Counter<K> c : byWeight.descendingSet()) {
+            if (top.size() >= n) {
+                break;
+            }
+            top.add(new Entry<>(c.key, c.weight, c.error, c.hits, c.sample));
+        }
+        return top;
+    }
+
+    /** The entry for {@code key}, or null if it is not (or no longer) tracked */
+    public Entry<K> get(K key) {
+        Counter<K> c = counters.get(key);
+        return c == null ? null : new Entry<>(c.key, c.weight, c.error, c.hits, c.sample);
+    }
+
+    /** Total weight offered, including evicted keys */
+    public double total() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private double minWeight() {
+        return byWeight.isEmpty() ? 0 : byWeight.first().weight;
+    }
+
+    private Counter<K> copy(Counter<K> c) {
+        Counter<K> copy = new Counter<>(c.key, nextId++);
+        copy.weight = c.weight;
+        copy.error = c.error;
+        copy.hits = c.hits;
+        copy.sample = c.sample;
+        return copy;
+    }
+}
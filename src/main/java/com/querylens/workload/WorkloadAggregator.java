@@ -0,0 +1,130 @@
+package com.querylens.workload;
+
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.dto.WorkloadReport;
+import com.querylens.dto.WorkloadReport.RankedItem;
+import com.querylens.target.TargetContext;
+import com.querylens.workload.SpaceSaving.Entry;
+import com.querylens.workload.WorkloadSummary.Pattern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running {@link WorkloadSummary} of every BI analysis (single queries and batch lines),
+ * turned into a ranked "fix these first" {@link WorkloadReport} on demand.
+ *
+ * One summary is kept per target ({@link TargetContext#name()} when the analysis is
+ * recorded). The report covers all of them; index advice reads one target's summary only,
+ * since an index recommended on one database says nothing about another.
+ *
+ * Recording is a short critical section (a few sketch updates per bottleneck); reports
+ * are built from a copy so they never hold up recording.
+ */
+@Component
+public class WorkloadAggregator {
+
+    private final int capacity;
+    private final Map<String, WorkloadSummary> byTarget = new LinkedHashMap<>();
+
+    public WorkloadAggregator(@Value("${querylens.workload.sketch-capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Recorded under the current target */
+    public synchronized void record(QueryFingerprint fingerprint, BiAnalysisResult result) {
+        summary(TargetContext.name()).record(fingerprint, result);
+    }
+
+    /** Fold a summary built elsewhere (another node, an offline replay) into the current target's */
+    public synchronized void merge(WorkloadSummary other) {
+        summary(TargetContext.name()).merge(other);
+    }
+
+    /** Copy of the current summary, all targets combined */
+    public synchronized WorkloadSummary snapshot() {
+        WorkloadSummary all = new WorkloadSummary(capacity);
+        byTarget.values().forEach(all::merge);
+        return all;
+    }
+
+    /** Copy of one target's summary (empty when nothing was recorded for it) */
+    public synchronized WorkloadSummary snapshot(String target) {
+        WorkloadSummary summary = byTarget.get(target);
+        return summary != null ? summary.copy() : new WorkloadSummary(capacity);
+    }
+
+    /** Start a new window */
+    public synchronized void reset() {
+        byTarget.clear();
+    }
+
+    private WorkloadSummary summary(String target) {
+        return byTarget.computeIfAbsent(target, t -> new WorkloadSummary(capacity));
+    }
+
+    /** The {@code topN} highest-impact patterns, tables and queries so far */
+    public WorkloadReport report(int topN) {
+        return report(snapshot(), topN);
+    }
+
+    static WorkloadReport report(WorkloadSummary summary, int topN) {
+        WorkloadReport report = new WorkloadReport();
+        report.setQueriesAnalyzed(summary.getQueries());
+        report.setBottlenecksFound(summary.getBottlenecks());
+        report.getIssueTypeCounts().putAll(summary.getIssueCounts());
+        report.getIssueTypeImpactSeconds().putAll(summary.getIssueImpactSeconds());
+        report.setFixFirst(fixFirst(summary, topN));
+
+        for (Entry<String> e : summary.getMissingIndexTables().top(topN)) {
+            report.getMissingIndexTables().add(new RankedItem(report.getMissingIndexTables().size() + 1,
+                null, e.key(), null, (long) e.weight(), 0, e.error()));
+        }
+        for (Entry<String> e : summary.getImpactByFingerprint().top(topN)) {
+            report.getTopFingerprints().add(new RankedItem(report.getTopFingerprints().size() + 1,
+                null, e.key(), e.sample(), e.hits(), e.weight(), e.error()));
+        }
+        return report;
+    }
+
+    /**
+     * Patterns ranked by total time impact, then by occurrences. Candidates come from both
+     * sketches so that estimate-only workloads (no timings, so no impact) still rank by
+     * how often a pattern recurs.
+     */
+    private static List<RankedItem> fixFirst(WorkloadSummary summary, int topN) {
+        SpaceSaving<Pattern> byImpact = summary.getPatternImpact();
+        SpaceSaving<Pattern> byCount = summary.getPatternOccurrences();
+
+        Set<Pattern> candidates = new LinkedHashSet<>();
+        byImpact.top(topN).forEach(e -> candidates.add(e.key()));
+        byCount.top(topN).forEach(e -> candidates.add(e.key()));
+
+        List<RankedItem> items = new ArrayList<>();
+        for (Pattern pattern : candidates) {
+            Entry<Pattern> impact = byImpact.get(pattern);
+            Entry<Pattern> count = byCount.get(pattern);
+            Entry<Pattern> any = impact != null ? impact : count;
+            items.add(new RankedItem(0, pattern.type(), pattern.signature(), any.sample(),
+                count != null ? (long) count.weight() : any.hits(),
+                impact != null ? impact.weight() : 0,
+                impact != null ? impact.error() : 0));
+        }
+        items.sort(Comparator.comparingDouble(RankedItem::getImpactSeconds).reversed()
+            .thenComparing(Comparator.comparingLong(RankedItem::getOccurrences).reversed()));
+
+        List<RankedItem> ranked = new ArrayList<>(items.subList(0, Math.min(topN, items.size())));
+        for (int i = 0; i < ranked.size(); i++) {
+            ranked.get(i).setRank(i + 1);
+        }
+        return ranked;
+    }
+}
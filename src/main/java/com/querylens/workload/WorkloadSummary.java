@@ -0,0 +1,162 @@
+package com.querylens.workload;
+
+import com.querylens.advisor.IndexCandidate;
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Incremental, mergeable summary of the bottlenecks found across a workload.
+ *
+ * Per-issue-type counts are exact; everything keyed by table, fingerprint or fragment
+ * lives in a {@link SpaceSaving} sketch of fixed capacity, so memory stays constant
+ * however many distinct queries are recorded. Summaries built on different nodes or
+ * over different time windows combine with {@link #merge}.
+ *
+ * Not thread-safe; see {@link WorkloadAggregator}.
+ */
+public class WorkloadSummary {
+
+    /**
+     * A recurring finding: the issue type plus the normalized fragment (literals become
+     * '?'), the pattern_type / pattern_signature pair of the query_patterns table.
+     */
+    public record Pattern(IssueType type, String signature) {}
+
+    // query_patterns.pattern_signature is VARCHAR(255)
+    static final int MAX_SIGNATURE_LENGTH = 255;
+
+    private final int capacity;
+    private long queries;
+    private long bottlenecks;
+    private final Map<IssueType, Long> issueCounts = new EnumMap<>(IssueType.class);
+    private final Map<IssueType, Double> issueImpactSeconds = new EnumMap<>(IssueType.class);
+    private final SpaceSaving<String> missingIndexTables;
+    private final SpaceSaving<String> impactByFingerprint;
+    private final SpaceSaving<Pattern> patternOccurrences;
+    private final SpaceSaving<Pattern> patternImpact;
+    private final SpaceSaving<IndexCandidate> indexRecommendations;
+
+    public WorkloadSummary(int capacity) {
+        this.capacity = capacity;
+        this.missingIndexTables = new SpaceSaving<>(capacity);
+        this.impactByFingerprint = new SpaceSaving<>(capacity);
+        this.patternOccurrences = new SpaceSaving<>(capacity);
+        this.patternImpact = new SpaceSaving<>(capacity);
+        this.indexRecommendations = new SpaceSaving<>(capacity);
+    }
+
+    /** Add one analyzed query */
+    public void record(QueryFingerprint fingerprint, BiAnalysisResult result) {
+        queries++;
+        impactByFingerprint.offer(fingerprint.hash(), result.getTotalImpactSeconds(),
+            truncate(fingerprint.normalizedSql()));
+
+        for (Bottleneck b : result.getBottlenecks()) {
+            IssueType type = b.getIssueType();
+            if (type == null) {
+                continue;
+            }
+            bottlenecks++;
+            double impact = b.getTimeImpactSeconds() != null ? b.getTimeImpactSeconds() : 0;
+            issueCounts.merge(type, 1L, Long::sum);
+            issueImpactSeconds.merge(type, impact, Double::sum);
+
+            if (type == IssueType.MISSING_INDEX) {
+                String table = tableName(b);
+                if (table != null) {
+                    missingIndexTables.offer(table, 1);
+                }
+            }
+
+            String fragment = b.getQueryFragment() != null && !b.getQueryFragment().isBlank()
+                ? b.getQueryFragment() : b.getOperatorName();
+            if (fragment != null) {
+                Pattern pattern = new Pattern(type, truncate(QueryFingerprint.of(fragment).normalizedSql()));
+                patternOccurrences.offer(pattern, 1, fragment);
+                patternImpact.offer(pattern, impact, fragment);
+            }
+
+            for (String fix : b.getFixQueries()) {
+                IndexCandidate.parse(fix).ifPresent(index ->
+                    indexRecommendations.offer(index, b.getCostPercentage() / 100.0));
+            }
+        }
+    }
+
+    /** Fold {@code other} into this summary */
+    public void merge(WorkloadSummary other) {
+        queries += other.queries;
+        bottlenecks += other.bottlenecks;
+        other.issueCounts.forEach((type, n) -> issueCounts.merge(type, n, Long::sum));
+        other.issueImpactSeconds.forEach((type, s) -> issueImpactSeconds.merge(type, s, Double::sum));
+        missingIndexTables.merge(other.missingIndexTables);
+        impactByFingerprint.merge(other.impactByFingerprint);
+        patternOccurrences.merge(other.patternOccurrences);
+        patternImpact.merge(other.patternImpact);
+        indexRecommendations.merge(other.indexRecommendations);
+    }
+
+    /** Independent copy, so a report can be built outside the aggregator's lock */
+    public WorkloadSummary copy() {
+        WorkloadSummary copy = new WorkloadSummary(capacity);
+        copy.merge(this);
+        return copy;
+    }
+
+    public long getQueries() { return queries; }
+
+    public long getBottlenecks() { return bottlenecks; }
+
+    public Map<IssueType, Long> getIssueCounts() { return issueCounts; }
+
+    public Map<IssueType, Double> getIssueImpactSeconds() { return issueImpactSeconds; }
+
+    /** Tables named by MISSING_INDEX findings, weighted by finding count */
+    public SpaceSaving<String> getMissingIndexTables() { return missingIndexTables; }
+
+    /** Query fingerprints weighted by summed timeImpactSeconds; samples are the normalized SQL */
+    public SpaceSaving<String> getImpactByFingerprint() { return impactByFingerprint; }
+
+    /** Patterns weighted by occurrence count */
+    public SpaceSaving<Pattern> getPatternOccurrences() { return patternOccurrences; }
+
+    /** Patterns weighted by summed timeImpactSeconds */
+    public SpaceSaving<Pattern> getPatternImpact() { return patternImpact; }
+
+    /**
+     * CREATE INDEX fixes weighted by the share of their query's cost the finding accounts
+     * for (a finding at 40% of the plan adds 0.4); hits are how often each was recommended
+     */
+    public SpaceSaving<IndexCandidate> getIndexRecommendations() { return indexRecommendations; }
+
+    /**
+     * Table behind a MISSING_INDEX finding: the plan node's object, or whatever follows
+     * " on " in the operator name ("Table Scan on GIVING_DETAIL (1.2M rows)").
+     */
+    static String tableName(Bottleneck b) {
+        if (b.getRelatedNode() != null && b.getRelatedNode().getObjectName() != null
+                && !b.getRelatedNode().getObjectName().isBlank()) {
+            return b.getRelatedNode().getObjectName();
+        }
+        String operator = b.getOperatorName();
+        if (operator == null) {
+            return null;
+        }
+        int on = operator.indexOf(" on ");
+        if (on < 0) {
+            return null;
+        }
+        String rest = operator.substring(on + 4).trim();
+        int end = rest.indexOf(' ');
+        return end < 0 ? rest : rest.substring(0, end);
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_SIGNATURE_LENGTH ? text : text.substring(0, MAX_SIGNATURE_LENGTH);
+    }
+}
@@ -0,0 +1,112 @@
+package com.querylens.advisor;
+
+import com.querylens.advisor.HypotheticalIndexEvaluator.Evaluation;
+import com.querylens.advisor.HypotheticalIndexEvaluator.Method;
+import com.querylens.service.ExplainSandbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HypotheticalIndexEvaluatorTest {
+
+    private static final String SQL = "SELECT * FROM giving_detail WHERE posted_date >= '2024-01-01'";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ExplainSandbox sandbox = mock(ExplainSandbox.class);
+    private final HypotheticalIndexEvaluator evaluator = new HypotheticalIndexEvaluator();
+
+    private final IndexCandidate useful = IndexCandidate.parse("CREATE INDEX ON giving_detail (posted_date)").orElseThrow();
+    private final IndexCandidate ignored = IndexCandidate.parse("CREATE INDEX ON giving_detail (amount)").orElseThrow();
+    private final IndexCandidate broken = IndexCandidate.parse("CREATE INDEX ON giving_detail (no_such_column)").orElseThrow();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(evaluator, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(evaluator, "sandbox", sandbox);
+        when(sandbox.run(anyBoolean(), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        when(sandbox.planOnly(any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(0)).get());
+    }
+
+    @Test
+    void evaluateHypothetical_costsEachCandidateAndResetsTheSession() {
+        when(jdbcTemplate.queryForMap(contains("hypopg_create_index"), eq(useful.ddl())))
+            .thenReturn(Map.of("indexrelid", 1001L, "indexname", "<1001>btree_giving_detail_posted_date"));
+        when(jdbcTemplate.queryForMap(contains("hypopg_create_index"), eq(ignored.ddl())))
+            .thenReturn(Map.of("indexrelid", 1002L, "indexname", "<1002>btree_giving_detail_amount"));
+        when(jdbcTemplate.queryForMap(contains("hypopg_create_index"), eq(broken.ddl())))
+            .thenThrow(new DataIntegrityViolationException("column \"no_such_column\" does not exist"));
+        when(jdbcTemplate.queryForObject(contains("hypopg_relation_size"), eq(Long.class), any()))
+            .thenReturn(2_097_152L);
+        // Baseline, then the plan with each hypothetical index
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN"), eq(String.class)))
+            .thenReturn(List.of(seqScan(1000)))
+            .thenReturn(List.of(indexScan(40, "<1001>btree_giving_detail_posted_date")))
+            .thenReturn(List.of(seqScan(1000)));
+
+        Evaluation evaluation = evaluator.evaluateHypothetical(jdbcTemplate, SQL, List.of(useful, ignored, broken));
+
+        assertThat(evaluation.method()).isEqualTo(Method.HYPOPG);
+        assertThat(evaluation.baselineCost()).isEqualTo(1000.0);
+        assertThat(evaluation.candidates())
+            .extracting(c -> c.candidate(), c -> c.cost(), c -> c.used())
+            .containsExactly(tuple(useful, 40.0, true), tuple(ignored, 1000.0, false), tuple(broken, null, false));
+        assertThat(evaluation.candidates().get(2).error()).contains("no_such_column");
+        // Before, after every candidate (failed ones too) and at the end
+        verify(jdbcTemplate, times(5)).execute("SELECT hypopg_reset()");
+        // Every EXPLAIN of the autocommit session is in a read-only transaction
+        verify(jdbcTemplate, times(3)).execute("BEGIN READ ONLY");
+        verify(jdbcTemplate, times(3)).execute("ROLLBACK");
+    }
+
+    @Test
+    void evaluate_reportsUnavailableWithoutHypoPgOrFallback() {
+        when(jdbcTemplate.queryForObject(contains("pg_extension"), eq(Boolean.class))).thenReturn(false);
+
+        Evaluation evaluation = evaluator.evaluate(SQL, List.of(useful));
+
+        assertThat(evaluation.method()).isEqualTo(Method.UNAVAILABLE);
+        assertThat(evaluation.candidates().get(0).error()).contains("CREATE EXTENSION hypopg");
+        verifyNoInteractions(sandbox);
+    }
+
+    @Test
+    void evaluate_fallsBackToARolledBackRealIndex() {
+        ReflectionTestUtils.setField(evaluator, "realIndexFallback", true);
+        when(jdbcTemplate.queryForObject(contains("pg_extension"), eq(Boolean.class))).thenReturn(false);
+        when(jdbcTemplate.queryForObject(contains("pg_relation_size"), eq(Long.class), any())).thenReturn(8192L);
+        when(jdbcTemplate.queryForList(startsWith("EXPLAIN"), eq(String.class)))
+            .thenReturn(List.of(seqScan(1000)))
+            .thenReturn(List.of(indexScan(40, "querylens_whatif_idx")));
+
+        Evaluation evaluation = evaluator.evaluate(SQL, List.of(useful));
+
+        assertThat(evaluation.method()).isEqualTo(Method.REAL_INDEX);
+        assertThat(evaluation.candidates().get(0).used()).isTrue();
+        verify(jdbcTemplate).execute("CREATE INDEX querylens_whatif_idx ON giving_detail (posted_date)");
+        verify(sandbox).run(eq(false), any());
+    }
+
+    private static String seqScan(double cost) {
+        return """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "giving_detail", "Total Cost": %s, "Plan Rows": 5000}}]
+            """.formatted(cost);
+    }
+
+    private static String indexScan(double cost, String index) {
+        return """
+            [{"Plan": {"Node Type": "Index Scan", "Relation Name": "giving_detail", "Index Name": "%s", "Total Cost": %s, "Plan Rows": 5000}}]
+            """.formatted(index, cost);
+    }
+}
@@ -0,0 +1,166 @@
+package com.querylens.advisor;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.dto.IndexAdvice;
+import com.querylens.dto.IndexAdvice.Candidate;
+import com.querylens.target.TargetProperties;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.SpaceSaving.Entry;
+import com.querylens.workload.WorkloadAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndexAdvisorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final IndexAdvisor advisor = new IndexAdvisor();
+
+    // 1M rows, 4-byte columns: a one-column index is ~22 MB
+    private final TableStats givingDetail = new TableStats("public", "giving_detail", 1_000_000, 900, 100,
+        Map.of("posted_date", 4, "account", 4, "amount", 4, "fund", 4));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(advisor, "storageBudgetMb", 10_240L);
+        ReflectionTestUtils.setField(advisor, "maxIndexes", 10);
+        ReflectionTestUtils.setField(advisor, "writeWeight", 1.0);
+    }
+
+    @Test
+    void advise_mergesPrefixRecommendationsIntoOneIndex() {
+        IndexAdvice advice = advisor.advise(List.of(
+                rec("CREATE INDEX ON giving_detail (posted_date)", 0.5, 10),
+                rec("CREATE INDEX ON giving_detail (posted_date, account)", 0.3, 5),
+                rec("CREATE INDEX ON giving_detail (posted_date, account) INCLUDE (amount)", 0.2, 2),
+                rec("CREATE INDEX ON giving_detail (fund)", 0.1, 1)),
+            tables(), List.of());
+
+        assertThat(advice.getDdl()).containsExactly(
+            "CREATE INDEX ix_giving_detail_posted_date_account ON giving_detail (posted_date, account) INCLUDE (amount);",
+            "CREATE INDEX ix_giving_detail_fund ON giving_detail (fund);");
+        Candidate merged = advice.getSelected().get(0);
+        assertThat(merged.getMergedFrom()).hasSize(3);
+        assertThat(merged.getTimesRecommended()).isEqualTo(17);
+        assertThat(merged.getBenefit()).isEqualTo(1.0);
+        assertThat(merged.getWriteShare()).isEqualTo(0.1);
+        assertThat(merged.getNetBenefit()).isCloseTo(0.9, org.assertj.core.data.Offset.offset(1e-9));
+    }
+
+    @Test
+    void advise_rejectsWhatExistingIndexesCoverAndWriteHeavyTables() {
+        TableStats ledger = new TableStats("public", "ledger", 1_000, 0, 990, Map.of());
+        IndexAdvice advice = advisor.advise(List.of(
+                rec("CREATE INDEX ON giving_detail (posted_date)", 0.5, 10),
+                rec("CREATE INDEX ON ledger (entry_date)", 0.9, 50)),
+            Map.of("giving_detail", givingDetail, "ledger", ledger),
+            List.of(IndexCandidate.parse("CREATE INDEX gd_date ON public.giving_detail USING btree (posted_date, fund)").orElseThrow()));
+
+        assertThat(advice.getSelected()).isEmpty();
+        assertThat(advice.getRejected()).extracting(Candidate::getReason)
+            .anySatisfy(r -> assertThat(r).startsWith("Covered by existing index"))
+            .anySatisfy(r -> assertThat(r).startsWith("Write-heavy table: 100%"));
+    }
+
+    @Test
+    void advise_staysWithinTheStorageBudget() {
+        ReflectionTestUtils.setField(advisor, "storageBudgetMb", 40L);
+        IndexAdvice advice = advisor.advise(List.of(
+                rec("CREATE INDEX ON giving_detail (posted_date)", 0.5, 10),
+                rec("CREATE INDEX ON giving_detail (account)", 0.4, 10),
+                rec("CREATE INDEX ON giving_detail (fund) INCLUDE (amount)", 0.3, 10)),
+            tables(), List.of());
+
+        assertThat(advice.getSelected()).extracting(Candidate::getTable).hasSize(1);
+        assertThat(advice.getSelectedBytes()).isLessThanOrEqualTo(40 * MB);
+        assertThat(advice.getRejected()).extracting(Candidate::getReason).containsOnly("Does not fit the storage budget");
+    }
+
+    @Test
+    void advise_readsRecommendationsRecordedInTheWorkload() {
+        WorkloadAggregator workload = new WorkloadAggregator(100);
+        IndexAdvisorCatalog catalog = mock(IndexAdvisorCatalog.class);
+        when(catalog.tableStats()).thenReturn(tables());
+        ReflectionTestUtils.setField(advisor, "workload", workload);
+        ReflectionTestUtils.setField(advisor, "catalog", catalog);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ReflectionTestUtils.setField(advisor, "jdbcTemplate", jdbcTemplate);
+
+        for (int i = 0; i < 3; i++) {
+            recordIndexFix(workload, "CREATE INDEX IX_GD\nON GIVING_DETAIL (posted_date)\nINCLUDE (amount);", i);
+        }
+
+        IndexAdvice advice = advisor.adviseAndRecord();
+
+        assertThat(advice.getRecommendationsConsidered()).isEqualTo(1);
+        assertThat(advice.getSelected()).singleElement()
+            .satisfies(c -> assertThat(c.getTimesRecommended()).isEqualTo(3));
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO index_recommendations"),
+            argThat((List<Object[]> rows) -> rows.size() == 1 && rows.get(0)[2].equals("ix_giving_detail_posted_date")
+                && rows.get(0)[6].equals(3) && rows.get(0)[9].equals("default")));
+    }
+
+    @Test
+    void advise_onlyReadsTheBoundTargetsRecommendations() {
+        WorkloadAggregator workload = new WorkloadAggregator(100);
+        IndexAdvisorCatalog catalog = mock(IndexAdvisorCatalog.class);
+        when(catalog.tableStats()).thenReturn(tables());
+        ReflectionTestUtils.setField(advisor, "workload", workload);
+        ReflectionTestUtils.setField(advisor, "catalog", catalog);
+
+        TargetProperties properties = new TargetProperties();
+        TargetProperties.Database replica = new TargetProperties.Database();
+        replica.setUrl("jdbc:h2:mem:advisor");
+        properties.getDatabases().put("replica", replica);
+        TargetRegistry targets = new TargetRegistry();
+        ReflectionTestUtils.setField(targets, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(targets, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(targets, "properties", properties);
+
+        try {
+            recordIndexFix(workload, "CREATE INDEX ON giving_detail (posted_date)", 1);
+            targets.run("replica", () -> {
+                recordIndexFix(workload, "CREATE INDEX ON giving_detail (fund)", 2);
+                return null;
+            });
+
+            assertThat(advisor.advise().getDdl()).singleElement().asString().contains("(posted_date)");
+            assertThat(targets.run("replica", advisor::advise).getDdl()).singleElement().asString().contains("(fund)");
+        } finally {
+            targets.closeAll();
+        }
+    }
+
+    private static void recordIndexFix(WorkloadAggregator workload, String ddl, int month) {
+        Bottleneck b = new Bottleneck();
+        b.setIssueType(IssueType.MISSING_INDEX);
+        b.setSeverity(Severity.CRITICAL);
+        b.setCostPercentage(40);
+        b.addFixQuery(ddl);
+        BiAnalysisResult result = new BiAnalysisResult();
+        result.getBottlenecks().add(b);
+        workload.record(QueryFingerprint.of("SELECT amount FROM giving_detail WHERE posted_date > '2024-0" + month + "-01'"), result);
+    }
+
+    private Map<String, TableStats> tables() {
+        return Map.of("public.giving_detail", givingDetail, "giving_detail", givingDetail);
+    }
+
+    private static Entry<IndexCandidate> rec(String ddl, double benefit, long hits) {
+        return new Entry<>(IndexCandidate.parse(ddl).orElseThrow(), benefit, 0, hits, null);
+    }
+}
@@ -0,0 +1,43 @@
+package com.querylens.advisor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexCandidateTest {
+
+    @Test
+    void parse_readsMissingIndexAnalyzerOutput() {
+        IndexCandidate candidate = IndexCandidate.parse(
+            "CREATE INDEX IX_GIVING_DETAIL_posted_date\nON SFDC.dbo.GIVING_DETAIL (posted_date, account)\nINCLUDE (amount, posted_date);")
+            .orElseThrow();
+
+        assertThat(candidate.table()).isEqualTo("dbo.giving_detail");
+        assertThat(candidate.keyColumns()).containsExactly("posted_date", "account");
+        assertThat(candidate.includeColumns()).containsExactly("amount");
+        assertThat(candidate.ddl())
+            .isEqualTo("CREATE INDEX ON dbo.giving_detail (posted_date, account) INCLUDE (amount)");
+    }
+
+    @Test
+    void parse_acceptsSqlServerSyntaxAndComments() {
+        IndexCandidate candidate = IndexCandidate.parse(
+            "-- Consider creating an index if not exists:\nCREATE NONCLUSTERED INDEX [IX_A] ON [dbo].[ACCOUNT] ([id] DESC)")
+            .orElseThrow();
+
+        assertThat(candidate.ddl()).isEqualTo("CREATE INDEX ON dbo.account (id)");
+    }
+
+    @Test
+    void parse_rejectsPlaceholdersExpressionsAndInjection() {
+        List<String> rejected = List.of(
+            "CREATE INDEX IX_posted_date ON table_name (posted_date) INCLUDE (other_columns);",
+            "CREATE INDEX ix ON t (lower(name))",
+            "CREATE INDEX ix ON t (a); DROP TABLE t",
+            "ALTER TABLE t ADD COLUMN a int");
+
+        assertThat(rejected).allSatisfy(ddl -> assertThat(IndexCandidate.parse(ddl)).isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.querylens.advisor;
+
+import com.querylens.advisor.HypotheticalIndexEvaluator.CandidateCost;
+import com.querylens.advisor.HypotheticalIndexEvaluator.Evaluation;
+import com.querylens.advisor.HypotheticalIndexEvaluator.Method;
+import com.querylens.dto.WhatIfReport;
+import com.querylens.dto.WhatIfReport.Recommendation;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndexWhatIfServiceTest {
+
+    private final HypotheticalIndexEvaluator evaluator = mock(HypotheticalIndexEvaluator.class);
+    private final IndexWhatIfService service = new IndexWhatIfService();
+
+    @Test
+    void evaluate_ranksByCostSavedPerMbWithUnusedIndexesLast() {
+        ReflectionTestUtils.setField(service, "evaluator", evaluator);
+        IndexCandidate wide = IndexCandidate.parse("CREATE INDEX ON gd (posted_date) INCLUDE (a, b, c)").orElseThrow();
+        IndexCandidate narrow = IndexCandidate.parse("CREATE INDEX ON gd (posted_date)").orElseThrow();
+        IndexCandidate ignored = IndexCandidate.parse("CREATE INDEX ON gd (amount)").orElseThrow();
+        when(evaluator.evaluate(anyString(), anyList())).thenReturn(new Evaluation(Method.HYPOPG, 1000.0, List.of(
+            new CandidateCost(wide, 100.0, 64L << 20, true, null),
+            new CandidateCost(narrow, 200.0, 8L << 20, true, null),
+            new CandidateCost(ignored, 1000.0, 1L << 20, false, null))));
+
+        WhatIfReport report = service.evaluate("SELECT 1", List.of(
+            wide.ddl(), narrow.ddl(), "CREATE INDEX ON gd (posted_date)", ignored.ddl(),
+            "CREATE INDEX IX ON table_name (x)"));
+
+        assertThat(report.getMethod()).isEqualTo("HYPOPG");
+        assertThat(report.getRecommendations())
+            .extracting(Recommendation::getRank, Recommendation::getDdl, Recommendation::getCostSavedPerMb)
+            .containsExactly(
+                tuple(1, narrow.ddl(), 100.0),
+                tuple(2, wide.ddl(), 900.0 / 64),
+                tuple(3, ignored.ddl(), 0.0));
+        assertThat(report.getSkipped()).containsExactly("CREATE INDEX IX ON table_name (x)");
+        // The duplicate recommendation is only evaluated once
+        verify(evaluator).evaluate(eq("SELECT 1"), argThat(list -> list.size() == 3));
+    }
+}
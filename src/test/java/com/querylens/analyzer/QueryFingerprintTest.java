@@ -0,0 +1,55 @@
+package com.querylens.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryFingerprintTest {
+
+    @Test
+    void of_ignoresLiteralsWhitespaceCaseAndComments() {
+        QueryFingerprint a = QueryFingerprint.of("""
+            SELECT gd.donor_id, SUM(gd.amount)
+            FROM SFDC.dbo.GIVING_DETAIL gd   -- nightly report
+            WHERE YEAR(gd.posted_date) = 2023 AND gd.credit_type = 'Hard'
+            GROUP BY gd.donor_id
+            """);
+        QueryFingerprint b = QueryFingerprint.of(
+            "select gd.donor_id, sum(gd.amount) from sfdc.dbo.giving_detail gd "
+                + "where year(gd.posted_date)=2024 and gd.credit_type='Soft' group by gd.donor_id");
+
+        assertThat(a.hash()).isEqualTo(b.hash()).hasSize(64);
+        assertThat(a.literalHash()).isNotEqualTo(b.literalHash());
+        assertThat(a.normalizedSql()).isEqualTo(
+            "SELECT GD . DONOR_ID , SUM ( GD . AMOUNT ) FROM SFDC . DBO . GIVING_DETAIL GD "
+                + "WHERE YEAR ( GD . POSTED_DATE ) = ? AND GD . CREDIT_TYPE = ? GROUP BY GD . DONOR_ID");
+    }
+
+    @Test
+    void of_distinguishesDifferentQueriesAndQuotedIdentifierCase() {
+        assertThat(QueryFingerprint.of("SELECT a FROM t WHERE x = 1").hash())
+            .isNotEqualTo(QueryFingerprint.of("SELECT a FROM t WHERE y = 1").hash());
+        assertThat(QueryFingerprint.of("SELECT \"Name\" FROM t").hash())
+            .isNotEqualTo(QueryFingerprint.of("SELECT \"name\" FROM t").hash());
+        assertThat(QueryFingerprint.of("SELECT a FROM t WHERE x = 1").literalHash())
+            .isEqualTo(QueryFingerprint.of("select a from t where x = 1").literalHash());
+    }
+
+    @Test
+    void planHash_dependsOnShapeNotCosts() {
+        assertThat(QueryFingerprint.planHash(List.of(scan("users", 10.0))))
+            .isEqualTo(QueryFingerprint.planHash(List.of(scan("users", 99.0))))
+            .isNotEqualTo(QueryFingerprint.planHash(List.of(scan("orders", 10.0))));
+    }
+
+    private static ExecutionPlanNode scan(String table, double cost) {
+        ExecutionPlanNode node = new ExecutionPlanNode();
+        node.setOperatorType("Seq Scan");
+        node.setObjectName(table);
+        node.setActualCost(cost);
+        node.setElapsedTimeMs(cost);
+        return node;
+    }
+}
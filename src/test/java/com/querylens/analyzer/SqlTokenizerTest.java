@@ -0,0 +1,122 @@
+package com.querylens.analyzer;
+
+import com.querylens.analyzer.TokenizedSql.TokenType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlTokenizerTest {
+
+    @Test
+    void tokenize_tracksLinesAndColumns() {
+        String sql = """
+            SELECT gd.amount
+            FROM SFDC.dbo.GIVING_DETAIL gd
+            WHERE YEAR(gd.posted_date) = 2023
+            """;
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+
+        assertThat(tokens.isWord(0, "select")).isTrue();
+        assertThat(tokens.lineNumber(0)).isEqualTo(1);
+        assertThat(tokens.column(0)).isEqualTo(1);
+
+        int where = tokens.firstCodeTokenOnLine(3);
+        assertThat(tokens.isWord(where, "WHERE")).isTrue();
+        assertThat(tokens.lineNumber(where)).isEqualTo(3);
+
+        assertThat(tokens.line(2)).isEqualTo("FROM SFDC.dbo.GIVING_DETAIL gd");
+        assertThat(tokens.lineHasWord(3, "YEAR")).isTrue();
+        assertThat(tokens.lineHasWord(1, "YEAR")).isFalse();
+        assertThat(tokens.lineOf(sql.indexOf("YEAR"))).isEqualTo(3);
+    }
+
+    @Test
+    void tokenize_ignoresKeywordsInsideCommentsAndLiterals() {
+        String sql = """
+            SELECT 'YEAR(x) = 2020' AS label -- YEAR(posted_date) = 2023
+            /* WHERE COALESCE(a, b) = 1
+               OR nested /* comment */ still comment */
+            FROM t
+            """;
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+
+        assertThat(tokens.containsWord("YEAR")).isFalse();
+        assertThat(tokens.containsWord("COALESCE")).isFalse();
+        assertThat(tokens.containsWord("OR")).isFalse();
+        assertThat(tokens.containsWord("FROM")).isTrue();
+        assertThat(tokens.lineHasWord(4, "FROM")).isTrue();
+
+        // Code text keeps offsets but blanks comment and literal contents
+        assertThat(tokens.codeText()).hasSameSizeAs(sql);
+        assertThat(tokens.codeLine(1)).doesNotContain("YEAR").startsWith("SELECT '");
+        assertThat(tokens.codeLine(2).isBlank()).isTrue();
+    }
+
+    @Test
+    void tokenize_handlesBracketedIdentifiersAndVariables() {
+        String sql = "SELECT [Donor Name], N'x''y' FROM [dbo].[DONOR_DIM] WHERE id = @donor_id AND t.tags[1] = $1";
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+
+        assertThat(tokens.type(1)).isEqualTo(TokenType.QUOTED_IDENTIFIER);
+        assertThat(tokens.identifier(1)).isEqualTo("Donor Name");
+        assertThat(tokens.type(3)).isEqualTo(TokenType.STRING);
+        assertThat(tokens.text(3)).isEqualTo("N'x''y'");
+
+        int table = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.isIdentifier(i, "donor_dim")) {
+                table = i;
+            }
+        }
+        assertThat(table).isPositive();
+        assertThat(tokens.type(table)).isEqualTo(TokenType.QUOTED_IDENTIFIER);
+
+        int param = -1;
+        int subscript = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.text(i).equals("@donor_id")) {
+                param = i;
+            }
+            if (tokens.text(i).equals("[")) {
+                subscript = i;
+            }
+        }
+        assertThat(tokens.type(param)).isEqualTo(TokenType.VARIABLE);
+        assertThat(tokens.type(subscript)).isEqualTo(TokenType.PUNCTUATION);
+        assertThat(tokens.type(tokens.size() - 1)).isEqualTo(TokenType.VARIABLE);
+    }
+
+    @Test
+    void tokenize_countsParenthesesOutsideLiterals() {
+        String sql = "SELECT (SELECT MAX(x) FROM t WHERE note = ')' \n  AND y = 1)";
+
+        TokenizedSql tokens = SqlTokenizer.tokenize(sql);
+
+        assertThat(tokens.parenBalance(1)).isEqualTo(1);
+        assertThat(tokens.parenBalance(2)).isEqualTo(-1);
+    }
+
+    @Test
+    void isSingleStatement_rejectsScriptsButNotTrailingSemicolonsOrQuotedOnes() {
+        assertThat(SqlTokenizer.tokenize("SELECT 1;").isSingleStatement()).isTrue();
+        assertThat(SqlTokenizer.tokenize("SELECT ';DELETE' FROM t; ; -- done\n/* ; */").isSingleStatement()).isTrue();
+        assertThat(SqlTokenizer.tokenize("SELECT 1; DELETE FROM giving_detail").isSingleStatement()).isFalse();
+        assertThat(SqlTokenizer.tokenize("SELECT 1 -- ;\n; COMMIT").isSingleStatement()).isFalse();
+    }
+
+    @Test
+    void tokenize_readsBackslashEscapesInEStringsOnly() {
+        // PostgreSQL reads E'\'' as one quote: the ';' after it ends the statement
+        TokenizedSql escaped = SqlTokenizer.tokenize("SELECT E'\\'' ; DELETE FROM t; --'");
+        assertThat(escaped.isSingleStatement()).isFalse();
+        assertThat(escaped.text(1)).isEqualTo("E'\\''");
+
+        // In a standard string the backslash is an ordinary character
+        TokenizedSql standard = SqlTokenizer.tokenize("SELECT 'a\\' ; DELETE FROM t");
+        assertThat(standard.isSingleStatement()).isFalse();
+        assertThat(SqlTokenizer.tokenize("SELECT E'it\\'s; fine' FROM t").isSingleStatement()).isTrue();
+    }
+}
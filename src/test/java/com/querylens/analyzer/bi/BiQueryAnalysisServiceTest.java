@@ -0,0 +1,159 @@
+package com.querylens.analyzer.bi;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class BiQueryAnalysisServiceTest {
+
+    @InjectMocks
+    private BiQueryAnalysisService service;
+
+    @Mock private NonSargableDetector nonSargableDetector;
+    @Mock private CorrelatedSubqueryDetector correlatedSubqueryDetector;
+    @Mock private OrConditionDetector orConditionDetector;
+    @Mock private LateFilterDetector lateFilterDetector;
+    @Mock private MissingIndexAnalyzer missingIndexAnalyzer;
+    @Mock private HeavyAggregationOptimizer heavyAggregationOptimizer;
+
+    private AutoCloseable mocks;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        ReflectionTestUtils.setField(service, "detectorExecutor", executor);
+
+        stub(nonSargableDetector, "NON_SARGABLE");
+        stub(correlatedSubqueryDetector, "CORRELATED_SUBQUERY");
+        stub(orConditionDetector, "OR_CONDITION");
+        stub(lateFilterDetector, "LATE_FILTER");
+        stub(missingIndexAnalyzer, "MISSING_INDEX");
+        stub(heavyAggregationOptimizer, "HEAVY_AGGREGATION");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        mocks.close();
+    }
+
+    @Test
+    void analyzeQuery_mergesDetectorResultsInDetectorOrder() {
+        Bottleneck yearFilter = bottleneck(Bottleneck.IssueType.NON_SARGABLE_PREDICATE, 40);
+        Bottleneck subquery = bottleneck(Bottleneck.IssueType.CORRELATED_SUBQUERY, 40);
+        when(nonSargableDetector.detect(any(TokenizedSql.class), any())).thenReturn(List.of(yearFilter));
+        when(correlatedSubqueryDetector.detect(any(TokenizedSql.class), any())).thenReturn(List.of(subquery));
+
+        BiAnalysisResult result = service.analyzeQuery("SELECT 1", List.of());
+
+        assertThat(result.getBottlenecks()).containsExactly(yearFilter, subquery);
+        assertThat(result.isPartial()).isFalse();
+        assertThat(result.getTimedOutDetectors()).isEmpty();
+    }
+
+    @Test
+    void analyzeQuery_marksSlowDetectorAsPartialWithoutWaitingForIt() {
+        ReflectionTestUtils.setField(service, "detectorTimeoutMs", 100L);
+        Bottleneck scan = bottleneck(Bottleneck.IssueType.MISSING_INDEX, 70);
+        when(missingIndexAnalyzer.detect(any(TokenizedSql.class), any())).thenReturn(List.of(scan));
+        when(correlatedSubqueryDetector.detect(any(TokenizedSql.class), any())).thenAnswer(invocation -> {
+            Thread.sleep(5_000);
+            return List.of(bottleneck(Bottleneck.IssueType.CORRELATED_SUBQUERY, 10));
+        });
+
+        long start = System.nanoTime();
+        BiAnalysisResult result = service.analyzeQuery("SELECT 1", List.of(new ExecutionPlanNode()));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMs).isLessThan(2_000);
+        assertThat(result.isPartial()).isTrue();
+        assertThat(result.getTimedOutDetectors()).containsExactly("CORRELATED_SUBQUERY");
+        assertThat(result.getBottlenecks()).containsExactly(scan);
+    }
+
+    @Test
+    void analyzeQuery_stopsTimedOutDetectorAtItsNextLine() throws Exception {
+        ReflectionTestUtils.setField(service, "detectorTimeoutMs", 100L);
+        CountDownLatch stopped = new CountDownLatch(1);
+        when(lateFilterDetector.detect(any(TokenizedSql.class), any())).thenAnswer(invocation -> {
+            try {
+                // A scan that would otherwise never finish
+                while (true) {
+                    BiDetector.stopIfInterrupted();
+                }
+            } finally {
+                stopped.countDown();
+            }
+        });
+
+        BiAnalysisResult result = service.analyzeQuery("SELECT 1", List.of());
+
+        assertThat(result.getTimedOutDetectors()).containsExactly("LATE_FILTER");
+        assertThat(stopped.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void analyzeQuery_doesNotCountQueueTimeAgainstTheBudget() throws Exception {
+        // Two "cores" shared by four concurrent analyses of six detectors each
+        executor.shutdownNow();
+        executor = Executors.newFixedThreadPool(2);
+        ReflectionTestUtils.setField(service, "detectorExecutor", executor);
+        ReflectionTestUtils.setField(service, "detectorTimeoutMs", 200L);
+        for (BiDetector detector : List.of(nonSargableDetector, correlatedSubqueryDetector, orConditionDetector,
+                lateFilterDetector, missingIndexAnalyzer, heavyAggregationOptimizer)) {
+            when(detector.detect(any(TokenizedSql.class), any())).thenAnswer(invocation -> {
+                Thread.sleep(50);
+                return List.of();
+            });
+        }
+
+        // 24 tasks of 50 ms on 2 threads: the last start ~550 ms after being queued
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<BiAnalysisResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(requests.submit(() -> service.analyzeQuery("SELECT 1", List.of())));
+            }
+            for (Future<BiAnalysisResult> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS).getTimedOutDetectors()).isEmpty();
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    private static void stub(BiDetector detector, String name) {
+        when(detector.name()).thenReturn(name);
+        when(detector.detect(any(TokenizedSql.class), any())).thenReturn(List.of());
+    }
+
+    private static Bottleneck bottleneck(Bottleneck.IssueType type, double costPercentage) {
+        Bottleneck bottleneck = new Bottleneck();
+        bottleneck.setSeverity(Bottleneck.Severity.CRITICAL);
+        bottleneck.setIssueType(type);
+        bottleneck.setCostPercentage(costPercentage);
+        return bottleneck;
+    }
+}
@@ -0,0 +1,56 @@
+package com.querylens.analyzer.bi;
+
+import com.querylens.analyzer.Bottleneck;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LateFilterDetectorTest {
+
+    private final LateFilterDetector detector = new LateFilterDetector();
+
+    @Test
+    void detect_scopesJoinAliasesToTheirUnionBranch() {
+        String sql = """
+            SELECT gd.donor_id FROM SFDC.dbo.GIVING_DETAIL gd
+            JOIN SFDC.dbo.DONOR_DIM d ON d.donor_id = gd.donor_id
+            WHERE gd.amount > 0
+              AND d.region = 'R1'
+            UNION ALL
+            SELECT gd.donor_id FROM SFDC.dbo.GIVING_DETAIL gd
+            JOIN SFDC.dbo.DONOR_DIM d ON d.donor_id = gd.donor_id
+            WHERE gd.amount > 0
+              AND d.region = 'R2'
+            UNION ALL
+            SELECT gd.donor_id FROM SFDC.dbo.GIVING_DETAIL gd
+            JOIN SFDC.dbo.DONOR_DIM d ON d.donor_id = gd.donor_id
+            WHERE gd.amount > 0
+              AND d.region = 'R3'
+            """;
+
+        List<Bottleneck> findings = detector.detect(sql, List.of());
+
+        // One finding per branch, each pointing at its own JOIN
+        assertThat(findings).extracting(Bottleneck::getLineNumber).containsExactly(4, 9, 14);
+        assertThat(findings).extracting(Bottleneck::getStartLine).containsExactly(2, 7, 12);
+    }
+
+    @Test
+    void detect_dropsAliasesOfAClosedSubquery() {
+        String sql = """
+            SELECT o.id FROM orders o
+            WHERE o.customer_id IN (
+              SELECT c.id FROM customers c
+              JOIN regions r ON r.id = c.region_id
+              WHERE r.status = 'open')
+              AND o.total > 0
+              AND r.status = 'closed'
+            """;
+
+        List<Bottleneck> findings = detector.detect(sql, List.of());
+
+        assertThat(findings).extracting(Bottleneck::getLineNumber).containsExactly(5);
+    }
+}
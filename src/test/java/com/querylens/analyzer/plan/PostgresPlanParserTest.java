@@ -0,0 +1,150 @@
+package com.querylens.analyzer.plan;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PostgresPlanParserTest {
+
+    private final PostgresPlanParser parser = new PostgresPlanParser();
+
+    static final String HASH_JOIN_PLAN = """
+        [
+          {
+            "Plan": {
+              "Node Type": "Hash Join",
+              "Parallel Aware": false,
+              "Join Type": "Inner",
+              "Startup Cost": 5.00,
+              "Total Cost": 20.00,
+              "Plan Rows": 500,
+              "Plan Width": 64,
+              "Actual Startup Time": 1.000,
+              "Actual Total Time": 12.000,
+              "Actual Rows": 5000000000,
+              "Actual Loops": 1,
+              "Hash Cond": "(orders.user_id = users.id)",
+              "Shared Hit Blocks": 120,
+              "Shared Read Blocks": 30,
+              "Local Hit Blocks": 0,
+              "Local Read Blocks": 0,
+              "Plans": [
+                {
+                  "Node Type": "Seq Scan",
+                  "Parent Relationship": "Outer",
+                  "Relation Name": "orders",
+                  "Alias": "orders",
+                  "Total Cost": 10.00,
+                  "Plan Rows": 1000,
+                  "Actual Startup Time": 0.010,
+                  "Actual Total Time": 8.000,
+                  "Actual Rows": 1000,
+                  "Actual Loops": 1,
+                  "Shared Hit Blocks": 100,
+                  "Shared Read Blocks": 30
+                },
+                {
+                  "Node Type": "Hash",
+                  "Parent Relationship": "Inner",
+                  "Total Cost": 4.00,
+                  "Plan Rows": 100,
+                  "Actual Startup Time": 0.500,
+                  "Actual Total Time": 0.500,
+                  "Actual Rows": 100,
+                  "Actual Loops": 1,
+                  "Plans": [
+                    {
+                      "Node Type": "Index Scan",
+                      "Parent Relationship": "Outer",
+                      "Index Name": "users_pkey",
+                      "Relation Name": "users",
+                      "Total Cost": 3.00,
+                      "Plan Rows": 10,
+                      "Actual Startup Time": 0.020,
+                      "Actual Total Time": 0.100,
+                      "Actual Rows": 10,
+                      "Actual Loops": 4,
+                      "Shared Hit Blocks": 20,
+                      "Local Read Blocks": 2
+                    }
+                  ]
+                }
+              ]
+            },
+            "Planning Time": 0.250,
+            "Triggers": [],
+            "Execution Time": 12.500
+          }
+        ]
+        """;
+
+    @Test
+    void parse_buildsTreeWithTimingsLoopsAndBuffers() {
+        QueryPlan plan = parser.parse(HASH_JOIN_PLAN);
+
+        assertThat(plan.isAnalyzed()).isTrue();
+        assertThat(plan.getPlanningTimeMs()).isEqualTo(0.250);
+        assertThat(plan.getExecutionTimeMs()).isEqualTo(12.500);
+        assertThat(plan.getNodes()).extracting(ExecutionPlanNode::getOperatorType)
+            .containsExactly("Hash Join", "Seq Scan", "Hash", "Index Scan");
+
+        ExecutionPlanNode root = plan.getRoot();
+        assertThat(root.getActualRows()).isEqualTo(5_000_000_000L);
+        assertThat(root.getEstimatedCost()).isEqualTo(20.00);
+        assertThat(root.getLogicalReads()).isEqualTo(150);
+        assertThat(root.getPhysicalReads()).isEqualTo(30);
+        assertThat(root.getChildren()).hasSize(2);
+
+        ExecutionPlanNode seqScan = root.getChildren().get(0);
+        assertThat(seqScan.getParent()).isSameAs(root);
+        assertThat(seqScan.getObjectName()).isEqualTo("orders");
+        assertThat(seqScan.isScanOperation()).isTrue();
+        assertThat(seqScan.getSharedReadBlocks()).isEqualTo(30);
+
+        // Per-loop values are multiplied out across loops
+        ExecutionPlanNode indexScan = root.getChildren().get(1).getChildren().get(0);
+        assertThat(indexScan.getLoops()).isEqualTo(4);
+        assertThat(indexScan.getActualRows()).isEqualTo(40);
+        assertThat(indexScan.getElapsedTimeMs()).isCloseTo(0.4, within(1e-9));
+        assertThat(indexScan.getStartupTimeMs()).isEqualTo(0.020);
+        assertThat(indexScan.getLogicalReads()).isEqualTo(22);
+        assertThat(indexScan.getPhysicalReads()).isEqualTo(2);
+    }
+
+    @Test
+    void parse_attributesExclusiveTimeToEachNode() {
+        QueryPlan plan = parser.parse(HASH_JOIN_PLAN);
+
+        ExecutionPlanNode root = plan.getRoot();
+        ExecutionPlanNode seqScan = root.getChildren().get(0);
+
+        // 12ms total - 8ms seq scan - 0.5ms hash = 3.5ms spent in the join itself
+        assertThat(root.getActualCost()).isCloseTo(3.5, within(1e-9));
+        assertThat(seqScan.getActualCost()).isCloseTo(8.0, within(1e-9));
+        assertThat(seqScan.getCostCategory()).isEqualTo("CRITICAL");
+        assertThat(plan.getNodes().stream().mapToDouble(ExecutionPlanNode::getCostPercentage).sum())
+            .isCloseTo(100.0, within(1e-6));
+    }
+
+    @Test
+    void parse_withoutAnalyzeUsesEstimatedCost() {
+        String json = """
+            [{"Plan": {"Node Type": "Limit", "Total Cost": 10.0, "Plan Rows": 5,
+              "Plans": [{"Node Type": "Seq Scan", "Relation Name": "users", "Schema": "public",
+                         "Total Cost": 8.0, "Plan Rows": 100}]}}]
+            """;
+
+        QueryPlan plan = parser.parse(json);
+
+        assertThat(plan.isAnalyzed()).isFalse();
+        ExecutionPlanNode scan = plan.getRoot().getChildren().get(0);
+        assertThat(scan.getObjectName()).isEqualTo("public.users");
+        assertThat(scan.getActualCost()).isEqualTo(8.0);
+        assertThat(plan.getRoot().getActualCost()).isEqualTo(2.0);
+        assertThat(plan.toTextLines()).containsExactly(
+            "Limit  (cost=10.00 rows=5)",
+            "  ->  Seq Scan on public.users  (cost=8.00 rows=100)");
+    }
+}
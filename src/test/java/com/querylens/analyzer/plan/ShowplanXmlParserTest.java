@@ -0,0 +1,156 @@
+package com.querylens.analyzer.plan;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ShowplanXmlParserTest {
+
+    private final ShowplanXmlParser parser = new ShowplanXmlParser();
+
+    private static final String ACTUAL_PLAN = """
+        <?xml version="1.0" encoding="utf-8"?>
+        <ShowPlanXML xmlns="http://schemas.microsoft.com/sqlserver/2004/07/showplan" Version="1.564" Build="16.0.1000.6">
+          <BatchSequence><Batch><Statements>
+            <StmtSimple StatementText="SELECT gd.donor_id, SUM(gd.amount) FROM SFDC.dbo.GIVING_DETAIL gd WHERE YEAR(gd.posted_date) = 2023 GROUP BY gd.donor_id"
+                        StatementId="1" StatementType="SELECT" StatementSubTreeCost="152.4" StatementEstRows="1200">
+              <QueryPlan DegreeOfParallelism="2" CompileTime="12" CompileCPU="11">
+                <QueryTimeStats CpuTime="9100" ElapsedTime="6000" />
+                <RelOp NodeId="0" PhysicalOp="Hash Match" LogicalOp="Aggregate" EstimateRows="1200" EstimatedTotalSubtreeCost="152.4">
+                  <OutputList />
+                  <RunTimeInformation>
+                    <RunTimeCountersPerThread Thread="1" ActualRows="700" ActualExecutions="1" ActualElapsedms="5900" ActualCPUms="400" />
+                    <RunTimeCountersPerThread Thread="2" ActualRows="500" ActualExecutions="1" ActualElapsedms="5950" ActualCPUms="350" />
+                  </RunTimeInformation>
+                  <Hash>
+                    <RelOp NodeId="1" PhysicalOp="Clustered Index Scan" LogicalOp="Clustered Index Scan" EstimateRows="9800000" EstimatedTotalSubtreeCost="140.1">
+                      <OutputList />
+                      <RunTimeInformation>
+                        <RunTimeCountersPerThread Thread="1" ActualRows="5000000" ActualExecutions="1" ActualElapsedms="4200" ActualCPUms="4000" ActualLogicalReads="800000" ActualPhysicalReads="10" ActualReadAheads="190000" />
+                        <RunTimeCountersPerThread Thread="2" ActualRows="4800000" ActualExecutions="1" ActualElapsedms="4300" ActualCPUms="4100" ActualLogicalReads="700000" ActualPhysicalReads="5" ActualReadAheads="170000" />
+                      </RunTimeInformation>
+                      <IndexScan Ordered="false">
+                        <DefinedValues />
+                        <Object Database="[SFDC]" Schema="[dbo]" Table="[GIVING_DETAIL]" Index="[PK_GIVING_DETAIL]" Alias="[gd]" />
+                        <Predicate><ScalarOperator ScalarString="datepart(year,[gd].[posted_date])=(2023)" /></Predicate>
+                      </IndexScan>
+                    </RelOp>
+                  </Hash>
+                </RelOp>
+              </QueryPlan>
+            </StmtSimple>
+          </Statements></Batch></BatchSequence>
+        </ShowPlanXML>
+        """;
+
+    @Test
+    void parse_buildsTreeFromRelOpsWithRuntimeCounters() {
+        QueryPlan plan = parser.parse(ACTUAL_PLAN);
+
+        assertThat(plan.isAnalyzed()).isTrue();
+        assertThat(plan.getExecutionTimeMs()).isEqualTo(6000);
+        assertThat(plan.getPlanningTimeMs()).isEqualTo(12);
+        assertThat(plan.getNodes()).extracting(ExecutionPlanNode::getOperatorType)
+            .containsExactly("SELECT", "Hash Match (Aggregate)", "Clustered Index Scan");
+
+        ExecutionPlanNode statement = plan.getRoot();
+        assertThat(statement.getQueryFragment()).startsWith("SELECT gd.donor_id");
+        assertThat(statement.getEstimatedCost()).isEqualTo(152.4);
+
+        ExecutionPlanNode aggregate = statement.getChildren().get(0);
+        assertThat(aggregate.getActualRows()).isEqualTo(1200);
+        assertThat(aggregate.getElapsedTimeMs()).isEqualTo(5950);
+
+        // Counters summed over both threads, elapsed is the slowest thread
+        ExecutionPlanNode scan = aggregate.getChildren().get(0);
+        assertThat(scan.getParent()).isSameAs(aggregate);
+        assertThat(scan.getObjectName()).isEqualTo("SFDC.dbo.GIVING_DETAIL");
+        assertThat(scan.isScanOperation()).isTrue();
+        assertThat(scan.getActualRows()).isEqualTo(9_800_000);
+        assertThat(scan.getEstimatedRows()).isEqualTo(9_800_000);
+        assertThat(scan.getLoops()).isEqualTo(2);
+        assertThat(scan.getLogicalReads()).isEqualTo(1_500_000);
+        assertThat(scan.getPhysicalReads()).isEqualTo(360_015);
+        assertThat(scan.getCpuTimeMs()).isEqualTo(8100);
+        assertThat(scan.getElapsedTimeMs()).isEqualTo(4300);
+    }
+
+    @Test
+    void parse_readsUploadedUtf16PlanFromStream() {
+        // SSMS saves .sqlplan files as UTF-16 with a BOM
+        byte[] upload = ACTUAL_PLAN.replace("encoding=\"utf-8\"", "encoding=\"utf-16\"")
+            .getBytes(StandardCharsets.UTF_16);
+
+        QueryPlan plan = parser.parse(new ByteArrayInputStream(upload));
+
+        assertThat(plan.isAnalyzed()).isTrue();
+        assertThat(plan.getRoot().getChildren().get(0).getChildren().get(0).getObjectName())
+            .isEqualTo("SFDC.dbo.GIVING_DETAIL");
+    }
+
+    @Test
+    void parse_attributesExclusiveElapsedTime() {
+        QueryPlan plan = parser.parse(ACTUAL_PLAN);
+
+        ExecutionPlanNode aggregate = plan.getRoot().getChildren().get(0);
+        ExecutionPlanNode scan = aggregate.getChildren().get(0);
+
+        assertThat(scan.getActualCost()).isEqualTo(4300);
+        assertThat(aggregate.getActualCost()).isEqualTo(1650);
+        assertThat(scan.getCostCategory()).isEqualTo("CRITICAL");
+        assertThat(scan.getCostPercentage()).isCloseTo(71.67, within(0.01));
+    }
+
+    @Test
+    void parse_estimatedPlanUsesSubtreeCost() {
+        String xml = """
+            <ShowPlanXML xmlns="http://schemas.microsoft.com/sqlserver/2004/07/showplan">
+              <BatchSequence><Batch><Statements>
+                <StmtSimple StatementType="SELECT" StatementSubTreeCost="10">
+                  <QueryPlan>
+                    <RelOp PhysicalOp="Nested Loops" LogicalOp="Inner Join" EstimateRows="10" EstimatedTotalSubtreeCost="10">
+                      <NestedLoops>
+                        <RelOp PhysicalOp="Index Seek" LogicalOp="Index Seek" EstimateRows="10" EstimatedTotalSubtreeCost="2">
+                          <IndexScan><Object Database="[SFDC]" Schema="[dbo]" Table="[DONOR_DIM]" /></IndexScan>
+                        </RelOp>
+                        <RelOp PhysicalOp="Table Scan" LogicalOp="Table Scan" EstimateRows="1" EstimatedTotalSubtreeCost="7">
+                          <TableScan><Object Table="[#staging]" /></TableScan>
+                        </RelOp>
+                      </NestedLoops>
+                    </RelOp>
+                  </QueryPlan>
+                </StmtSimple>
+              </Statements></Batch></BatchSequence>
+            </ShowPlanXML>
+            """;
+
+        QueryPlan plan = parser.parse(xml);
+
+        assertThat(plan.isAnalyzed()).isFalse();
+        ExecutionPlanNode join = plan.getRoot().getChildren().get(0);
+        assertThat(join.getActualCost()).isEqualTo(1.0);
+        assertThat(join.getChildren()).extracting(ExecutionPlanNode::getObjectName)
+            .containsExactly("SFDC.dbo.DONOR_DIM", "#staging");
+        assertThat(join.getChildren().get(1).getActualCost()).isEqualTo(7.0);
+        assertThat(join.getChildren().get(0).isSeekOperation()).isTrue();
+    }
+
+    @Test
+    void parse_rejectsExternalEntities() {
+        String xml = """
+            <?xml version="1.0"?>
+            <!DOCTYPE ShowPlanXML [<!ENTITY xxe SYSTEM "file:///etc/passwd">]>
+            <ShowPlanXML><BatchSequence><Batch><Statements>
+              <StmtSimple StatementText="&xxe;" StatementType="SELECT" />
+            </Statements></Batch></BatchSequence></ShowPlanXML>
+            """;
+
+        assertThatThrownBy(() -> parser.parse(xml)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
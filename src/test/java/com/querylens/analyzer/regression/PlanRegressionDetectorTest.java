@@ -0,0 +1,143 @@
+package com.querylens.analyzer.regression;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.analyzer.ExecutionPlanNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class PlanRegressionDetectorTest {
+
+    private final PlanRegressionDetector detector = new PlanRegressionDetector(10_000, 10);
+
+    @Test
+    void signature_ignoresRowEstimatesButNotOperators() {
+        List<ExecutionPlanNode> plan = plan(node("Index Seek", "GIVING_DETAIL", 100));
+        List<ExecutionPlanNode> moreRows = plan(node("Index Seek", "GIVING_DETAIL", 5_000));
+        List<ExecutionPlanNode> scan = plan(node("Index Scan", "GIVING_DETAIL", 100));
+
+        assertThat(PlanSignature.of(plan).sameShape(PlanSignature.of(moreRows))).isTrue();
+        assertThat(PlanSignature.of(plan).sameShape(PlanSignature.of(scan))).isFalse();
+        assertThat(PlanSignature.of(plan).nodes()).extracting(PlanSignature.Node::depth).containsExactly(0, 1);
+    }
+
+    @Test
+    void detect_reportsNothingForTheSamePlanShape() {
+        List<ExecutionPlanNode> plan = plan(node("Index Seek", "GIVING_DETAIL", 100));
+
+        assertThat(detector.detect(PlanSignature.of(plan), PlanSignature.of(plan), plan)).isEmpty();
+    }
+
+    @Test
+    void detect_flagsSeekToScanDowngrade() {
+        PlanSignature baseline = PlanSignature.of(plan(node("Index Seek", "GIVING_DETAIL", 100)));
+        List<ExecutionPlanNode> indexScan = plan(node("Index Scan", "GIVING_DETAIL", 100));
+        List<ExecutionPlanNode> tableScan = plan(node("Table Scan", "GIVING_DETAIL", 100));
+
+        List<Bottleneck> toIndexScan = detector.detect(baseline, PlanSignature.of(indexScan), indexScan);
+        List<Bottleneck> toTableScan = detector.detect(baseline, PlanSignature.of(tableScan), tableScan);
+
+        assertThat(toIndexScan).extracting(Bottleneck::getIssueType, Bottleneck::getSeverity)
+            .containsExactly(tuple(IssueType.PLAN_REGRESSION, Severity.WARNING));
+        assertThat(toIndexScan.get(0).getProblemDescription()).contains("from Index Seek to Index Scan");
+        assertThat(toTableScan).extracting(Bottleneck::getSeverity).containsExactly(Severity.CRITICAL);
+        assertThat(toTableScan.get(0).getFixes()).last().asString().contains("accept it as the baseline");
+    }
+
+    @Test
+    void detect_flagsNewNestedLoopOverLargeOuterInput() {
+        PlanSignature baseline = PlanSignature.of(join("Hash Match",
+            node("Clustered Index Scan", "ACCOUNT", 50_000), node("Index Seek", "GIVING_DETAIL", 1)));
+        List<ExecutionPlanNode> current = join("Nested Loops",
+            node("Clustered Index Scan", "ACCOUNT", 50_000), node("Index Seek", "GIVING_DETAIL", 1));
+        List<ExecutionPlanNode> smallOuter = join("Nested Loops",
+            node("Clustered Index Scan", "ACCOUNT", 50), node("Index Seek", "GIVING_DETAIL", 1));
+
+        List<Bottleneck> regressions = detector.detect(baseline, PlanSignature.of(current), current);
+
+        assertThat(regressions).extracting(Bottleneck::getSeverity).containsExactly(Severity.CRITICAL);
+        assertThat(regressions.get(0).getProblemDescription()).contains("Nested Loops").doesNotContain("50,000");
+        assertThat(regressions.get(0).getWhyItsASlow()).contains("50,000 times");
+        PlanSignature smallBaseline = PlanSignature.of(join("Hash Match",
+            node("Clustered Index Scan", "ACCOUNT", 50), node("Index Seek", "GIVING_DETAIL", 1)));
+        assertThat(detector.detect(smallBaseline, PlanSignature.of(smallOuter), smallOuter)).isEmpty();
+    }
+
+    @Test
+    void detect_usesActualRowsForEstimateErrorsWhenThePlanRan() {
+        PlanSignature baseline = PlanSignature.of(plan(node("Index Seek", "GIVING_DETAIL", 100)));
+        ExecutionPlanNode seek = node("Index Seek", "GIVING_DETAIL", 100);
+        ExecutionPlanNode filter = node("Filter", null, 100);
+        filter.setActualRows(5_000);
+        filter.setLoops(1);
+        seek.addChild(filter);
+        List<ExecutionPlanNode> current = plan(seek);
+
+        List<Bottleneck> regressions = detector.detect(baseline, PlanSignature.of(current), current);
+
+        assertThat(regressions).extracting(Bottleneck::getSeverity).containsExactly(Severity.WARNING);
+        assertThat(regressions.get(0).getProblemDescription()).doesNotContain("5,000");
+        assertThat(regressions.get(0).getWhyItsASlow()).contains("Estimated 100 rows but produced 5,000", "50x");
+    }
+
+    @Test
+    void detect_comparesEstimatesWithTheBaselineWithoutActuals() {
+        PlanSignature baseline = PlanSignature.of(plan(node("Index Seek", "GIVING_DETAIL", 100)));
+        List<ExecutionPlanNode> current = plan(node("Index Seek", "GIVING_DETAIL", 100_000), node("Sort", null, 100_000));
+
+        List<Bottleneck> regressions = detector.detect(baseline, PlanSignature.of(current), current);
+
+        assertThat(regressions).extracting(Bottleneck::getSeverity).containsExactly(Severity.INFO);
+        assertThat(regressions.get(0).getProblemDescription())
+            .isEqualTo("Row estimate for GIVING_DETAIL moved more than 10x since the baseline plan");
+        assertThat(regressions.get(0).getWhyItsASlow()).contains("moved from 100 to 100,000");
+    }
+
+    @Test
+    void detect_reportsJoinOrderChange() {
+        PlanSignature baseline = PlanSignature.of(join("Hash Match",
+            node("Index Seek", "ACCOUNT", 10), node("Index Seek", "GIVING_DETAIL", 10)));
+        List<ExecutionPlanNode> current = join("Hash Match",
+            node("Index Seek", "GIVING_DETAIL", 10), node("Index Seek", "ACCOUNT", 10));
+
+        List<Bottleneck> regressions = detector.detect(baseline, PlanSignature.of(current), current);
+
+        assertThat(regressions).extracting(Bottleneck::getSeverity).containsExactly(Severity.INFO);
+        assertThat(regressions.get(0).getProblemDescription()).isEqualTo("Join order changed since the baseline plan");
+        assertThat(regressions.get(0).getWhyItsASlow())
+            .contains("in the order GIVING_DETAIL, ACCOUNT instead of ACCOUNT, GIVING_DETAIL");
+    }
+
+    static ExecutionPlanNode node(String operator, String object, long estimatedRows) {
+        ExecutionPlanNode node = new ExecutionPlanNode();
+        node.setOperatorType(operator);
+        node.setObjectName(object);
+        node.setEstimatedRows(estimatedRows);
+        return node;
+    }
+
+    /** SELECT over the given children, pre-order */
+    static List<ExecutionPlanNode> plan(ExecutionPlanNode... children) {
+        ExecutionPlanNode root = node("SELECT", null, 0);
+        for (ExecutionPlanNode child : children) {
+            root.addChild(child);
+        }
+        List<ExecutionPlanNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        nodes.addAll(root.getAllDescendants());
+        return nodes;
+    }
+
+    static List<ExecutionPlanNode> join(String operator, ExecutionPlanNode outer, ExecutionPlanNode inner) {
+        ExecutionPlanNode join = node(operator, null, outer.getEstimatedRows());
+        join.addChild(outer);
+        join.addChild(inner);
+        return plan(join);
+    }
+}
@@ -0,0 +1,121 @@
+package com.querylens.analyzer.regression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.target.TargetProperties;
+import com.querylens.target.TargetRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static com.querylens.analyzer.regression.PlanRegressionDetectorTest.node;
+import static com.querylens.analyzer.regression.PlanRegressionDetectorTest.plan;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlanRegressionServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlanRegressionService service = new PlanRegressionService(10_000, 10);
+    private PlanBaselineStore store;
+
+    private final List<ExecutionPlanNode> seek = plan(node("Index Seek", "GIVING_DETAIL", 100));
+    private final List<ExecutionPlanNode> scan = plan(node("Table Scan", "GIVING_DETAIL", 100));
+
+    @BeforeEach
+    void setUp() {
+        store = new PlanBaselineStore(true, 100);
+        ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "store", store);
+    }
+
+    @Test
+    void check_firstPlanBecomesTheBaseline() {
+        assertThat(service.check("hash-a", seek)).isEmpty();
+        assertThat(service.check("hash-a", scan)).hasSize(1);
+        // The regressed plan does not replace the baseline, so it is reported again
+        assertThat(service.check("hash-a", scan)).hasSize(1);
+        assertThat(service.baseline("default", "hash-a").sameShape(PlanSignature.of(seek))).isTrue();
+    }
+
+    @Test
+    void accept_promotesTheRegressedPlan() {
+        service.check("hash-a", seek);
+        assertThat(service.accept("default", "hash-a")).isFalse();   // Nothing regressed yet
+
+        service.check("hash-a", scan);
+        assertThat(service.accept("default", "hash-a")).isTrue();
+
+        assertThat(service.check("hash-a", scan)).isEmpty();
+        assertThat(service.check("hash-a", seek)).isEmpty();   // Improvements replace the baseline
+    }
+
+    @Test
+    void baselinesAreKeptPerTarget() {
+        TargetProperties properties = new TargetProperties();
+        TargetProperties.Database replica = new TargetProperties.Database();
+        replica.setUrl("jdbc:h2:mem:baselines");
+        properties.getDatabases().put("replica", replica);
+        TargetRegistry targets = new TargetRegistry();
+        ReflectionTestUtils.setField(targets, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(targets, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(targets, "properties", properties);
+
+        try {
+            service.check("hash-a", seek);
+            // The replica plans the same query with a scan: its own first plan, not a regression
+            assertThat(targets.run("replica", () -> service.check("hash-a", scan))).isEmpty();
+            assertThat(service.check("hash-a", scan)).hasSize(1);
+            assertThat(service.baseline("replica", "hash-a").sameShape(PlanSignature.of(scan))).isTrue();
+        } finally {
+            targets.closeAll();
+        }
+    }
+
+    @Test
+    void baselinesArePersistedAndReadBack() throws Exception {
+        service.check("hash-a", seek);
+
+        ArgumentCaptor<Object> json = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate).update(startsWith("INSERT INTO plan_baselines"), eq("default"), eq("hash-a"), json.capture());
+
+        // A fresh store (restart) reads the persisted signature
+        setUp();
+        when(jdbcTemplate.queryForList(startsWith("SELECT signature"), eq(String.class), eq("default"), eq("hash-a")))
+            .thenReturn(List.of((String) json.getValue()));
+        List<Bottleneck> regressions = service.check("hash-a", scan);
+
+        assertThat(regressions).hasSize(1);
+        assertThat(new ObjectMapper().readValue((String) json.getValue(), PlanSignature.class))
+            .isEqualTo(PlanSignature.of(seek));
+    }
+
+    @Test
+    void writeFailuresKeepBaselinesInMemory() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenThrow(new RuntimeException("down"));
+
+        assertThat(service.check("hash-a", seek)).isEmpty();
+        assertThat(service.check("hash-a", scan)).hasSize(1);
+    }
+
+    @Test
+    void readFailures_skipTheCheckWithoutOverwritingOrCachingTheBaseline() throws Exception {
+        String persisted = new ObjectMapper().writeValueAsString(PlanSignature.of(seek));
+        when(jdbcTemplate.queryForList(startsWith("SELECT signature"), eq(String.class), eq("default"), eq("hash-a")))
+            .thenThrow(new RuntimeException("down"))
+            .thenReturn(List.of(persisted));
+
+        assertThat(service.check("hash-a", scan)).isEmpty();
+        verify(jdbcTemplate, never()).update(anyString(), any(), any(), any());
+
+        // Once the table is back, the persisted baseline is read and the scan is reported
+        assertThat(service.check("hash-a", scan)).hasSize(1);
+    }
+}
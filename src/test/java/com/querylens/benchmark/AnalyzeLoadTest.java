@@ -0,0 +1,182 @@
+package com.querylens.benchmark;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test: {@value #CLIENTS} clients call /analyze at once, each on a query that runs
+ * for {@value #QUERY_SECONDS}s, against one server on virtual threads and one where
+ * every analysis blocks one of {@value #PLATFORM_THREADS} platform threads (Tomcat's pool
+ * and querylens.analyze.platform-threads), as on a small pod. Prints latency percentiles
+ * and the peak number of platform threads.
+ *
+ * The database allows {@value #CONNECTIONS} statements at once, more than there are
+ * platform threads, and admission limits are raised so the queue is not the limit
+ * either. On platform threads the analyses therefore run {@value #PLATFORM_THREADS} at
+ * a time and the run takes at least {@link #threadBoundWallMs()}; on virtual threads
+ * the thread pool is not the limit, so it finishes well within that, without more
+ * platform threads. Run with -Djdk.tracePinnedThreads=short to see any JDBC path that
+ * pins its carrier thread.
+ *
+ * Note: requires PostgreSQL at localhost:5432 (the querylens_db used by PerformanceBenchmarkTest).
+ */
+@Disabled("Load test requires PostgreSQL - run manually")
+class AnalyzeLoadTest {
+
+    private static final int CLIENTS = 2000;
+    private static final double QUERY_SECONDS = 0.2;
+    private static final int PLATFORM_THREADS = 20;
+    private static final int CONNECTIONS = 100;
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+    @TestPropertySource(properties = {
+        "spring.threads.virtual.enabled=true",
+        "spring.datasource.hikari.maximum-pool-size=" + CONNECTIONS,
+        "querylens.targets.databases.default.max-concurrency=" + CONNECTIONS,
+        "querylens.admission.max-per-user=" + CLIENTS,
+        "querylens.admission.queue-capacity=" + CLIENTS,
+        "querylens.admission.max-queue-wait=10m",
+        "querylens.analyze.request-timeout-ms=600000",
+        "querylens.cache.enabled=false"
+    })
+    class VirtualThreads {
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void analyze_thousandsOfConcurrentRequests() throws Exception {
+            Result result = load(port);
+            result.print("Virtual threads");
+
+            assertThat(result.failed()).isZero();
+            // CONNECTIONS analyses were in flight at a time, on fewer platform threads
+            assertThat(result.peakPlatformThreads()).isLessThan(CONNECTIONS);
+            assertThat(result.wallMs()).isLessThan(threadBoundWallMs() / 2);
+        }
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+    @TestPropertySource(properties = {
+        "spring.threads.virtual.enabled=false",
+        "server.tomcat.threads.max=" + PLATFORM_THREADS,
+        "querylens.analyze.platform-threads=" + PLATFORM_THREADS,
+        "spring.datasource.hikari.maximum-pool-size=" + CONNECTIONS,
+        "querylens.targets.databases.default.max-concurrency=" + CONNECTIONS,
+        "querylens.admission.max-per-user=" + CLIENTS,
+        "querylens.admission.queue-capacity=" + CLIENTS,
+        "querylens.admission.max-queue-wait=10m",
+        "querylens.analyze.request-timeout-ms=600000",
+        "querylens.cache.enabled=false"
+    })
+    class PlatformThreads {
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void analyze_thousandsOfConcurrentRequests() throws Exception {
+            Result result = load(port);
+            result.print("Platform threads (pools of " + PLATFORM_THREADS + ")");
+
+            assertThat(result.failed()).isZero();
+            // Each analysis held a platform thread, so the pool was the limit
+            assertThat(result.wallMs()).isGreaterThanOrEqualTo(threadBoundWallMs());
+        }
+    }
+
+    /** The shortest run when analyses can only go PLATFORM_THREADS at a time */
+    private static long threadBoundWallMs() {
+        return (long) (CLIENTS / PLATFORM_THREADS * QUERY_SECONDS * 1000);
+    }
+
+    record Result(List<Long> latenciesMs, int failed, long wallMs, int peakPlatformThreads) {
+
+        void print(String label) {
+            List<Long> sorted = new ArrayList<>(latenciesMs);
+            Collections.sort(sorted);
+            System.out.println("=== " + label + ": " + CLIENTS + " concurrent /analyze ===");
+            System.out.println("Wall time: " + wallMs + " ms, failed: " + failed);
+            if (!sorted.isEmpty()) {
+                System.out.println("p50: " + percentile(sorted, 0.50) + " ms, p99: " + percentile(sorted, 0.99)
+                    + " ms, max: " + sorted.get(sorted.size() - 1) + " ms");
+            }
+            System.out.println("Peak platform threads: " + peakPlatformThreads);
+        }
+
+        private static long percentile(List<Long> sorted, double p) {
+            return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+        }
+    }
+
+    private static Result load(int port) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+        String body = "{\"sql\": \"SELECT pg_sleep(" + QUERY_SECONDS + ")\", \"mode\": \"ANALYZE\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/analyze"))
+            .header("Content-Type", "application/json")
+            .timeout(Duration.ofMinutes(10))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+
+        // Warm-up: pools, JIT, the first EXPLAIN
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+
+        // Counts platform threads only (server and test alike); virtual threads are not included
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> calls = new ArrayList<>(CLIENTS);
+            for (int i = 0; i < CLIENTS; i++) {
+                calls.add(clients.submit(() -> {
+                    long sent = System.nanoTime();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        latencies.add((System.nanoTime() - sent) / 1_000_000);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> call : calls) {
+                try {
+                    call.get();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+        return new Result(latencies, failed.get(), (System.nanoTime() - start) / 1_000_000,
+            threads.getPeakThreadCount());
+    }
+}
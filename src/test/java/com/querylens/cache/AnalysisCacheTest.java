@@ -0,0 +1,55 @@
+package com.querylens.cache;
+
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalysisCacheTest {
+
+    private final AnalysisCache.Key key = new AnalysisCache.Key("fingerprint", "plan", "literals");
+
+    @Test
+    void biResult_cachedUnlessPartial() {
+        AnalysisCache cache = new AnalysisCache(true, 10, Duration.ofMinutes(5));
+
+        BiAnalysisResult partial = new BiAnalysisResult();
+        partial.setPartial(true);
+        cache.putBiResult(key, partial);
+        assertThat(cache.getBiResult(key)).isNull();
+
+        BiAnalysisResult complete = new BiAnalysisResult();
+        cache.putBiResult(key, complete);
+        assertThat(cache.getBiResult(key)).isSameAs(complete);
+        assertThat(cache.getBiResult(new AnalysisCache.Key("fingerprint", "other-plan", "literals"))).isNull();
+    }
+
+    @Test
+    void disabledCacheNeverReturnsEntries() {
+        AnalysisCache cache = new AnalysisCache(false, 10, Duration.ofMinutes(5));
+
+        cache.putBiResult(key, new BiAnalysisResult());
+
+        assertThat(cache.getBiResult(key)).isNull();
+    }
+
+    @Test
+    void bindTo_publishesHitAndMissCounts() {
+        AnalysisCache cache = new AnalysisCache(true, 10, Duration.ofMinutes(5));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        cache.getBiResult(key);
+        cache.putBiResult(key, new BiAnalysisResult());
+        cache.getBiResult(key);
+        cache.getBiResult(key);
+
+        assertThat(registry.get("cache.gets").tag("cache", "bi-results").tag("result", "hit")
+            .functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("cache.gets").tag("cache", "bi-results").tag("result", "miss")
+            .functionCounter().count()).isEqualTo(1);
+    }
+}
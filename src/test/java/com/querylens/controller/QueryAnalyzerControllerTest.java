@@ -99,23 +99,62 @@
 // }
 package com.querylens.controller;
 
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.cache.AnalysisCache;
+import com.querylens.dto.AnalysisMode;
+import com.querylens.dto.AnalysisResponse;
+import com.querylens.dto.JobReport;
+import com.querylens.dto.PlanFormat;
+import com.querylens.dto.QueryRequest;
+import com.querylens.dto.RewriteReport;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.job.AnalysisJobService;
 import com.querylens.model.QueryMetrics;
 import com.querylens.optimizer.QueryOptimizerService;
 import com.querylens.optimizer.QueryRewriteService;
 import com.querylens.service.QueryAnalyzerService;
+import com.querylens.target.AdmissionController;
+import com.querylens.target.AdmissionRejectedException;
+import com.querylens.target.TargetRegistry;
+import com.querylens.target.UnknownTargetException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.querylens.metrics.AnalysisMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.util.List;
-import java.util.Optional;
-
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -134,11 +173,35 @@ class QueryAnalyzerControllerTest {
     @Mock
     private QueryRewriteService rewriteService;
 
+    @Mock
+    private AnalysisCache analysisCache;
+
+    @Mock
+    private AnalysisHistoryWriter historyWriter;
+
+    @Mock
+    private PlanRegressionService regressionService;
+
+    @Mock
+    private TargetRegistry targets;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private AnalysisMetrics metrics = new AnalysisMetrics(meterRegistry);
+
+    private final MockHttpServletRequest http = new MockHttpServletRequest();
+
     private MockMvc mockMvc;
 
     @BeforeEach
     void setUp() {
-        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+            .setControllerAdvice(new AdmissionExceptionHandler())
+            .build();
+        lenient().when(targets.run(any(), any(), any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(2)).get());
+        // Run the analysis on the test thread; the DeferredResult is set before analyze() returns
+        ReflectionTestUtils.setField(controller, "analyzeExecutor", (Executor) Runnable::run);
     }
 
     @Test
@@ -170,15 +233,18 @@ class QueryAnalyzerControllerTest {
             "Sequential scan detected; consider adding an index on the filtered/joined columns."
         );
 
-        // 5) Stub all service calls
-        when(analyzerService.analyzeQuery(sql)).thenReturn(metrics);
-        when(analyzerService.getRawPlanLines(sql)).thenReturn(planLines);
-        when(optimizerService.suggestOptimizations(sql, planLines)).thenReturn(suggestions);
-        when(rewriteService.rewrite(sql, planLines))
-            .thenReturn(Optional.of("SELECT id, name FROM users"));
+        // 5) Stub all service calls; the plan is captured once and shared
+        QueryPlan plan = new QueryPlan();
+        plan.setTextLines(planLines);
+        when(analyzerService.capturePlan(sql, null)).thenReturn(plan);
+        when(analyzerService.analyzeQuery(sql, plan)).thenReturn(metrics);
+        when(optimizerService.suggestOptimizations(sql, plan)).thenReturn(suggestions);
+        RewriteReport rewrite = rewriteTo("SELECT id, name FROM users");
+        rewrite.setCostDelta(-2.5);
+        when(rewriteService.verifiedRewrite(sql, plan, true)).thenReturn(rewrite);
 
         // 6) Execute & verify full JSON payload
-        mockMvc.perform(post("/analyze")
+        performAsync(post("/analyze")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content("{\"sql\":\"" + sql + "\"}"))
             .andExpect(status().isOk())
@@ -201,6 +267,171 @@ class QueryAnalyzerControllerTest {
 
             // --- optimized SQL ---
             .andExpect(jsonPath("$.optimizedSql")
-                .value("SELECT id, name FROM users"));
+                .value("SELECT id, name FROM users"))
+            .andExpect(jsonPath("$.rewrite.costDelta").value(-2.5))
+
+            // --- a single EXPLAIN ANALYZE for the whole request ---
+            .andExpect(jsonPath("$.databaseExecutions").value(1));
+
+        verify(analyzerService, never()).getRawPlanLines(anyString());
+        verify(analyzerService, never()).analyzeQuery(sql);
+        assertThat(meterRegistry.summary("querylens.analyze.database.executions").totalAmount()).isEqualTo(1);
+        verify(historyWriter).submit(argThat(r -> r.getOriginalQuery().equals(sql)
+            && r.getActualRuntimeMs() == 0.120 && "SELECT".equals(r.getQueryType())));
+    }
+
+    @Test
+    void analyzeEndpoint_runsOnTheRequestedTarget() throws Exception {
+        doThrow(new UnknownTargetException("warehouse")).when(targets).run(eq("warehouse"), any(), any());
+
+        performAsync(post("/analyze")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"sql\":\"SELECT 1\",\"databaseContext\":\"warehouse\"}"))
+            .andExpect(status().isBadRequest());
+
+        verify(analyzerService, never()).capturePlan(anyString(), any());
+    }
+
+    @Test
+    void analyzeEndpoint_answersRejectedExecutionsWith429() throws Exception {
+        AdmissionController admission = new AdmissionController();
+        ReflectionTestUtils.setField(admission, "trustedProxies", Set.of("127.0.0.1"));
+        ReflectionTestUtils.setField(controller, "admission", admission);
+        doThrow(new AdmissionRejectedException("default", "queue of 32 executions is full", 7))
+            .when(targets).run(any(), eq("analyst-7"), any());
+
+        performAsync(post("/analyze")
+                .header(AdmissionController.USER_HEADER, "analyst-7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"sql\":\"SELECT 1\"}"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "7"))
+            .andExpect(jsonPath("$.retryAfterSeconds").value(7));
+    }
+
+    @Test
+    void analyzeEndpoint_reusesCachedAnalysisForSameQueryShape() throws Exception {
+        String first = "SELECT id FROM orders WHERE created_at >= '2023-01-01'";
+        String second = "select id from orders where created_at >= '2024-01-01'";
+
+        AnalysisCache cache = new AnalysisCache(true, 10, Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(controller, "analysisCache", cache);
+
+        QueryPlan estimated = new QueryPlan();
+        QueryPlan analyzed = new QueryPlan();
+        QueryMetrics metrics = new QueryMetrics();
+        metrics.setExecutionTime(42.0);
+        when(analyzerService.estimatePlan(anyString(), anyBoolean())).thenReturn(estimated);
+        when(analyzerService.capturePlan(first, null)).thenReturn(analyzed);
+        when(analyzerService.analyzeQuery(first, analyzed)).thenReturn(metrics);
+        when(optimizerService.suggestOptimizations(first, analyzed)).thenReturn(List.of("tip"));
+        when(rewriteService.verifiedRewrite(anyString(), any(QueryPlan.class), eq(true))).thenReturn(rewriteTo(null));
+
+        AnalysisResponse response = analyzeNow(new QueryRequest(first));
+        AnalysisResponse cached = analyzeNow(new QueryRequest(second));
+
+        assertThat(response.getDatabaseExecutions()).isEqualTo(2);
+        assertThat(cached.getMetrics()).isSameAs(response.getMetrics());
+        assertThat(cached.getSuggestions()).containsExactly("tip");
+        assertThat(cached.getDatabaseExecutions()).isEqualTo(1);
+        verify(analyzerService, never()).capturePlan(second, null);
+        verify(rewriteService).verifiedRewrite(second, estimated, true);
+    }
+
+    @Test
+    void analyzeEndpoint_estimateModeNeverExecutesQuery() throws Exception {
+        String sql = "SELECT * FROM giving_detail";
+        QueryPlan estimated = estimatedPlan(5_000_000.0);
+        QueryMetrics metrics = new QueryMetrics();
+        when(analyzerService.estimatePlan(sql, false)).thenReturn(estimated);
+        when(analyzerService.analyzeQuery(sql, estimated)).thenReturn(metrics);
+        when(optimizerService.suggestOptimizations(sql, estimated)).thenReturn(List.of());
+        when(rewriteService.verifiedRewrite(sql, estimated, false)).thenReturn(rewriteTo(null));
+
+        performAsync(post("/analyze")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"sql\":\"" + sql + "\",\"mode\":\"ESTIMATE\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.analysisMode").value("ESTIMATE"));
+
+        verify(analyzerService, never()).capturePlan(anyString(), any());
+    }
+
+    @Test
+    void analyzeEndpoint_autoModeExecutesOnlyCheapQueries() {
+        String cheap = "SELECT id FROM users WHERE id = 1";
+        String expensive = "SELECT * FROM giving_detail";
+        QueryPlan cheapPlan = estimatedPlan(8.0);
+        QueryPlan expensivePlan = estimatedPlan(5_000_000.0);
+        when(analyzerService.estimatePlan(cheap, false)).thenReturn(cheapPlan);
+        when(analyzerService.estimatePlan(expensive, false)).thenReturn(expensivePlan);
+        QueryPlan analyzed = new QueryPlan();
+        when(analyzerService.capturePlan(cheap, PlanFormat.JSON)).thenReturn(analyzed);
+        when(analyzerService.analyzeQuery(cheap, analyzed)).thenReturn(new QueryMetrics());
+        when(analyzerService.analyzeQuery(expensive, expensivePlan)).thenReturn(new QueryMetrics());
+        when(rewriteService.verifiedRewrite(anyString(), any(QueryPlan.class), anyBoolean())).thenReturn(rewriteTo(null));
+
+        QueryRequest cheapRequest = new QueryRequest(cheap);
+        cheapRequest.setMode(AnalysisMode.AUTO);
+        cheapRequest.setPlanFormat(PlanFormat.JSON);
+        QueryRequest expensiveRequest = new QueryRequest(expensive);
+        expensiveRequest.setMode(AnalysisMode.AUTO);
+
+        assertThat(analyzeNow(cheapRequest).getAnalysisMode()).isEqualTo(AnalysisMode.ANALYZE);
+        assertThat(analyzeNow(expensiveRequest).getAnalysisMode()).isEqualTo(AnalysisMode.ESTIMATE);
+        verify(analyzerService, never()).capturePlan(expensive, null);
+    }
+
+    @Test
+    void submitEndpoint_runsTheAnalysisAsAJobThatReportsItsStages() throws Exception {
+        AnalysisJobService jobs = new AnalysisJobService();
+        ReflectionTestUtils.setField(jobs, "executor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(controller, "jobs", jobs);
+        String sql = "SELECT * FROM giving_detail";
+        QueryPlan estimated = estimatedPlan(5_000_000.0);
+        when(analyzerService.estimatePlan(sql, false)).thenReturn(estimated);
+        when(analyzerService.analyzeQuery(sql, estimated)).thenReturn(new QueryMetrics());
+        when(optimizerService.suggestOptimizations(sql, estimated)).thenReturn(List.of());
+        when(rewriteService.verifiedRewrite(sql, estimated, false)).thenReturn(rewriteTo(null));
+
+        String location = mockMvc.perform(post("/analyze/jobs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"sql\":\"" + sql + "\",\"mode\":\"ESTIMATE\"}"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", startsWith("/api/jobs/")))
+            .andExpect(jsonPath("$.kind").value("analyze"))
+            .andReturn().getResponse().getHeader("Location");
+
+        JobReport job = jobs.find(location.substring("/api/jobs/".length())).report();
+        assertThat(job.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(job.getStages()).extracting(JobReport.Stage::getName).containsExactlyInAnyOrder(
+            "plan_estimate", "metrics", "detectors", "rewrite_verification", "regression_check");
+        assertThat(((AnalysisResponse) job.getResult()).getAnalysisMode()).isEqualTo(AnalysisMode.ESTIMATE);
+    }
+
+    /** /analyze answers asynchronously: wait for the result and dispatch it */
+    private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult started = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+
+    private AnalysisResponse analyzeNow(QueryRequest request) {
+        return (AnalysisResponse) controller.analyze(request, http).getResult();
+    }
+
+    private static RewriteReport rewriteTo(String optimizedSql) {
+        RewriteReport report = new RewriteReport();
+        report.setOptimizedSql(optimizedSql);
+        return report;
+    }
+
+    private static QueryPlan estimatedPlan(double cost) {
+        ExecutionPlanNode root = new ExecutionPlanNode();
+        root.setOperatorType("Seq Scan");
+        root.setEstimatedCost(cost);
+        QueryPlan plan = new QueryPlan();
+        plan.setRoot(root);
+        plan.getNodes().add(root);
+        return plan;
     }
 }
@@ -0,0 +1,183 @@
+package com.querylens.harvest;
+
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.BiQueryAnalysisService;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.harvest.PgStatStatementsHarvester.HarvestRun;
+import com.querylens.harvest.PgStatStatementsHarvester.HarvestedStatement;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.history.SubmissionRecord;
+import com.querylens.model.QueryMetrics;
+import com.querylens.optimizer.QueryOptimizerService;
+import com.querylens.service.QueryAnalyzerService;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.WorkloadAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PgStatStatementsHarvesterTest {
+
+    private static final String SLOW = "SELECT * FROM orders WHERE user_id = $1";
+    private static final String FAST = "SELECT id FROM users WHERE email = $1";
+
+    @InjectMocks
+    private PgStatStatementsHarvester harvester;
+
+    @Mock
+    private PgStatStatementsReader reader;
+
+    @Mock
+    private QueryAnalyzerService analyzerService;
+
+    @Mock
+    private BiQueryAnalysisService biAnalysisService;
+
+    @Mock
+    private QueryOptimizerService optimizerService;
+
+    @Mock
+    private AnalysisHistoryWriter historyWriter;
+
+    @Mock
+    private PlanRegressionService regressionService;
+
+    @Mock
+    private TargetRegistry targets;
+
+    private final WorkloadAggregator workload = new WorkloadAggregator(100);
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(harvester, "workload", workload);
+        ReflectionTestUtils.setField(harvester, "minTotalExecTimeMs", 100.0);
+
+        when(targets.run(anyString(), anyString(), any())).thenAnswer(inv -> inv.<Supplier<?>>getArgument(2).get());
+        when(reader.currentDatabase()).thenReturn("querylens_db");
+        when(analyzerService.estimatePlan(anyString(), anyBoolean())).thenAnswer(inv -> plan());
+        when(analyzerService.analyzeQuery(anyString(), any(QueryPlan.class))).thenAnswer(inv -> {
+            QueryMetrics metrics = new QueryMetrics();
+            metrics.setStatementType("SELECT");
+            return metrics;
+        });
+        when(biAnalysisService.analyzeQuery(any(TokenizedSql.class), anyList())).thenAnswer(inv -> new BiAnalysisResult());
+        when(optimizerService.suggestOptimizations(anyString(), any(QueryPlan.class))).thenReturn(List.of("Add an index"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    void harvest_firstRunOnlyTakesBaseline() {
+        snapshot(stats(1, SLOW, 100, 50_000), stats(2, FAST, 1000, 900));
+
+        HarvestRun run = harvester.harvest();
+
+        assertThat(run.baseline()).isTrue();
+        verifyNoInteractions(analyzerService, historyWriter);
+    }
+
+    @Test
+    void harvest_analyzesStatementsByExecutionTimeSinceLastSnapshot() {
+        snapshot(stats(1, SLOW, 100, 50_000), stats(2, FAST, 1000, 900),
+            stats(3, "BEGIN", 10, 1), stats(4, "SELECT 1", 5, 5));
+        harvester.harvest();
+
+        // FAST spent more time than SLOW in this interval; statement 4 is below the threshold
+        snapshot(stats(1, SLOW, 110, 51_000), stats(2, FAST, 3000, 3_900),
+            stats(3, "BEGIN", 500, 600), stats(4, "SELECT 1", 10, 10));
+        HarvestRun run = harvester.harvest();
+
+        assertThat(run.statementsActive()).isEqualTo(4);
+        assertThat(run.analyzed()).extracting(HarvestedStatement::queryId).containsExactly(2L, 1L);
+        HarvestedStatement fast = run.analyzed().get(0);
+        assertThat(fast.calls()).isEqualTo(2000);
+        assertThat(fast.totalExecTimeMs()).isEqualTo(3_000.0);
+        assertThat(fast.suggestions()).containsExactly("Add an index");
+
+        verify(analyzerService).estimatePlan(FAST, true);
+        verify(historyWriter, times(2)).submit(argThat(r -> r.getSubmittedBy().equals("pg_stat_statements")
+            && r.getDatabaseContext().equals("querylens_db")));
+        assertThat(workload.report(10).getQueriesAnalyzed()).isEqualTo(2);
+    }
+
+    @Test
+    void harvest_treatsCountersThatWentBackwardsAsReset() {
+        snapshot(stats(1, SLOW, 100, 50_000));
+        harvester.harvest();
+        snapshot(stats(1, SLOW, 3, 600));
+
+        HarvestRun run = harvester.harvest();
+
+        assertThat(run.analyzed()).singleElement()
+            .satisfies(s -> assertThat(s.totalExecTimeMs()).isEqualTo(600.0));
+    }
+
+    @Test
+    void harvest_ranksTablesBySequentialScansSinceLastSnapshot() {
+        snapshot();
+        when(reader.readTableScans()).thenReturn(List.of(
+            new TableScanStats("public", "orders", 10, 1000, 0),
+            new TableScanStats("public", "users", 50, 500, 10)));
+        harvester.harvest();
+        when(reader.readTableScans()).thenReturn(List.of(
+            new TableScanStats("public", "orders", 110, 9000, 0),
+            new TableScanStats("public", "users", 55, 550, 500)));
+
+        HarvestRun run = harvester.harvest();
+
+        assertThat(run.seqScanTables()).extracting(TableScanStats::qualifiedName, TableScanStats::seqScan)
+            .containsExactly(tuple("public.orders", 100L), tuple("public.users", 5L));
+    }
+
+    @Test
+    void harvest_recordsStatementsThatCannotBePlanned() {
+        snapshot(stats(1, SLOW, 1, 1));
+        harvester.harvest();
+        snapshot(stats(1, SLOW, 2, 5_000));
+        when(analyzerService.estimatePlan(anyString(), anyBoolean()))
+            .thenThrow(new IllegalStateException("unrecognized EXPLAIN option \"generic_plan\""));
+
+        HarvestRun run = harvester.harvest();
+
+        assertThat(run.analyzed()).singleElement()
+            .satisfies(s -> assertThat(s.error()).contains("generic_plan"));
+        verify(historyWriter, never()).submit(any(SubmissionRecord.class));
+    }
+
+    private void snapshot(StatementStats... statements) {
+        when(reader.readStatements()).thenReturn(List.of(statements));
+    }
+
+    private static StatementStats stats(long queryId, String query, long calls, double totalExecTimeMs) {
+        return new StatementStats(10, 16384, queryId, query, calls, totalExecTimeMs, calls);
+    }
+
+    private static QueryPlan plan() {
+        ExecutionPlanNode root = new ExecutionPlanNode();
+        root.setOperatorType("Seq Scan");
+        QueryPlan plan = new QueryPlan();
+        plan.setRoot(root);
+        plan.getNodes().add(root);
+        return plan;
+    }
+}
@@ -0,0 +1,177 @@
+package com.querylens.history;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.metrics.AnalysisMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AnalysisHistoryWriterTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong sequence = new AtomicLong(100);
+    private AnalysisHistoryWriter writer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writer.stop();
+    }
+
+    @Test
+    void write_insertsSubmissionsBottlenecksAndFixesInBatches() {
+        writer = writer(10, Duration.ofSeconds(1));
+
+        SubmissionRecord withFindings = record("hash-a", Instant.parse("2025-01-01T00:00:00Z"));
+        Bottleneck index = bottleneck(IssueType.MISSING_INDEX);
+        index.getFixes().add("Add an index on posted_date");
+        index.getFixQueries().add("CREATE NONCLUSTERED INDEX IX_GD ON GIVING_DETAIL(posted_date)");
+        Bottleneck rewrite = bottleneck(IssueType.NON_SARGABLE_PREDICATE);
+        rewrite.getFixes().add("Use a date range");
+        rewrite.setOptimizedFragment("posted_date >= '2023-01-01'");
+        withFindings.getBottlenecks().addAll(List.of(index, rewrite, new Bottleneck()));
+        SubmissionRecord clean = record("hash-b", Instant.parse("2025-01-01T00:00:00Z"));
+
+        writer.write(List.of(withFindings, clean));
+
+        List<Object[]> submissions = batch("INSERT INTO query_submissions");
+        assertThat(submissions).hasSize(2);
+        assertThat(submissions.get(0)[0]).isEqualTo(100L);
+        assertThat(submissions.get(0)[1]).isEqualTo("hash-a");
+        assertThat(submissions.get(0)[11]).isEqualTo(2);   // The finding without an issue type is skipped
+
+        List<Object[]> bottlenecks = batch("INSERT INTO bottlenecks");
+        assertThat(bottlenecks).extracting(row -> row[1]).containsOnly(100L);
+        assertThat(bottlenecks).extracting(row -> row[3]).containsExactly("MISSING_INDEX", "NON_SARGABLE_PREDICATE");
+
+        List<Object[]> fixes = batch("INSERT INTO optimization_fixes");
+        assertThat(fixes).extracting(row -> row[0]).containsExactly(bottlenecks.get(0)[0], bottlenecks.get(1)[0]);
+        assertThat(fixes).extracting(row -> row[1]).containsExactly("INDEX", "REWRITE");
+    }
+
+    @Test
+    void write_keepsSubmittedAtUniqueForTheSameInstant() {
+        writer = writer(10, Duration.ofSeconds(1));
+        Instant now = Instant.parse("2025-01-01T00:00:00.000000500Z");
+
+        writer.write(List.of(record("hash-a", now), record("hash-a", now)));
+
+        List<Object[]> submissions = batch("INSERT INTO query_submissions");
+        Timestamp first = (Timestamp) submissions.get(0)[5];
+        Timestamp second = (Timestamp) submissions.get(1)[5];
+        assertThat(second.toInstant()).isEqualTo(first.toInstant().plusNanos(1_000));
+    }
+
+    @Test
+    void write_capsProblemDescriptionsAtThePatternSignatureWidth() {
+        writer = writer(10, Duration.ofSeconds(1));
+        SubmissionRecord r = record("hash-a", Instant.now());
+        Bottleneck b = bottleneck(IssueType.PLAN_REGRESSION);
+        b.setProblemDescription("x".repeat(400));
+        r.getBottlenecks().add(b);
+
+        writer.write(List.of(r));
+
+        assertThat((String) batch("INSERT INTO bottlenecks").get(0)[12]).hasSize(255);
+    }
+
+    @Test
+    void flush_retriesRecordByRecordAndDropsOnlyTheRejectedOne() {
+        writer = writer(10, Duration.ofSeconds(1));
+        List<String> written = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO query_submissions"), anyList())).thenAnswer(inv -> {
+            List<Object[]> rows = inv.getArgument(1);
+            if (rows.stream().anyMatch(row -> row[1].equals("hash-bad"))) {
+                throw new DataIntegrityViolationException("value too long for type character varying(255)");
+            }
+            rows.forEach(row -> written.add((String) row[1]));
+            return new int[rows.size()];
+        });
+
+        writer.flush(List.of(record("hash-a", Instant.now()), record("hash-bad", Instant.now()),
+            record("hash-b", Instant.now())));
+
+        assertThat(written).containsExactly("hash-a", "hash-b");
+        assertThat(registry.get("querylens.history.dropped").tag("reason", "write_failed").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void submit_dropsInsteadOfBlockingWhenQueueIsFull() {
+        writer = writer(1, Duration.ofSeconds(1));   // Not started: nothing drains the queue
+
+        assertThat(writer.submit(record("hash-a", Instant.now()))).isTrue();
+        assertThat(writer.submit(record("hash-b", Instant.now()))).isFalse();
+        assertThat(registry.get("querylens.history.dropped").tag("reason", "queue_full").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void start_flushesQueuedRecordsInTheBackground() throws Exception {
+        writer = writer(100, Duration.ofMillis(20));
+        writer.start();
+
+        writer.submit(record("hash-a", Instant.now()));
+        writer.submit(record("hash-b", Instant.now()));
+
+        verify(jdbcTemplate, timeout(2_000).atLeastOnce())
+            .batchUpdate(startsWith("INSERT INTO query_submissions"), anyList());
+        writer.stop();
+        assertThat(registry.get("querylens.history.batch.size").summary().totalAmount()).isEqualTo(2);
+    }
+
+    private AnalysisHistoryWriter writer(int queueCapacity, Duration flushInterval) {
+        AnalysisHistoryWriter w = new AnalysisHistoryWriter(true, queueCapacity, 500, flushInterval);
+        ReflectionTestUtils.setField(w, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(w, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(w, "metrics", new AnalysisMetrics(registry));
+        when(jdbcTemplate.queryForList(startsWith("SELECT nextval"), eq(Long.class), any()))
+            .thenAnswer(inv -> {
+                int count = inv.getArgument(2);
+                return LongStream.range(0, count).mapToObj(i -> sequence.getAndIncrement()).toList();
+            });
+        return w;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> batch(String sqlPrefix) {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(sqlPrefix), rows.capture());
+        return rows.getValue();
+    }
+
+    private static SubmissionRecord record(String hash, Instant submittedAt) {
+        SubmissionRecord record = new SubmissionRecord();
+        record.setQueryHash(hash);
+        record.setOriginalQuery("SELECT 1");
+        record.setSubmittedAt(submittedAt);
+        return record;
+    }
+
+    private static Bottleneck bottleneck(IssueType type) {
+        Bottleneck b = new Bottleneck();
+        b.setIssueType(type);
+        b.setSeverity(Severity.WARNING);
+        b.setProblemDescription(type.name());
+        return b;
+    }
+}
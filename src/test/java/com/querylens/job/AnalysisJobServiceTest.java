@@ -0,0 +1,276 @@
+package com.querylens.job;
+
+import com.querylens.dto.JobReport;
+import com.querylens.service.CancellationToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisJobServiceTest {
+
+    private final AnalysisJobService jobs = new AnalysisJobService();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jobs, "executor", executor);
+        ReflectionTestUtils.setField(jobs, "maxFinished", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void submit_reportsStagesAndDetectorFindingsThenTheResult() throws Exception {
+        AnalysisJob job = jobs.submit("bi", () -> {
+            JobProgress progress = JobProgress.current();
+            progress.stage("parse", () -> "plan");
+            return progress.stage("detectors", () -> {
+                progress.detectorFinished("YearFunctionDetector", List.of("YEAR() on order_date"));
+                progress.detectorFinished("CorrelatedSubqueryDetector", List.of());
+                return "report";
+            });
+        });
+        awaitUntil(job::isFinished);
+
+        JobReport report = jobs.find(job.getId()).report();
+        assertThat(report.getStatus()).isEqualTo("SUCCEEDED");
+        assertThat(report.getKind()).isEqualTo("bi");
+        assertThat(report.getStages()).extracting(JobReport.Stage::getName).containsExactly("parse", "detectors");
+        assertThat(report.getStages()).allSatisfy(stage -> assertThat(stage.getDurationMs()).isNotNull());
+        assertThat(report.getDetectors()).extracting(JobReport.Detector::getName)
+            .containsExactly("YearFunctionDetector", "CorrelatedSubqueryDetector");
+        assertThat(report.getResult()).isEqualTo("report");
+    }
+
+    @Test
+    void cancel_stopsARunningJob() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        AnalysisJob job = jobs.submit("analyze", () -> {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            try (CancellationToken.Registration r = CancellationToken.onCurrentCancel(cancelled::countDown)) {
+                running.countDown();
+                cancelled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            CancellationToken.checkCurrent();
+            return "never";
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        jobs.cancel(job.getId());
+        awaitUntil(job::isFinished);
+
+        assertThat(job.report().getStatus()).isEqualTo("CANCELLED");
+        assertThat(job.report().getResult()).isNull();
+    }
+
+    @Test
+    void submit_recordsWhyAJobFailed() throws Exception {
+        AnalysisJob job = jobs.submit("analyze", () -> {
+            throw new IllegalArgumentException("Unknown databaseContext 'replica'");
+        });
+        awaitUntil(job::isFinished);
+
+        assertThat(job.report().getStatus()).isEqualTo("FAILED");
+        assertThat(job.report().getError()).isEqualTo("Unknown databaseContext 'replica'");
+    }
+
+    @Test
+    void submit_finishesJobsThatThrowAnError() throws Exception {
+        ReflectionTestUtils.setField(jobs, "maxActive", 1);
+        AnalysisJob job = jobs.submit("bi", () -> {
+            throw new StackOverflowError();
+        });
+        awaitUntil(job::isFinished);
+
+        assertThat(job.report().getStatus()).isEqualTo("FAILED");
+        assertThat(job.report().getError()).contains("StackOverflowError");
+        // Its slot was freed and the store stays readable
+        awaitUntil(() -> {
+            try {
+                return jobs.submit("bi", () -> "next") != null;
+            } catch (ResponseStatusException e) {
+                return false;
+            }
+        });
+        assertThat(jobs.find(job.getId())).isSameAs(job);
+    }
+
+    @Test
+    void submit_neverRunsMoreThanMaxActiveUnderConcurrentSubmits() throws Exception {
+        ReflectionTestUtils.setField(jobs, "maxActive", 4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            submitters.add(Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                    jobs.submit("analyze", () -> {
+                        try {
+                            return release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                    });
+                    accepted.incrementAndGet();
+                } catch (ResponseStatusException e) {
+                    // Turned away with 429
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        release.countDown();
+
+        assertThat(accepted.get()).isEqualTo(4);
+    }
+
+    @Test
+    void find_forgetsTheOldestFinishedJobsBeyondTheStoreSize() {
+        ReflectionTestUtils.setField(jobs, "executor", (Executor) Runnable::run);
+        String first = jobs.submit("bi", () -> "1").getId();
+        String second = jobs.submit("bi", () -> "2").getId();
+        String third = jobs.submit("bi", () -> "3").getId();
+
+        assertThatThrownBy(() -> jobs.find(first)).isInstanceOf(UnknownJobException.class);
+        assertThat(jobs.find(second).report().getResult()).isEqualTo("2");
+        assertThat(jobs.find(third).report().getResult()).isEqualTo("3");
+    }
+
+    @Test
+    void find_forgetsFinishedJobsAfterTheRetention() {
+        ReflectionTestUtils.setField(jobs, "executor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(jobs, "retention", Duration.ZERO.minusSeconds(1));
+        String id = jobs.submit("bi", () -> "1").getId();
+
+        assertThatThrownBy(() -> jobs.find(id)).isInstanceOf(UnknownJobException.class);
+    }
+
+    @Test
+    void subscribe_replaysEarlierEventsToLateSubscribers() throws Exception {
+        ReflectionTestUtils.setField(jobs, "executor", (Executor) Runnable::run);
+        AnalysisJob job = jobs.submit("bi", () -> {
+            JobProgress.current().detectorFinished("YearFunctionDetector", List.of("YEAR() on order_date"));
+            return "report";
+        });
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        job.subscribe(emitter);
+        awaitUntil(() -> emitter.completed);
+
+        assertThat(emitter.events).containsExactly("event:detector", "event:done");
+    }
+
+    @Test
+    void publish_doesNotWaitForAStalledClient() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        AnalysisJob job = jobs.submit("bi", () -> {
+            try {
+                subscribed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            JobProgress.current().detectorFinished("YearFunctionDetector", List.of("YEAR() on order_date"));
+            JobProgress.current().detectorFinished("LateFilterDetector", List.of());
+            return "report";
+        });
+        RecordingEmitter stalled = new RecordingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+        };
+        job.subscribe(stalled);
+        subscribed.countDown();
+
+        awaitUntil(job::isFinished);
+        assertThat(stalled.events).isEmpty();
+
+        release.countDown();
+        awaitUntil(() -> stalled.completed);
+        assertThat(stalled.events).containsExactly("event:detector", "event:detector", "event:done");
+    }
+
+    @Test
+    void submit_rejectsJobsBeyondTheActiveLimit() {
+        ReflectionTestUtils.setField(jobs, "maxActive", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        jobs.submit("analyze", () -> {
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+
+        assertThatThrownBy(() -> jobs.submit("analyze", () -> "never"))
+            .hasMessageContaining("querylens.jobs.max-active");
+        release.countDown();
+    }
+
+    /** Keeps the name of each event sent instead of writing it to a response */
+    private static class RecordingEmitter extends SseEmitter {
+        private static final Pattern EVENT = Pattern.compile("event:\\w+");
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String text = builder.build().stream().map(part -> part.getData().toString()).collect(Collectors.joining());
+            Matcher event = EVENT.matcher(text);
+            while (event.find()) {
+                events.add(event.group());
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
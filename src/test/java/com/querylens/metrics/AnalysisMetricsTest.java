@@ -0,0 +1,65 @@
+package com.querylens.metrics;
+
+import com.querylens.analyzer.plan.PostgresPlanParser;
+import com.querylens.analyzer.plan.QueryPlan;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AnalysisMetrics metrics = new AnalysisMetrics(registry);
+
+    @Test
+    void timeExplain_tagsFailuresAsErrors() {
+        metrics.timeExplain("analyze", () -> "plan");
+        assertThatThrownBy(() -> metrics.timeExplain("analyze", () -> {
+            throw new QueryTimeoutException("canceling statement due to statement timeout");
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        Timer success = registry.get("querylens.explain.duration")
+            .tag("kind", "analyze").tag("outcome", "success").timer();
+        Timer error = registry.get("querylens.explain.duration")
+            .tag("kind", "analyze").tag("outcome", "error").timer();
+        assertThat(success.count()).isEqualTo(1);
+        assertThat(error.count()).isEqualTo(1);
+    }
+
+    @Test
+    void timers_publishPercentileHistogramsToPrometheus() {
+        PrometheusMeterRegistry prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        new AnalysisMetrics(prometheus).timeDetector("bi", "NON_SARGABLE", () -> 1);
+
+        assertThat(prometheus.scrape())
+            .contains("querylens_detector_duration_seconds_bucket{")
+            .contains("detector=\"NON_SARGABLE\"");
+    }
+
+    @Test
+    void timePlanParse_recordsNodeCountAndSize() {
+        String json = """
+            [{"Plan": {"Node Type": "Hash Join", "Total Cost": 20.0, "Plan Rows": 500,
+                "Plans": [{"Node Type": "Seq Scan", "Relation Name": "orders", "Total Cost": 10.0, "Plan Rows": 1000}]}}]
+            """;
+
+        QueryPlan plan = metrics.timePlanParse("postgres_json", json, () -> new PostgresPlanParser().parse(json));
+
+        assertThat(plan.getNodes()).hasSize(2);
+        assertThat(registry.get("querylens.plan.parse.duration").tag("format", "postgres_json").timer().count())
+            .isEqualTo(1);
+        assertThat(registry.get("querylens.plan.nodes").summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.get("querylens.plan.size").summary().totalAmount()).isEqualTo(json.length());
+    }
+
+    @Test
+    void noop_runsWorkWithoutRegistry() {
+        assertThat(AnalysisMetrics.noop().timeDetector("bi", null, () -> 42)).isEqualTo(42);
+    }
+}
@@ -1,14 +1,26 @@
 package com.querylens.optimizer;
 
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.dto.RewriteReport;
+import com.querylens.dto.RewriteReport.Candidate;
+import com.querylens.metrics.AnalysisMetrics;
+import com.querylens.optimizer.RewriteVerifier.Checksum;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
+import java.util.TreeSet;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.*;
 
 class QueryRewriteServiceTest {
@@ -19,6 +31,9 @@ class QueryRewriteServiceTest {
     @Mock
     private QueryRewriter rewriter2;
 
+    @Mock
+    private RewriteVerifier verifier;
+
     private QueryRewriteService service;
 
     @BeforeEach
@@ -89,5 +104,150 @@ class QueryRewriteServiceTest {
 
         assertThat(result).isEmpty();
     }
-}
 
+    @Test
+    void verifiedRewrite_returnsCheapestRewriteWithTheSameRows() {
+        String sql = "SELECT * FROM users";
+        stubRewriter(rewriter1, "SELECTIVE", "SELECT id, name FROM users");
+        stubRewriter(rewriter2, "BROKEN", "SELECT id FROM users");
+        when(verifier.plan("SELECT id, name FROM users")).thenReturn(plannedAt(80.0));
+        when(verifier.plan("SELECT id FROM users")).thenReturn(plannedAt(60.0));
+        when(verifier.checksum(eq(sql), anyLong())).thenReturn(new Checksum(3, new BigDecimal("12345")));
+        when(verifier.checksum(eq("SELECT id FROM users"), anyLong())).thenReturn(new Checksum(3, new BigDecimal("999")));
+        when(verifier.checksum(eq("SELECT id, name FROM users"), anyLong())).thenReturn(new Checksum(3, new BigDecimal("12345")));
+
+        RewriteReport report = verifyingService().verifiedRewrite(sql, plannedAt(100.0), true);
+
+        assertThat(report.getOptimizedSql()).isEqualTo("SELECT id, name FROM users");
+        assertThat(report.getRewriter()).isEqualTo("SELECTIVE");
+        assertThat(report.getCostDelta()).isEqualTo(-20.0);
+        assertThat(report.getCostDeltaPercent()).isEqualTo(-20.0);
+        assertThat(report.getRowsCompared()).isEqualTo(3);
+        // Two EXPLAINs and three checksums; the original's cost came from its plan
+        assertThat(report.getDatabaseExecutions()).isEqualTo(5);
+        assertThat(report.getCandidates()).extracting(Candidate::getRewriter, Candidate::getResultsMatch)
+            .containsExactly(tuple("SELECTIVE", true), tuple("BROKEN", false));
+        assertThat(report.getCandidates().get(1).getRejectedReason()).startsWith("Returns different rows");
+    }
+
+    @Test
+    void verifiedRewrite_rejectsRewritesThatFailToPlanOrCostMore() {
+        String sql = "SELECT * FROM users";
+        stubRewriter(rewriter1, "INVALID", "SELECT nope FROM users");
+        stubRewriter(rewriter2, "SLOWER", "SELECT id FROM users ORDER BY name");
+        when(verifier.plan("SELECT nope FROM users"))
+            .thenThrow(new BadSqlGrammarException("explain", "SELECT nope FROM users",
+                new SQLException("column \"nope\" does not exist")));
+        when(verifier.plan("SELECT id FROM users ORDER BY name")).thenReturn(plannedAt(140.0));
+
+        RewriteReport report = verifyingService().verifiedRewrite(sql, plannedAt(100.0), true);
+
+        assertThat(report.getOptimizedSql()).isNull();
+        assertThat(report.getCandidates()).extracting(Candidate::getRejectedReason).containsExactly(
+            "Does not plan: column \"nope\" does not exist",
+            "Costs more than the original: 140.00 vs 100.00");
+        verify(verifier, never()).checksum(anyString(), anyLong());
+    }
+
+    @Test
+    void verifiedRewrite_neverExecutesWhenTheRequestDoesNot() {
+        String sql = "SELECT * FROM users";
+        stubRewriter(rewriter1, "SELECTIVE", "SELECT id, name FROM users");
+        when(rewriter2.canRewrite(eq(sql), anyList())).thenReturn(false);
+        when(verifier.plan(sql)).thenReturn(plannedAt(100.0));
+        when(verifier.plan("SELECT id, name FROM users")).thenReturn(plannedAt(80.0));
+
+        QueryPlan textPlan = new QueryPlan();
+        RewriteReport report = verifyingService().verifiedRewrite(sql, textPlan, false);
+
+        assertThat(report.getOptimizedSql()).isNull();
+        assertThat(report.getOriginalCost()).isEqualTo(100.0);
+        assertThat(report.getCandidates().get(0).getRejectedReason())
+            .isEqualTo("Results not compared: this request does not execute the query");
+        verify(verifier, never()).checksum(anyString(), anyLong());
+    }
+
+    @Test
+    void verifiedRewrite_skipsTheDatabaseWhenNothingMatches() {
+        RewriteReport report = verifyingService().verifiedRewrite("SELECT id FROM users", plannedAt(1.0), true);
+
+        assertThat(report.getCandidates()).isEmpty();
+        assertThat(report.getDatabaseExecutions()).isZero();
+        verifyNoInteractions(verifier);
+    }
+
+    @Test
+    void verifiedRewrite_stacksRewritesThatEachApplyToTheLastOutput() {
+        String sql = "SELECT * FROM orders o WHERE o.total > (SELECT avg(total) FROM orders)";
+        String expanded = "SELECT o.id, o.total FROM orders o WHERE o.total > (SELECT avg(total) FROM orders)";
+        String joined = "WITH a AS (SELECT avg(total) t FROM orders) SELECT o.id, o.total FROM orders o, a WHERE o.total > a.t";
+        when(rewriter1.name()).thenReturn("SELECT_STAR");
+        when(rewriter1.canRewrite(anyString(), anyList())).thenAnswer(i -> i.<String>getArgument(0).contains("*"));
+        when(rewriter1.rewrite(eq(sql), anyList())).thenReturn(expanded);
+        when(rewriter2.name()).thenReturn("SUBQUERY_TO_CTE");
+        when(rewriter2.canRewrite(anyString(), anyList())).thenAnswer(i -> i.<String>getArgument(0).startsWith("SELECT o.id"));
+        when(rewriter2.rewrite(eq(expanded), anyList())).thenReturn(joined);
+        when(verifier.plan(expanded)).thenReturn(plannedAt(100.0));
+        when(verifier.plan(joined)).thenReturn(plannedAt(40.0));
+        when(verifier.checksum(anyString(), anyLong())).thenReturn(new Checksum(7, BigDecimal.TEN));
+
+        RewriteReport report = verifyingService().verifiedRewrite(sql, plannedAt(100.0), true);
+
+        assertThat(report.getOptimizedSql()).isEqualTo(joined);
+        assertThat(report.getRewriter()).isEqualTo("SELECT_STAR + SUBQUERY_TO_CTE");
+        assertThat(report.getCostDelta()).isEqualTo(-60.0);
+        assertThat(report.getCandidates()).extracting(Candidate::getRewriter)
+            .containsExactly("SELECT_STAR", "SELECT_STAR + SUBQUERY_TO_CTE");
+    }
+
+    @Test
+    void verifiedRewrite_plansEachReachableQueryOnceWithinTheSearchBudget() {
+        // A adds column a, B adds column b; A then B and B then A reach the same query
+        when(rewriter1.name()).thenReturn("A");
+        when(rewriter1.canRewrite(anyString(), anyList())).thenReturn(true);
+        when(rewriter1.rewrite(anyString(), anyList())).thenAnswer(i -> withColumn(i.getArgument(0), "a"));
+        when(rewriter2.name()).thenReturn("B");
+        when(rewriter2.canRewrite(anyString(), anyList())).thenReturn(true);
+        when(rewriter2.rewrite(anyString(), anyList())).thenAnswer(i -> withColumn(i.getArgument(0), "b"));
+        when(verifier.plan(anyString())).thenReturn(plannedAt(100.0));
+
+        RewriteReport report = verifyingService().verifiedRewrite("SELECT id FROM users", plannedAt(100.0), false);
+
+        assertThat(report.getCandidates()).extracting(Candidate::getSql)
+            .containsExactly("SELECT a, id FROM users", "SELECT b, id FROM users", "SELECT a, b, id FROM users");
+        verify(verifier, times(3)).plan(anyString());
+
+        QueryRewriteService limited = verifyingService();
+        ReflectionTestUtils.setField(limited, "searchMaxPlans", 2);
+        report = limited.verifiedRewrite("SELECT id FROM users", plannedAt(100.0), false);
+
+        assertThat(report.getDatabaseExecutions()).isEqualTo(2);
+        assertThat(report.getCandidates().get(2).getRejectedReason()).isEqualTo("Not planned: rewrite search budget used up");
+    }
+
+    private static String withColumn(String sql, String column) {
+        TreeSet<String> columns = new TreeSet<>(
+            List.of(sql.substring("SELECT ".length(), sql.indexOf(" FROM")).split(", ")));
+        columns.add(column);
+        return "SELECT " + String.join(", ", columns) + " FROM users";
+    }
+
+    private QueryRewriteService verifyingService() {
+        return new QueryRewriteService(List.of(rewriter1, rewriter2), AnalysisMetrics.noop(), verifier);
+    }
+
+    private static void stubRewriter(QueryRewriter rewriter, String name, String output) {
+        when(rewriter.name()).thenReturn(name);
+        when(rewriter.canRewrite(anyString(), anyList())).thenReturn(true);
+        when(rewriter.rewrite(anyString(), anyList())).thenReturn(output);
+    }
+
+    private static QueryPlan plannedAt(double cost) {
+        ExecutionPlanNode root = new ExecutionPlanNode();
+        root.setEstimatedCost(cost);
+        QueryPlan plan = new QueryPlan();
+        plan.setRoot(root);
+        plan.getNodes().add(root);
+        return plan;
+    }
+}
@@ -33,7 +33,48 @@ class ScalarSubqueryRewriterTest {
         assertThat(out).startsWith("WITH order_count_cte AS");
         // Should contain a LEFT JOIN on order_count_cte
         assertThat(out).contains("LEFT JOIN order_count_cte cte ON cte.key_col = u.id");
-        // Should end selecting cte.val AS order_count
-        assertThat(out).contains("cte.val AS order_count FROM users u");
+        // Should end selecting cte.val AS order_count; users without orders count 0, not NULL
+        assertThat(out).contains("COALESCE(cte.val, 0) AS order_count FROM users u");
+        // The CTE is grouped on the correlated column instead of copying the correlation
+        assertThat(out).contains("SELECT o.user_id AS key_col, COUNT(*) AS val FROM orders o GROUP BY o.user_id");
+    }
+
+    @Test
+    void rewrite_keepsOwnFiltersAndWorksInNestedQueries() {
+        String sql = "SELECT t.name, t.total FROM (SELECT d.name, "
+            + "(SELECT SUM(g.amount) FROM giving_detail g WHERE g.donor_id = d.id AND g.fund = 'ANNUAL') AS total "
+            + "FROM donors d) t WHERE t.total > 1000";
+
+        assertThat(rewriter.canRewrite(sql, List.of())).isTrue();
+        assertThat(rewriter.rewrite(sql, List.of())).isEqualTo(
+            "WITH total_cte AS (SELECT g.donor_id AS key_col, SUM(g.amount) AS val FROM giving_detail g "
+                + "WHERE g.fund = 'ANNUAL' GROUP BY g.donor_id) "
+                + "SELECT t.name, t.total FROM (SELECT d.name, cte.val AS total FROM donors d "
+                + "LEFT JOIN total_cte cte ON cte.key_col = d.id) t WHERE t.total > 1000");
+    }
+
+    @Test
+    void canRewrite_leavesSubqueriesItCannotDecorrelateExactly() {
+        // Correlated on two columns
+        assertThat(rewriter.canRewrite("SELECT u.id, (SELECT COUNT(*) FROM orders o "
+            + "WHERE o.user_id = u.id AND o.region = u.region) AS n FROM users u", List.of())).isFalse();
+        // Unqualified column: may belong to the outer query
+        assertThat(rewriter.canRewrite("SELECT u.id, (SELECT MAX(o.total) FROM orders o "
+            + "WHERE o.user_id = u.id AND status = 'open') AS n FROM users u", List.of())).isFalse();
+        // Not an aggregate: the subquery fails on duplicates, a join would not
+        assertThat(rewriter.canRewrite("SELECT o.id, (SELECT u.name FROM users u WHERE u.id = o.user_id) AS name "
+            + "FROM orders o", List.of())).isFalse();
+        assertThat(rewriter.canRewrite("not sql at all", List.of())).isFalse();
+    }
+
+    @Test
+    void canRewrite_declinesABareStarThatWouldPickUpTheCteColumns() {
+        String sql = "SELECT *, (SELECT COUNT(*) FROM orders o WHERE o.user_id = u.id) AS c FROM users u";
+
+        assertThat(rewriter.canRewrite(sql, List.of())).isFalse();
+        assertThat(rewriter.rewrite(sql, List.of())).isEqualTo(sql);
+        // u.* stays limited to users
+        assertThat(rewriter.canRewrite(
+            "SELECT u.*, (SELECT COUNT(*) FROM orders o WHERE o.user_id = u.id) AS c FROM users u", List.of())).isTrue();
     }
 }
@@ -8,6 +8,7 @@ import org.mockito.*;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -37,7 +38,7 @@ class SelectStarRewriterTest {
 
         // Stub JDBC to return a couple of fake columns
         when(jdbc.queryForList(
-            anyString(), any(Object[].class), eq(String.class))
+            anyString(), eq(String.class), any(Object[].class))
         ).thenReturn(List.of("id", "name", "created_at"));
 
         String rewritten = rewriter.rewrite(sql, List.of());
@@ -50,4 +51,42 @@ class SelectStarRewriterTest {
             .startsWith("SELECT id, name, created_at FROM my_schema.my_table")
             .contains("WHERE id = 1");
     }
+
+    @Test
+    void rewrite_keepsOnlyColumnsTheOuterQueryReadsFromASubquery() {
+        stubColumns(Map.of("giving_detail", List.of("id", "donor_id", "amount", "fund", "posted_date", "notes")));
+        String sql = "SELECT d.donor_id, SUM(d.amount) FROM (SELECT * FROM giving_detail WHERE fund = 'ANNUAL') d "
+            + "WHERE d.posted_date >= '2024-01-01' GROUP BY d.donor_id";
+
+        assertThat(rewriter.rewrite(sql, List.of())).isEqualTo(
+            "SELECT d.donor_id, SUM(d.amount) FROM (SELECT donor_id, amount, posted_date FROM giving_detail "
+                + "WHERE fund = 'ANNUAL') d WHERE d.posted_date >= '2024-01-01' GROUP BY d.donor_id");
+    }
+
+    @Test
+    void rewrite_keepsEveryColumnWhenTheWholeRowIsUsed() {
+        stubColumns(Map.of("giving_detail", List.of("id", "amount"), "users", List.of("id", "name"),
+            "orders", List.of("id", "user_id")));
+
+        assertThat(rewriter.rewrite("SELECT d.* FROM (SELECT * FROM giving_detail) d", List.of()))
+            .isEqualTo("SELECT d.* FROM (SELECT id, amount FROM giving_detail) d");
+        assertThat(rewriter.rewrite("SELECT * FROM (SELECT DISTINCT * FROM giving_detail) d", List.of()))
+            .isEqualTo("SELECT * FROM (SELECT DISTINCT id, amount FROM giving_detail) d");
+        // Joined tables are qualified so same-named columns stay apart
+        assertThat(rewriter.rewrite("SELECT * FROM users u JOIN orders o ON o.user_id = u.id", List.of()))
+            .isEqualTo("SELECT u.id, u.name, o.id, o.user_id FROM users u JOIN orders o ON o.user_id = u.id");
+    }
+
+    @Test
+    void canRewrite_ignoresStarsOverCtesAndUnparseableSql() {
+        assertThat(rewriter.canRewrite("WITH c AS (SELECT 1 AS x) SELECT * FROM c", List.of())).isFalse();
+        assertThat(rewriter.canRewrite("SELECT * FROM a NATURAL JOIN b", List.of())).isFalse();
+        assertThat(rewriter.canRewrite("SELECT * FROM", List.of())).isFalse();
+    }
+
+    private void stubColumns(Map<String, List<String>> columns) {
+        // Table name is the second bind parameter of both lookups
+        when(jdbc.queryForList(anyString(), eq(String.class), any(Object[].class)))
+            .thenAnswer(i -> columns.getOrDefault(i.<String>getArgument(3), List.of()));
+    }
 }
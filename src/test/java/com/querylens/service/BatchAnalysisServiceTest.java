@@ -0,0 +1,155 @@
+package com.querylens.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.TokenizedSql;
+import com.querylens.analyzer.bi.BiQueryAnalysisService;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.analyzer.plan.QueryPlan;
+import com.querylens.analyzer.regression.PlanRegressionService;
+import com.querylens.dto.AnalysisMode;
+import com.querylens.dto.BatchResult;
+import com.querylens.history.AnalysisHistoryWriter;
+import com.querylens.model.QueryMetrics;
+import com.querylens.target.TargetRegistry;
+import com.querylens.workload.WorkloadAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchAnalysisServiceTest {
+
+    @InjectMocks
+    private BatchAnalysisService service;
+
+    @Mock
+    private QueryAnalyzerService analyzerService;
+
+    @Mock
+    private BiQueryAnalysisService biAnalysisService;
+
+    @Mock
+    private AnalysisHistoryWriter historyWriter;
+
+    @Mock
+    private PlanRegressionService regressionService;
+
+    @Mock
+    private TargetRegistry targets;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WorkloadAggregator workload = new WorkloadAggregator(100);
+    private AutoCloseable mocks;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "executor", executor);
+        ReflectionTestUtils.setField(service, "workload", workload);
+        ReflectionTestUtils.setField(service, "concurrency", 2);
+
+        when(targets.run(any(), any(), any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(2)).get());
+        when(analyzerService.estimatePlan(anyString(), anyBoolean())).thenAnswer(inv -> plan(false));
+        when(analyzerService.capturePlan(anyString())).thenAnswer(inv -> plan(true));
+        when(analyzerService.analyzeQuery(anyString(), any(QueryPlan.class))).thenAnswer(inv -> new QueryMetrics());
+        when(biAnalysisService.analyzeQuery(any(TokenizedSql.class), anyList()))
+            .thenAnswer(inv -> new BiAnalysisResult());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        mocks.close();
+    }
+
+    @Test
+    void analyze_writesOneLinePerStatementAndReportsBadLines() throws Exception {
+        String body = """
+            {"id": "a", "sql": "SELECT 1"}
+
+            {broken
+            {"id": "c", "sql": "SELECT 2", "mode": "ANALYZE"}
+            """;
+
+        List<BatchResult> results = run(body);
+
+        assertThat(results).extracting(BatchResult::getIndex).containsExactly(0, 1, 2);
+        assertThat(results.get(0).getId()).isEqualTo("a");
+        assertThat(results.get(0).getAnalysisMode()).isEqualTo(AnalysisMode.ESTIMATE);
+        assertThat(results.get(0).getError()).isNull();
+        assertThat(results.get(1).getError()).isNotBlank();
+        assertThat(results.get(2).getAnalysisMode()).isEqualTo(AnalysisMode.ANALYZE);
+        verify(analyzerService).capturePlan("SELECT 2");
+        verify(analyzerService, never()).capturePlan("SELECT 1");
+        assertThat(workload.report(10).getQueriesAnalyzed()).isEqualTo(2);
+        verify(historyWriter, times(2)).submit(any());
+    }
+
+    @Test
+    void analyze_boundsStatementsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(analyzerService.estimatePlan(anyString(), anyBoolean())).thenAnswer(inv -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return plan(false);
+        });
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            body.append("{\"id\": \"q").append(i).append("\", \"sql\": \"SELECT ").append(i).append("\"}\n");
+        }
+
+        List<BatchResult> results = run(body.toString());
+
+        assertThat(results).hasSize(12).allMatch(r -> r.getError() == null);
+        assertThat(maxInFlight.get()).isBetween(1, 2);
+    }
+
+    private List<BatchResult> run(String body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.analyze(new StringReader(body), out);
+
+        List<BatchResult> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, BatchResult.class));
+        }
+        // Lines arrive in completion order
+        results.sort(Comparator.comparingInt(BatchResult::getIndex));
+        return results;
+    }
+
+    private static QueryPlan plan(boolean analyzed) {
+        ExecutionPlanNode root = new ExecutionPlanNode();
+        root.setOperatorType("Result");
+        root.setEstimatedCost(1.0);
+        QueryPlan plan = new QueryPlan();
+        plan.setRoot(root);
+        plan.getNodes().add(root);
+        plan.setAnalyzed(analyzed);
+        return plan;
+    }
+}
@@ -0,0 +1,54 @@
+package com.querylens.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CancellationTokenTest {
+
+    private final CancellationToken token = new CancellationToken();
+
+    @Test
+    void cancel_runsRegisteredActionsOnceAndLateRegistrationsImmediately() {
+        List<String> fired = new ArrayList<>();
+        token.onCancel(() -> fired.add("first"));
+        CancellationToken.Registration closed = token.onCancel(() -> fired.add("closed"));
+        closed.close();
+
+        token.cancel();
+        token.cancel();
+        token.onCancel(() -> fired.add("late"));
+
+        assertThat(fired).containsExactly("first", "late");
+        assertThat(token.isCancelled()).isTrue();
+    }
+
+    @Test
+    void run_bindsTheTokenToTheThreadOnlyWhileWorking() {
+        String result = token.run(() -> {
+            assertThat(CancellationToken.current()).isSameAs(token);
+            token.cancel();
+            assertThatThrownBy(CancellationToken::checkCurrent).isInstanceOf(CancellationException.class);
+            return "done";
+        });
+
+        assertThat(result).isEqualTo("done");
+        assertThat(CancellationToken.current()).isNull();
+        CancellationToken.checkCurrent();
+        assertThat(CancellationToken.onCurrentCancel(() -> { })).isSameAs(CancellationToken.Registration.NONE);
+    }
+
+    @Test
+    void run_refusesToStartCancelledWork() {
+        token.cancel();
+
+        assertThatThrownBy(() -> token.run(() -> "never"))
+            .isInstanceOf(CancellationException.class)
+            .hasMessageContaining("no longer waiting");
+    }
+}
@@ -0,0 +1,92 @@
+package com.querylens.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.postgresql.PGConnection;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class ExplainSandboxTest {
+
+    @InjectMocks
+    private ExplainSandbox sandbox;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus status;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+    }
+
+    @Test
+    void run_selectIsReadOnlyWithTimeoutsAndRolledBack() {
+        String result = sandbox.run(true, () -> "plan");
+
+        assertThat(result).isEqualTo("plan");
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().isReadOnly()).isTrue();
+        assertThat(definition.getValue().getPropagationBehavior())
+            .isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        InOrder order = inOrder(jdbcTemplate, transactionManager);
+        order.verify(jdbcTemplate).execute("SET TRANSACTION READ ONLY");
+        order.verify(jdbcTemplate).execute("SET LOCAL statement_timeout = 30000");
+        order.verify(jdbcTemplate).execute("SET LOCAL lock_timeout = 2000");
+        order.verify(transactionManager).rollback(status);
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void run_rollsBackWhenStatementFails() {
+        assertThatThrownBy(() -> sandbox.run(false, () -> {
+            throw new QueryTimeoutException("canceling statement due to statement timeout");
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        verify(jdbcTemplate, never()).execute("SET TRANSACTION READ ONLY");
+        verify(transactionManager).rollback(status);
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void run_cancelsTheStatementWithoutASecondConnection() throws Exception {
+        PGConnection connection = mock(PGConnection.class);
+        when(jdbcTemplate.execute(ArgumentMatchers.<ConnectionCallback<PGConnection>>any())).thenReturn(connection);
+        CancellationToken token = new CancellationToken();
+
+        String result = token.run(() -> sandbox.run(true, () -> {
+            token.cancel();
+            return "plan";
+        }));
+
+        assertThat(result).isEqualTo("plan");
+        verify(connection).cancelQuery();
+        // Only the transaction's own connection is used
+        verify(jdbcTemplate, times(1)).execute(ArgumentMatchers.<ConnectionCallback<PGConnection>>any());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Boolean.class), any(Object[].class));
+        verify(transactionManager).rollback(status);
+    }
+}
@@ -1,10 +1,14 @@
 package com.querylens.service;
 
+import com.querylens.analyzer.plan.QueryPlan;
 import com.querylens.model.QueryMetrics;
 // import org.junit.jupiter.api.BeforeEach;
 // import org.junit.jupiter.api.Test;
 // import org.mockito.*;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 
 import java.util.List;
 
@@ -14,12 +18,14 @@ import static org.mockito.Mockito.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static org.mockito.Mockito.when;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class QueryAnalyzerServiceTest {
 
@@ -29,9 +35,16 @@ class QueryAnalyzerServiceTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ExplainSandbox sandbox = new ExplainSandbox();
+        ReflectionTestUtils.setField(sandbox, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(sandbox, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(service, "sandbox", sandbox);
     }
 
     @Test
@@ -84,4 +97,98 @@ class QueryAnalyzerServiceTest {
         assertThat(metrics.isHasJoinClause()).isTrue();
         assertThat(metrics.isHasLimitClause()).isTrue();
     }
+
+    @Test
+    void analyzeQuery_withJsonPlanUsesTreeTotals() {
+        // Given
+        String sql = "SELECT * FROM orders JOIN users ON orders.user_id = users.id";
+        String json = """
+            [{"Plan": {"Node Type": "Hash Join", "Total Cost": 20.0, "Plan Rows": 500,
+                "Actual Total Time": 2.0, "Actual Rows": 3000000000, "Actual Loops": 1,
+                "Plans": [
+                  {"Node Type": "Seq Scan", "Relation Name": "orders", "Total Cost": 10.0,
+                   "Plan Rows": 1000, "Actual Total Time": 1.0, "Actual Rows": 1000, "Actual Loops": 1},
+                  {"Node Type": "Hash", "Total Cost": 5.0, "Plan Rows": 100,
+                   "Actual Total Time": 0.5, "Actual Rows": 100, "Actual Loops": 1,
+                   "Plans": [{"Node Type": "Seq Scan", "Relation Name": "users", "Total Cost": 4.0,
+                     "Plan Rows": 100, "Actual Total Time": 0.4, "Actual Rows": 100, "Actual Loops": 1}]}
+                ]},
+              "Planning Time": 0.1, "Execution Time": 2.5}]
+            """;
+        when(jdbcTemplate.queryForList("EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + sql, String.class))
+            .thenReturn(List.of(json));
+
+        // When
+        QueryPlan plan = service.capturePlan(sql);
+        QueryMetrics metrics = service.analyzeQuery(sql, plan);
+
+        // Then
+        assertThat(plan.getNodes()).hasSize(4);
+        assertThat(metrics.getExecutionTime()).isEqualTo(2.5);
+        assertThat(metrics.getRowsProcessed()).isEqualTo(3_000_000_000L);
+        assertThat(metrics.getCostEstimate()).isEqualTo(20.0);
+        assertThat(metrics.getTablesUsed()).containsExactly("orders", "users");
+        assertThat(metrics.isHasJoinClause()).isTrue();
+        assertThat(plan.toTextLines()).anyMatch(line -> line.contains("Seq Scan on users"));
+    }
+
+    @Test
+    void analyzeQuery_runsDmlInRolledBackWritableTransaction() {
+        // Given
+        String sql = "UPDATE pledges SET status = 'closed' WHERE due_date < '2020-01-01'";
+        List<String> plan = List.of(
+            "Update on pledges  (cost=0.00..35.50 rows=10 width=38) (actual time=0.200..0.200 rows=0 loops=1)",
+            "Execution Time: 0.250 ms"
+        );
+        when(jdbcTemplate.queryForList("EXPLAIN ANALYZE " + sql, String.class))
+            .thenReturn(plan);
+
+        // When
+        QueryMetrics metrics = service.analyzeQuery(sql);
+
+        // Then
+        assertThat(metrics.getStatementType()).isEqualTo("UPDATE");
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().isReadOnly()).isFalse();
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(jdbcTemplate, never()).execute("SET TRANSACTION READ ONLY");
+    }
+
+    @Test
+    void estimatePlan_rejectsMultipleStatementsBeforeTouchingTheDatabase() {
+        String sql = "SELECT 1; DELETE FROM giving_detail";
+
+        assertThatThrownBy(() -> service.estimatePlan(sql)).isInstanceOf(MultipleStatementsException.class);
+        assertThatThrownBy(() -> service.capturePlan(sql)).isInstanceOf(MultipleStatementsException.class);
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void estimatePlan_rejectsScriptsHiddenBehindEStringEscapes() {
+        String sql = "SELECT E'\\'' ; DELETE FROM t; --'";
+
+        assertThatThrownBy(() -> service.estimatePlan(sql)).isInstanceOf(MultipleStatementsException.class);
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void estimatePlan_explainsInARolledBackReadOnlyTransaction() {
+        String sql = "SELECT * FROM users";
+        when(jdbcTemplate.queryForList("EXPLAIN (FORMAT JSON) " + sql, String.class)).thenReturn(List.of("""
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "users", "Total Cost": 10.0, "Plan Rows": 100}}]
+            """));
+
+        service.estimatePlan(sql);
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().isReadOnly()).isTrue();
+        verify(jdbcTemplate).execute("SET TRANSACTION READ ONLY");
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
 }
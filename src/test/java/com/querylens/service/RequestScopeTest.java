@@ -0,0 +1,84 @@
+package com.querylens.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestScopeTest {
+
+    @Test
+    void join_waitsForSubtasksRunningSideBySide() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        try (RequestScope scope = new RequestScope()) {
+            Future<String> first = scope.fork(() -> meet(bothStarted, "first"));
+            Future<String> second = scope.fork(() -> meet(bothStarted, "second"));
+            scope.join();
+
+            assertThat(first.resultNow()).isEqualTo("first");
+            assertThat(second.resultNow()).isEqualTo("second");
+        }
+    }
+
+    @Test
+    void join_rethrowsTheFirstFailureAfterCancellingTheOthers() {
+        CountDownLatch siblingCancelled = new CountDownLatch(1);
+
+        try (RequestScope scope = new RequestScope()) {
+            Future<String> sibling = scope.fork(() -> {
+                try (CancellationToken.Registration cancel = CancellationToken.onCurrentCancel(siblingCancelled::countDown)) {
+                    await(siblingCancelled);
+                    CancellationToken.checkCurrent();
+                    return "finished";
+                }
+            });
+            scope.fork(() -> {
+                throw new IllegalStateException("plan regression lookup failed");
+            });
+
+            assertThatThrownBy(scope::join)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("plan regression lookup failed");
+            assertThat(sibling.state()).isEqualTo(Future.State.FAILED);
+            assertThat(sibling.exceptionNow()).isInstanceOf(CancellationException.class);
+        }
+    }
+
+    @Test
+    void fork_subtasksAreCancelledWithTheRequest() {
+        CancellationToken request = new CancellationToken();
+
+        assertThatThrownBy(() -> request.run(() -> {
+            try (RequestScope scope = new RequestScope()) {
+                scope.fork(() -> {
+                    request.cancel();
+                    CancellationToken.checkCurrent();
+                    return "never";
+                });
+                scope.join();
+                return "never";
+            }
+        })).isInstanceOf(CancellationException.class);
+    }
+
+    /** Returns {@code result} once every party of {@code latch} has arrived */
+    private static String meet(CountDownLatch latch, String result) {
+        latch.countDown();
+        await(latch);
+        return result;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
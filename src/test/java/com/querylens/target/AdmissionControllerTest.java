@@ -0,0 +1,167 @@
+package com.querylens.target;
+
+import com.querylens.service.CancellationToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControllerTest {
+
+    // One execution at a time
+    private final Target target = new Target("warehouse", null, null, null, 1, null);
+    private final AdmissionController admission = new AdmissionController();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(admission, "maxPerUser", 2);
+        ReflectionTestUtils.setField(admission, "queueCapacity", 3);
+        ReflectionTestUtils.setField(admission, "maxQueueWait", Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void caller_trustsTheUserHeaderOnlyFromConfiguredProxies() {
+        ReflectionTestUtils.setField(admission, "trustedProxies", Set.of("10.0.0.5"));
+        MockHttpServletRequest direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("203.0.113.9");
+        direct.addHeader(AdmissionController.USER_HEADER, "someone-else");
+        MockHttpServletRequest proxied = new MockHttpServletRequest();
+        proxied.setRemoteAddr("10.0.0.5");
+        proxied.addHeader(AdmissionController.USER_HEADER, "alice");
+        MockHttpServletRequest authenticated = new MockHttpServletRequest();
+        authenticated.setUserPrincipal(() -> "bob");
+        authenticated.addHeader(AdmissionController.USER_HEADER, "alice");
+
+        assertThat(admission.caller(direct)).isEqualTo("203.0.113.9");
+        assertThat(admission.caller(proxied)).isEqualTo("alice");
+        assertThat(admission.caller(authenticated)).isEqualTo("bob");
+    }
+
+    @Test
+    void run_givesFreedSlotsToTheLeastRecentlyServedUser() throws Exception {
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        Future<?> holder = submit("alice", "alice-1", admitted, release);
+        awaitUntil(() -> admission.running("warehouse") == 1);
+
+        // alice queues two more before bob arrives
+        Future<?> alice2 = submit("alice", "alice-2", admitted, null);
+        awaitUntil(() -> admission.queued("warehouse") == 1);
+        Future<?> alice3 = submit("alice", "alice-3", admitted, null);
+        awaitUntil(() -> admission.queued("warehouse") == 2);
+        Future<?> bob = submit("bob", "bob-1", admitted, null);
+        awaitUntil(() -> admission.queued("warehouse") == 3);
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        for (Future<?> f : List.of(alice2, alice3, bob)) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(admitted).containsExactly("alice-1", "bob-1", "alice-2", "alice-3");
+        assertThat(admission.running("warehouse")).isZero();
+    }
+
+    @Test
+    void run_rejectsWithRetryAfterWhenTheQueueIsFull() throws Exception {
+        ReflectionTestUtils.setField(admission, "queueCapacity", 1);
+        submit("alice", "alice-1", new CopyOnWriteArrayList<>(), release);
+        awaitUntil(() -> admission.running("warehouse") == 1);
+        submit("bob", "bob-1", new CopyOnWriteArrayList<>(), null);
+        awaitUntil(() -> admission.queued("warehouse") == 1);
+
+        assertThatThrownBy(() -> inTarget("carol", () -> "never"))
+            .isInstanceOf(AdmissionRejectedException.class)
+            .hasMessageContaining("queue of 1 executions is full")
+            .satisfies(e -> assertThat(((AdmissionRejectedException) e).getRetryAfterSeconds()).isPositive());
+    }
+
+    @Test
+    void run_rejectsExecutionsThatWaitTooLong() throws Exception {
+        ReflectionTestUtils.setField(admission, "maxQueueWait", Duration.ofMillis(50));
+        submit("alice", "alice-1", new CopyOnWriteArrayList<>(), release);
+        awaitUntil(() -> admission.running("warehouse") == 1);
+
+        assertThatThrownBy(() -> inTarget("bob", () -> "never"))
+            .isInstanceOf(AdmissionRejectedException.class)
+            .hasMessageContaining("without a free slot");
+        assertThat(admission.queued("warehouse")).isZero();
+    }
+
+    @Test
+    void run_withdrawsQueuedExecutionsWhenTheRequestIsCancelled() throws Exception {
+        submit("alice", "alice-1", new CopyOnWriteArrayList<>(), release);
+        awaitUntil(() -> admission.running("warehouse") == 1);
+
+        CancellationToken token = new CancellationToken();
+        Future<String> bob = executor.submit(() -> token.run(() -> inTarget("bob", () -> "bob-1")));
+        awaitUntil(() -> admission.queued("warehouse") == 1);
+        token.cancel();
+
+        assertThatThrownBy(() -> bob.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+        assertThat(admission.queued("warehouse")).isZero();
+    }
+
+    @Test
+    void run_doesNotQueueNestedExecutionsAgain() {
+        String result = inTarget("alice", () -> admission.run(() -> "nested"));
+
+        assertThat(result).isEqualTo("nested");
+        assertThat(admission.running("warehouse")).isZero();
+    }
+
+    private Future<?> submit(String user, String label, List<String> admitted, CountDownLatch hold) {
+        return executor.submit(() -> inTarget(user, () -> {
+            admitted.add(label);
+            if (hold != null) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return label;
+        }));
+    }
+
+    private <T> T inTarget(String user, Supplier<T> work) {
+        TargetContext.Binding previous = TargetContext.bind(target, user);
+        try {
+            return admission.run(work);
+        } finally {
+            TargetContext.restore(previous);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.querylens.target;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class TargetRegistryTest {
+
+    private final JdbcTemplate primary = mock(JdbcTemplate.class);
+    private final TargetProperties properties = new TargetProperties();
+    private final TargetRegistry registry = new TargetRegistry();
+
+    @BeforeEach
+    void setUp() {
+        TargetProperties.Database replica = new TargetProperties.Database();
+        replica.setUrl("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+        replica.setUsername("sa");
+        replica.setStatementTimeoutMs(1500L);
+        properties.getDatabases().put("replica", replica);
+
+        ReflectionTestUtils.setField(registry, "jdbcTemplate", primary);
+        ReflectionTestUtils.setField(registry, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(registry, "properties", properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.closeAll();
+    }
+
+    @Test
+    void run_bindsTheDefaultTargetWhenNoContextIsGiven() {
+        JdbcTemplate bound = registry.run(null, () -> TargetContext.jdbcTemplate(null));
+
+        assertThat(bound).isSameAs(primary);
+        assertThat(TargetContext.current()).isNull();
+        assertThat(registry.run(" ", TargetContext::name)).isEqualTo("default");
+    }
+
+    @Test
+    void run_opensANamedTargetsPoolOnFirstUse() {
+        assertThat(registry.open()).doesNotContainKey("replica");
+
+        Integer one = registry.run("replica",
+            () -> TargetContext.jdbcTemplate(primary).queryForObject("SELECT 1", Integer.class));
+
+        assertThat(one).isEqualTo(1);
+        Target replica = registry.open().get("replica");
+        assertThat(replica.statementTimeoutMs()).isEqualTo(1500L);
+        assertThat(replica.inFlight()).isZero();
+    }
+
+    @Test
+    void run_rejectsUnknownTargets() {
+        assertThatThrownBy(() -> registry.run("warehouse", () -> 1))
+            .isInstanceOf(UnknownTargetException.class)
+            .hasMessageContaining("querylens.targets.databases.warehouse.url");
+    }
+
+    @Test
+    void closeIdle_closesUnusedPoolsAndTheNextRequestReopensThem() {
+        properties.setIdleCloseAfter(Duration.ZERO);
+        registry.run("replica", () -> 1);
+        Target first = registry.open().get("replica");
+
+        registry.closeIdle();
+
+        assertThat(registry.open()).doesNotContainKey("replica");
+        assertThat(registry.run("replica",
+            () -> TargetContext.jdbcTemplate(primary).queryForObject("SELECT 2", Integer.class))).isEqualTo(2);
+        assertThat(registry.open().get("replica")).isNotSameAs(first);
+    }
+
+    @Test
+    void run_bindsTheUserTheWorkIsFor() {
+        assertThat(registry.run("replica", "analyst-7", TargetContext::user)).isEqualTo("analyst-7");
+        assertThat(registry.run("replica", TargetContext::user)).isEqualTo(TargetContext.ANONYMOUS);
+    }
+}
@@ -0,0 +1,67 @@
+package com.querylens.workload;
+
+import com.querylens.workload.SpaceSaving.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpaceSavingTest {
+
+    @Test
+    void offer_isExactBelowCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(10);
+        sketch.offer("a", 2.0, "first");
+        sketch.offer("b", 5.0);
+        sketch.offer("a", 1.5, "second");
+
+        assertThat(sketch.top(10)).extracting(Entry::key).containsExactly("b", "a");
+        Entry<String> a = sketch.get("a");
+        assertThat(a.weight()).isEqualTo(3.5);
+        assertThat(a.error()).isZero();
+        assertThat(a.hits()).isEqualTo(2);
+        assertThat(a.sample()).isEqualTo("first");
+        assertThat(sketch.total()).isEqualTo(8.5);
+    }
+
+    @Test
+    void offer_keepsHeavyHittersWithinErrorBound() {
+        SpaceSaving<Integer> sketch = new SpaceSaving<>(20);
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            // 30% of the stream is key 0, 10% key 1, the rest spread over 5,000 keys
+            double r = random.nextDouble();
+            int key = r < 0.3 ? 0 : r < 0.4 ? 1 : 2 + random.nextInt(5_000);
+            sketch.offer(key, 1);
+        }
+
+        assertThat(sketch.size()).isEqualTo(20);
+        assertThat(sketch.top(2)).extracting(Entry::key).containsExactly(0, 1);
+        for (Entry<Integer> e : sketch.top(20)) {
+            assertThat(e.error()).isLessThanOrEqualTo(sketch.total() / sketch.capacity());
+        }
+        assertThat(sketch.get(0).guaranteedWeight()).isGreaterThan(2_500);
+    }
+
+    @Test
+    void merge_addsSharedKeysAndKeepsCapacity() {
+        SpaceSaving<String> left = new SpaceSaving<>(3);
+        left.offer("a", 10);
+        left.offer("b", 4);
+        SpaceSaving<String> right = new SpaceSaving<>(3);
+        right.offer("a", 5);
+        right.offer("c", 3);
+        right.offer("d", 1);
+
+        left.merge(right);
+
+        assertThat(left.size()).isEqualTo(3);
+        assertThat(left.top(3)).extracting(Entry::key).containsExactly("a", "b", "c");
+        assertThat(left.get("a").weight()).isEqualTo(15);
+        // "b" was never seen by the full right-hand sketch, so it may have had up to its minimum
+        assertThat(left.get("b").weight()).isEqualTo(5);
+        assertThat(left.get("b").error()).isEqualTo(1);
+        assertThat(left.total()).isEqualTo(23);
+    }
+}
@@ -0,0 +1,111 @@
+package com.querylens.workload;
+
+import com.querylens.analyzer.Bottleneck;
+import com.querylens.analyzer.Bottleneck.IssueType;
+import com.querylens.analyzer.Bottleneck.Severity;
+import com.querylens.analyzer.ExecutionPlanNode;
+import com.querylens.analyzer.QueryFingerprint;
+import com.querylens.analyzer.bi.BiQueryAnalysisService.BiAnalysisResult;
+import com.querylens.dto.WorkloadReport;
+import com.querylens.dto.WorkloadReport.RankedItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class WorkloadAggregatorTest {
+
+    private final WorkloadAggregator aggregator = new WorkloadAggregator(100);
+
+    @Test
+    void report_ranksPatternsByImpactAcrossLiterals() {
+        for (int year = 2015; year < 2025; year++) {
+            record("SELECT * FROM gifts WHERE YEAR(posted_date) = " + year,
+                bottleneck(IssueType.NON_SARGABLE_PREDICATE, "YEAR(posted_date) = " + year, 2.0));
+        }
+        record("SELECT * FROM gifts WHERE fund = 'A' OR campaign = 'B'",
+            bottleneck(IssueType.OR_CONDITION, "fund = 'A' OR campaign = 'B'", 1.0));
+        record("SELECT * FROM gifts WHERE fund = 'C' OR campaign = 'D'",
+            bottleneck(IssueType.OR_CONDITION, "fund = 'C' OR campaign = 'D'", null));
+
+        WorkloadReport report = aggregator.report(10);
+
+        assertThat(report.getQueriesAnalyzed()).isEqualTo(12);
+        assertThat(report.getIssueTypeCounts())
+            .containsEntry(IssueType.NON_SARGABLE_PREDICATE, 10L)
+            .containsEntry(IssueType.OR_CONDITION, 2L);
+
+        List<RankedItem> fixFirst = report.getFixFirst();
+        assertThat(fixFirst).hasSize(2);
+        assertThat(fixFirst.get(0).getRank()).isEqualTo(1);
+        assertThat(fixFirst.get(0).getIssueType()).isEqualTo(IssueType.NON_SARGABLE_PREDICATE);
+        assertThat(fixFirst.get(0).getKey()).isEqualTo("YEAR ( POSTED_DATE ) = ?");
+        assertThat(fixFirst.get(0).getOccurrences()).isEqualTo(10);
+        assertThat(fixFirst.get(0).getImpactSeconds()).isEqualTo(20.0);
+        assertThat(fixFirst.get(1).getOccurrences()).isEqualTo(2);
+
+        // All ten years normalize to one query shape
+        assertThat(report.getTopFingerprints().get(0).getOccurrences()).isEqualTo(10);
+        assertThat(report.getTopFingerprints().get(0).getImpactSeconds()).isEqualTo(20.0);
+    }
+
+    @Test
+    void report_countsMissingIndexTables() {
+        Bottleneck byNode = bottleneck(IssueType.MISSING_INDEX, null, 5.0);
+        ExecutionPlanNode scan = new ExecutionPlanNode();
+        scan.setObjectName("GIVING_DETAIL");
+        byNode.setRelatedNode(scan);
+        Bottleneck byOperator = bottleneck(IssueType.MISSING_INDEX, null, 1.0);
+        byOperator.setOperatorName("Table Scan on GIVING_DETAIL (1.2M rows)");
+        Bottleneck other = bottleneck(IssueType.MISSING_INDEX, null, 1.0);
+        other.setOperatorName("Seq Scan on donors");
+
+        record("SELECT 1", byNode, byOperator);
+        record("SELECT 2", other);
+
+        assertThat(aggregator.report(10).getMissingIndexTables())
+            .extracting(RankedItem::getKey, RankedItem::getOccurrences)
+            .containsExactly(tuple("GIVING_DETAIL", 2L), tuple("donors", 1L));
+    }
+
+    @Test
+    void merge_combinesSummariesFromElsewhere() {
+        record("SELECT 1", bottleneck(IssueType.LATE_FILTER, "x > 1", 1.0));
+        WorkloadSummary other = new WorkloadSummary(100);
+        BiAnalysisResult result = new BiAnalysisResult();
+        result.getBottlenecks().add(bottleneck(IssueType.LATE_FILTER, "x > 2", 3.0));
+        other.record(QueryFingerprint.of("SELECT 2"), result);
+
+        aggregator.merge(other);
+        WorkloadReport report = aggregator.report(10);
+
+        assertThat(report.getQueriesAnalyzed()).isEqualTo(2);
+        assertThat(report.getFixFirst()).singleElement()
+            .satisfies(item -> assertThat(item.getImpactSeconds()).isEqualTo(4.0));
+
+        aggregator.reset();
+        assertThat(aggregator.report(10).getQueriesAnalyzed()).isZero();
+    }
+
+    private void record(String sql, Bottleneck... bottlenecks) {
+        BiAnalysisResult result = new BiAnalysisResult();
+        double impact = 0;
+        for (Bottleneck b : bottlenecks) {
+            result.getBottlenecks().add(b);
+            impact += b.getTimeImpactSeconds() != null ? b.getTimeImpactSeconds() : 0;
+        }
+        result.setTotalImpactSeconds(impact);
+        aggregator.record(QueryFingerprint.of(sql), result);
+    }
+
+    private static Bottleneck bottleneck(IssueType type, String fragment, Double impactSeconds) {
+        Bottleneck b = new Bottleneck();
+        b.setIssueType(type);
+        b.setSeverity(Severity.WARNING);
+        b.setQueryFragment(fragment);
+        b.setTimeImpactSeconds(impactSeconds);
+        return b;
+    }
+}